@@ -1,8 +1,9 @@
 package bearmaps;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 public class KDTree implements PointSet {
 
@@ -20,14 +21,21 @@ public class KDTree implements PointSet {
     }
 
     private static final boolean HORIZONTAL = true;
+
+    /* Subtrees smaller than this are built on the current thread. */
+    private static final int PARALLEL_THRESHOLD = 1 << 13;
+
     private Node root;
 
-    /* Constructor. */
+    /* Constructor. Builds a perfectly balanced tree on the common ForkJoinPool. */
     public KDTree(List<Point> points) {
-        Collections.shuffle(points);
-        for (Point p : points) {
-            root = growTree(root, p, HORIZONTAL); // start at 0th-dimension
-        }
+        this(points, ForkJoinPool.commonPool());
+    }
+
+    /* Builds a perfectly balanced tree, building large subtrees in parallel on POOL. */
+    public KDTree(List<Point> points, ForkJoinPool pool) {
+        Point[] sorted = points.toArray(new Point[0]);
+        root = pool.invoke(new Build(sorted, 0, sorted.length, HORIZONTAL)); // start at 0th-dimension
     }
 
     /* Returns the closest point to the inputted coordinates.
@@ -52,22 +60,89 @@ public class KDTree implements PointSet {
      * Helper functions for construction.
      ***************************************************************************/
 
-    private Node growTree(Node n, Point p, boolean dimension) {
-        if (n == null) return new Node(p, dimension);
-        if (n.point.equals(p)) return n;
+    /* Builds the subtree over POINTS[LO, HI), rooted at the median on DIMENSION,
+     * so that no point on the left is greater and none on the right smaller. */
+    private static class Build extends RecursiveTask<Node> {
+        private static final long serialVersionUID = 1L;
+
+        private final Point[] points;
+        private final int lo;
+        private final int hi;
+        private final boolean dimension;
+
+        Build(Point[] points, int lo, int hi, boolean dimension) {
+            this.points = points;
+            this.lo = lo;
+            this.hi = hi;
+            this.dimension = dimension;
+        }
+
+        @Override
+        protected Node compute() {
+            if (hi - lo < PARALLEL_THRESHOLD) return build(points, lo, hi, dimension);
+
+            int mid = (lo + hi) >>> 1;
+            select(points, lo, hi, mid, dimension);
+            Node n = new Node(points[mid], dimension);
+            Build left = new Build(points, lo, mid, !dimension);
+            left.fork();
+            n.right = new Build(points, mid + 1, hi, !dimension).compute();
+            n.left = left.join();
+            return n;
+        }
+    }
 
-        int cmp = compare(p, n.point, dimension);
-        if (cmp < 0) n.left = growTree(n.left, p, !dimension);
-        else n.right = growTree(n.right, p, !dimension);
+    private static Node build(Point[] points, int lo, int hi, boolean dimension) {
+        if (lo >= hi) return null;
 
+        int mid = (lo + hi) >>> 1;
+        select(points, lo, hi, mid, dimension);
+        Node n = new Node(points[mid], dimension);
+        n.left = build(points, lo, mid, !dimension);
+        n.right = build(points, mid + 1, hi, !dimension);
         return n;
     }
 
+    /* Quickselect: puts the point that would be at K were POINTS[LO, HI) sorted
+     * on DIMENSION there, with none greater before it and none smaller after. */
+    private static void select(Point[] points, int lo, int hi, int k, boolean dimension) {
+        hi--;
+        while (hi > lo) {
+            int m = (lo + hi) >>> 1;
+            // median of three as the pivot, moved to lo
+            if (compare(points[m], points[lo], dimension) < 0) swap(points, m, lo);
+            if (compare(points[hi], points[lo], dimension) < 0) swap(points, hi, lo);
+            if (compare(points[hi], points[m], dimension) < 0) swap(points, hi, m);
+            swap(points, lo, m);
+            Point pivot = points[lo];
+
+            int i = lo;
+            int j = hi + 1;
+            while (true) {
+                do i++; while (i <= hi && compare(points[i], pivot, dimension) < 0);
+                do j--; while (compare(points[j], pivot, dimension) > 0);
+                if (i >= j) break;
+                swap(points, i, j);
+            }
+            swap(points, lo, j);
+
+            if (j == k) return;
+            else if (j < k) lo = j + 1;
+            else hi = j - 1;
+        }
+    }
+
+    private static void swap(Point[] points, int a, int b) {
+        Point p = points[a];
+        points[a] = points[b];
+        points[b] = p;
+    }
+
     /***************************************************************************
      * Helper functions for nearest().
      ***************************************************************************/
 
-    private int compare(Point p1, Point p2, boolean dimension) {
+    private static int compare(Point p1, Point p2, boolean dimension) {
         if (dimension) return Double.compare(p1.getX(), p2.getX());
         else return Double.compare(p1.getY(), p2.getY());
     }
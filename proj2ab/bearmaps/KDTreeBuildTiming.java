@@ -0,0 +1,32 @@
+package bearmaps;
+
+import edu.princeton.cs.algs4.Stopwatch;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Times KDTree construction on pools of 1, 2, 4, ... threads, up to the
+ * number of cores, and prints the speedup over one thread. Kept out of
+ * KDTreeTest, as timings depend on the machine.
+ */
+public class KDTreeBuildTiming {
+    public static void main(String[] args) {
+        int N = 2_000_000;
+        List<Point> universe = TestTreeHelper.randomPoints(N);
+        new KDTree(universe, new ForkJoinPool(1));   // warm up
+
+        double oneThread = 0;
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads <= cores; threads *= 2) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            Stopwatch sw = new Stopwatch();
+            new KDTree(universe, pool);
+            double seconds = sw.elapsedTime();
+            pool.shutdown();
+            if (threads == 1) oneThread = seconds;
+            System.out.println("K-d tree build on " + threads + " threads: " + seconds
+                    + " seconds (" + String.format("%.2f", oneThread / seconds) + "x).");
+        }
+    }
+}
@@ -5,6 +5,7 @@ import org.junit.Test;
 
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
@@ -51,6 +52,21 @@ public class KDTreeTest {
         System.out.println("K-d tree: " + sw.elapsedTime() + " seconds.");
     }
 
+    @Test
+    public void testParallelNearest() {
+        int N = 200_000;
+        int M = 1000;
+        List<Point> universe = TestTreeHelper.randomPoints(N);
+        List<Point> testPoints = TestTreeHelper.randomPoints(M);
+
+        NaivePointSet naive = new NaivePointSet(universe);
+        KDTree realDeal = new KDTree(universe, new ForkJoinPool(4));
+
+        for (Point p : testPoints) {
+            assertEquals(naive.nearest(p.getX(), p.getY()), realDeal.nearest(p.getX(), p.getY()));
+        }
+    }
+
     @Test
     public void testRandomRangeFinding() {
         int N = 10000;
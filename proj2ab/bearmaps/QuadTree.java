@@ -1,82 +1,482 @@
 package bearmaps;
 
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.List;
+import java.util.stream.IntStream;
 
+/**
+ * A bucketed point-region quadtree, bulk loaded and stored flat in arrays.
+ *
+ * Construction sorts the points into quadrants recursively, in place, until
+ * a region holds at most LEAF_SIZE points. Every subtree therefore owns one
+ * contiguous slice [lo, hi) of the point arrays, and a leaf is just a short
+ * run of coordinates to scan. Nodes live in parallel arrays indexed by node
+ * number, with the non-empty children of a node numbered consecutively, and
+ * each keeps the tight bounding box of its points, so clustered data is not
+ * searched through the empty space around it.
+ *
+ * nearest() and kNearest() visit nodes best first, in order of the distance
+ * from the target to their boxes, and stop as soon as the next box is
+ * farther than the K-th best point found. rangeFinding() and withinRadius()
+ * take a whole subtree's slice at once when its box lies inside the query.
+ */
 public class QuadTree implements PointSet {
 
-    private static class Node {
+    /* Most points a leaf holds, unless they all share one location. */
+    private static final int LEAF_SIZE = 8;
 
-        private final Point point;
-        private Node SOUTH_WEST, SOUTH_EAST, NORTH_WEST, NORTH_EAST;
+    /* Splitting stops here, which only matters for points so close together
+     * that halving their box no longer separates them. */
+    private static final int MAX_DEPTH = 48;
 
-        Node(Point point) {
-            this.point = point;
-        }
-    }
+    private final Point[] points;   // the input points by input index
+    private final double[] xs;
+    private final double[] ys;
+    private final int[] ids;        // input index of the point in each slot
 
-    private Node root;
+    /* Per node: its slice of slots, its children [firstChild, endChild),
+     * which is empty for a leaf, and the bounding box of its points. */
+    private int[] lo;
+    private int[] hi;
+    private int[] firstChild;
+    private int[] endChild;
+    private double[] minX;
+    private double[] maxX;
+    private double[] minY;
+    private double[] maxY;
+    private int nodes;
 
+    /* Constructor. */
     public QuadTree(List<Point> points) {
-        Collections.shuffle(points);
-        for (Point p : points) {
-            root = growTree(root, p);
+        int n = points.size();
+        this.points = points.toArray(new Point[0]);
+        xs = new double[n];
+        ys = new double[n];
+        ids = new int[n];
+        for (int i = 0; i < n; i++) {
+            xs[i] = this.points[i].getX();
+            ys[i] = this.points[i].getY();
+            ids[i] = i;
         }
+
+        int capacity = Math.max(1, 2 * n / LEAF_SIZE);
+        lo = new int[capacity];
+        hi = new int[capacity];
+        firstChild = new int[capacity];
+        endChild = new int[capacity];
+        minX = new double[capacity];
+        maxX = new double[capacity];
+        minY = new double[capacity];
+        maxY = new double[capacity];
+
+        nodes = 1;
+        build(0, 0, n, 0, new double[n], new double[n], new int[n], new byte[n]);
     }
 
+    /* Returns the closest point to the inputted coordinates. */
     @Override
     public Point nearest(double x, double y) {
-        throw new UnsupportedOperationException();
+        int[] nearest = kNearest(x, y, 1);
+        return nearest.length == 0 ? null : points[nearest[0]];
     }
 
+    /* Returns a list of points within the given range. */
     @Override
     public List<Point> rangeFinding(double[] range) {
         List<Point> collected = new ArrayList<>();
-        rangeFinding(root, collected, range);
+        if (ids.length == 0) {
+            return collected;
+        }
+        int[] stack = new int[16];
+        int top = 0;
+        stack[top++] = 0;
+        while (top > 0) {
+            int node = stack[--top];
+            if (maxX[node] < range[0] || minX[node] > range[1]
+                    || maxY[node] < range[2] || minY[node] > range[3]) {
+                continue;
+            }
+            boolean inside = minX[node] >= range[0] && maxX[node] <= range[1]
+                    && minY[node] >= range[2] && maxY[node] <= range[3];
+            if (inside || firstChild[node] == endChild[node]) {
+                for (int s = lo[node]; s < hi[node]; s++) {
+                    if (inside || xs[s] >= range[0] && xs[s] <= range[1]
+                            && ys[s] >= range[2] && ys[s] <= range[3]) {
+                        collected.add(points[ids[s]]);
+                    }
+                }
+                continue;
+            }
+            if (top + 4 > stack.length) {
+                stack = Arrays.copyOf(stack, 2 * stack.length);
+            }
+            for (int c = firstChild[node]; c < endChild[node]; c++) {
+                stack[top++] = c;
+            }
+        }
         return collected;
     }
 
+    /**
+     * Returns the input indices of the K points closest to (X, Y), closest
+     * first, or of all points if there are fewer than K.
+     */
+    public int[] kNearest(double x, double y, int k) {
+        return kNearest(x, y, k, 1);
+    }
+
+    /**
+     * As kNearest(x, y, k), but measuring distance with x differences scaled
+     * by XSCALE. For longitude and latitude, an XSCALE of the cosine of the
+     * latitude makes this the equirectangular approximation of ground
+     * distance.
+     */
+    public int[] kNearest(double x, double y, int k, double xScale) {
+        if (k <= 0 || ids.length == 0) {
+            return new int[0];
+        }
+        NearestK found = new NearestK(Math.min(k, ids.length));
+        NodeQueue queue = new NodeQueue();
+        queue.push(0, boxDistance(0, x, y, xScale));
+        while (!queue.isEmpty() && queue.minDistance() < found.bound()) {
+            int node = queue.pop();
+            if (firstChild[node] == endChild[node]) {
+                for (int s = lo[node]; s < hi[node]; s++) {
+                    double dx = (xs[s] - x) * xScale;
+                    double dy = ys[s] - y;
+                    found.offer(s, dx * dx + dy * dy);
+                }
+                continue;
+            }
+            for (int c = firstChild[node]; c < endChild[node]; c++) {
+                double d = boxDistance(c, x, y, xScale);
+                if (d < found.bound()) {
+                    queue.push(c, d);
+                }
+            }
+        }
+        return found.sortedIds(ids);
+    }
+
+    /** Returns the input indices of all points within distance R of (X, Y), in no particular order. */
+    public int[] withinRadius(double x, double y, double r) {
+        return withinRadius(x, y, r, 1);
+    }
+
+    /**
+     * As withinRadius(x, y, r), but measuring distance with x differences
+     * scaled by XSCALE, as for kNearest. Nodes are pruned on the scaled
+     * distance to their boxes.
+     */
+    public int[] withinRadius(double x, double y, double r, double xScale) {
+        IntBuffer found = new IntBuffer();
+        if (ids.length == 0) {
+            return found.toArray();
+        }
+        double r2 = r * r;
+        int[] stack = new int[16];
+        int top = 0;
+        stack[top++] = 0;
+        while (top > 0) {
+            int node = stack[--top];
+            if (boxDistance(node, x, y, xScale) > r2) {
+                continue;
+            }
+            boolean inside = farthestCornerDistance(node, x, y, xScale) <= r2;
+            if (inside || firstChild[node] == endChild[node]) {
+                for (int s = lo[node]; s < hi[node]; s++) {
+                    double dx = (xs[s] - x) * xScale;
+                    double dy = ys[s] - y;
+                    if (inside || dx * dx + dy * dy <= r2) {
+                        found.add(ids[s]);
+                    }
+                }
+                continue;
+            }
+            if (top + 4 > stack.length) {
+                stack = Arrays.copyOf(stack, 2 * stack.length);
+            }
+            for (int c = firstChild[node]; c < endChild[node]; c++) {
+                stack[top++] = c;
+            }
+        }
+        return found.toArray();
+    }
+
+    /**
+     * Returns kNearest(XS[i], YS[i], K) for each query i, answering the
+     * queries in parallel on the common ForkJoinPool.
+     */
+    public int[][] kNearest(double[] xs, double[] ys, int k) {
+        int[][] result = new int[xs.length][];
+        IntStream.range(0, xs.length).parallel().forEach(i -> result[i] = kNearest(xs[i], ys[i], k));
+        return result;
+    }
+
+    /**
+     * Returns withinRadius(XS[i], YS[i], R) for each query i, answering the
+     * queries in parallel on the common ForkJoinPool.
+     */
+    public int[][] withinRadius(double[] xs, double[] ys, double r) {
+        int[][] result = new int[xs.length][];
+        IntStream.range(0, xs.length).parallel().forEach(i -> result[i] = withinRadius(xs[i], ys[i], r));
+        return result;
+    }
+
+    /** Returns the number of points in the tree. */
+    public int size() {
+        return ids.length;
+    }
+
+    /** Returns the number of nodes in the tree. */
+    public int nodeCount() {
+        return nodes;
+    }
+
     /***************************************************************************
      * Helper functions for construction.
      ***************************************************************************/
 
-    private Node growTree(Node n, Point p) {
-        if (n == null) return new Node(p);
-        if (n.point.equals(p)) return n;
+    /* Makes NODE the root of a subtree over slots [LO, HI), splitting it into
+     * quadrants about the centre of its bounding box. The scratch arrays hold
+     * one slice while it is redistributed. */
+    private void build(int node, int lo, int hi, int depth,
+                       double[] tmpX, double[] tmpY, int[] tmpIds, byte[] quadrant) {
+        double x0 = Double.POSITIVE_INFINITY;
+        double x1 = Double.NEGATIVE_INFINITY;
+        double y0 = Double.POSITIVE_INFINITY;
+        double y1 = Double.NEGATIVE_INFINITY;
+        for (int s = lo; s < hi; s++) {
+            x0 = Math.min(x0, xs[s]);
+            x1 = Math.max(x1, xs[s]);
+            y0 = Math.min(y0, ys[s]);
+            y1 = Math.max(y1, ys[s]);
+        }
+        this.lo[node] = lo;
+        this.hi[node] = hi;
+        minX[node] = x0;
+        maxX[node] = x1;
+        minY[node] = y0;
+        maxY[node] = y1;
+        firstChild[node] = nodes;
+        endChild[node] = nodes;
+        if (hi - lo <= LEAF_SIZE || depth == MAX_DEPTH || (x0 == x1 && y0 == y1)) {
+            return;
+        }
+
+        /* Distribute the slice into quadrants SW, SE, NW, NE by counting
+         * sort, so each quadrant becomes a contiguous slice in turn. */
+        double midX = x0 + (x1 - x0) / 2;
+        double midY = y0 + (y1 - y0) / 2;
+        int[] start = new int[5];
+        for (int s = lo; s < hi; s++) {
+            int q = (xs[s] >= midX ? 1 : 0) + (ys[s] >= midY ? 2 : 0);
+            quadrant[s] = (byte) q;
+            start[q + 1]++;
+        }
+        for (int q = 0; q < 4; q++) {
+            start[q + 1] += start[q];
+        }
+        int[] next = Arrays.copyOf(start, 4);
+        for (int s = lo; s < hi; s++) {
+            int t = next[quadrant[s]]++;
+            tmpX[t] = xs[s];
+            tmpY[t] = ys[s];
+            tmpIds[t] = ids[s];
+        }
+        System.arraycopy(tmpX, 0, xs, lo, hi - lo);
+        System.arraycopy(tmpY, 0, ys, lo, hi - lo);
+        System.arraycopy(tmpIds, 0, ids, lo, hi - lo);
 
-        if (p.getX() >= n.point.getX()) {   // east
-            if (p.getY() >= n.point.getY()) n.NORTH_EAST = growTree(n.NORTH_EAST, p);
-            else n.SOUTH_EAST = growTree(n.SOUTH_EAST, p);
-        } else {    // west
-            if (p.getY() >= n.point.getY()) n.NORTH_WEST = growTree(n.NORTH_WEST, p);
-            else n.SOUTH_WEST = growTree(n.SOUTH_WEST, p);
+        int children = 0;
+        for (int q = 0; q < 4; q++) {
+            if (start[q + 1] > start[q]) {
+                children++;
+            }
+        }
+        int first = nodes;
+        nodes += children;
+        ensureCapacity(nodes);
+        firstChild[node] = first;
+        endChild[node] = nodes;
+        int c = first;
+        for (int q = 0; q < 4; q++) {
+            if (start[q + 1] > start[q]) {
+                build(c++, lo + start[q], lo + start[q + 1], depth + 1,
+                        tmpX, tmpY, tmpIds, quadrant);
+            }
         }
+    }
 
-        return n;
+    private void ensureCapacity(int n) {
+        if (n <= lo.length) {
+            return;
+        }
+        int capacity = Math.max(n, 2 * lo.length);
+        lo = Arrays.copyOf(lo, capacity);
+        hi = Arrays.copyOf(hi, capacity);
+        firstChild = Arrays.copyOf(firstChild, capacity);
+        endChild = Arrays.copyOf(endChild, capacity);
+        minX = Arrays.copyOf(minX, capacity);
+        maxX = Arrays.copyOf(maxX, capacity);
+        minY = Arrays.copyOf(minY, capacity);
+        maxY = Arrays.copyOf(maxY, capacity);
     }
 
     /***************************************************************************
-     * Helper functions for rangeFinding().
+     * Helper functions for queries.
      ***************************************************************************/
 
-    private boolean inBounds(Point p, double[] range) {
-        return p.getX() >= range[0] && p.getX() <= range[1]
-                && p.getY() >= range[2] && p.getY() <= range[3];
+    /* Returns the squared scaled distance from (X, Y) to the box of NODE. */
+    private double boxDistance(int node, double x, double y, double xScale) {
+        double dx = Math.max(0, Math.max(minX[node] - x, x - maxX[node])) * xScale;
+        double dy = Math.max(0, Math.max(minY[node] - y, y - maxY[node]));
+        return dx * dx + dy * dy;
+    }
+
+    /* Returns the squared scaled distance from (X, Y) to the farthest corner
+     * of the box of NODE. */
+    private double farthestCornerDistance(int node, double x, double y, double xScale) {
+        double dx = Math.max(x - minX[node], maxX[node] - x) * xScale;
+        double dy = Math.max(y - minY[node], maxY[node] - y);
+        return dx * dx + dy * dy;
     }
 
-    // this is Depth First Search (dfs) ?
-    private void rangeFinding(Node n, List<Point> collected, double[] range) {
-        if (n == null) return;
-        if (inBounds(n.point, range)) collected.add(n.point);
+    /* Nodes waiting to be visited, in a min-heap on the distance to their
+     * boxes. */
+    private static class NodeQueue {
+        private double[] dist = new double[32];
+        private int[] node = new int[32];
+        private int size;
 
-        if (range[0] <= n.point.getX()) {   // west?
-            if (range[2] <= n.point.getY()) rangeFinding(n.SOUTH_WEST, collected, range);
-            if (range[3] >= n.point.getY()) rangeFinding(n.NORTH_WEST, collected, range);
+        boolean isEmpty() {
+            return size == 0;
         }
-        if (range[1] >= n.point.getX()) {    // east?
-            if (range[2] <= n.point.getY()) rangeFinding(n.SOUTH_EAST, collected, range);
-            if (range[3] >= n.point.getY()) rangeFinding(n.NORTH_EAST, collected, range);
+
+        double minDistance() {
+            return dist[0];
+        }
+
+        void push(int n, double d) {
+            if (size == dist.length) {
+                dist = Arrays.copyOf(dist, 2 * size);
+                node = Arrays.copyOf(node, 2 * size);
+            }
+            int i = size++;
+            while (i > 0 && dist[(i - 1) / 2] > d) {
+                dist[i] = dist[(i - 1) / 2];
+                node[i] = node[(i - 1) / 2];
+                i = (i - 1) / 2;
+            }
+            dist[i] = d;
+            node[i] = n;
+        }
+
+        int pop() {
+            int result = node[0];
+            double d = dist[--size];
+            int last = node[size];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) break;
+                if (child + 1 < size && dist[child + 1] < dist[child]) child++;
+                if (dist[child] >= d) break;
+                dist[i] = dist[child];
+                node[i] = node[child];
+                i = child;
+            }
+            dist[i] = d;
+            node[i] = last;
+            return result;
+        }
+    }
+
+    /* The K closest slots seen so far, in a max-heap on distance, so the
+     * farthest of them is at the root and is the one to replace. */
+    private static class NearestK {
+        private final double[] dist;
+        private final int[] slot;
+        private int size;
+
+        NearestK(int k) {
+            dist = new double[k];
+            slot = new int[k];
+        }
+
+        /* Returns the distance a slot must beat to be kept. */
+        double bound() {
+            return size < dist.length ? Double.POSITIVE_INFINITY : dist[0];
+        }
+
+        void offer(int s, double d) {
+            if (d >= bound()) {
+                return;
+            }
+            int i;
+            if (size < dist.length) {
+                i = size++;
+                while (i > 0 && dist[(i - 1) / 2] < d) {
+                    dist[i] = dist[(i - 1) / 2];
+                    slot[i] = slot[(i - 1) / 2];
+                    i = (i - 1) / 2;
+                }
+            } else {
+                i = 0;
+                while (true) {
+                    int child = 2 * i + 1;
+                    if (child >= size) break;
+                    if (child + 1 < size && dist[child + 1] > dist[child]) child++;
+                    if (dist[child] <= d) break;
+                    dist[i] = dist[child];
+                    slot[i] = slot[child];
+                    i = child;
+                }
+            }
+            dist[i] = d;
+            slot[i] = s;
+        }
+
+        /* Empties the heap into the ids of its slots, closest first. */
+        int[] sortedIds(int[] ids) {
+            int[] result = new int[size];
+            while (size > 0) {
+                int s = slot[0];
+                double d = dist[--size];
+                int last = slot[size];
+                result[size] = ids[s];
+                int i = 0;
+                while (true) {
+                    int child = 2 * i + 1;
+                    if (child >= size) break;
+                    if (child + 1 < size && dist[child + 1] > dist[child]) child++;
+                    if (dist[child] <= d) break;
+                    dist[i] = dist[child];
+                    slot[i] = slot[child];
+                    i = child;
+                }
+                dist[i] = d;
+                slot[i] = last;
+            }
+            return result;
+        }
+    }
+
+    /* A growable array of ints. */
+    private static class IntBuffer {
+        private int[] items = new int[16];
+        private int size;
+
+        void add(int item) {
+            if (size == items.length) {
+                items = Arrays.copyOf(items, 2 * size);
+            }
+            items[size++] = item;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(items, size);
         }
     }
 }
@@ -3,13 +3,143 @@ package bearmaps;
 import edu.princeton.cs.algs4.Stopwatch;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 public class QuadTreeTest {
 
+    @Test
+    public void testRandomNearest() {
+        int N = 10000;
+        int M = 10000;
+        List<Point> universe = TestTreeHelper.randomPoints(N);
+        List<Point> testPoints = TestTreeHelper.randomPoints(M);
+
+        NaivePointSet naive = new NaivePointSet(universe);
+        QuadTree realDeal = new QuadTree(universe);
+
+        for (Point p : testPoints) {
+            assertEquals(naive.nearest(p.getX(), p.getY()), realDeal.nearest(p.getX(), p.getY()));
+        }
+    }
+
+    @Test
+    public void testClusteredNearest() {
+        int N = 50000;
+        int M = 10000;
+        List<Point> universe = TestTreeHelper.clusteredPoints(N);
+        List<Point> testPoints = TestTreeHelper.randomPoints(M);
+        testPoints.addAll(TestTreeHelper.clusteredPoints(M));
+
+        NaivePointSet naive = new NaivePointSet(universe);
+        QuadTree realDeal = new QuadTree(universe);
+
+        for (Point p : testPoints) {
+            Point expected = naive.nearest(p.getX(), p.getY());
+            Point actual = realDeal.nearest(p.getX(), p.getY());
+            assertEquals(Point.distance(expected, p), Point.distance(actual, p), 0);
+        }
+    }
+
+    @Test
+    public void testDuplicates() {
+        List<Point> universe = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            universe.add(new Point(1, 1));
+        }
+        universe.add(new Point(2, 2));
+        QuadTree qt = new QuadTree(universe);
+
+        assertEquals(new Point(2, 2), qt.nearest(3, 3));
+        assertEquals(100, qt.rangeFinding(new double[]{0, 1.5, 0, 1.5}).size());
+        assertEquals(101, qt.withinRadius(1.5, 1.5, 1).length);
+        assertEquals(100, qt.kNearest(0, 0, 100).length);
+    }
+
+    @Test
+    public void testEmpty() {
+        QuadTree qt = new QuadTree(new ArrayList<>());
+        assertEquals(null, qt.nearest(0, 0));
+        assertEquals(0, qt.kNearest(0, 0, 3).length);
+        assertEquals(0, qt.withinRadius(0, 0, 1).length);
+        assertEquals(0, qt.rangeFinding(new double[]{0, 1, 0, 1}).size());
+    }
+
+    @Test
+    public void testKNearest() {
+        int N = 20000;
+        int M = 1000;
+        List<Point> universe = TestTreeHelper.clusteredPoints(N);
+        List<Point> testPoints = TestTreeHelper.randomPoints(M);
+        QuadTree realDeal = new QuadTree(universe);
+
+        for (Point p : testPoints) {
+            double[] expected = new double[N];
+            for (int i = 0; i < N; i++) {
+                expected[i] = Point.distance(universe.get(i), p);
+            }
+            Arrays.sort(expected);
+
+            int[] actual = realDeal.kNearest(p.getX(), p.getY(), 10);
+            assertEquals(10, actual.length);
+            for (int i = 0; i < actual.length; i++) {
+                assertEquals(expected[i], Point.distance(universe.get(actual[i]), p), 0);
+            }
+        }
+    }
+
+    @Test
+    public void testWithinRadius() {
+        int N = 20000;
+        int M = 1000;
+        List<Point> universe = TestTreeHelper.randomPoints(N);
+        List<Point> testPoints = TestTreeHelper.randomPoints(M);
+        QuadTree realDeal = new QuadTree(universe);
+
+        for (Point p : testPoints) {
+            double r = 0.05;
+            Set<Integer> expected = new HashSet<>();
+            for (int i = 0; i < N; i++) {
+                if (Point.distance(universe.get(i), p) <= r * r) {
+                    expected.add(i);
+                }
+            }
+            Set<Integer> actual = new HashSet<>();
+            for (int i : realDeal.withinRadius(p.getX(), p.getY(), r)) {
+                assertTrue(actual.add(i));
+            }
+            assertEquals(expected, actual);
+        }
+    }
+
+    @Test
+    public void testBatches() {
+        int N = 20000;
+        int M = 2000;
+        QuadTree realDeal = new QuadTree(TestTreeHelper.randomPoints(N));
+        double[] xs = new double[M];
+        double[] ys = new double[M];
+        List<Point> testPoints = TestTreeHelper.randomPoints(M);
+        for (int i = 0; i < M; i++) {
+            xs[i] = testPoints.get(i).getX();
+            ys[i] = testPoints.get(i).getY();
+        }
+
+        int[][] nearest = realDeal.kNearest(xs, ys, 5);
+        int[][] within = realDeal.withinRadius(xs, ys, 0.01);
+        for (int i = 0; i < M; i++) {
+            assertArrayEquals(realDeal.kNearest(xs[i], ys[i], 5), nearest[i]);
+            assertArrayEquals(realDeal.withinRadius(xs[i], ys[i], 0.01), within[i]);
+        }
+    }
+
     @Test
     public void testRandomRangeFinding() {
         int N = 10000;
@@ -32,6 +162,39 @@ public class QuadTreeTest {
         }
     }
 
+    @Test
+    public void compareNearestRuntime() {
+        int N = 100_000;
+        int M = 10_000;
+        System.out.println("Uniform points:");
+        compareNearestRuntime(TestTreeHelper.randomPoints(N), TestTreeHelper.randomPoints(M));
+        System.out.println("Clustered points:");
+        compareNearestRuntime(TestTreeHelper.clusteredPoints(N), TestTreeHelper.clusteredPoints(M));
+    }
+
+    private void compareNearestRuntime(List<Point> universe, List<Point> testPoints) {
+        NaivePointSet naive = new NaivePointSet(universe);
+        Stopwatch sw = new Stopwatch();
+        for (Point p : testPoints) {
+            naive.nearest(p.getX(), p.getY());
+        }
+        System.out.println("Naive point set: " + sw.elapsedTime() + " seconds.");
+
+        KDTree kd = new KDTree(universe);
+        sw = new Stopwatch();
+        for (Point p : testPoints) {
+            kd.nearest(p.getX(), p.getY());
+        }
+        System.out.println("K-d tree: " + sw.elapsedTime() + " seconds.");
+
+        QuadTree qt = new QuadTree(universe);
+        sw = new Stopwatch();
+        for (Point p : testPoints) {
+            qt.nearest(p.getX(), p.getY());
+        }
+        System.out.println("Quad tree: " + sw.elapsedTime() + " seconds.");
+    }
+
     @Test
     public void compareRangeFindingRuntime() {
         int N = 10_000_000;
@@ -61,4 +224,38 @@ public class QuadTreeTest {
         System.out.println("Quad tree: " + sw.elapsedTime() + " seconds.");
 
     }
+
+    /* The same comparison on clustered points, also timing each build. */
+    @Test
+    public void compareClusteredRangeFindingRuntime() {
+        int N = 1_000_000;
+        int M = 100;
+        List<Point> universe = TestTreeHelper.clusteredPoints(N);
+        List<double[]> ranges = TestTreeHelper.randomRanges(M);
+
+        NaivePointSet naive = new NaivePointSet(universe);
+        Stopwatch sw = new Stopwatch();
+        for (double[] range : ranges) {
+            naive.rangeFinding(range);
+        }
+        System.out.println("Naive point set: " + sw.elapsedTime() + " seconds.");
+
+        sw = new Stopwatch();
+        KDTree kd = new KDTree(universe);
+        System.out.println("K-d tree build: " + sw.elapsedTime() + " seconds.");
+        sw = new Stopwatch();
+        for (double[] range : ranges) {
+            kd.rangeFinding(range);
+        }
+        System.out.println("K-d tree: " + sw.elapsedTime() + " seconds.");
+
+        sw = new Stopwatch();
+        QuadTree qt = new QuadTree(universe);
+        System.out.println("Quad tree build: " + sw.elapsedTime() + " seconds.");
+        sw = new Stopwatch();
+        for (double[] range : ranges) {
+            qt.rangeFinding(range);
+        }
+        System.out.println("Quad tree: " + sw.elapsedTime() + " seconds.");
+    }
 }
@@ -44,6 +44,26 @@ public class TestTreeHelper {
         return points;
     }
 
+    /* Returns N points in a few tight gaussian clusters scattered over the unit
+     * square, like the points of interest in a city. */
+    static ArrayList<Point> clusteredPoints(int N) {
+        Random r = new Random();
+        int clusters = 1 + N / 10000;
+        double[] centreX = new double[clusters];
+        double[] centreY = new double[clusters];
+        for (int c = 0; c < clusters; c++) {
+            centreX[c] = r.nextDouble();
+            centreY[c] = r.nextDouble();
+        }
+        ArrayList<Point> points = new ArrayList<>();
+        for (int i = 0; i < N; i++) {
+            int c = r.nextInt(clusters);
+            points.add(new Point(centreX[c] + r.nextGaussian() * 0.01,
+                    centreY[c] + r.nextGaussian() * 0.01));
+        }
+        return points;
+    }
+
     static ArrayList<double[]> randomRanges(int M) {
         Random r = new Random();
         ArrayList<double[]> ranges = new ArrayList<>();
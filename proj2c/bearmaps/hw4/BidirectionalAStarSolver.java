@@ -0,0 +1,179 @@
+package bearmaps.hw4;
+
+import bearmaps.proj2ab.ArrayHeapMinPQ;
+import edu.princeton.cs.algs4.Stopwatch;
+
+import java.util.*;
+
+/**
+ * A* search from both ends at once: forward from s over neighbors(), and
+ * backward from t over reverseNeighbors(), expanding one vertex from each side
+ * in turn until the frontiers have provably met on a shortest path.
+ *
+ * Both searches use the average potential
+ * p(v) = (h(v, t) - h(s, v)) / 2, the forward search with +p and the backward
+ * search with -p. For a consistent heuristic this makes the reduced edge
+ * weights of the two searches identical and non-negative, so the searches can
+ * stop as soon as the smallest forward key plus the smallest backward key
+ * reaches the length of the best s-t path seen.
+ *
+ * h(s, v) is taken as estimatedDistanceToGoal(v, s), so the heuristic must be
+ * symmetric, as great-circle distance is.
+ */
+public class BidirectionalAStarSolver<Vertex> implements ShortestPathsSolver<Vertex> {
+
+    private final ReversibleAStarGraph<Vertex> graph;
+    private final Vertex s;
+    private final Vertex t;
+    private final double timeout;
+
+    private final Search forward = new Search();
+    private final Search backward = new Search();
+    private double best = Double.POSITIVE_INFINITY;
+    private Vertex meet;
+
+    private SolverOutcome outcome;
+    private double totalTime;
+
+    public BidirectionalAStarSolver(ReversibleAStarGraph<Vertex> input, Vertex start, Vertex end,
+                                    double timeout) {
+        graph = input;
+        s = start;
+        t = end;
+        this.timeout = timeout;
+
+        solve();
+    }
+
+    private void solve() {
+        Stopwatch sw = new Stopwatch();
+
+        forward.distTo.put(s, 0.0);
+        forward.pq.add(s, key(forward, s));
+        backward.distTo.put(t, 0.0);
+        backward.pq.add(t, key(backward, t));
+        if (s.equals(t)) {
+            best = 0;
+            meet = s;
+        }
+
+        boolean isForward = true;
+        while (forward.pq.size() != 0 && backward.pq.size() != 0) {
+            if (sw.elapsedTime() > timeout) {
+                outcome = SolverOutcome.TIMEOUT;
+                break;
+            }
+            double top = key(forward, forward.pq.getSmallest())
+                    + key(backward, backward.pq.getSmallest());
+            if (top >= best) {
+                break;
+            }
+            if (isForward) {
+                Vertex v = forward.pq.removeSmallest();
+                expand(forward, backward, v, graph.neighbors(v));
+            } else {
+                Vertex v = backward.pq.removeSmallest();
+                expand(backward, forward, v, graph.reverseNeighbors(v));
+            }
+            isForward = !isForward;
+        }
+        totalTime = sw.elapsedTime();
+        if (outcome == null) {
+            outcome = meet == null ? SolverOutcome.UNSOLVABLE : SolverOutcome.SOLVED;
+        }
+    }
+
+    /**
+     * Marks V, just removed from HERE, as settled and relaxes its EDGES,
+     * updating the best path whenever an edge reaches a vertex the search
+     * from the other end THERE has seen.
+     */
+    private void expand(Search here, Search there, Vertex v, List<WeightedEdge<Vertex>> edges) {
+        here.marked.add(v);
+        for (WeightedEdge<Vertex> e : edges) {
+            Vertex w = e.to();
+            if (here.marked.contains(w)) {
+                continue;
+            }
+            double newDist = here.distTo.get(v) + e.weight();
+            if (!here.distTo.containsKey(w) || newDist < here.distTo.get(w)) {
+                here.distTo.put(w, newDist);
+                here.edgeTo.put(w, v);
+                if (here.pq.contains(w)) {
+                    here.pq.changePriority(w, key(here, w));
+                } else {
+                    here.pq.add(w, key(here, w));
+                }
+            }
+            Double other = there.distTo.get(w);
+            if (other != null && here.distTo.get(w) + other < best) {
+                best = here.distTo.get(w) + other;
+                meet = w;
+            }
+        }
+    }
+
+    /* Returns the priority of V in SEARCH: distance plus signed potential. */
+    private double key(Search search, Vertex v) {
+        double potential = (graph.estimatedDistanceToGoal(v, t)
+                - graph.estimatedDistanceToGoal(v, s)) / 2;
+        return search.distTo.get(v) + (search == forward ? potential : -potential);
+    }
+
+    @Override
+    public SolverOutcome outcome() {
+        return outcome;
+    }
+
+    /**
+     * Renders the solution path into a List: the forward tree from s to the
+     * meeting vertex, then the backward tree from there to t.
+     */
+    @Override
+    public List<Vertex> solution() {
+        List<Vertex> solution = new LinkedList<>();
+        if (outcome == SolverOutcome.SOLVED) {
+            Vertex curr = meet;
+            while (!curr.equals(s)) {
+                solution.add(curr);
+                curr = forward.edgeTo.get(curr);
+            }
+            solution.add(curr);
+            Collections.reverse(solution);
+            curr = meet;
+            while (!curr.equals(t)) {
+                curr = backward.edgeTo.get(curr);
+                solution.add(curr);
+            }
+        }
+        return solution;
+    }
+
+    @Override
+    public double solutionWeight() {
+        if (outcome == SolverOutcome.SOLVED) {
+            return best;
+        }
+        return 0;
+    }
+
+    @Override
+    public int numStatesExplored() {
+        return forward.marked.size() + backward.marked.size();
+    }
+
+    @Override
+    public double explorationTime() {
+        return totalTime;
+    }
+
+    /**
+     * State of the search from one end.
+     */
+    private class Search {
+        private final HashSet<Vertex> marked = new HashSet<>();
+        private final HashMap<Vertex, Double> distTo = new HashMap<>();
+        private final HashMap<Vertex, Vertex> edgeTo = new HashMap<>();
+        private final ArrayHeapMinPQ<Vertex> pq = new ArrayHeapMinPQ<>();
+    }
+}
@@ -0,0 +1,21 @@
+package bearmaps.hw4;
+
+/**
+ * A graph whose vertices are the ints 0 to vertexCount() - 1, traversed with
+ * an allocation-free edge cursor:
+ * <pre>
+ *     for (int e = g.edgeStart(v); e &lt; g.edgeEnd(v); e++) {
+ *         int w = g.target(e);
+ *         double weight = g.weight(e);
+ *     }
+ * </pre>
+ */
+public interface IndexedAStarGraph {
+    int vertexCount();
+    int edgeStart(int v);
+    int edgeEnd(int v);
+    int target(int e);
+    double weight(int e);
+    /* Returns a lower bound on the distance from V to GOAL. */
+    double estimatedDistance(int v, int goal);
+}
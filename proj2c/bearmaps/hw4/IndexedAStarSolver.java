@@ -0,0 +1,164 @@
+package bearmaps.hw4;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A* search specialized to int-indexed graphs.
+ *
+ * Where AStarSolver keeps its state in HashMaps and HashSets keyed by boxed
+ * vertices, this solver works on flat arrays indexed by vertex, borrowed from
+ * the calling thread's SearchState, and an indexed d-ary heap over ints. Once
+ * a thread's state has grown to fit the graph, a search allocates nothing but
+ * the solution path.
+ */
+public class IndexedAStarSolver implements ShortestPathsSolver<Integer> {
+
+    /* Settled vertices between checks of the clock. */
+    private static final int TIMEOUT_CHECK_INTERVAL = 256;
+    private static final int[] NO_PATH = new int[0];
+
+    private final IndexedAStarGraph graph;
+    private final SolverOutcome outcome;
+    private final int[] path;
+    private int[] edges;
+    private final double solutionWeight;
+    private final int numStatesExplored;
+    private final double explorationTime;
+
+    public IndexedAStarSolver(IndexedAStarGraph input, int start, int end, double timeout) {
+        graph = input;
+        long began = System.nanoTime();
+        long deadline = began + (long) (timeout * 1e9);
+        SearchState state = SearchState.forCurrentThread(input.vertexCount());
+
+        state.dist[start] = 0;
+        state.parent[start] = -1;
+        state.estimate[start] = input.estimatedDistance(start, end);
+        state.markReached(start);
+        state.pq.add(start, state.estimate[start]);
+
+        SolverOutcome result = SolverOutcome.UNSOLVABLE;
+        int settled = 0;
+        while (!state.pq.isEmpty()) {
+            if (settled % TIMEOUT_CHECK_INTERVAL == 0 && System.nanoTime() > deadline) {
+                result = SolverOutcome.TIMEOUT;
+                break;
+            }
+            int v = state.pq.removeSmallest();
+            if (v == end) {
+                result = SolverOutcome.SOLVED;
+                break;
+            }
+            state.markSettled(v);
+            settled++;
+            double d = state.dist[v];
+            for (int e = input.edgeStart(v); e < input.edgeEnd(v); e++) {
+                int w = input.target(e);
+                if (state.isSettled(w)) {
+                    continue;
+                }
+                double newDist = d + input.weight(e);
+                if (!state.isReached(w)) {
+                    state.markReached(w);
+                    state.dist[w] = newDist;
+                    state.parent[w] = v;
+                    state.estimate[w] = input.estimatedDistance(w, end);
+                    state.pq.add(w, newDist + state.estimate[w]);
+                } else if (newDist < state.dist[w]) {
+                    state.dist[w] = newDist;
+                    state.parent[w] = v;
+                    state.pq.changePriority(w, newDist + state.estimate[w]);
+                }
+            }
+        }
+
+        outcome = result;
+        numStatesExplored = settled;
+        if (result == SolverOutcome.SOLVED) {
+            path = pathTo(state, end);
+            solutionWeight = state.dist[end];
+        } else {
+            path = NO_PATH;
+            solutionWeight = 0;
+        }
+        explorationTime = (System.nanoTime() - began) / 1e9;
+    }
+
+    /* Follows parents back from END to the start. */
+    private static int[] pathTo(SearchState state, int end) {
+        int length = 0;
+        for (int v = end; v >= 0; v = state.parent[v]) {
+            length++;
+        }
+        int[] result = new int[length];
+        for (int v = end; v >= 0; v = state.parent[v]) {
+            result[--length] = v;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the vertices of the solution path from start to end, or an
+     * empty array if there is none.
+     */
+    public int[] path() {
+        return path;
+    }
+
+    /**
+     * Returns the edges of the solution path, edges()[i] leading from path()[i]
+     * to path()[i + 1], or an empty array if there is no path.
+     *
+     * Worked out from the path on first call, rather than recorded during the
+     * search, so that searches whose edges are never asked for allocate
+     * nothing more: the edge the search reached each vertex by is the lightest
+     * one from its predecessor, the first of them on ties.
+     */
+    public int[] edges() {
+        if (edges == null) {
+            int[] result = new int[Math.max(0, path.length - 1)];
+            for (int i = 0; i < result.length; i++) {
+                int best = -1;
+                for (int e = graph.edgeStart(path[i]); e < graph.edgeEnd(path[i]); e++) {
+                    if (graph.target(e) == path[i + 1]
+                            && (best < 0 || graph.weight(e) < graph.weight(best))) {
+                        best = e;
+                    }
+                }
+                result[i] = best;
+            }
+            edges = result;
+        }
+        return edges;
+    }
+
+    @Override
+    public SolverOutcome outcome() {
+        return outcome;
+    }
+
+    @Override
+    public List<Integer> solution() {
+        List<Integer> solution = new ArrayList<>(path.length);
+        for (int v : path) {
+            solution.add(v);
+        }
+        return solution;
+    }
+
+    @Override
+    public double solutionWeight() {
+        return solutionWeight;
+    }
+
+    @Override
+    public int numStatesExplored() {
+        return numStatesExplored;
+    }
+
+    @Override
+    public double explorationTime() {
+        return explorationTime;
+    }
+}
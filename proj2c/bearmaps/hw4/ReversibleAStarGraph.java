@@ -0,0 +1,15 @@
+package bearmaps.hw4;
+
+import java.util.List;
+
+/**
+ * A graph that can also be searched backwards, from a goal towards a start.
+ */
+public interface ReversibleAStarGraph<Vertex> extends AStarGraph<Vertex> {
+
+    /**
+     * Returns the edges entering V, each reversed so that from() is V and
+     * to() is the vertex the edge leaves. Weights are unchanged.
+     */
+    List<WeightedEdge<Vertex>> reverseNeighbors(Vertex v);
+}
@@ -0,0 +1,80 @@
+package bearmaps.hw4;
+
+import bearmaps.proj2ab.IndexedDaryMinPQ;
+
+import java.util.Arrays;
+
+/**
+ * Reusable per-vertex arrays for searches over an IndexedAStarGraph.
+ *
+ * Instead of clearing the arrays between searches, each search bumps a
+ * generation counter: an entry is valid only while its stamp equals the
+ * current generation, so starting a search costs O(1) no matter how many
+ * vertices the previous one touched.
+ *
+ * Not thread-safe. forCurrentThread() hands each thread its own instance,
+ * grown to fit the largest graph that thread has searched.
+ */
+class SearchState {
+
+    private static final ThreadLocal<SearchState> POOL = new ThreadLocal<>();
+
+    final double[] dist;        // best known distance from the source
+    final double[] estimate;    // heuristic to the goal, computed once per vertex
+    final int[] parent;         // previous vertex on the best known path
+    private final int[] reached;
+    private final int[] settled;
+    final IndexedDaryMinPQ pq;
+    private int generation;
+
+    private SearchState(int capacity) {
+        dist = new double[capacity];
+        estimate = new double[capacity];
+        parent = new int[capacity];
+        reached = new int[capacity];
+        settled = new int[capacity];
+        pq = new IndexedDaryMinPQ(capacity);
+    }
+
+    /**
+     * Returns this thread's search state, reset and able to hold VERTEXCOUNT
+     * vertices.
+     */
+    static SearchState forCurrentThread(int vertexCount) {
+        SearchState state = POOL.get();
+        if (state == null || state.dist.length < vertexCount) {
+            state = new SearchState(vertexCount);
+            POOL.set(state);
+        }
+        state.reset();
+        return state;
+    }
+
+    private void reset() {
+        pq.clear();
+        if (generation == Integer.MAX_VALUE) {
+            Arrays.fill(reached, 0);
+            Arrays.fill(settled, 0);
+            generation = 0;
+        }
+        generation++;
+    }
+
+    /* Returns whether V has been reached in the current search. */
+    boolean isReached(int v) {
+        return reached[v] == generation;
+    }
+
+    void markReached(int v) {
+        reached[v] = generation;
+    }
+
+    /* Returns whether V has been settled in the current search. */
+    boolean isSettled(int v) {
+        return settled[v] == generation;
+    }
+
+    void markSettled(int v) {
+        settled[v] = generation;
+    }
+}
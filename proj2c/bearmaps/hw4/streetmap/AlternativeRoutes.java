@@ -0,0 +1,550 @@
+package bearmaps.hw4.streetmap;
+
+import java.util.Arrays;
+
+/**
+ * Alternatives to the shortest path between two vertices of a
+ * CompactStreetMapGraph, found from one forward and one backward search tree
+ * by the via-vertex method.
+ *
+ * A Dijkstra search from the start and a reversed one from the end each
+ * settle every vertex within STRETCH of the shortest distance. Any vertex v
+ * settled by both names a via path: the tree path to v followed by the tree
+ * path from v. Where an edge u -> v lies on both trees, u and v name the same
+ * via path, so the candidates are taken one per plateau, a maximal chain of
+ * such edges, preferring short paths with long plateaus. A candidate is
+ * accepted if it
+ * <ul>
+ * <li>is at most STRETCH longer than the shortest path,</li>
+ * <li>shares at most SHARING of the shortest distance with the routes
+ * already accepted, and</li>
+ * <li>is locally optimal: the stretch of it within LOCAL_OPTIMALITY of the
+ * shortest distance either side of v is itself a shortest path, checked
+ * by a search bounded by that stretch's length.</li>
+ * </ul>
+ * The last keeps out paths that detour into a side street and straight back.
+ * Candidates sharing too much with the shortest path alone are dropped
+ * before any path is built, and only a few paths are built and checked per
+ * route asked for. The trees skip vertices too far from the far end, by
+ * great-circle distance, to lie on any candidate.
+ *
+ * Even so, both trees must reach well past the shortest distance, so finding
+ * every alternative costs several times one A* query. A caller wanting
+ * routes in about the time of one query gives a budget: once it has passed,
+ * the trees stop growing as soon as the shortest path is known, and
+ * candidates stop being tried, so fewer alternatives come back, drawn from
+ * the part of the trees grown in time. The shortest path is always found,
+ * however long it takes, so with no time to spare a call costs about what
+ * one bidirectional Dijkstra query does.
+ *
+ * The searches run on per-thread arrays stamped by generation, as CHSolver's
+ * do, so that a query costs time in proportion to what it reaches.
+ */
+public class AlternativeRoutes {
+
+    /** The most an alternative may be longer than the shortest path, as a
+     *  fraction of its length. */
+    public static final double STRETCH = 0.25;
+
+    /** The most an alternative may share with the routes before it, as a
+     *  fraction of the shortest path's length. */
+    public static final double SHARING = 0.8;
+
+    /** The length either side of its via vertex over which an alternative
+     *  must be a shortest path, as a fraction of the shortest path's length. */
+    public static final double LOCAL_OPTIMALITY = 0.25;
+
+    /* Local optimality checks allowed per route asked for, which bounds
+     * the time spent on candidates that fail them. */
+    private static final int LOCAL_CHECKS = 4;
+
+    /* Via paths built per route asked for, which bounds the time spent on
+     * candidates sharing too much with the routes already accepted. */
+    private static final int CANDIDATES = 16;
+
+    /* Vertices settled between checks of the clock. */
+    private static final int CLOCK_INTERVAL = 64;
+
+    private static final long NO_BUDGET = Long.MAX_VALUE / 2;
+
+    private static final int[][] NO_ROUTES = new int[0][];
+    private static final double EPSILON = 1e-9;
+
+    /* In miles, as used by StreetMapGraph.distance. */
+    private static final double EARTH_RADIUS = 3963;
+
+    /* Per-thread search state, grown to fit the largest graph searched. */
+    private static final ThreadLocal<Search> SEARCHES = new ThreadLocal<>();
+
+    private AlternativeRoutes() {
+    }
+
+    /**
+     * Returns up to K routes through GRAPH from vertex index S to vertex
+     * index T, each as the edges it takes from S in order. The first is a
+     * shortest path and the rest are alternatives to it, shortest first.
+     * There are no routes if T cannot be reached from S or either is outside
+     * the graph, and a single empty route if S is T.
+     */
+    public static int[][] compute(CompactStreetMapGraph graph, int s, int t, int k) {
+        return compute(graph, s, t, k, NO_BUDGET);
+    }
+
+    /**
+     * Returns routes as compute(GRAPH, S, T, K) does, but stops looking for
+     * alternatives once BUDGETNANOS have passed, returning those found so
+     * far. The shortest path is returned even if it takes longer.
+     */
+    public static int[][] compute(CompactStreetMapGraph graph, int s, int t, int k,
+                                  long budgetNanos) {
+        long deadline = System.nanoTime() + budgetNanos;
+        int n = graph.vertexCount();
+        if (k <= 0 || s < 0 || s >= n || t < 0 || t >= n) {
+            return NO_ROUTES;
+        }
+        if (s == t) {
+            return new int[][]{new int[0]};
+        }
+        Search search = Search.forCurrentThread(n, graph.edgeCount());
+        return search.run(graph, s, t, k, deadline);
+    }
+
+    /**
+     * The forward and backward trees, the plateaus they share, and the
+     * bounded search for local optimality. Entries of the per-vertex arrays
+     * are valid only when their stamp matches the current generation, and
+     * those of the local search and path marks only when theirs matches the
+     * current check.
+     */
+    private static class Search {
+        private final double[] forwardDist;
+        private final double[] backwardDist;
+        private final int[] forwardStamp;
+        private final int[] backwardStamp;
+        private final int[] forwardDone;
+        private final int[] backwardDone;
+        private final int[] parent;         // tree vertex before v from the start
+        private final int[] parentEdge;     // tree edge into v from the start
+        private final int[] nextEdge;       // tree edge out of v towards the end
+        private final int[] head;           // first vertex of v's plateau
+        private final int[] tail;           // last vertex of v's plateau
+        private final int[] edgeMark;       // on an accepted route this generation
+        private final double[] sharedForward;   // of the tree path to v, on the shortest path
+        private final double[] sharedBackward;  // of the tree path from v, on the shortest path
+        private final double[] localDist;
+        private final int[] localStamp;
+        private final int[] pathMark;
+        private final MinHeap forwardHeap = new MinHeap();
+        private final MinHeap backwardHeap = new MinHeap();
+        private final MinHeap localHeap = new MinHeap();
+        private int generation;
+        private int check;
+        private int meet;                   // a vertex on a shortest path
+        private int[] forwardSettled = new int[64];
+        private int forwardCount;
+        private int[] backwardSettled = new int[64];
+        private int backwardCount;
+        private CompactStreetMapGraph located;   // the graph unitX, unitY and unitZ are of
+        private final double[] unitX;           // position of v on the unit sphere
+        private final double[] unitY;
+        private final double[] unitZ;
+
+        private Search(int n, int m) {
+            forwardDist = new double[n];
+            backwardDist = new double[n];
+            forwardStamp = new int[n];
+            backwardStamp = new int[n];
+            forwardDone = new int[n];
+            backwardDone = new int[n];
+            parent = new int[n];
+            parentEdge = new int[n];
+            nextEdge = new int[n];
+            head = new int[n];
+            tail = new int[n];
+            edgeMark = new int[m];
+            sharedForward = new double[n];
+            sharedBackward = new double[n];
+            localDist = new double[n];
+            localStamp = new int[n];
+            pathMark = new int[n];
+            unitX = new double[n];
+            unitY = new double[n];
+            unitZ = new double[n];
+        }
+
+        /* Returns this thread's search, able to hold N vertices and M edges. */
+        static Search forCurrentThread(int n, int m) {
+            Search search = SEARCHES.get();
+            if (search == null || search.forwardDist.length < n || search.edgeMark.length < m) {
+                search = new Search(Math.max(n, search == null ? 0 : search.forwardDist.length),
+                        Math.max(m, search == null ? 0 : search.edgeMark.length));
+                SEARCHES.set(search);
+            }
+            return search;
+        }
+
+        private double forward(int v) {
+            return forwardStamp[v] == generation ? forwardDist[v] : Double.POSITIVE_INFINITY;
+        }
+
+        private double backward(int v) {
+            return backwardStamp[v] == generation ? backwardDist[v] : Double.POSITIVE_INFINITY;
+        }
+
+        private boolean settledByBoth(int v) {
+            return forwardDone[v] == generation && backwardDone[v] == generation;
+        }
+
+        int[][] run(CompactStreetMapGraph g, int s, int t, int k, long deadline) {
+            if (generation == Integer.MAX_VALUE) {
+                Arrays.fill(forwardStamp, 0);
+                Arrays.fill(backwardStamp, 0);
+                Arrays.fill(forwardDone, 0);
+                Arrays.fill(backwardDone, 0);
+                Arrays.fill(edgeMark, 0);
+                generation = 0;
+            }
+            generation++;
+            locate(g);
+            double shortest = grow(g, s, t, deadline);
+            if (shortest == Double.POSITIVE_INFINITY) {
+                return NO_ROUTES;
+            }
+            findPlateaus(g);
+            int[][] routes = new int[k][];
+            routes[0] = viaPath(g, s, t, meet);
+            accept(routes[0]);
+            measureSharing(g);
+            int found = 1;
+
+            /* One candidate per plateau within the stretch, best first,
+             * leaving out those sharing too much with the shortest path
+             * alone. */
+            double bound = (1 + STRETCH) * shortest + EPSILON;
+            double sharing = SHARING * shortest + EPSILON;
+            int[] candidates = new int[forwardCount];
+            double[] scores = new double[forwardCount];
+            int count = 0;
+            for (int i = 0; i < forwardCount; i++) {
+                int v = forwardSettled[i];
+                double length = forwardDist[v] + backward(v);
+                if (head[v] == v && backwardDone[v] == generation && length <= bound
+                        && sharedForward[v] + sharedBackward[v] <= sharing) {
+                    double plateau = backwardDist[v] - backwardDist[tail[v]];
+                    candidates[count] = v;
+                    scores[count++] = 2 * length - plateau;
+                }
+            }
+            Integer[] order = new Integer[count];
+            for (int i = 0; i < count; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> Double.compare(scores[a], scores[b]));
+
+            /* The local searches are the costly part, so past their budget,
+             * or the deadline, the rest go untried. */
+            int checks = LOCAL_CHECKS * k;
+            int tries = Math.min(count, CANDIDATES * k);
+            for (int i = 0; i < tries && found < k && checks > 0; i++) {
+                if (System.nanoTime() > deadline) {
+                    break;
+                }
+                int v = candidates[order[i]];
+                int[] route = viaPath(g, s, t, v);
+                if (route == null || shared(g, route) > sharing) {
+                    continue;
+                }
+                checks--;
+                if (isLocallyOptimal(g, s, t, v, shortest)) {
+                    accept(route);
+                    routes[found++] = route;
+                }
+            }
+            return Arrays.copyOf(routes, found);
+        }
+
+        /* Grows the forward tree from S and the backward tree into T until
+         * each has settled every vertex within the stretch of the shortest
+         * distance between them, which it returns. Edge weights are never
+         * less than the great-circle distance, so a vertex whose distance
+         * plus a lower bound on the great-circle distance to the far end is
+         * past the stretch can be on no candidate's path, and is left
+         * unsettled. Past DEADLINE the trees stop as soon as no shorter path
+         * can be found, leaving fewer candidates. */
+        private double grow(CompactStreetMapGraph g, int s, int t, long deadline) {
+            forwardHeap.clear();
+            backwardHeap.clear();
+            forwardCount = 0;
+            backwardCount = 0;
+            reachForward(s, 0, -1, -1);
+            reachBackward(t, 0, -1);
+            meet = -1;
+
+            double shortest = Double.POSITIVE_INFINITY;
+            boolean late = false;
+            int settled = 0;
+            while (true) {
+                double limit = (1 + STRETCH) * shortest + EPSILON;
+                double forwardKey = forwardHeap.isEmpty() ? Double.POSITIVE_INFINITY : forwardHeap.peekKey();
+                double backwardKey = backwardHeap.isEmpty() ? Double.POSITIVE_INFINITY : backwardHeap.peekKey();
+                boolean forwardFinished = forwardKey > limit;
+                boolean backwardFinished = backwardKey > limit;
+                if (forwardFinished && backwardFinished) {
+                    return shortest;
+                }
+                if (!late && ++settled % CLOCK_INTERVAL == 0) {
+                    late = System.nanoTime() > deadline;
+                }
+                if (late && forwardKey + backwardKey >= shortest) {
+                    return shortest;
+                }
+
+                if (!forwardFinished && (backwardFinished || forwardKey <= backwardKey)) {
+                    int x = forwardHeap.pop();
+                    if (forwardKey > forwardDist[x] || forwardKey + lowerBound(x, t) > limit) {
+                        continue;
+                    }
+                    forwardDone[x] = generation;
+                    forwardSettled = push(forwardSettled, forwardCount, x);
+                    forwardCount++;
+                    if (forwardKey + backward(x) < shortest) {
+                        shortest = forwardKey + backward(x);
+                        meet = x;
+                    }
+                    for (int e = g.edgeStart(x); e < g.edgeEnd(x); e++) {
+                        int w = g.target(e);
+                        double d = forwardKey + g.weight(e);
+                        if (d < forward(w) && d + lowerBound(w, t) <= limit) {
+                            reachForward(w, d, x, e);
+                        }
+                    }
+                } else {
+                    int x = backwardHeap.pop();
+                    if (backwardKey > backwardDist[x] || backwardKey + lowerBound(s, x) > limit) {
+                        continue;
+                    }
+                    backwardDone[x] = generation;
+                    backwardSettled = push(backwardSettled, backwardCount, x);
+                    backwardCount++;
+                    if (backwardKey + forward(x) < shortest) {
+                        shortest = backwardKey + forward(x);
+                        meet = x;
+                    }
+                    for (int i = g.inStart(x); i < g.inEnd(x); i++) {
+                        int u = g.inSource(i);
+                        double d = backwardKey + g.weight(g.inEdge(i));
+                        if (d < backward(u) && d + lowerBound(s, u) <= limit) {
+                            reachBackward(u, d, g.inEdge(i));
+                        }
+                    }
+                }
+            }
+        }
+
+        /* Places the vertices of G on the unit sphere, unless they already are. */
+        private void locate(CompactStreetMapGraph g) {
+            if (located == g) {
+                return;
+            }
+            for (int v = 0; v < g.vertexCount(); v++) {
+                double lat = Math.toRadians(g.lat(v));
+                double lon = Math.toRadians(g.lon(v));
+                unitX[v] = Math.cos(lat) * Math.cos(lon);
+                unitY[v] = Math.cos(lat) * Math.sin(lon);
+                unitZ[v] = Math.sin(lat);
+            }
+            located = g;
+        }
+
+        /* Returns a lower bound on the great-circle distance in miles from V
+         * to W: the chord between them, which is never longer than the arc. */
+        private double lowerBound(int v, int w) {
+            double dx = unitX[v] - unitX[w];
+            double dy = unitY[v] - unitY[w];
+            double dz = unitZ[v] - unitZ[w];
+            return EARTH_RADIUS * Math.sqrt(dx * dx + dy * dy + dz * dz) * (1 - EPSILON);
+        }
+
+        private void reachForward(int v, double d, int u, int e) {
+            forwardStamp[v] = generation;
+            forwardDist[v] = d;
+            parent[v] = u;
+            parentEdge[v] = e;
+            forwardHeap.push(d, v);
+        }
+
+        private void reachBackward(int v, double d, int e) {
+            backwardStamp[v] = generation;
+            backwardDist[v] = d;
+            nextEdge[v] = e;
+            backwardHeap.push(d, v);
+        }
+
+        private static int[] push(int[] a, int size, int x) {
+            if (size == a.length) {
+                a = Arrays.copyOf(a, 2 * size);
+            }
+            a[size] = x;
+            return a;
+        }
+
+        /* Links the vertices settled by both trees into plateaus: an edge
+         * u -> v is on one when it is both v's tree edge from the start and
+         * u's tree edge towards the end. Parents settle before children, so
+         * one pass in each tree's order finds every head and tail. */
+        private void findPlateaus(CompactStreetMapGraph g) {
+            for (int i = 0; i < forwardCount; i++) {
+                int v = forwardSettled[i];
+                int e = parentEdge[v];
+                head[v] = v;
+                if (e >= 0 && backwardDone[v] == generation) {
+                    int u = parent[v];
+                    if (settledByBoth(u) && nextEdge[u] == e) {
+                        head[v] = head[u];
+                    }
+                }
+            }
+            for (int i = 0; i < backwardCount; i++) {
+                int u = backwardSettled[i];
+                int e = nextEdge[u];
+                tail[u] = u;
+                if (e >= 0 && forwardDone[u] == generation) {
+                    int v = g.target(e);
+                    if (settledByBoth(v) && parentEdge[v] == e) {
+                        tail[u] = tail[v];
+                    }
+                }
+            }
+        }
+
+        /* Returns the edges of the tree path from S to V and on to T, or null
+         * if it visits some vertex twice. */
+        private int[] viaPath(CompactStreetMapGraph g, int s, int t, int v) {
+            nextCheck();
+            int before = 0;
+            for (int x = v; x != s; x = parent[x]) {
+                pathMark[x] = check;
+                before++;
+            }
+            pathMark[s] = check;
+            int after = 0;
+            for (int x = v; x != t; ) {
+                x = g.target(nextEdge[x]);
+                if (pathMark[x] == check) {
+                    return null;
+                }
+                pathMark[x] = check;
+                after++;
+            }
+
+            int[] route = new int[before + after];
+            int x = v;
+            for (int i = before - 1; i >= 0; i--) {
+                route[i] = parentEdge[x];
+                x = parent[x];
+            }
+            x = v;
+            for (int i = before; i < route.length; i++) {
+                route[i] = nextEdge[x];
+                x = g.target(route[i]);
+            }
+            return route;
+        }
+
+        /* Marks the edges of ROUTE as taken by an accepted route. */
+        private void accept(int[] route) {
+            for (int e : route) {
+                edgeMark[e] = generation;
+            }
+        }
+
+        /* Measures how much of each tree path to and from a vertex runs along
+         * the accepted shortest path, parents before children. */
+        private void measureSharing(CompactStreetMapGraph g) {
+            for (int i = 0; i < forwardCount; i++) {
+                int v = forwardSettled[i];
+                int e = parentEdge[v];
+                sharedForward[v] = e < 0 ? 0
+                        : sharedForward[parent[v]] + (edgeMark[e] == generation ? g.weight(e) : 0);
+            }
+            for (int i = 0; i < backwardCount; i++) {
+                int u = backwardSettled[i];
+                int e = nextEdge[u];
+                sharedBackward[u] = e < 0 ? 0
+                        : sharedBackward[g.target(e)] + (edgeMark[e] == generation ? g.weight(e) : 0);
+            }
+        }
+
+        /* Returns the length of ROUTE along edges of routes accepted so far. */
+        private double shared(CompactStreetMapGraph g, int[] route) {
+            double length = 0;
+            for (int e : route) {
+                if (edgeMark[e] == generation) {
+                    length += g.weight(e);
+                }
+            }
+            return length;
+        }
+
+        /* Returns whether the via path through V is a shortest path between
+         * the tree vertices x and y lying LOCAL_OPTIMALITY of SHORTEST before
+         * and after V along it, by searching from x no further than the
+         * path's length to y. */
+        private boolean isLocallyOptimal(CompactStreetMapGraph g, int s, int t, int v, double shortest) {
+            double reach = LOCAL_OPTIMALITY * shortest;
+            int x = v;
+            while (x != s && forwardDist[v] - forwardDist[x] < reach) {
+                x = parent[x];
+            }
+            int y = v;
+            while (y != t && backwardDist[v] - backwardDist[y] < reach) {
+                y = g.target(nextEdge[y]);
+            }
+            double length = forwardDist[v] - forwardDist[x] + backwardDist[v] - backwardDist[y];
+            return distanceWithin(g, x, y, length - EPSILON) >= length - EPSILON;
+        }
+
+        /* Returns the distance from X to Y if it is less than LIMIT, and LIMIT
+         * otherwise. */
+        private double distanceWithin(CompactStreetMapGraph g, int x, int y, double limit) {
+            nextCheck();
+            localHeap.clear();
+            localStamp[x] = check;
+            localDist[x] = 0;
+            localHeap.push(0, x);
+            while (!localHeap.isEmpty()) {
+                double d = localHeap.peekKey();
+                int u = localHeap.pop();
+                if (d >= limit) {
+                    break;
+                }
+                if (d > localDist[u]) {
+                    continue;
+                }
+                if (u == y) {
+                    return d;
+                }
+                for (int e = g.edgeStart(u); e < g.edgeEnd(u); e++) {
+                    int w = g.target(e);
+                    double next = d + g.weight(e);
+                    if (next < limit && (localStamp[w] != check || next < localDist[w])) {
+                        localStamp[w] = check;
+                        localDist[w] = next;
+                        localHeap.push(next, w);
+                    }
+                }
+            }
+            return limit;
+        }
+
+        /* Starts a new path check or local search. */
+        private void nextCheck() {
+            if (check == Integer.MAX_VALUE) {
+                Arrays.fill(localStamp, 0);
+                Arrays.fill(pathMark, 0);
+                check = 0;
+            }
+            check++;
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package bearmaps.hw4.streetmap;
+
+import bearmaps.hw4.ShortestPathsSolver;
+import bearmaps.hw4.SolverOutcome;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Bidirectional shortest path query over a ContractionHierarchy.
+ *
+ * The forward search from s only follows edges up the hierarchy, and the
+ * backward search into t only follows reversed edges that come down it; every
+ * shortest path has an equally short up-down representation, so the best
+ * meeting vertex of the two searches gives the answer. Searches alternate by
+ * smallest key and stop once neither queue can improve on the best meeting
+ * distance found.
+ *
+ * The solution is unpacked into original graph vertices and edges, and its
+ * weight is summed over the original edges in path order, exactly as
+ * AStarSolver does.
+ */
+public class CHSolver implements ShortestPathsSolver<Long> {
+
+    private static final int[] NO_EDGES = new int[0];
+
+    private final List<Long> solution = new ArrayList<>();
+    private int[] edges = NO_EDGES;
+    private double solutionWeight;
+    private SolverOutcome outcome;
+    private int numStatesExplored;
+    private final double explorationTime;
+
+    public CHSolver(ContractionHierarchy ch, long start, long end) {
+        long began = System.nanoTime();
+        CompactStreetMapGraph g = ch.graph();
+        int s = g.index(start);
+        int t = g.index(end);
+        if (s < 0 || t < 0) {
+            outcome = SolverOutcome.UNSOLVABLE;
+        } else {
+            solve(ch, ch.searchSpace(), s, t);
+        }
+        explorationTime = (System.nanoTime() - began) / 1e9;
+    }
+
+    private void solve(ContractionHierarchy ch, SearchSpace space, int s, int t) {
+        space.reset();
+        MinHeap forward = space.forwardHeap;
+        MinHeap backward = space.backwardHeap;
+        space.reach(space.forward, s, 0, -1, -1);
+        space.reach(space.backward, t, 0, -1, -1);
+        forward.push(0, s);
+        backward.push(0, t);
+
+        double best = Double.POSITIVE_INFINITY;
+        int meet = -1;
+        while (true) {
+            double forwardKey = forward.isEmpty() ? Double.POSITIVE_INFINITY : forward.peekKey();
+            double backwardKey = backward.isEmpty() ? Double.POSITIVE_INFINITY : backward.peekKey();
+            if (Math.min(forwardKey, backwardKey) >= best) {
+                break;
+            }
+            boolean isForward = forwardKey <= backwardKey;
+            Direction here = isForward ? space.forward : space.backward;
+            Direction there = isForward ? space.backward : space.forward;
+            double d = isForward ? forwardKey : backwardKey;
+            int x = isForward ? forward.pop() : backward.pop();
+            if (d > here.dist[x]) {
+                continue;
+            }
+            numStatesExplored++;
+
+            double through = d + space.distance(there, x);
+            if (through < best) {
+                best = through;
+                meet = x;
+            }
+            if (isStalled(ch, space, here, isForward, x, d)) {
+                continue;
+            }
+            if (isForward) {
+                for (int i = ch.upStart(x); i < ch.upEnd(x); i++) {
+                    int e = ch.upEdge(i);
+                    relax(space, here, forward, x, ch.edgeTo(e), e, d + ch.edgeWeight(e));
+                }
+            } else {
+                for (int i = ch.downStart(x); i < ch.downEnd(x); i++) {
+                    int e = ch.downEdge(i);
+                    relax(space, here, backward, x, ch.downSource(i), e, d + ch.edgeWeight(e));
+                }
+            }
+        }
+
+        if (meet < 0) {
+            outcome = SolverOutcome.UNSOLVABLE;
+            return;
+        }
+        outcome = SolverOutcome.SOLVED;
+        unpack(ch, space, s, t, meet);
+    }
+
+    /**
+     * Stall-on-demand: returns whether X, settled at distance D, is reached
+     * more cheaply through a higher-ranked vertex this search has already
+     * seen. Such a vertex cannot be on the up-down shortest path, so its edges
+     * need not be relaxed.
+     */
+    private static boolean isStalled(ContractionHierarchy ch, SearchSpace space, Direction dir,
+                                     boolean isForward, int x, double d) {
+        if (isForward) {
+            for (int i = ch.downStart(x); i < ch.downEnd(x); i++) {
+                int e = ch.downEdge(i);
+                if (space.distance(dir, ch.downSource(i)) + ch.edgeWeight(e) < d) {
+                    return true;
+                }
+            }
+        } else {
+            for (int i = ch.upStart(x); i < ch.upEnd(x); i++) {
+                int e = ch.upEdge(i);
+                if (space.distance(dir, ch.edgeTo(e)) + ch.edgeWeight(e) < d) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static void relax(SearchSpace space, Direction dir, MinHeap heap,
+                              int from, int to, int edge, double dist) {
+        if (dist < space.distance(dir, to)) {
+            space.reach(dir, to, dist, from, edge);
+            heap.push(dist, to);
+        }
+    }
+
+    /* Expands the up-down path s -> meet -> t into original vertices and edges. */
+    private void unpack(ContractionHierarchy ch, SearchSpace space, int s, int t, int meet) {
+        CompactStreetMapGraph g = ch.graph();
+        int[] edges = space.edges;
+        int count = 0;
+        for (int v = meet; v != s; v = space.forward.parent[v]) {
+            edges[count++] = space.forward.parentEdge[v];
+        }
+        for (int i = 0, j = count - 1; i < j; i++, j--) {
+            int tmp = edges[i];
+            edges[i] = edges[j];
+            edges[j] = tmp;
+        }
+        for (int v = meet; v != t; v = space.backward.parent[v]) {
+            edges[count++] = space.backward.parentEdge[v];
+        }
+
+        solution.add(g.id(s));
+        int[] path = new int[count];
+        int length = 0;
+        int[] stack = space.stack;
+        for (int i = 0; i < count; i++) {
+            int top = 0;
+            stack[top++] = edges[i];
+            while (top > 0) {
+                int e = stack[--top];
+                int first = ch.edgeChild1(e);
+                if (first < 0) {
+                    if (length == path.length) {
+                        path = Arrays.copyOf(path, 2 * length);
+                    }
+                    path[length++] = e;
+                    solution.add(g.id(ch.edgeTo(e)));
+                    solutionWeight += ch.edgeWeight(e);
+                } else {
+                    stack = space.ensureStack(top + 2);
+                    stack[top++] = ch.edgeChild2(e);
+                    stack[top++] = first;
+                }
+            }
+        }
+        this.edges = Arrays.copyOf(path, length);
+    }
+
+    /**
+     * Returns the original edges of the solution, which are edges of the
+     * hierarchy's CompactStreetMapGraph, in path order. Empty if there is no
+     * solution, or if it starts where it ends.
+     */
+    public int[] edges() {
+        return edges;
+    }
+
+    @Override
+    public SolverOutcome outcome() {
+        return outcome;
+    }
+
+    @Override
+    public List<Long> solution() {
+        return solution;
+    }
+
+    @Override
+    public double solutionWeight() {
+        return solutionWeight;
+    }
+
+    @Override
+    public int numStatesExplored() {
+        return numStatesExplored;
+    }
+
+    @Override
+    public double explorationTime() {
+        return explorationTime;
+    }
+
+    /**
+     * Distances and parents of one search direction.
+     */
+    static class Direction {
+        private final double[] dist;
+        private final int[] parent;
+        private final int[] parentEdge;
+        private final int[] stamp;
+
+        Direction(int n) {
+            dist = new double[n];
+            parent = new int[n];
+            parentEdge = new int[n];
+            stamp = new int[n];
+        }
+    }
+
+    /**
+     * Reusable query state sized to one graph. Entries are valid only when
+     * their stamp matches the current generation, so starting a query does not
+     * need to clear the arrays. Not thread-safe; the hierarchy hands out one
+     * per thread.
+     */
+    static class SearchSpace {
+        private final Direction forward;
+        private final Direction backward;
+        private final MinHeap forwardHeap = new MinHeap();
+        private final MinHeap backwardHeap = new MinHeap();
+        private final int[] edges;
+        private int[] stack = new int[64];
+        private int generation;
+
+        SearchSpace(int n) {
+            forward = new Direction(n);
+            backward = new Direction(n);
+            edges = new int[2 * n];  // an up path and a down path
+        }
+
+        private void reset() {
+            if (generation == Integer.MAX_VALUE) {
+                Arrays.fill(forward.stamp, 0);
+                Arrays.fill(backward.stamp, 0);
+                generation = 0;
+            }
+            generation++;
+            forwardHeap.clear();
+            backwardHeap.clear();
+        }
+
+        private double distance(Direction dir, int v) {
+            return dir.stamp[v] == generation ? dir.dist[v] : Double.POSITIVE_INFINITY;
+        }
+
+        private void reach(Direction dir, int v, double dist, int parent, int edge) {
+            dir.stamp[v] = generation;
+            dir.dist[v] = dist;
+            dir.parent[v] = parent;
+            dir.parentEdge[v] = edge;
+        }
+
+        private int[] ensureStack(int size) {
+            if (size > stack.length) {
+                stack = Arrays.copyOf(stack, Math.max(size, stack.length * 2));
+            }
+            return stack;
+        }
+    }
+}
@@ -0,0 +1,331 @@
+package bearmaps.hw4.streetmap;
+
+import bearmaps.hw4.IndexedAStarGraph;
+import bearmaps.hw4.ReversibleAStarGraph;
+import bearmaps.hw4.WeightedEdge;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Frozen, compressed-sparse-row (CSR) representation of a street map graph.
+ *
+ * Vertices are renumbered with dense int indices in ascending id order, so
+ * the index of an OSM id can be recovered by binary search over ids. The
+ * outgoing edges of vertex v occupy the half-open range
+ * [edgeStart(v), edgeEnd(v)) of the parallel edge arrays. Node and way names
+ * are interned into a single table and referred to by int id.
+ *
+ * The int-indexed accessors form a cursor that lets solvers walk the graph
+ * without allocating:
+ * <pre>
+ *     for (int e = g.edgeStart(v); e &lt; g.edgeEnd(v); e++) {
+ *         int w = g.target(e);
+ *         double weight = g.weight(e);
+ *     }
+ * </pre>
+ * The incoming edges of v are reached the same way through
+ * [inStart(v), inEnd(v)), using a reverse index built on first use.
+ *
+ * The cursor makes this an IndexedAStarGraph for IndexedAStarSolver. The
+ * AStarGraph&lt;Long&gt; methods are kept for compatibility with the generic
+ * solvers, and allocate a fresh edge list per call.
+ */
+public class CompactStreetMapGraph implements ReversibleAStarGraph<Long>, IndexedAStarGraph {
+
+    /** Name id of vertices and edges without a name. */
+    public static final int NO_NAME = -1;
+
+    private final long[] ids;           // OSM id of each vertex, sorted ascending
+    private final double[] lat;
+    private final double[] lon;
+    private final int[] nodeNames;      // name id of each vertex, or NO_NAME
+    private final int[] offsets;        // edges of v are [offsets[v], offsets[v + 1])
+    private final int[] targets;        // destination vertex of each edge
+    private final float[] weights;      // great-circle length of each edge in miles
+    private final int[] wayNames;       // name id of the way each edge belongs to
+    private final String[] names;       // interned node and way names
+    private volatile ReverseIndex reverse;
+
+    CompactStreetMapGraph(long[] ids, double[] lat, double[] lon, int[] nodeNames,
+                          int[] offsets, int[] targets, float[] weights, int[] wayNames,
+                          String[] names) {
+        this.ids = ids;
+        this.lat = lat;
+        this.lon = lon;
+        this.nodeNames = nodeNames;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.weights = weights;
+        this.wayNames = wayNames;
+        this.names = names;
+    }
+
+    /**
+     * Writes this graph to OUT in the layout expected by read(ByteBuffer).
+     */
+    public void write(DataOutputStream out) throws IOException {
+        SnapshotIO.writeLongs(out, ids);
+        SnapshotIO.writeDoubles(out, lat);
+        SnapshotIO.writeDoubles(out, lon);
+        SnapshotIO.writeInts(out, nodeNames);
+        SnapshotIO.writeInts(out, offsets);
+        SnapshotIO.writeInts(out, targets);
+        SnapshotIO.writeFloats(out, weights);
+        SnapshotIO.writeInts(out, wayNames);
+        SnapshotIO.writeStrings(out, names);
+    }
+
+    /**
+     * Reads a graph previously written by write(DataOutputStream), advancing
+     * the position of IN past it.
+     */
+    public static CompactStreetMapGraph read(ByteBuffer in) {
+        long[] ids = SnapshotIO.readLongs(in);
+        double[] lat = SnapshotIO.readDoubles(in);
+        double[] lon = SnapshotIO.readDoubles(in);
+        int[] nodeNames = SnapshotIO.readInts(in);
+        int[] offsets = SnapshotIO.readInts(in);
+        int[] targets = SnapshotIO.readInts(in);
+        float[] weights = SnapshotIO.readFloats(in);
+        int[] wayNames = SnapshotIO.readInts(in);
+        String[] names = SnapshotIO.readStrings(in);
+        return new CompactStreetMapGraph(ids, lat, lon, nodeNames, offsets, targets, weights,
+                wayNames, names);
+    }
+
+    /***************************************************************************
+     * Int-indexed cursor.
+     ***************************************************************************/
+
+    /** Returns the number of vertices. */
+    @Override
+    public int vertexCount() {
+        return ids.length;
+    }
+
+    /** Returns the number of directed edges. */
+    public int edgeCount() {
+        return targets.length;
+    }
+
+    /** Returns the dense index of the vertex with OSM id ID, or -1 if absent. */
+    public int index(long id) {
+        int v = Arrays.binarySearch(ids, id);
+        return v < 0 ? -1 : v;
+    }
+
+    /** Returns the OSM id of vertex V. */
+    public long id(int v) {
+        return ids[v];
+    }
+
+    public double lat(int v) {
+        return lat[v];
+    }
+
+    public double lon(int v) {
+        return lon[v];
+    }
+
+    /** Returns the name of vertex V, or null if it has none. */
+    public String name(int v) {
+        return nameOf(nodeNames[v]);
+    }
+
+    /** Returns the interned name id of vertex V, or NO_NAME. */
+    public int nameId(int v) {
+        return nodeNames[v];
+    }
+
+    /** Returns the number of interned names; ids run from 0 to one less. */
+    public int nameCount() {
+        return names.length;
+    }
+
+    /** Returns the number of outgoing edges of vertex V. */
+    public int degree(int v) {
+        return offsets[v + 1] - offsets[v];
+    }
+
+    /** Returns the index of the first outgoing edge of vertex V. */
+    @Override
+    public int edgeStart(int v) {
+        return offsets[v];
+    }
+
+    /** Returns one past the index of the last outgoing edge of vertex V. */
+    @Override
+    public int edgeEnd(int v) {
+        return offsets[v + 1];
+    }
+
+    /** Returns the vertex edge E points to. */
+    @Override
+    public int target(int e) {
+        return targets[e];
+    }
+
+    @Override
+    public double weight(int e) {
+        return weights[e];
+    }
+
+    /** Returns the interned name id of the way edge E belongs to. */
+    public int wayNameId(int e) {
+        return wayNames[e];
+    }
+
+    /** Returns the name of the way edge E belongs to. */
+    public String wayName(int e) {
+        return nameOf(wayNames[e]);
+    }
+
+    /** Returns the interned name with the given id, or null for NO_NAME. */
+    public String nameOf(int nameId) {
+        return nameId == NO_NAME ? null : names[nameId];
+    }
+
+    /** Returns the index of the first incoming edge slot of vertex V. */
+    public int inStart(int v) {
+        return reverse().offsets[v];
+    }
+
+    /** Returns one past the index of the last incoming edge slot of vertex V. */
+    public int inEnd(int v) {
+        return reverse().offsets[v + 1];
+    }
+
+    /** Returns the edge in incoming edge slot I. */
+    public int inEdge(int i) {
+        return reverse().edges[i];
+    }
+
+    /** Returns the vertex the edge in incoming edge slot I leaves. */
+    public int inSource(int i) {
+        return reverse().sources[i];
+    }
+
+    /** Returns the great-circle distance in miles between vertices V and W. */
+    @Override
+    public double estimatedDistance(int v, int w) {
+        return StreetMapGraph.distance(lon[v], lon[w], lat[v], lat[w]);
+    }
+
+    /***************************************************************************
+     * ReversibleAStarGraph<Long>.
+     ***************************************************************************/
+
+    @Override
+    public List<WeightedEdge<Long>> neighbors(Long v) {
+        int from = index(v);
+        if (from < 0) {
+            return new ArrayList<>();
+        }
+        List<WeightedEdge<Long>> incident = new ArrayList<>(degree(from));
+        for (int e = offsets[from]; e < offsets[from + 1]; e++) {
+            WeightedEdge<Long> edge = new WeightedEdge<>(v, ids[targets[e]], weights[e]);
+            edge.setName(wayName(e));
+            incident.add(edge);
+        }
+        return incident;
+    }
+
+    @Override
+    public List<WeightedEdge<Long>> reverseNeighbors(Long v) {
+        int to = index(v);
+        if (to < 0) {
+            return new ArrayList<>();
+        }
+        ReverseIndex r = reverse();
+        List<WeightedEdge<Long>> incident = new ArrayList<>(r.offsets[to + 1] - r.offsets[to]);
+        for (int i = r.offsets[to]; i < r.offsets[to + 1]; i++) {
+            int e = r.edges[i];
+            WeightedEdge<Long> edge = new WeightedEdge<>(v, ids[r.sources[i]], weights[e]);
+            edge.setName(wayName(e));
+            incident.add(edge);
+        }
+        return incident;
+    }
+
+    @Override
+    public double estimatedDistanceToGoal(Long s, Long goal) {
+        return estimatedDistance(index(s), index(goal));
+    }
+
+    private ReverseIndex reverse() {
+        ReverseIndex r = reverse;
+        if (r == null) {
+            synchronized (this) {
+                r = reverse;
+                if (r == null) {
+                    r = new ReverseIndex(offsets, targets);
+                    reverse = r;
+                }
+            }
+        }
+        return r;
+    }
+
+    /**
+     * Incoming edges grouped by target vertex: the slots [offsets[v],
+     * offsets[v + 1]) hold the forward edge ids entering v and their sources.
+     */
+    private static class ReverseIndex {
+        private final int[] offsets;
+        private final int[] edges;
+        private final int[] sources;
+
+        ReverseIndex(int[] forwardOffsets, int[] targets) {
+            int n = forwardOffsets.length - 1;
+            offsets = new int[n + 1];
+            for (int target : targets) {
+                offsets[target + 1]++;
+            }
+            for (int v = 0; v < n; v++) {
+                offsets[v + 1] += offsets[v];
+            }
+            edges = new int[targets.length];
+            sources = new int[targets.length];
+            int[] next = Arrays.copyOf(offsets, n);
+            for (int v = 0; v < n; v++) {
+                for (int e = forwardOffsets[v]; e < forwardOffsets[v + 1]; e++) {
+                    int slot = next[targets[e]]++;
+                    edges[slot] = e;
+                    sources[slot] = v;
+                }
+            }
+        }
+    }
+
+    /**
+     * Assigns dense ids to distinct names while a graph is being built.
+     */
+    static class NameTable {
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final List<String> names = new ArrayList<>();
+
+        int intern(String name) {
+            if (name == null) {
+                return NO_NAME;
+            }
+            Integer id = ids.get(name);
+            if (id == null) {
+                id = names.size();
+                ids.put(name, id);
+                names.add(name);
+            }
+            return id;
+        }
+
+        String[] toArray() {
+            return names.toArray(new String[0]);
+        }
+    }
+}
@@ -0,0 +1,562 @@
+package bearmaps.hw4.streetmap;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * Contraction hierarchy over a CompactStreetMapGraph, for answering
+ * point-to-point shortest path queries with a small bidirectional search.
+ *
+ * Preprocessing contracts vertices one at a time in order of importance,
+ * estimated from the shortcuts a contraction would add relative to the edges
+ * it removes, and from the depth of the hierarchy already built below the
+ * vertex. Contracting v removes it from the remaining graph and, for every
+ * pair of remaining neighbors u -> v -> w, adds a shortcut u -> w unless a
+ * bounded witness search finds a path from u to w avoiding v that is no
+ * longer. A vertex's rank is its position in the contraction order.
+ *
+ * A query from s to t then only needs to relax edges leading to higher-ranked
+ * vertices: forward from s and backward into t (see CHSolver). Shortcuts
+ * remember the two edges they replace, so found paths are unpacked back into
+ * original graph edges.
+ */
+public class ContractionHierarchy {
+
+    /** Witness searches give up after settling this many vertices. */
+    private static final int WITNESS_SETTLE_LIMIT = 500;
+    /** Tighter limit used when only estimating the cost of a contraction. */
+    private static final int SIMULATION_SETTLE_LIMIT = 20;
+    private static final int NONE = -1;
+
+    private final CompactStreetMapGraph graph;
+    private final int[] rank;
+
+    /* All original edges and shortcuts. Edge ids below graph.edgeCount() are the
+     * CSR edges of the same index; children are NONE for them. */
+    private final int[] edgeTo;
+    private final double[] edgeWeight;
+    private final int[] edgeChild1;
+    private final int[] edgeChild2;
+
+    /* Upward graph: for each vertex, the edges to higher-ranked vertices. */
+    private final int[] upOffsets;
+    private final int[] upEdges;
+
+    /* Downward graph, reversed: for each vertex y, the edges x -> y from
+     * higher-ranked vertices x, together with x. */
+    private final int[] downOffsets;
+    private final int[] downEdges;
+    private final int[] downSources;
+
+    /* Per-thread query state, sized to the graph. */
+    private final ThreadLocal<CHSolver.SearchSpace> searchSpaces;
+
+    /**
+     * Contracts every vertex of GRAPH. Takes a few seconds on a city-sized
+     * graph; build once and share between queries.
+     */
+    public ContractionHierarchy(CompactStreetMapGraph graph) {
+        this.graph = graph;
+        Builder builder = new Builder(graph);
+        builder.contractAll();
+
+        rank = builder.rank;
+        int m = builder.edgeCount;
+        edgeTo = Arrays.copyOf(builder.to, m);
+        edgeWeight = Arrays.copyOf(builder.weight, m);
+        edgeChild1 = Arrays.copyOf(builder.child1, m);
+        edgeChild2 = Arrays.copyOf(builder.child2, m);
+
+        int n = graph.vertexCount();
+        upOffsets = new int[n + 1];
+        downOffsets = new int[n + 1];
+        for (int e = 0; e < m; e++) {
+            int from = builder.from[e];
+            int to = builder.to[e];
+            if (!builder.kept(e)) {
+                continue;
+            }
+            if (rank[to] > rank[from]) {
+                upOffsets[from + 1]++;
+            } else {
+                downOffsets[to + 1]++;
+            }
+        }
+        for (int v = 0; v < n; v++) {
+            upOffsets[v + 1] += upOffsets[v];
+            downOffsets[v + 1] += downOffsets[v];
+        }
+        upEdges = new int[upOffsets[n]];
+        downEdges = new int[downOffsets[n]];
+        downSources = new int[downOffsets[n]];
+        int[] upNext = Arrays.copyOf(upOffsets, n);
+        int[] downNext = Arrays.copyOf(downOffsets, n);
+        for (int e = 0; e < m; e++) {
+            int from = builder.from[e];
+            int to = builder.to[e];
+            if (!builder.kept(e)) {
+                continue;
+            }
+            if (rank[to] > rank[from]) {
+                upEdges[upNext[from]++] = e;
+            } else {
+                int slot = downNext[to]++;
+                downEdges[slot] = e;
+                downSources[slot] = from;
+            }
+        }
+        searchSpaces = ThreadLocal.withInitial(() -> new CHSolver.SearchSpace(n));
+    }
+
+    /* Restores a hierarchy over GRAPH from the arrays written by write(). */
+    private ContractionHierarchy(CompactStreetMapGraph graph, int[] rank, int[] edgeTo,
+                                 double[] edgeWeight, int[] edgeChild1, int[] edgeChild2,
+                                 int[] upOffsets, int[] upEdges, int[] downOffsets,
+                                 int[] downEdges, int[] downSources) {
+        int n = graph.vertexCount();
+        int m = edgeTo.length;
+        if (rank.length != n || upOffsets.length != n + 1 || downOffsets.length != n + 1
+                || edgeWeight.length != m || edgeChild1.length != m || edgeChild2.length != m
+                || downSources.length != downEdges.length) {
+            throw new IllegalArgumentException("Hierarchy does not match its graph");
+        }
+        this.graph = graph;
+        this.rank = rank;
+        this.edgeTo = edgeTo;
+        this.edgeWeight = edgeWeight;
+        this.edgeChild1 = edgeChild1;
+        this.edgeChild2 = edgeChild2;
+        this.upOffsets = upOffsets;
+        this.upEdges = upEdges;
+        this.downOffsets = downOffsets;
+        this.downEdges = downEdges;
+        this.downSources = downSources;
+        searchSpaces = ThreadLocal.withInitial(() -> new CHSolver.SearchSpace(n));
+    }
+
+    /**
+     * Writes this hierarchy to OUT in the layout expected by
+     * read(ByteBuffer, CompactStreetMapGraph). The graph itself is not written.
+     */
+    public void write(DataOutputStream out) throws IOException {
+        SnapshotIO.writeInts(out, rank);
+        SnapshotIO.writeInts(out, edgeTo);
+        SnapshotIO.writeDoubles(out, edgeWeight);
+        SnapshotIO.writeInts(out, edgeChild1);
+        SnapshotIO.writeInts(out, edgeChild2);
+        SnapshotIO.writeInts(out, upOffsets);
+        SnapshotIO.writeInts(out, upEdges);
+        SnapshotIO.writeInts(out, downOffsets);
+        SnapshotIO.writeInts(out, downEdges);
+        SnapshotIO.writeInts(out, downSources);
+    }
+
+    /**
+     * Reads a hierarchy over GRAPH previously written by
+     * write(DataOutputStream), advancing the position of IN past it.
+     * @throws IllegalArgumentException if it was built over another graph.
+     */
+    public static ContractionHierarchy read(ByteBuffer in, CompactStreetMapGraph graph) {
+        return new ContractionHierarchy(graph, SnapshotIO.readInts(in), SnapshotIO.readInts(in),
+                SnapshotIO.readDoubles(in), SnapshotIO.readInts(in), SnapshotIO.readInts(in),
+                SnapshotIO.readInts(in), SnapshotIO.readInts(in), SnapshotIO.readInts(in),
+                SnapshotIO.readInts(in), SnapshotIO.readInts(in));
+    }
+
+    /** Returns the graph this hierarchy was built over. */
+    public CompactStreetMapGraph graph() {
+        return graph;
+    }
+
+    /** Returns the position of vertex V in the contraction order. */
+    public int rank(int v) {
+        return rank[v];
+    }
+
+    /** Returns the number of shortcuts added during contraction. */
+    public int shortcutCount() {
+        return edgeTo.length - graph.edgeCount();
+    }
+
+    /***************************************************************************
+     * Accessors for CHSolver and DistanceMatrix.
+     ***************************************************************************/
+
+    CHSolver.SearchSpace searchSpace() {
+        return searchSpaces.get();
+    }
+
+    int upStart(int v) {
+        return upOffsets[v];
+    }
+
+    int upEnd(int v) {
+        return upOffsets[v + 1];
+    }
+
+    int upEdge(int i) {
+        return upEdges[i];
+    }
+
+    int downStart(int v) {
+        return downOffsets[v];
+    }
+
+    int downEnd(int v) {
+        return downOffsets[v + 1];
+    }
+
+    int downEdge(int i) {
+        return downEdges[i];
+    }
+
+    int downSource(int i) {
+        return downSources[i];
+    }
+
+    int edgeTo(int e) {
+        return edgeTo[e];
+    }
+
+    double edgeWeight(int e) {
+        return edgeWeight[e];
+    }
+
+    /* Returns the first of the two edges shortcut E replaces, or NONE. */
+    int edgeChild1(int e) {
+        return edgeChild1[e];
+    }
+
+    int edgeChild2(int e) {
+        return edgeChild2[e];
+    }
+
+    /***************************************************************************
+     * Preprocessing.
+     ***************************************************************************/
+
+    /**
+     * Mutable state used only while contracting.
+     */
+    private static class Builder {
+        private final CompactStreetMapGraph graph;
+        private final int n;
+
+        private int[] from;
+        private int[] to;
+        private double[] weight;
+        private int[] child1;
+        private int[] child2;
+        private int[] hops;            // number of original edges each edge stands for
+        private boolean[] superseded;
+        private int edgeCount;
+        private int addedHops;         // set by contract()
+
+        private final IntList[] out;
+        private final IntList[] in;
+        private final boolean[] contracted;
+        private final int[] level;
+        private final int[] touchedBy;
+        private final boolean[] stale;
+        private final double[] priority;
+        private final int[] rank;
+
+        /* Witness search state, reset by generation stamp. */
+        private final double[] dist;
+        private final int[] stamp;
+        private int generation;
+        private final MinHeap heap = new MinHeap();
+
+        Builder(CompactStreetMapGraph graph) {
+            this.graph = graph;
+            n = graph.vertexCount();
+            int m = graph.edgeCount();
+            from = new int[m + m / 2 + 16];
+            to = new int[from.length];
+            weight = new double[from.length];
+            child1 = new int[from.length];
+            child2 = new int[from.length];
+            hops = new int[from.length];
+            superseded = new boolean[from.length];
+
+            out = new IntList[n];
+            in = new IntList[n];
+            for (int v = 0; v < n; v++) {
+                out[v] = new IntList();
+                in[v] = new IntList();
+            }
+            for (int v = 0; v < n; v++) {
+                for (int e = graph.edgeStart(v); e < graph.edgeEnd(v); e++) {
+                    addEdge(v, graph.target(e), graph.weight(e), NONE, NONE);
+                }
+            }
+            contracted = new boolean[n];
+            level = new int[n];
+            touchedBy = new int[n];
+            stale = new boolean[n];
+            Arrays.fill(touchedBy, NONE);
+            priority = new double[n];
+            rank = new int[n];
+            dist = new double[n];
+            stamp = new int[n];
+        }
+
+        /* Returns whether edge E belongs in the final hierarchy. Original
+         * parallel edges and self loops are kept so edge ids stay aligned with
+         * the CSR graph; they are harmless to queries. */
+        boolean kept(int e) {
+            return !superseded[e] && from[e] != to[e];
+        }
+
+        void contractAll() {
+            MinHeap order = new MinHeap();
+            for (int v = 0; v < n; v++) {
+                priority[v] = computePriority(v);
+                order.push(priority[v], v);
+            }
+            int next = 0;
+            while (!order.isEmpty()) {
+                double key = order.peekKey();
+                int v = order.pop();
+                if (contracted[v] || key != priority[v]) {
+                    continue;
+                }
+                if (stale[v]) {
+                    stale[v] = false;
+                    double updated = computePriority(v);
+                    if (!order.isEmpty() && updated > order.peekKey()) {
+                        priority[v] = updated;
+                        order.push(updated, v);
+                        continue;
+                    }
+                }
+                contract(v, false);
+                contracted[v] = true;
+                rank[v] = next++;
+                for (int i = 0; i < out[v].size; i++) {
+                    touch(to[out[v].get(i)], v);
+                }
+                for (int i = 0; i < in[v].size; i++) {
+                    touch(from[in[v].get(i)], v);
+                }
+            }
+        }
+
+        /* Drops edges of V that lead to or come from contracted vertices, so
+         * that searches over the remaining graph do not keep skipping them. */
+        private void prune(int v) {
+            if (contracted[v]) {
+                return;
+            }
+            out[v].retain(e -> isLive(e, to));
+            in[v].retain(e -> isLive(e, from));
+        }
+
+        /* Updates neighbor W of just-contracted vertex V, once per V. Its
+         * priority is recomputed when it next reaches the top of the queue. */
+        private void touch(int w, int v) {
+            if (contracted[w] || touchedBy[w] == v) {
+                return;
+            }
+            touchedBy[w] = v;
+            prune(w);
+            level[w] = Math.max(level[w], level[v] + 1);
+            stale[w] = true;
+        }
+
+        /* Importance of V: the depth of the hierarchy below it, plus the ratios
+         * of edges and original edges (hops) contracting it would add and
+         * remove. */
+        private double computePriority(int v) {
+            int shortcuts = contract(v, true);
+            int removed = 0;
+            int removedHops = 0;
+            for (int i = 0; i < out[v].size; i++) {
+                int e = out[v].get(i);
+                if (isLive(e, to)) {
+                    removed++;
+                    removedHops += hops[e];
+                }
+            }
+            for (int i = 0; i < in[v].size; i++) {
+                int e = in[v].get(i);
+                if (isLive(e, from)) {
+                    removed++;
+                    removedHops += hops[e];
+                }
+            }
+            return level[v] + (double) shortcuts / Math.max(1, removed)
+                    + (double) addedHops / Math.max(1, removedHops);
+        }
+
+        /* Returns whether edge E is live, i.e. not superseded and with its
+         * other end (looked up in ENDS) not yet contracted. */
+        private boolean isLive(int e, int[] ends) {
+            return !superseded[e] && !contracted[ends[e]];
+        }
+
+        /**
+         * Adds the shortcuts needed to contract V, or only counts them if
+         * SIMULATE is set. Returns the number of shortcuts.
+         */
+        private int contract(int v, boolean simulate) {
+            int shortcuts = 0;
+            addedHops = 0;
+            IntList ins = in[v];
+            IntList outs = out[v];
+            for (int i = 0; i < ins.size; i++) {
+                int inEdge = ins.get(i);
+                int u = from[inEdge];
+                if (!isLive(inEdge, from) || u == v) {
+                    continue;
+                }
+                // Edges between nodes at one location weigh 0, so pairs with
+                // nothing to search for are told apart by a negative limit.
+                double limit = -1;
+                for (int j = 0; j < outs.size; j++) {
+                    int outEdge = outs.get(j);
+                    if (isLive(outEdge, to) && to[outEdge] != u && to[outEdge] != v) {
+                        limit = Math.max(limit, weight[inEdge] + weight[outEdge]);
+                    }
+                }
+                if (limit < 0) {
+                    continue;
+                }
+                witnessSearch(u, v, limit, simulate ? SIMULATION_SETTLE_LIMIT : WITNESS_SETTLE_LIMIT);
+                for (int j = 0; j < outs.size; j++) {
+                    int outEdge = outs.get(j);
+                    int w = to[outEdge];
+                    if (!isLive(outEdge, to) || w == u || w == v) {
+                        continue;
+                    }
+                    double via = weight[inEdge] + weight[outEdge];
+                    if (distance(w) <= via) {
+                        continue;
+                    }
+                    shortcuts++;
+                    addedHops += hops[inEdge] + hops[outEdge];
+                    if (!simulate) {
+                        addShortcut(u, w, via, inEdge, outEdge);
+                        // A parallel edge v -> w needs no second shortcut.
+                        stamp[w] = generation;
+                        dist[w] = via;
+                    }
+                }
+            }
+            return shortcuts;
+        }
+
+        /* Bounded Dijkstra from SOURCE over uncontracted vertices, avoiding VIA. */
+        private void witnessSearch(int source, int via, double limit, int maxSettled) {
+            if (generation == Integer.MAX_VALUE) {
+                Arrays.fill(stamp, 0);
+                generation = 0;
+            }
+            generation++;
+            heap.clear();
+            stamp[source] = generation;
+            dist[source] = 0;
+            heap.push(0, source);
+            int settled = 0;
+            while (!heap.isEmpty() && settled < maxSettled) {
+                double d = heap.peekKey();
+                int x = heap.pop();
+                if (d > dist[x]) {
+                    continue;
+                }
+                if (d > limit) {
+                    break;
+                }
+                settled++;
+                IntList outs = out[x];
+                for (int i = 0; i < outs.size; i++) {
+                    int e = outs.get(i);
+                    int y = to[e];
+                    if (!isLive(e, to) || y == via) {
+                        continue;
+                    }
+                    double nd = d + weight[e];
+                    if (nd <= limit && nd < distance(y)) {
+                        stamp[y] = generation;
+                        dist[y] = nd;
+                        heap.push(nd, y);
+                    }
+                }
+            }
+        }
+
+        private double distance(int v) {
+            return stamp[v] == generation ? dist[v] : Double.POSITIVE_INFINITY;
+        }
+
+        /* Adds shortcut U -> W, or improves an existing heavier edge U -> W. */
+        private void addShortcut(int u, int w, double via, int first, int second) {
+            IntList outs = out[u];
+            for (int i = 0; i < outs.size; i++) {
+                int e = outs.get(i);
+                if (to[e] == w && !superseded[e]) {
+                    if (weight[e] <= via) {
+                        return;
+                    }
+                    superseded[e] = true;
+                }
+            }
+            addEdge(u, w, via, first, second);
+        }
+
+        private void addEdge(int u, int w, double wt, int first, int second) {
+            if (edgeCount == from.length) {
+                int capacity = from.length * 2;
+                from = Arrays.copyOf(from, capacity);
+                to = Arrays.copyOf(to, capacity);
+                weight = Arrays.copyOf(weight, capacity);
+                child1 = Arrays.copyOf(child1, capacity);
+                child2 = Arrays.copyOf(child2, capacity);
+                hops = Arrays.copyOf(hops, capacity);
+                superseded = Arrays.copyOf(superseded, capacity);
+            }
+            int e = edgeCount++;
+            from[e] = u;
+            to[e] = w;
+            weight[e] = wt;
+            child1[e] = first;
+            child2[e] = second;
+            hops[e] = first == NONE ? 1 : hops[first] + hops[second];
+            out[u].add(e);
+            in[w].add(e);
+        }
+    }
+
+    /**
+     * Growable list of ints.
+     */
+    private static class IntList {
+        private int[] items = new int[4];
+        private int size;
+
+        void add(int x) {
+            if (size == items.length) {
+                items = Arrays.copyOf(items, size * 2);
+            }
+            items[size++] = x;
+        }
+
+        int get(int i) {
+            return items[i];
+        }
+
+        /* Removes the items KEEP rejects, preserving order. */
+        void retain(IntPredicate keep) {
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                if (keep.test(items[i])) {
+                    items[kept++] = items[i];
+                }
+            }
+            size = kept;
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package bearmaps.hw4.streetmap;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Many-to-many shortest path distances over a ContractionHierarchy, by
+ * bucket search.
+ *
+ * Every shortest path has an up-down representation through its highest
+ * vertex, so the distance from s to t is the least, over the vertices x that
+ * both the upward search from s and the reversed downward search into t
+ * settle, of the sum of their distances to x. One backward search per target
+ * leaves a (target, distance) entry in the bucket of each vertex it settles;
+ * one forward search per source then scans the buckets of the vertices it
+ * settles. N + M searches of a few hundred vertices each take the place of
+ * N x M full ones. The searches of each round run in parallel.
+ *
+ * Distances are sums of shortcut weights, and so agree with CHSolver's path
+ * weights up to rounding.
+ */
+public class DistanceMatrix {
+
+    private static final int[] NO_VERTICES = new int[0];
+    private static final double[] NO_DISTANCES = new double[0];
+
+    /* Per-thread search state, grown to fit the largest graph searched. */
+    private static final ThreadLocal<Search> SEARCHES = new ThreadLocal<>();
+
+    private DistanceMatrix() {
+    }
+
+    /**
+     * Returns the matrix of shortest path distances in CH's graph from each
+     * of the vertex indices SOURCES to each of TARGETS, so that result[i][j]
+     * is the distance from SOURCES[i] to TARGETS[j]. Pairs with no path
+     * between them, or with an index outside the graph, are infinite.
+     */
+    public static double[][] compute(ContractionHierarchy ch, int[] sources, int[] targets) {
+        int n = ch.graph().vertexCount();
+
+        /* What each backward search settled, target by target. */
+        int[][] settledVertices = new int[targets.length][];
+        double[][] settledDistances = new double[targets.length][];
+        IntStream.range(0, targets.length).parallel().forEach(j -> {
+            if (!contains(n, targets[j])) {
+                settledVertices[j] = NO_VERTICES;
+                settledDistances[j] = NO_DISTANCES;
+                return;
+            }
+            Search search = Search.forCurrentThread(n);
+            search.run(ch, targets[j], false);
+            settledVertices[j] = Arrays.copyOf(search.settled, search.settledCount);
+            settledDistances[j] = Arrays.copyOf(search.settledDist, search.settledCount);
+        });
+
+        /* The buckets, laid out like the edges of a CompactStreetMapGraph:
+         * the entries of vertex v are [bucketOffsets[v], bucketOffsets[v + 1]). */
+        int[] bucketOffsets = new int[n + 1];
+        for (int[] vertices : settledVertices) {
+            for (int v : vertices) {
+                bucketOffsets[v + 1]++;
+            }
+        }
+        for (int v = 0; v < n; v++) {
+            bucketOffsets[v + 1] += bucketOffsets[v];
+        }
+        int[] bucketTargets = new int[bucketOffsets[n]];
+        double[] bucketDistances = new double[bucketOffsets[n]];
+        int[] filled = Arrays.copyOf(bucketOffsets, n);
+        for (int j = 0; j < targets.length; j++) {
+            for (int k = 0; k < settledVertices[j].length; k++) {
+                int slot = filled[settledVertices[j][k]]++;
+                bucketTargets[slot] = j;
+                bucketDistances[slot] = settledDistances[j][k];
+            }
+        }
+
+        double[][] result = new double[sources.length][];
+        IntStream.range(0, sources.length).parallel().forEach(i -> {
+            double[] row = new double[targets.length];
+            Arrays.fill(row, Double.POSITIVE_INFINITY);
+            result[i] = row;
+            if (!contains(n, sources[i])) {
+                return;
+            }
+            Search search = Search.forCurrentThread(n);
+            search.run(ch, sources[i], true);
+            for (int k = 0; k < search.settledCount; k++) {
+                int x = search.settled[k];
+                double d = search.settledDist[k];
+                for (int b = bucketOffsets[x]; b < bucketOffsets[x + 1]; b++) {
+                    int j = bucketTargets[b];
+                    row[j] = Math.min(row[j], d + bucketDistances[b]);
+                }
+            }
+        });
+        return result;
+    }
+
+    private static boolean contains(int n, int v) {
+        return v >= 0 && v < n;
+    }
+
+    /**
+     * One upward search, forward from a source or backward into a target,
+     * and the vertices it settled in order. Entries of dist are valid only
+     * when their stamp matches the current generation, as in CHSolver.
+     */
+    private static class Search {
+        private final double[] dist;
+        private final int[] stamp;
+        private final MinHeap heap = new MinHeap();
+        private int generation;
+        private int[] settled = new int[64];
+        private double[] settledDist = new double[64];
+        private int settledCount;
+
+        private Search(int n) {
+            dist = new double[n];
+            stamp = new int[n];
+        }
+
+        /* Returns this thread's search, able to hold N vertices. */
+        static Search forCurrentThread(int n) {
+            Search search = SEARCHES.get();
+            if (search == null || search.dist.length < n) {
+                search = new Search(n);
+                SEARCHES.set(search);
+            }
+            return search;
+        }
+
+        private double distance(int v) {
+            return stamp[v] == generation ? dist[v] : Double.POSITIVE_INFINITY;
+        }
+
+        private void reach(int v, double d) {
+            stamp[v] = generation;
+            dist[v] = d;
+            heap.push(d, v);
+        }
+
+        /* Settles everything reachable from S by edges up the hierarchy, or,
+         * unless FORWARD, everything that reaches S by edges down it. */
+        void run(ContractionHierarchy ch, int s, boolean forward) {
+            if (generation == Integer.MAX_VALUE) {
+                Arrays.fill(stamp, 0);
+                generation = 0;
+            }
+            generation++;
+            heap.clear();
+            settledCount = 0;
+            reach(s, 0);
+
+            while (!heap.isEmpty()) {
+                double d = heap.peekKey();
+                int x = heap.pop();
+                if (d > dist[x] || isStalled(ch, forward, x, d)) {
+                    continue;
+                }
+                if (settledCount == settled.length) {
+                    settled = Arrays.copyOf(settled, 2 * settledCount);
+                    settledDist = Arrays.copyOf(settledDist, 2 * settledCount);
+                }
+                settled[settledCount] = x;
+                settledDist[settledCount++] = d;
+
+                if (forward) {
+                    for (int i = ch.upStart(x); i < ch.upEnd(x); i++) {
+                        int e = ch.upEdge(i);
+                        relax(ch.edgeTo(e), d + ch.edgeWeight(e));
+                    }
+                } else {
+                    for (int i = ch.downStart(x); i < ch.downEnd(x); i++) {
+                        relax(ch.downSource(i), d + ch.edgeWeight(ch.downEdge(i)));
+                    }
+                }
+            }
+        }
+
+        private void relax(int v, double d) {
+            if (d < distance(v)) {
+                reach(v, d);
+            }
+        }
+
+        /* Stall-on-demand, as in CHSolver: X is reached more cheaply through
+         * a higher vertex, so it is not the top of any shortest up-down path
+         * and needs neither a bucket entry nor a scan. */
+        private boolean isStalled(ContractionHierarchy ch, boolean forward, int x, double d) {
+            if (forward) {
+                for (int i = ch.downStart(x); i < ch.downEnd(x); i++) {
+                    if (distance(ch.downSource(i)) + ch.edgeWeight(ch.downEdge(i)) < d) {
+                        return true;
+                    }
+                }
+            } else {
+                for (int i = ch.upStart(x); i < ch.upEnd(x); i++) {
+                    int e = ch.upEdge(i);
+                    if (distance(ch.edgeTo(e)) + ch.edgeWeight(e) < d) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+    }
+}
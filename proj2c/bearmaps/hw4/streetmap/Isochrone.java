@@ -0,0 +1,211 @@
+package bearmaps.hw4.streetmap;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * The vertices of a CompactStreetMapGraph within a distance budget of a set
+ * of sources, found by a Dijkstra search that stops at the budget.
+ *
+ * The search is seeded with every source at distance 0, so a reached
+ * vertex's distance is to its nearest source. It runs on per-thread arrays
+ * stamped by generation, as CHSolver's do, so a search costs time in
+ * proportion to what it reaches rather than to the size of the graph.
+ *
+ * Immutable once computed, and so safe for use by any number of threads.
+ */
+public class Isochrone {
+
+    /* Per-thread search state, grown to fit the largest graph searched. */
+    private static final ThreadLocal<Search> SEARCHES = new ThreadLocal<>();
+
+    private final CompactStreetMapGraph graph;
+    private final double budget;
+    private final int[] vertices;       // reached, nearest first
+    private final double[] distances;   // distance of each to the nearest source
+
+    private Isochrone(CompactStreetMapGraph graph, double budget, int[] vertices, double[] distances) {
+        this.graph = graph;
+        this.budget = budget;
+        this.vertices = vertices;
+        this.distances = distances;
+    }
+
+    /**
+     * Returns the vertices of GRAPH whose shortest path from the nearest of
+     * the vertex indices SOURCES is at most BUDGET, in miles. Sources outside
+     * the graph are ignored.
+     */
+    public static Isochrone compute(CompactStreetMapGraph graph, int[] sources, double budget) {
+        Search search = Search.forCurrentThread(graph.vertexCount());
+        search.run(graph, sources, budget);
+        return new Isochrone(graph, budget, Arrays.copyOf(search.settled, search.settledCount),
+                Arrays.copyOf(search.settledDist, search.settledCount));
+    }
+
+    /**
+     * Returns the isochrone of each set of sources in SOURCES, with the same
+     * BUDGET, computing them in parallel.
+     */
+    public static Isochrone[] compute(CompactStreetMapGraph graph, int[][] sources, double budget) {
+        Isochrone[] result = new Isochrone[sources.length];
+        IntStream.range(0, sources.length).parallel()
+                .forEach(i -> result[i] = compute(graph, sources[i], budget));
+        return result;
+    }
+
+    /** Returns the distance budget, in miles. */
+    public double budget() {
+        return budget;
+    }
+
+    /** Returns the number of vertices reached. */
+    public int size() {
+        return vertices.length;
+    }
+
+    /** Returns the I'th vertex reached, in order of distance. */
+    public int vertex(int i) {
+        return vertices[i];
+    }
+
+    /** Returns the distance to the I'th vertex reached from its nearest source. */
+    public double distance(int i) {
+        return distances[i];
+    }
+
+    /**
+     * Returns the reached vertices whose positions are the corners of the
+     * smallest convex polygon around them all, counterclockwise on a map with
+     * north up, starting from the westernmost. Fewer than three vertices are
+     * returned as they are when that is all there is.
+     *
+     * Scaling longitude against latitude keeps a polygon convex, so the hull
+     * is the same in degrees as on the ground.
+     */
+    public int[] outline() {
+        Integer[] order = new Integer[vertices.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = vertices[i];
+        }
+        Arrays.sort(order, (v, w) -> graph.lon(v) != graph.lon(w)
+                ? Double.compare(graph.lon(v), graph.lon(w))
+                : Double.compare(graph.lat(v), graph.lat(w)));
+
+        /* Andrew's monotone chain: the lower hull west to east, then the
+         * upper hull back. */
+        int n = order.length;
+        if (n < 3) {
+            int[] result = new int[n];
+            for (int i = 0; i < n; i++) {
+                result[i] = order[i];
+            }
+            return result;
+        }
+        int[] hull = new int[2 * n];
+        int k = 0;
+        for (int i = 0; i < n; i++) {
+            while (k >= 2 && cross(hull[k - 2], hull[k - 1], order[i]) <= 0) {
+                k--;
+            }
+            hull[k++] = order[i];
+        }
+        for (int i = n - 2, lower = k + 1; i >= 0; i--) {
+            while (k >= lower && cross(hull[k - 2], hull[k - 1], order[i]) <= 0) {
+                k--;
+            }
+            hull[k++] = order[i];
+        }
+        return Arrays.copyOf(hull, k - 1);
+    }
+
+    /* Returns the cross product of U -> V and U -> W, positive if W is to the
+     * left of the line from U through V. */
+    private double cross(int u, int v, int w) {
+        return (graph.lon(v) - graph.lon(u)) * (graph.lat(w) - graph.lat(u))
+                - (graph.lat(v) - graph.lat(u)) * (graph.lon(w) - graph.lon(u));
+    }
+
+    /**
+     * A bounded Dijkstra search and the vertices it settled in order.
+     * Entries of dist are valid only when their stamp matches the current
+     * generation.
+     */
+    private static class Search {
+        private final double[] dist;
+        private final int[] stamp;
+        private final MinHeap heap = new MinHeap();
+        private int generation;
+        private int[] settled = new int[64];
+        private double[] settledDist = new double[64];
+        private int settledCount;
+
+        private Search(int n) {
+            dist = new double[n];
+            stamp = new int[n];
+        }
+
+        /* Returns this thread's search, able to hold N vertices. */
+        static Search forCurrentThread(int n) {
+            Search search = SEARCHES.get();
+            if (search == null || search.dist.length < n) {
+                search = new Search(n);
+                SEARCHES.set(search);
+            }
+            return search;
+        }
+
+        private double distance(int v) {
+            return stamp[v] == generation ? dist[v] : Double.POSITIVE_INFINITY;
+        }
+
+        private void reach(int v, double d) {
+            stamp[v] = generation;
+            dist[v] = d;
+            heap.push(d, v);
+        }
+
+        /* Settles every vertex within BUDGET of the nearest of SOURCES. A
+         * vertex is only pushed again at a smaller distance, so each is
+         * settled once, by its last entry. */
+        void run(CompactStreetMapGraph g, int[] sources, double budget) {
+            if (generation == Integer.MAX_VALUE) {
+                Arrays.fill(stamp, 0);
+                generation = 0;
+            }
+            generation++;
+            heap.clear();
+            settledCount = 0;
+            if (!(budget >= 0)) {
+                return;
+            }
+            for (int s : sources) {
+                if (s >= 0 && s < g.vertexCount() && distance(s) > 0) {
+                    reach(s, 0);
+                }
+            }
+
+            while (!heap.isEmpty()) {
+                double d = heap.peekKey();
+                int x = heap.pop();
+                if (d > dist[x]) {
+                    continue;
+                }
+                if (settledCount == settled.length) {
+                    settled = Arrays.copyOf(settled, 2 * settledCount);
+                    settledDist = Arrays.copyOf(settledDist, 2 * settledCount);
+                }
+                settled[settledCount] = x;
+                settledDist[settledCount++] = d;
+
+                for (int e = g.edgeStart(x); e < g.edgeEnd(x); e++) {
+                    double next = d + g.weight(e);
+                    int w = g.target(e);
+                    if (next <= budget && next < distance(w)) {
+                        reach(w, next);
+                    }
+                }
+            }
+        }
+    }
+}
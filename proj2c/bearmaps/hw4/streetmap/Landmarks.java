@@ -0,0 +1,342 @@
+package bearmaps.hw4.streetmap;
+
+import bearmaps.hw4.IndexedAStarGraph;
+import bearmaps.hw4.ReversibleAStarGraph;
+import bearmaps.hw4.WeightedEdge;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * ALT (A*, landmarks, triangle inequality) heuristic for a CompactStreetMapGraph.
+ *
+ * For a landmark L, the triangle inequality gives
+ * d(v, t) >= |d(L, t) - d(L, v)|, so shortest path distances from a few well
+ * spread landmarks give lower bounds on the remaining distance that are much
+ * tighter than great-circle distance wherever streets detour around rivers,
+ * freeways or the bay. The estimate is the largest such bound over all
+ * landmarks, and never less than the great-circle distance.
+ *
+ * Every way is added to the street graph in both directions, so d(L, v) equals
+ * d(v, L) and one distance table per landmark suffices. Distances are stored as
+ * floats, vertex-major: the distances of vertex v to all landmarks are
+ * contiguous at [v * count, (v + 1) * count).
+ *
+ * As an AStarGraph&lt;Long&gt;, this graph has the same edges as the street
+ * graph, so handing it to AStarSolver gives ALT search. The estimate is
+ * symmetric, so it also suits BidirectionalAStarSolver. As an
+ * IndexedAStarGraph it does the same for IndexedAStarSolver.
+ */
+public class Landmarks implements ReversibleAStarGraph<Long>, IndexedAStarGraph {
+
+    /** How landmarks are picked. */
+    public enum Selection {
+        /** Each landmark is the vertex farthest, by road, from those chosen so far. */
+        FARTHEST,
+        /**
+         * Goldberg and Werneck's avoid: grow a shortest path tree from a random
+         * root, weight each vertex by how badly the current landmarks bound its
+         * distance, and take a leaf of the heaviest subtree without a landmark.
+         */
+        AVOID
+    }
+
+    private static final long SEED = 61;
+
+    private final CompactStreetMapGraph graph;
+    private final int[] landmarks;
+    private final float[] dist;
+    /* Absolute error of a difference of two stored distances, subtracted from
+     * every bound so that rounding to float cannot overestimate. */
+    private final double slack;
+
+    /**
+     * Picks COUNT landmarks of GRAPH by SELECTION and computes their distance
+     * tables, with one Dijkstra search per landmark. A graph without vertices
+     * gets no landmarks, so the estimate is the great-circle distance.
+     */
+    public Landmarks(CompactStreetMapGraph graph, int count, Selection selection) {
+        this.graph = graph;
+        int n = graph.vertexCount();
+        count = Math.min(count, n);
+        double[][] tables = new double[count][];
+        if (count == 0) {
+            landmarks = new int[0];
+        } else if (selection == Selection.AVOID) {
+            landmarks = selectAvoid(count, tables);
+        } else {
+            landmarks = selectFarthest(count, tables);
+        }
+
+        dist = new float[n * landmarks.length];
+        double max = 0;
+        for (int i = 0; i < landmarks.length; i++) {
+            for (int v = 0; v < n; v++) {
+                double d = tables[i][v];
+                dist[v * landmarks.length + i] = (float) d;
+                if (d != Double.POSITIVE_INFINITY) {
+                    max = Math.max(max, d);
+                }
+            }
+        }
+        slack = 2 * Math.ulp((float) max);
+    }
+
+    /** Returns the landmark vertex indices. */
+    public int[] landmarks() {
+        return landmarks.clone();
+    }
+
+    /**
+     * Returns a lower bound on the length of the shortest path between
+     * vertices V and T.
+     */
+    public double estimate(int v, int t) {
+        int k = landmarks.length;
+        int vBase = v * k;
+        int tBase = t * k;
+        double best = 0;
+        for (int i = 0; i < k; i++) {
+            float dv = dist[vBase + i];
+            float dt = dist[tBase + i];
+            if (dv == Float.POSITIVE_INFINITY || dt == Float.POSITIVE_INFINITY) {
+                continue;
+            }
+            best = Math.max(best, Math.abs(dt - dv));
+        }
+        return Math.max(best - slack, graph.estimatedDistance(v, t));
+    }
+
+    /***************************************************************************
+     * ReversibleAStarGraph<Long>.
+     ***************************************************************************/
+
+    @Override
+    public List<WeightedEdge<Long>> neighbors(Long v) {
+        return graph.neighbors(v);
+    }
+
+    @Override
+    public List<WeightedEdge<Long>> reverseNeighbors(Long v) {
+        return graph.reverseNeighbors(v);
+    }
+
+    @Override
+    public double estimatedDistanceToGoal(Long s, Long goal) {
+        return estimate(graph.index(s), graph.index(goal));
+    }
+
+    /***************************************************************************
+     * IndexedAStarGraph.
+     ***************************************************************************/
+
+    @Override
+    public int vertexCount() {
+        return graph.vertexCount();
+    }
+
+    @Override
+    public int edgeStart(int v) {
+        return graph.edgeStart(v);
+    }
+
+    @Override
+    public int edgeEnd(int v) {
+        return graph.edgeEnd(v);
+    }
+
+    @Override
+    public int target(int e) {
+        return graph.target(e);
+    }
+
+    @Override
+    public double weight(int e) {
+        return graph.weight(e);
+    }
+
+    @Override
+    public double estimatedDistance(int v, int goal) {
+        return estimate(v, goal);
+    }
+
+    /***************************************************************************
+     * Helper functions.
+     ***************************************************************************/
+
+    /* Fills TABLES with the distances of the chosen landmarks. */
+    private int[] selectFarthest(int count, double[][] tables) {
+        int n = graph.vertexCount();
+        int[] chosen = new int[count];
+        boolean[] isLandmark = new boolean[n];
+        double[] nearest = new double[n];
+        Arrays.fill(nearest, Double.POSITIVE_INFINITY);
+        // Seed with the vertex farthest from an arbitrary routable start.
+        int next = farthest(dijkstra(firstRoutable(), null), isLandmark);
+        for (int i = 0; i < count; i++) {
+            chosen[i] = next;
+            isLandmark[next] = true;
+            tables[i] = dijkstra(next, null);
+            for (int v = 0; v < n; v++) {
+                nearest[v] = Math.min(nearest[v], tables[i][v]);
+            }
+            next = farthest(nearest, isLandmark);
+        }
+        return chosen;
+    }
+
+    /* Returns the routable vertex maximizing DISTANCES, preferring vertices
+     * not reached at all, and skipping landmarks. */
+    private int farthest(double[] distances, boolean[] isLandmark) {
+        int best = -1;
+        for (int v = 0; v < distances.length; v++) {
+            if (graph.degree(v) == 0 || isLandmark[v]) {
+                continue;
+            }
+            if (best < 0 || distances[v] > distances[best]) {
+                best = v;
+            }
+        }
+        return best < 0 ? firstRoutable() : best;
+    }
+
+    private int[] selectAvoid(int count, double[][] tables) {
+        int n = graph.vertexCount();
+        int[] chosen = new int[count];
+        boolean[] isLandmark = new boolean[n];
+        Random random = new Random(SEED);
+        int[] parent = new int[n];
+        int[] order = new int[n];
+        double[] size = new double[n];
+        int[] heaviestChild = new int[n];
+        boolean[] covered = new boolean[n];
+
+        for (int i = 0; i < count; i++) {
+            int root = randomRoutable(random);
+            int settled = dijkstra(root, parent, order, tables, i);
+            double[] fromRoot = tables[i];
+
+            // Accumulate subtree weights leaves-first, in reverse settle order.
+            Arrays.fill(size, 0, n, 0);
+            Arrays.fill(heaviestChild, -1);
+            Arrays.fill(covered, false);
+            for (int j = settled - 1; j >= 0; j--) {
+                int v = order[j];
+                if (isLandmark[v]) {
+                    covered[v] = true;
+                }
+                if (covered[v]) {
+                    size[v] = 0;
+                } else {
+                    size[v] += fromRoot[v] - bound(tables, i, root, v);
+                }
+                int p = parent[v];
+                if (p < 0) {
+                    continue;
+                }
+                if (covered[v]) {
+                    covered[p] = true;
+                } else {
+                    size[p] += size[v];
+                    if (heaviestChild[p] < 0 || size[v] > size[heaviestChild[p]]) {
+                        heaviestChild[p] = v;
+                    }
+                }
+            }
+
+            // Descend into the heaviest uncovered subtree down to a leaf.
+            int leaf = root;
+            while (heaviestChild[leaf] >= 0) {
+                leaf = heaviestChild[leaf];
+            }
+            if (isLandmark[leaf]) {
+                leaf = farthest(fromRoot, isLandmark);
+            }
+            chosen[i] = leaf;
+            isLandmark[leaf] = true;
+            tables[i] = dijkstra(leaf, null);
+        }
+        return chosen;
+    }
+
+    /* Lower bound on d(root, v) from the first COUNT landmark tables. */
+    private static double bound(double[][] tables, int count, int root, int v) {
+        double best = 0;
+        for (int i = 0; i < count; i++) {
+            double d = Math.abs(tables[i][v] - tables[i][root]);
+            if (!Double.isNaN(d) && d != Double.POSITIVE_INFINITY) {
+                best = Math.max(best, d);
+            }
+        }
+        return best;
+    }
+
+    /* Returns the distances from SOURCE to every vertex, recording shortest
+     * path tree parents in PARENT if it is not null. */
+    private double[] dijkstra(int source, int[] parent) {
+        double[][] tables = new double[1][];
+        dijkstra(source, parent, null, tables, 0);
+        return tables[0];
+    }
+
+    /* Runs Dijkstra from SOURCE into TABLES[SLOT], also recording parents and
+     * the settle order when given. Returns the number of vertices settled. */
+    private int dijkstra(int source, int[] parent, int[] order, double[][] tables, int slot) {
+        int n = graph.vertexCount();
+        double[] d = new double[n];
+        Arrays.fill(d, Double.POSITIVE_INFINITY);
+        if (parent != null) {
+            Arrays.fill(parent, -1);
+        }
+        boolean[] settled = new boolean[n];
+        MinHeap heap = new MinHeap();
+        d[source] = 0;
+        heap.push(0, source);
+        int count = 0;
+        while (!heap.isEmpty()) {
+            int v = heap.pop();
+            if (settled[v]) {
+                continue;
+            }
+            settled[v] = true;
+            if (order != null) {
+                order[count] = v;
+            }
+            count++;
+            for (int e = graph.edgeStart(v); e < graph.edgeEnd(v); e++) {
+                int w = graph.target(e);
+                double nd = d[v] + graph.weight(e);
+                if (nd < d[w]) {
+                    d[w] = nd;
+                    if (parent != null) {
+                        parent[w] = v;
+                    }
+                    heap.push(nd, w);
+                }
+            }
+        }
+        tables[slot] = d;
+        return count;
+    }
+
+    private int firstRoutable() {
+        for (int v = 0; v < graph.vertexCount(); v++) {
+            if (graph.degree(v) > 0) {
+                return v;
+            }
+        }
+        return 0;
+    }
+
+    private int randomRoutable(Random random) {
+        int n = graph.vertexCount();
+        for (int tries = 0; tries < n; tries++) {
+            int v = random.nextInt(n);
+            if (graph.degree(v) > 0) {
+                return v;
+            }
+        }
+        return firstRoutable();
+    }
+}
@@ -0,0 +1,69 @@
+package bearmaps.hw4.streetmap;
+
+import java.util.Arrays;
+
+/**
+ * Binary min-heap of (double key, int vertex) pairs, for Dijkstra-style
+ * searches over CompactStreetMapGraph indices. There is no decrease-key;
+ * callers push duplicates and skip stale entries when popping.
+ */
+class MinHeap {
+    private double[] keys = new double[64];
+    private int[] values = new int[64];
+    private int size;
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    double peekKey() {
+        return keys[0];
+    }
+
+    void push(double key, int value) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+        int i = size++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (keys[parent] <= key) {
+                break;
+            }
+            keys[i] = keys[parent];
+            values[i] = values[parent];
+            i = parent;
+        }
+        keys[i] = key;
+        values[i] = value;
+    }
+
+    /* Removes and returns the value with the smallest key. */
+    int pop() {
+        int result = values[0];
+        size--;
+        double key = keys[size];
+        int value = values[size];
+        int i = 0;
+        while (2 * i + 1 < size) {
+            int child = 2 * i + 1;
+            if (child + 1 < size && keys[child + 1] < keys[child]) {
+                child++;
+            }
+            if (key <= keys[child]) {
+                break;
+            }
+            keys[i] = keys[child];
+            values[i] = values[child];
+            i = child;
+        }
+        keys[i] = key;
+        values[i] = value;
+        return result;
+    }
+}
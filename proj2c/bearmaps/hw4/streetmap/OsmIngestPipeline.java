@@ -0,0 +1,696 @@
+package bearmaps.hw4.streetmap;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Streaming, multi-threaded builder of a CompactStreetMapGraph from an OSM XML
+ * file, for extracts far larger than Berkeley.
+ *
+ * One reader thread pulls elements off a StAX stream and groups them into
+ * batches of nodes and of routable ways, parsing node ids and coordinates
+ * straight into each batch's primitive arrays so no attribute string outlives
+ * its element. Worker threads add node batches to the node store, and resolve
+ * the node refs of way batches against a LongIntHashMap from OSM id to dense
+ * index, emitting both directions of each road segment. At most two batches per worker exist at once. Parsed nodes
+ * are added to the node store in file order, so the first copy of a repeated
+ * id wins and the result does not depend on scheduling.
+ *
+ * OSM files list every node before any way, so which nodes the roads use is
+ * only known once all nodes have been read. Given a file, the pipeline first
+ * makes a quick pass over just the routable ways to collect the ids they
+ * refer to, and then keeps only those nodes and named ones: the nodes held are
+ * those of the graph itself, not of the whole extract. Given a stream, it
+ * cannot read twice, and holds every node until the final prune.
+ *
+ * Workers only read the id map while resolving ways, so the reader drains all
+ * in-flight work whenever the stream switches between nodes and ways (this
+ * happens once in practice).
+ *
+ * Finally, nodes with no outgoing edges and no name are pruned using a degree
+ * count over the edge arrays, and the remaining nodes are renumbered in
+ * ascending id order into CSR form. Note that pruning by out-degree will cause
+ * issues if edges are not bidirectional.
+ *
+ * See OSM documentation on
+ * <a href="http://wiki.openstreetmap.org/wiki/Key:highway">the highway tag</a>,
+ * <a href="http://wiki.openstreetmap.org/wiki/Way">the way XML element</a>,
+ * and <a href="http://wiki.openstreetmap.org/wiki/Node">the node XML element</a>.
+ */
+public class OsmIngestPipeline {
+
+    /**
+     * Only allow for non-service roads; this prevents going on pedestrian streets as much as
+     * possible. Note that in Berkeley, many of the campus roads are tagged as motor vehicle
+     * roads, but in practice we walk all over them with such impunity that we forget cars can
+     * actually drive on them.
+     */
+    private static final Set<String> ALLOWED_HIGHWAY_TYPES = new HashSet<>(Arrays.asList
+            ("motorway", "trunk", "primary", "secondary", "tertiary", "unclassified",
+                    "residential", "living_street", "motorway_link", "trunk_link", "primary_link",
+                    "secondary_link", "tertiary_link"));
+
+    private static final int NODE_BATCH_SIZE = 8192;
+    private static final int WAY_BATCH_SIZE = 1024;
+
+    private final int threads;
+    private final int maxInFlight;
+
+    /* Ids of the nodes routable ways refer to, or null to keep every node. */
+    private LongIntHashMap referenced;
+
+    /* Node store, guarded by this. Filled during node phases, read-only during way phases. */
+    private final LongIntHashMap index = new LongIntHashMap(1 << 16);
+    private int nodeBatchesSubmitted;
+    private int nodeBatchesAppended;
+    private long[] nodeIds = new long[1024];
+    private double[] nodeLat = new double[1024];
+    private double[] nodeLon = new double[1024];
+    private int[] nodeNames = new int[1024];
+    private int nodeCount;
+
+    /* Edge store, guarded by edgeLock. */
+    private final Object edgeLock = new Object();
+    private int[] edgeFrom = new int[1024];
+    private int[] edgeTo = new int[1024];
+    private float[] edgeWeight = new float[1024];
+    private int[] edgeName = new int[1024];
+    private int edgeCount;
+
+    /* Interned node and way names, guarded by itself. */
+    private final CompactStreetMapGraph.NameTable names = new CompactStreetMapGraph.NameTable();
+
+    private long nodesRead;
+    private long nodesSkipped;
+    private long waysRead;
+    private IngestStats stats;
+
+    /** Creates a pipeline with one worker per available processor. */
+    public OsmIngestPipeline() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /** Creates a pipeline with the given number of worker threads. */
+    public OsmIngestPipeline(int threads) {
+        this.threads = Math.max(1, threads);
+        this.maxInFlight = 2 * this.threads;
+    }
+
+    /**
+     * Streams the OSM XML file at FILENAME into a graph, reading it twice so
+     * that nodes no road uses are never stored. A pipeline instance can only
+     * be used once.
+     */
+    public CompactStreetMapGraph ingest(String filename) throws IOException, XMLStreamException {
+        long start = System.nanoTime();
+        try (InputStream in = new BufferedInputStream(new FileInputStream(filename), 1 << 16)) {
+            referenced = referencedNodes(in);
+        }
+        try (InputStream in = new BufferedInputStream(new FileInputStream(filename), 1 << 16)) {
+            return ingest(in, start);
+        }
+    }
+
+    /**
+     * Streams OSM XML from IN into a graph, holding every node until the
+     * end. A pipeline instance can only be used once.
+     */
+    public CompactStreetMapGraph ingest(InputStream in) throws IOException, XMLStreamException {
+        return ingest(in, System.nanoTime());
+    }
+
+    /* Streams IN into a graph, timing the ingestion from START. */
+    private CompactStreetMapGraph ingest(InputStream in, long start)
+            throws IOException, XMLStreamException {
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        try {
+            read(in, workers, inFlight, failure);
+            drain(inFlight, failure);
+        } finally {
+            workers.shutdown();
+        }
+        CompactStreetMapGraph graph = build();
+        stats = new IngestStats(nodesRead, nodesSkipped, waysRead, graph.vertexCount(),
+                graph.edgeCount(), (System.nanoTime() - start) / 1e9);
+        return graph;
+    }
+
+    /** Returns the throughput of the last ingest() call, or null if none. */
+    public IngestStats stats() {
+        return stats;
+    }
+
+    /***************************************************************************
+     * Reader thread.
+     ***************************************************************************/
+
+    /* Returns the ids of the nodes the routable ways in IN refer to. */
+    private static LongIntHashMap referencedNodes(InputStream in) throws XMLStreamException {
+        XMLStreamReader reader = xmlReader(in);
+        LongIntHashMap ids = new LongIntHashMap(1 << 16);
+        long[] refs = new long[64];
+        int refCount = 0;
+        boolean inWay = false;
+        boolean validWay = false;
+        try {
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    String element = reader.getLocalName();
+                    if (element.equals("way")) {
+                        inWay = true;
+                        validWay = false;
+                        refCount = 0;
+                    } else if (inWay && element.equals("nd")) {
+                        if (refCount == refs.length) {
+                            refs = Arrays.copyOf(refs, refs.length * 2);
+                        }
+                        refs[refCount++] = Long.parseLong(reader.getAttributeValue(null, "ref"));
+                    } else if (inWay && element.equals("tag")
+                            && reader.getAttributeValue(null, "k").equals("highway")) {
+                        validWay = ALLOWED_HIGHWAY_TYPES.contains(
+                                reader.getAttributeValue(null, "v"));
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT
+                        && reader.getLocalName().equals("way")) {
+                    inWay = false;
+                    if (validWay) {
+                        for (int i = 0; i < refCount; i++) {
+                            ids.put(refs[i], 0);
+                        }
+                    }
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return ids;
+    }
+
+    private static XMLStreamReader xmlReader(InputStream in) throws XMLStreamException {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory.createXMLStreamReader(in);
+    }
+
+    private void read(InputStream in, ExecutorService workers, Semaphore inFlight,
+                      AtomicReference<Throwable> failure)
+            throws IOException, XMLStreamException {
+        XMLStreamReader reader = xmlReader(in);
+
+        NodeBatch nodes = new NodeBatch();
+        WayBatch ways = new WayBatch();
+        boolean inNode = false;
+        boolean inWay = false;
+        boolean wayPhase = false;
+        boolean validWay = false;
+        String wayName = "";
+
+        try {
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    String element = reader.getLocalName();
+                    if (element.equals("node")) {
+                        if (wayPhase) {
+                            submit(ways, workers, inFlight, failure);
+                            ways = new WayBatch();
+                            drain(inFlight, failure);
+                            wayPhase = false;
+                        }
+                        inNode = true;
+                        nodes.add(parseId(reader.getAttributeValue(null, "id")),
+                                parseCoordinate(reader.getAttributeValue(null, "lat")),
+                                parseCoordinate(reader.getAttributeValue(null, "lon")));
+                        nodesRead++;
+                    } else if (element.equals("way")) {
+                        if (!wayPhase) {
+                            submit(nodes, workers, inFlight, failure);
+                            nodes = new NodeBatch();
+                            drain(inFlight, failure);
+                            wayPhase = true;
+                        }
+                        inWay = true;
+                        validWay = false;
+                        wayName = "";
+                        waysRead++;
+                    } else if (inWay && element.equals("nd")) {
+                        ways.addRef(Long.parseLong(reader.getAttributeValue(null, "ref")));
+                    } else if (element.equals("tag")) {
+                        String k = reader.getAttributeValue(null, "k");
+                        if (inWay && k.equals("highway")) {
+                            validWay = ALLOWED_HIGHWAY_TYPES.contains(
+                                    reader.getAttributeValue(null, "v"));
+                        } else if (inWay && k.equals("name")) {
+                            wayName = reader.getAttributeValue(null, "v");
+                        } else if (inNode && k.equals("name")) {
+                            nodes.setName(reader.getAttributeValue(null, "v"));
+                        }
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    String element = reader.getLocalName();
+                    if (element.equals("node")) {
+                        inNode = false;
+                        if (nodes.size == NODE_BATCH_SIZE) {
+                            submit(nodes, workers, inFlight, failure);
+                            nodes = new NodeBatch();
+                        }
+                    } else if (element.equals("way")) {
+                        inWay = false;
+                        if (validWay) {
+                            ways.endWay(wayName);
+                        } else {
+                            ways.discardWay();
+                        }
+                        if (ways.size == WAY_BATCH_SIZE) {
+                            submit(ways, workers, inFlight, failure);
+                            ways = new WayBatch();
+                        }
+                    }
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        submit(nodes, workers, inFlight, failure);
+        submit(ways, workers, inFlight, failure);
+    }
+
+    /* Powers of ten that are exactly representable as doubles. */
+    private static final double[] EXACT_POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    /* Largest integer a double holds exactly. */
+    private static final long EXACT_MANTISSA = 1L << 53;
+
+    private static long parseId(String value) throws IOException {
+        if (value == null) {
+            throw new IOException("Node without an id");
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IOException("Bad node id " + value, e);
+        }
+    }
+
+    /*
+     * Returns the decimal VALUE as Double.parseDouble would, without its
+     * temporary objects for the plain decimals OSM uses. Digits that fit in
+     * a double exactly, divided by an exact power of ten, round correctly;
+     * anything else goes to Double.parseDouble.
+     */
+    private static double parseCoordinate(String value) throws IOException {
+        if (value == null) {
+            throw new IOException("Node without a coordinate");
+        }
+        int i = 0;
+        int n = value.length();
+        boolean negative = n > 0 && value.charAt(0) == '-';
+        if (negative) {
+            i++;
+        }
+        long digits = 0;
+        int scale = -1;
+        int start = i;
+        for (; i < n; i++) {
+            char c = value.charAt(i);
+            if (c == '.' && scale < 0) {
+                scale = 0;
+            } else if (c >= '0' && c <= '9' && digits < EXACT_MANTISSA / 10) {
+                digits = 10 * digits + (c - '0');
+                if (scale >= 0) {
+                    scale++;
+                }
+            } else {
+                break;
+            }
+        }
+        if (i == n && i > start + (scale < 0 ? 0 : 1) && digits < EXACT_MANTISSA
+                && Math.max(scale, 0) < EXACT_POWERS_OF_TEN.length) {
+            double magnitude = digits / EXACT_POWERS_OF_TEN[Math.max(scale, 0)];
+            return negative ? -magnitude : magnitude;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new IOException("Bad node coordinate " + value, e);
+        }
+    }
+
+    /* Hands BATCH to a worker, blocking while too many batches are in flight. */
+    private void submit(Runnable batch, ExecutorService workers, Semaphore inFlight,
+                        AtomicReference<Throwable> failure) throws IOException {
+        inFlight.acquireUninterruptibly();
+        workers.execute(() -> {
+            try {
+                batch.run();
+            } catch (Throwable t) {
+                failure.compareAndSet(null, t);
+            } finally {
+                inFlight.release();
+            }
+        });
+        rethrow(failure);
+    }
+
+    /* Waits until every submitted batch has been processed. */
+    private void drain(Semaphore inFlight, AtomicReference<Throwable> failure)
+            throws IOException {
+        inFlight.acquireUninterruptibly(maxInFlight);
+        inFlight.release(maxInFlight);
+        rethrow(failure);
+    }
+
+    private static void rethrow(AtomicReference<Throwable> failure) throws IOException {
+        Throwable t = failure.get();
+        if (t != null) {
+            throw new IOException("OSM ingestion failed", t);
+        }
+    }
+
+    /***************************************************************************
+     * Worker batches.
+     ***************************************************************************/
+
+    /**
+     * Parsed ids and coordinates of up to NODE_BATCH_SIZE nodes, and the names
+     * of those that have one, added to the node store by a worker.
+     */
+    private class NodeBatch implements Runnable {
+        /* The order in which the reader filled this batch. */
+        private final int sequence = nodeBatchesSubmitted++;
+        private final long[] ids = new long[NODE_BATCH_SIZE];
+        private final double[] lats = new double[NODE_BATCH_SIZE];
+        private final double[] lons = new double[NODE_BATCH_SIZE];
+        private final String[] nodeNameValues = new String[NODE_BATCH_SIZE];
+        private int size;
+
+        void add(long id, double lat, double lon) {
+            ids[size] = id;
+            lats[size] = lat;
+            lons[size] = lon;
+            size++;
+        }
+
+        /* Names the node most recently added. */
+        void setName(String name) {
+            nodeNameValues[size - 1] = name;
+        }
+
+        @Override
+        public void run() {
+            appendNodes(sequence, ids, lats, lons, nodeNameValues, size);
+        }
+    }
+
+    /**
+     * Node refs and names of up to WAY_BATCH_SIZE routable ways, resolved into
+     * edges by a worker.
+     */
+    private class WayBatch implements Runnable {
+        private long[] refs = new long[WAY_BATCH_SIZE * 8];
+        private final int[] ends = new int[WAY_BATCH_SIZE];
+        private final String[] wayNames = new String[WAY_BATCH_SIZE];
+        private int refCount;
+        private int size;
+
+        void addRef(long ref) {
+            if (refCount == refs.length) {
+                refs = Arrays.copyOf(refs, refs.length * 2);
+            }
+            refs[refCount++] = ref;
+        }
+
+        /* Keeps the refs added since the previous way as one way named NAME. */
+        void endWay(String name) {
+            ends[size] = refCount;
+            wayNames[size] = name;
+            size++;
+        }
+
+        /* Drops the refs added since the previous way. */
+        void discardWay() {
+            refCount = size == 0 ? 0 : ends[size - 1];
+        }
+
+        @Override
+        public void run() {
+            int capacity = 2 * refCount;
+            int[] from = new int[capacity];
+            int[] to = new int[capacity];
+            float[] weight = new float[capacity];
+            int[] name = new int[capacity];
+            int count = 0;
+
+            int begin = 0;
+            for (int w = 0; w < size; w++) {
+                int nameId;
+                synchronized (names) {
+                    nameId = names.intern(wayNames[w]);
+                }
+                for (int i = begin; i < ends[w] - 1; i++) {
+                    int u = index.get(refs[i]);
+                    int v = index.get(refs[i + 1]);
+                    if (u == LongIntHashMap.MISSING || v == LongIntHashMap.MISSING) {
+                        continue;
+                    }
+                    float d = (float) StreetMapGraph.distance(nodeLon[u], nodeLon[v],
+                            nodeLat[u], nodeLat[v]);
+                    from[count] = u;
+                    to[count] = v;
+                    weight[count] = d;
+                    name[count++] = nameId;
+                    from[count] = v;
+                    to[count] = u;
+                    weight[count] = d;
+                    name[count++] = nameId;
+                }
+                begin = ends[w];
+            }
+            appendEdges(from, to, weight, name, count);
+        }
+    }
+
+    /***************************************************************************
+     * Shared stores.
+     ***************************************************************************/
+
+    /*
+     * Adds the parsed nodes of the SEQUENCEth node batch, once those of every
+     * earlier batch are in, ignoring ids seen before and, after a first pass,
+     * unnamed nodes no road uses. Batches are handed to workers in order, so
+     * an earlier batch is always running or done.
+     */
+    private synchronized void appendNodes(int sequence, long[] ids, double[] lats, double[] lons,
+                                          String[] nodeNameValues, int count) {
+        while (nodeBatchesAppended != sequence) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while adding nodes", e);
+            }
+        }
+        nodeBatchesAppended++;
+        notifyAll();
+        if (nodeCount + count > nodeIds.length) {
+            int capacity = Math.max(nodeIds.length * 2, nodeCount + count);
+            nodeIds = Arrays.copyOf(nodeIds, capacity);
+            nodeLat = Arrays.copyOf(nodeLat, capacity);
+            nodeLon = Arrays.copyOf(nodeLon, capacity);
+            nodeNames = Arrays.copyOf(nodeNames, capacity);
+        }
+        for (int i = 0; i < count; i++) {
+            if (index.containsKey(ids[i])) {
+                continue;
+            }
+            if (referenced != null && nodeNameValues[i] == null
+                    && !referenced.containsKey(ids[i])) {
+                nodesSkipped++;
+                continue;
+            }
+            index.put(ids[i], nodeCount);
+            nodeIds[nodeCount] = ids[i];
+            nodeLat[nodeCount] = lats[i];
+            nodeLon[nodeCount] = lons[i];
+            synchronized (names) {
+                nodeNames[nodeCount] = names.intern(nodeNameValues[i]);
+            }
+            nodeCount++;
+        }
+    }
+
+    private void appendEdges(int[] from, int[] to, float[] weight, int[] name, int count) {
+        synchronized (edgeLock) {
+            if (edgeCount + count > edgeFrom.length) {
+                int capacity = Math.max(edgeFrom.length * 2, edgeCount + count);
+                edgeFrom = Arrays.copyOf(edgeFrom, capacity);
+                edgeTo = Arrays.copyOf(edgeTo, capacity);
+                edgeWeight = Arrays.copyOf(edgeWeight, capacity);
+                edgeName = Arrays.copyOf(edgeName, capacity);
+            }
+            System.arraycopy(from, 0, edgeFrom, edgeCount, count);
+            System.arraycopy(to, 0, edgeTo, edgeCount, count);
+            System.arraycopy(weight, 0, edgeWeight, edgeCount, count);
+            System.arraycopy(name, 0, edgeName, edgeCount, count);
+            edgeCount += count;
+        }
+    }
+
+    /***************************************************************************
+     * CSR construction.
+     ***************************************************************************/
+
+    /* Prunes orphan nodes and lays the remaining graph out in ascending id order. */
+    private CompactStreetMapGraph build() {
+        int[] degree = new int[nodeCount];
+        for (int e = 0; e < edgeCount; e++) {
+            degree[edgeFrom[e]]++;
+        }
+
+        int kept = 0;
+        for (int v = 0; v < nodeCount; v++) {
+            if (degree[v] > 0 || nodeNames[v] != CompactStreetMapGraph.NO_NAME) {
+                kept++;
+            }
+        }
+        long[] ids = new long[kept];
+        int k = 0;
+        for (int v = 0; v < nodeCount; v++) {
+            if (degree[v] > 0 || nodeNames[v] != CompactStreetMapGraph.NO_NAME) {
+                ids[k++] = nodeIds[v];
+            }
+        }
+        Arrays.parallelSort(ids);
+
+        double[] lat = new double[kept];
+        double[] lon = new double[kept];
+        int[] keptNames = new int[kept];
+        int[] offsets = new int[kept + 1];
+        int[] renumbered = new int[nodeCount];
+        for (int v = 0; v < nodeCount; v++) {
+            int w = Arrays.binarySearch(ids, nodeIds[v]);
+            renumbered[v] = w;
+            if (w >= 0) {
+                lat[w] = nodeLat[v];
+                lon[w] = nodeLon[v];
+                keptNames[w] = nodeNames[v];
+                offsets[w + 1] = degree[v];
+            }
+        }
+        for (int w = 0; w < kept; w++) {
+            offsets[w + 1] += offsets[w];
+        }
+
+        int[] targets = new int[edgeCount];
+        float[] weights = new float[edgeCount];
+        int[] wayNames = new int[edgeCount];
+        int[] next = Arrays.copyOf(offsets, kept);
+        for (int e = 0; e < edgeCount; e++) {
+            int slot = next[renumbered[edgeFrom[e]]]++;
+            targets[slot] = renumbered[edgeTo[e]];
+            weights[slot] = edgeWeight[e];
+            wayNames[slot] = edgeName[e];
+        }
+
+        return new CompactStreetMapGraph(ids, lat, lon, keptNames, offsets, targets, weights,
+                wayNames, names.toArray());
+    }
+
+    /**
+     * Throughput of one ingestion run, for tracking regressions.
+     */
+    public static class IngestStats {
+        private final long nodes;
+        private final long nodesSkipped;
+        private final long ways;
+        private final int vertices;
+        private final int edges;
+        private final double seconds;
+
+        IngestStats(long nodes, long nodesSkipped, long ways, int vertices, int edges,
+                    double seconds) {
+            this.nodes = nodes;
+            this.nodesSkipped = nodesSkipped;
+            this.ways = ways;
+            this.vertices = vertices;
+            this.edges = edges;
+            this.seconds = seconds;
+        }
+
+        /** Returns the number of OSM nodes read. */
+        public long nodes() {
+            return nodes;
+        }
+
+        /** Returns the number of OSM nodes never stored, as no road used them. */
+        public long nodesSkipped() {
+            return nodesSkipped;
+        }
+
+        /** Returns the number of OSM ways read, routable or not. */
+        public long ways() {
+            return ways;
+        }
+
+        /** Returns the number of vertices in the graph built. */
+        public int vertices() {
+            return vertices;
+        }
+
+        /** Returns the number of edges in the graph built, two per road segment. */
+        public int edges() {
+            return edges;
+        }
+
+        public double seconds() {
+            return seconds;
+        }
+
+        public double nodesPerSecond() {
+            return nodes / seconds;
+        }
+
+        public double waysPerSecond() {
+            return ways / seconds;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Ingested %d nodes (%d unused, never stored) and %d ways into "
+                            + "%d vertices and %d edges in %.3f s (%.0f nodes/s, %.0f ways/s)",
+                    nodes, nodesSkipped, ways, vertices, edges, seconds, nodesPerSecond(),
+                    waysPerSecond());
+        }
+    }
+
+    /**
+     * Ingests the OSM file given as the first argument and prints throughput.
+     * An optional second argument sets the number of worker threads.
+     */
+    public static void main(String[] args) throws IOException, XMLStreamException {
+        OsmIngestPipeline pipeline = args.length > 1
+                ? new OsmIngestPipeline(Integer.parseInt(args[1])) : new OsmIngestPipeline();
+        pipeline.ingest(args[0]);
+        System.out.println(pipeline.stats());
+    }
+}
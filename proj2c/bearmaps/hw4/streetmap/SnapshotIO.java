@@ -0,0 +1,116 @@
+package bearmaps.hw4.streetmap;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Helpers for writing primitive arrays and strings to a binary snapshot, and
+ * for reading them back from a (typically memory-mapped) ByteBuffer. Arrays
+ * are written length-prefixed in big-endian order, which is the default byte
+ * order of both DataOutputStream and ByteBuffer.
+ */
+public final class SnapshotIO {
+
+    private SnapshotIO() {
+    }
+
+    public static void writeBytes(DataOutputStream out, byte[] a) throws IOException {
+        out.writeInt(a.length);
+        out.write(a);
+    }
+
+    public static void writeLongs(DataOutputStream out, long[] a) throws IOException {
+        out.writeInt(a.length);
+        for (long x : a) {
+            out.writeLong(x);
+        }
+    }
+
+    public static void writeInts(DataOutputStream out, int[] a) throws IOException {
+        out.writeInt(a.length);
+        for (int x : a) {
+            out.writeInt(x);
+        }
+    }
+
+    public static void writeFloats(DataOutputStream out, float[] a) throws IOException {
+        out.writeInt(a.length);
+        for (float x : a) {
+            out.writeFloat(x);
+        }
+    }
+
+    public static void writeDoubles(DataOutputStream out, double[] a) throws IOException {
+        out.writeInt(a.length);
+        for (double x : a) {
+            out.writeDouble(x);
+        }
+    }
+
+    public static void writeStrings(DataOutputStream out, String[] a) throws IOException {
+        out.writeInt(a.length);
+        for (String s : a) {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    public static byte[] readBytes(ByteBuffer in) {
+        byte[] a = new byte[length(in, Byte.BYTES)];
+        in.get(a);
+        return a;
+    }
+
+    public static long[] readLongs(ByteBuffer in) {
+        long[] a = new long[length(in, Long.BYTES)];
+        in.asLongBuffer().get(a);
+        in.position(in.position() + a.length * Long.BYTES);
+        return a;
+    }
+
+    public static int[] readInts(ByteBuffer in) {
+        int[] a = new int[length(in, Integer.BYTES)];
+        in.asIntBuffer().get(a);
+        in.position(in.position() + a.length * Integer.BYTES);
+        return a;
+    }
+
+    public static float[] readFloats(ByteBuffer in) {
+        float[] a = new float[length(in, Float.BYTES)];
+        in.asFloatBuffer().get(a);
+        in.position(in.position() + a.length * Float.BYTES);
+        return a;
+    }
+
+    public static double[] readDoubles(ByteBuffer in) {
+        double[] a = new double[length(in, Double.BYTES)];
+        in.asDoubleBuffer().get(a);
+        in.position(in.position() + a.length * Double.BYTES);
+        return a;
+    }
+
+    public static String[] readStrings(ByteBuffer in) {
+        String[] a = new String[length(in, Integer.BYTES)];
+        for (int i = 0; i < a.length; i++) {
+            byte[] bytes = new byte[length(in, Byte.BYTES)];
+            in.get(bytes);
+            a[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return a;
+    }
+
+    /* Reads an array length, checking that that many elements of BYTESEACH
+     * bytes remain, so that a corrupt length fails fast rather than
+     * allocating a huge array. */
+    private static int length(ByteBuffer in, int bytesEach) {
+        int n = in.getInt();
+        if (n < 0 || n > in.remaining() / bytesEach) {
+            throw new BufferUnderflowException();
+        }
+        return n;
+    }
+}
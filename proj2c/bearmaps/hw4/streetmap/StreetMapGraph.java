@@ -1,28 +1,32 @@
 package bearmaps.hw4.streetmap;
 
-import bearmaps.hw4.AStarGraph;
+import bearmaps.hw4.ReversibleAStarGraph;
 import bearmaps.hw4.WeightedEdge;
-import org.xml.sax.SAXException;
 
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.parsers.SAXParser;
-import javax.xml.parsers.SAXParserFactory;
-import java.io.File;
-import java.io.FileInputStream;
+import javax.xml.stream.XMLStreamException;
 import java.io.IOException;
 import java.util.*;
 
-public class StreetMapGraph implements AStarGraph<Long> {
-    private Map<Long, Node> nodes = new HashMap<>();
-    private Map<Long, Set<WeightedEdge<Long>>> neighbors = new HashMap<>();
+public class StreetMapGraph implements ReversibleAStarGraph<Long> {
+    private final CompactStreetMapGraph compact;
 
-    private StreetMapGraph() {
+    public StreetMapGraph(String filename) {
+        this(StreetMapGraph.readFromXML(filename));
     }
 
-    public StreetMapGraph(String filename) {
-        StreetMapGraph smg = StreetMapGraph.readFromXML(filename);
-        this.nodes = smg.nodes;
-        this.neighbors = smg.neighbors;
+    /**
+     * Wraps an already frozen graph, e.g. one loaded from a binary snapshot.
+     */
+    protected StreetMapGraph(CompactStreetMapGraph compact) {
+        this.compact = compact;
+    }
+
+    /**
+     * Returns the frozen CSR form of this graph, whose int-indexed cursor
+     * allows allocation-free traversal.
+     */
+    public CompactStreetMapGraph compact() {
+        return compact;
     }
 
     /**
@@ -31,13 +35,16 @@ public class StreetMapGraph implements AStarGraph<Long> {
      **/
     @Override
     public List<WeightedEdge<Long>> neighbors(Long v) {
-        Set<WeightedEdge<Long>> incidentSet = neighbors.get(v);
-        List<WeightedEdge<Long>> incidentList = new ArrayList<>();
-        for (WeightedEdge<Long> e : incidentSet) {
-            incidentList.add(e);
-        }
+        return compact.neighbors(v);
+    }
 
-        return incidentList;
+    /**
+     * Returns the edges entering V, reversed. The reverse adjacency is built
+     * once, on first use.
+     */
+    @Override
+    public List<WeightedEdge<Long>> reverseNeighbors(Long v) {
+        return compact.reverseNeighbors(v);
     }
 
     /**
@@ -46,9 +53,7 @@ public class StreetMapGraph implements AStarGraph<Long> {
      */
     @Override
     public double estimatedDistanceToGoal(Long s, Long goal) {
-        Node sNode = nodes.get(s);
-        Node goalNode = nodes.get(goal);
-        return distance(sNode.lon(), goalNode.lon(), sNode.lat(), goalNode.lat());
+        return compact.estimatedDistanceToGoal(s, goal);
     }
 
     /**
@@ -57,8 +62,8 @@ public class StreetMapGraph implements AStarGraph<Long> {
      **/
     private Set<Long> vertices() {
         Set<Long> vertices = new HashSet<>();
-        for (long id : nodes.keySet()) {
-            vertices.add(id);
+        for (int v = 0; v < compact.vertexCount(); v++) {
+            vertices.add(compact.id(v));
         }
 
         return vertices;
@@ -66,64 +71,15 @@ public class StreetMapGraph implements AStarGraph<Long> {
 
     /**
      * Factory method. Creates and returns a graph from an OSM XML
-     * file. Assumes file is correctly formatted.
+     * file, using the streaming OsmIngestPipeline. Throws an
+     * IllegalStateException if the file cannot be read or parsed, so that
+     * a broken map stops the server at startup.
      */
-    private static StreetMapGraph readFromXML(String filename) {
-        StreetMapGraph smg = new StreetMapGraph();
+    private static CompactStreetMapGraph readFromXML(String filename) {
         try {
-            File inputFile = new File(filename);
-            FileInputStream inputStream = new FileInputStream(inputFile);
-            SAXParserFactory factory = SAXParserFactory.newInstance();
-            SAXParser saxParser = factory.newSAXParser();
-            GraphBuildingHandler gbh = new GraphBuildingHandler(smg);
-            saxParser.parse(inputStream, gbh);
-        } catch (ParserConfigurationException | SAXException | IOException e) {
-            e.printStackTrace();
-        }
-
-        smg.clean();
-        return smg;
-    }
-
-    /** Adds a node to this graph, if it doesn't yet exist. **/
-    void addNode(Node node) {
-        if (!nodes.containsKey(node.id())) {
-            nodes.put(node.id(), node);
-            neighbors.put(node.id(), new HashSet<>());
-        }
-    }
-
-    /** Adds an edge to this graph, if FROMID and TOID are in this graph. Does
-     *  not add additional edge if edge already exists.
-     **/
-    void addWeightedEdge(long fromID, long toID, String name) {
-        if (nodes.containsKey(fromID) && nodes.containsKey(toID)) {
-            Node from = nodes.get(fromID);
-            Node to = nodes.get(toID);
-            double weight = distance(from.lon(), to.lon(), from.lat(), to.lat());
-
-            Set<WeightedEdge<Long>> edgeSet = neighbors.get(fromID);
-            WeightedEdge<Long> weightedEdge = new WeightedEdge<>(from.id(), to.id(), weight);
-            weightedEdge.setName(name);
-            edgeSet.add(weightedEdge);
-        }
-    }
-
-    /**
-     * Removes vertices with 0 out-degree from graph. Note that this will
-     * cause issues if edges are not bidirectional.
-     **/
-    private void clean() {
-        List<Long> toRemove = new ArrayList<>();
-        for (long id : nodes.keySet()) {
-            if (neighbors(id).size() == 0 && nodes.get(id).name() == null) {
-                toRemove.add(id);
-            }
-        }
-
-        for (long id : toRemove) {
-            nodes.remove(id);
-            neighbors.remove(id);
+            return new OsmIngestPipeline().ingest(filename);
+        } catch (XMLStreamException | IOException e) {
+            throw new IllegalStateException("Could not read the map " + filename, e);
         }
     }
 
@@ -179,7 +135,7 @@ public class StreetMapGraph implements AStarGraph<Long> {
      *
      * @source Kevin Lowe & Antares Chen, and https://www.movable-type.co.uk/scripts/latlong.html
      **/
-    private double distance(double lonV, double lonW, double latV, double latW) {
+    protected static double distance(double lonV, double lonW, double latV, double latW) {
         double phi1 = Math.toRadians(latV);
         double phi2 = Math.toRadians(latW);
         double dphi = Math.toRadians(latW - latV);
@@ -197,10 +153,11 @@ public class StreetMapGraph implements AStarGraph<Long> {
      * @return The longitude of the vertex.
      */
     public double lon(long v) {
-        if (!nodes.containsKey(v)) {
+        int index = compact.index(v);
+        if (index < 0) {
             return 0.0;
         }
-        return nodes.get(v).lon();
+        return compact.lon(index);
     }
 
     /**
@@ -209,10 +166,11 @@ public class StreetMapGraph implements AStarGraph<Long> {
      * @return The latitude of the vertex.
      */
     public double lat(long v) {
-        if (!nodes.containsKey(v)) {
+        int index = compact.index(v);
+        if (index < 0) {
             return 0.0;
         }
-        return nodes.get(v).lat();
+        return compact.lat(index);
     }
 
     /**
@@ -221,16 +179,19 @@ public class StreetMapGraph implements AStarGraph<Long> {
      * @return The name of the vertex.
      */
     public String name(long v) {
-        if (!nodes.containsKey(v)) {
+        int index = compact.index(v);
+        if (index < 0) {
             return null;
         }
-        return nodes.get(v).name();
+        return compact.name(index);
     }
 
     protected List<Node> getNodes() {
         List<Node> nodes = new ArrayList<>();
-        for(Map.Entry<Long, Node> nodeEntry: this.nodes.entrySet()){
-            nodes.add(nodeEntry.getValue());
+        for (int v = 0; v < compact.vertexCount(); v++) {
+            Node node = Node.of(compact.id(v), compact.lat(v), compact.lon(v));
+            node.setName(compact.name(v));
+            nodes.add(node);
         }
         return nodes;
     }
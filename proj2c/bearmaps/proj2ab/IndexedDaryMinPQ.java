@@ -0,0 +1,147 @@
+package bearmaps.proj2ab;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * Indexed d-ary min-heap over the int items 0 to capacity - 1, with double
+ * priorities. The position of every item is tracked in a flat array instead
+ * of a HashMap, so changePriority needs no boxing and no hashing, and a
+ * 4-ary layout keeps the heap shallow and each node's children on one cache
+ * line.
+ *
+ * clear() costs time proportional to the current size, not the capacity, so
+ * one queue can be reused across many searches.
+ */
+public class IndexedDaryMinPQ {
+
+    private static final int ARITY = 4;
+    private static final int ABSENT = -1;
+
+    private final int[] heap;           // items in heap order at indices 0 to size - 1
+    private final double[] priorities;  // priority of each item, indexed by item
+    private final int[] positions;      // index of each item in heap, or ABSENT
+    private int size;
+
+    /* Creates an empty priority queue for items 0 to CAPACITY - 1. */
+    public IndexedDaryMinPQ(int capacity) {
+        heap = new int[capacity];
+        priorities = new double[capacity];
+        positions = new int[capacity];
+        Arrays.fill(positions, ABSENT);
+    }
+
+    /* Returns the largest item plus one. */
+    public int capacity() {
+        return positions.length;
+    }
+
+    /* Adds an item with the given priority value. Throws an
+     * IllegalArgumentException if item is already present. */
+    public void add(int item, double priority) {
+        if (contains(item)) throw new IllegalArgumentException("Item already exists");
+        priorities[item] = priority;
+        heap[size] = item;
+        positions[item] = size;
+        swim(size++);
+    }
+
+    /* Returns true if the PQ contains the given item. */
+    public boolean contains(int item) {
+        return positions[item] != ABSENT;
+    }
+
+    /* Returns the minimum item. Throws NoSuchElementException if the PQ is empty. */
+    public int getSmallest() {
+        if (size == 0) throw new NoSuchElementException("Priority queue underflow");
+        return heap[0];
+    }
+
+    /* Returns the priority of the minimum item. Throws NoSuchElementException if
+     * the PQ is empty. */
+    public double smallestPriority() {
+        return priorities[getSmallest()];
+    }
+
+    /* Removes and returns the minimum item. Throws NoSuchElementException if the PQ is empty. */
+    public int removeSmallest() {
+        int result = getSmallest();
+        positions[result] = ABSENT;
+        size--;
+        if (size > 0) {
+            heap[0] = heap[size];
+            positions[heap[0]] = 0;
+            sink(0);
+        }
+        return result;
+    }
+
+    /* Returns the number of items in the PQ. */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /* Changes the priority of the given item. Throws NoSuchElementException if the item
+     * doesn't exist. */
+    public void changePriority(int item, double priority) {
+        if (!contains(item)) throw new NoSuchElementException("Item is not in priority queue");
+        double old = priorities[item];
+        priorities[item] = priority;
+        if (priority < old) {
+            swim(positions[item]);
+        } else {
+            sink(positions[item]);
+        }
+    }
+
+    /* Removes all items. */
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            positions[heap[i]] = ABSENT;
+        }
+        size = 0;
+    }
+
+    /***************************************************************************
+     * Helper functions.
+     ***************************************************************************/
+
+    private void swim(int index) {
+        int item = heap[index];
+        double priority = priorities[item];
+        while (index > 0) {
+            int parent = (index - 1) / ARITY;
+            int parentItem = heap[parent];
+            if (priorities[parentItem] <= priority) break;
+            heap[index] = parentItem;
+            positions[parentItem] = index;
+            index = parent;
+        }
+        heap[index] = item;
+        positions[item] = index;
+    }
+
+    private void sink(int index) {
+        int item = heap[index];
+        double priority = priorities[item];
+        while (true) {
+            int first = index * ARITY + 1;
+            if (first >= size) break;
+            int last = Math.min(first + ARITY, size);
+            int child = first;
+            for (int c = first + 1; c < last; c++) {
+                if (priorities[heap[c]] < priorities[heap[child]]) child = c;
+            }
+            if (priorities[heap[child]] >= priority) break;
+            heap[index] = heap[child];
+            positions[heap[index]] = index;
+            index = child;
+        }
+        heap[index] = item;
+        positions[item] = index;
+    }
+}
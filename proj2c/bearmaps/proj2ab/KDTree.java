@@ -1,49 +1,285 @@
 package bearmaps.proj2ab;
 
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.IntStream;
 
+/**
+ * A 2-d tree stored flat in primitive arrays.
+ *
+ * The tree is implicit in the order of the arrays: the subtree over slots
+ * [lo, hi) is rooted at its middle slot mid = (lo + hi) / 2, with the left
+ * subtree in [lo, mid) and the right in [mid + 1, hi), splitting on x at even
+ * depths and y at odd ones. Construction puts the median of each range at
+ * its middle by quickselect, so the tree is perfectly balanced, and no node
+ * objects or child pointers exist at all. Once a range is split, its two
+ * subtrees share no slots, so large ones are built in parallel on a
+ * ForkJoinPool.
+ *
+ * nearestIndex() walks the tree iteratively, pruning every subtree whose
+ * bounding box lies farther from the target than the best point so far, with
+ * the box distance updated incrementally on each step. It works on squared
+ * distances throughout and, apart from each thread's first call, which sets
+ * up that thread's stack, allocates nothing.
+ */
 public class KDTree implements PointSet {
 
-    // helper class
-    private static class Node {
-        private final Point point;
-        private final boolean dimension;
-        private Node left;
-        private Node right;
+    /* The stack holds at most one pending subtree per level, and a tree of
+     * fewer than 2^31 points has at most 32 levels. */
+    private static final int MAX_DEPTH = 32;
 
-        Node(Point point, boolean dimension) {
-            this.point = point;
-            this.dimension = dimension;
-        }
-    }
+    /* Subtrees smaller than this are built on the current thread, where
+     * forking would cost more than it saves. */
+    private static final int PARALLEL_THRESHOLD = 1 << 13;
+
+    /* Per-thread stack of pending far subtrees: lo, hi and depth in the int
+     * stack, the squared box distance and the offsets on x and y in the
+     * double stack. */
+    private static final ThreadLocal<int[]> INT_STACK =
+            ThreadLocal.withInitial(() -> new int[3 * MAX_DEPTH]);
+    private static final ThreadLocal<double[]> DOUBLE_STACK =
+            ThreadLocal.withInitial(() -> new double[3 * MAX_DEPTH]);
 
-    private static final boolean HORIZONTAL = true;
-    private Node root;
+    private final double[] xs;
+    private final double[] ys;
+    private final int[] ids;        // input index of the point in each slot
+    private final Point[] points;   // the input points by input index, if given as Points
 
     /* Constructor. */
     public KDTree(List<Point> points) {
-        Collections.shuffle(points);
-        for (Point p : points) {
-            root = growTree(root, p, HORIZONTAL); // start at 0th-dimension
+        this(xsOf(points), ysOf(points), points.toArray(new Point[0]), ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Builds a tree over the points (XS[i], YS[i]). nearestIndex() returns
+     * indices into these arrays, which are copied and not modified.
+     */
+    public KDTree(double[] xs, double[] ys) {
+        this(xs, ys, ForkJoinPool.commonPool());
+    }
+
+    /** As KDTree(xs, ys), but building large subtrees in parallel on POOL. */
+    public KDTree(double[] xs, double[] ys, ForkJoinPool pool) {
+        this(xs.clone(), ys.clone(), null, pool);
+    }
+
+    /* Takes ownership of XS and YS, and reorders them into tree order. */
+    private KDTree(double[] xs, double[] ys, Point[] points, ForkJoinPool pool) {
+        if (xs.length != ys.length) {
+            throw new IllegalArgumentException("Coordinate arrays differ in length");
+        }
+        this.xs = xs;
+        this.ys = ys;
+        this.ids = new int[xs.length];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = i;
         }
+        this.points = points;
+        if (xs.length < PARALLEL_THRESHOLD) {
+            build(0, xs.length, 0);
+        } else {
+            pool.invoke(new Build(0, xs.length, 0));
+        }
+    }
+
+    /* Wraps arrays that are already in tree order. */
+    private KDTree(double[] xs, double[] ys, int[] ids) {
+        this.xs = xs;
+        this.ys = ys;
+        this.ids = ids;
+        this.points = null;
+    }
+
+    /**
+     * Rebuilds, without any selection, the tree whose order() was ORDER over
+     * the points (XS[i], YS[i]).
+     */
+    public static KDTree fromOrder(double[] xs, double[] ys, int[] order) {
+        double[] treeXs = new double[order.length];
+        double[] treeYs = new double[order.length];
+        for (int s = 0; s < order.length; s++) {
+            treeXs[s] = xs[order[s]];
+            treeYs[s] = ys[order[s]];
+        }
+        return new KDTree(treeXs, treeYs, order.clone());
+    }
+
+    /** Returns the input index of the point in each slot of the tree. */
+    public int[] order() {
+        return ids.clone();
+    }
+
+    /** Returns the number of points in the tree. */
+    public int size() {
+        return ids.length;
     }
 
     /* Returns the closest point to the inputted coordinates.
      * Should take O(log N) time. */
     @Override
     public Point nearest(double x, double y) {
-        Point target = new Point(x, y);
-        Point result = new Point(Double.MAX_VALUE, Double.MAX_VALUE);
-        return nearest(root, target, result);
+        int s = nearestSlot(x, y);
+        if (s < 0) {
+            return null;
+        }
+        return points != null ? points[ids[s]] : new Point(xs[s], ys[s]);
+    }
+
+    /**
+     * Returns the input index of the point closest to (X, Y), or -1 if the
+     * tree is empty. Ties go to whichever point is found first.
+     */
+    public int nearestIndex(double x, double y) {
+        int s = nearestSlot(x, y);
+        return s < 0 ? -1 : ids[s];
+    }
+
+    /* Returns the slot of the point closest to (X, Y), or -1 if there is none. */
+    private int nearestSlot(double x, double y) {
+        int n = ids.length;
+        if (n == 0) {
+            return -1;
+        }
+        int[] intStack = INT_STACK.get();
+        double[] doubleStack = DOUBLE_STACK.get();
+
+        int best = -1;
+        double bestDist = Double.POSITIVE_INFINITY;
+
+        intStack[0] = 0;
+        intStack[1] = n;
+        intStack[2] = 0;
+        doubleStack[0] = 0;
+        doubleStack[1] = 0;
+        doubleStack[2] = 0;
+        int top = 1;
+
+        while (top > 0) {
+            top--;
+            int lo = intStack[3 * top];
+            int hi = intStack[3 * top + 1];
+            int depth = intStack[3 * top + 2];
+            double boxDist = doubleStack[3 * top];
+            double offX = doubleStack[3 * top + 1];
+            double offY = doubleStack[3 * top + 2];
+            if (boxDist >= bestDist) {
+                continue;
+            }
+
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                double dx = x - xs[mid];
+                double dy = y - ys[mid];
+                double dist = dx * dx + dy * dy;
+                if (dist < bestDist) {
+                    bestDist = dist;
+                    best = mid;
+                }
+
+                /* Descend into the side holding the target; the far side's box
+                 * moves to the splitting line on this axis. */
+                boolean onX = (depth & 1) == 0;
+                double diff = onX ? dx : dy;
+                double oldOff = onX ? offX : offY;
+                double farDist = boxDist - oldOff * oldOff + diff * diff;
+                int nearLo, nearHi, farLo, farHi;
+                if (diff < 0) {
+                    nearLo = lo;
+                    nearHi = mid;
+                    farLo = mid + 1;
+                    farHi = hi;
+                } else {
+                    nearLo = mid + 1;
+                    nearHi = hi;
+                    farLo = lo;
+                    farHi = mid;
+                }
+                if (farLo < farHi && farDist < bestDist) {
+                    intStack[3 * top] = farLo;
+                    intStack[3 * top + 1] = farHi;
+                    intStack[3 * top + 2] = depth + 1;
+                    doubleStack[3 * top] = farDist;
+                    doubleStack[3 * top + 1] = onX ? diff : offX;
+                    doubleStack[3 * top + 2] = onX ? offY : diff;
+                    top++;
+                }
+                lo = nearLo;
+                hi = nearHi;
+                depth++;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns the input indices of the K points closest to (X, Y), closest
+     * first, or of all points if there are fewer than K.
+     */
+    public int[] kNearest(double x, double y, int k) {
+        return kNearest(x, y, k, 1);
+    }
+
+    /**
+     * As kNearest(x, y, k), but measuring distance with x differences scaled
+     * by XSCALE. For longitude and latitude, an XSCALE of the cosine of the
+     * latitude makes this the equirectangular approximation of ground
+     * distance, which is accurate to well under a percent across a city.
+     */
+    public int[] kNearest(double x, double y, int k, double xScale) {
+        if (k <= 0) {
+            return new int[0];
+        }
+        NearestK found = new NearestK(Math.min(k, ids.length));
+        kNearest(0, ids.length, 0, x, y, xScale, 0, 0, 0, found);
+        return found.sortedIds(ids);
+    }
+
+    /** Returns the input indices of all points within distance R of (X, Y), in no particular order. */
+    public int[] withinRadius(double x, double y, double r) {
+        return withinRadius(x, y, r, 1);
+    }
+
+    /**
+     * As withinRadius(x, y, r), but measuring distance with x differences
+     * scaled by XSCALE, as for kNearest. Subtrees are pruned on the scaled
+     * distance to their bounding box, so a radius in latitude degrees around
+     * a point far from the equator does not search a circle in raw degrees,
+     * which would be too narrow east to west.
+     */
+    public int[] withinRadius(double x, double y, double r, double xScale) {
+        IntBuffer found = new IntBuffer();
+        withinRadius(0, ids.length, 0, x, y, xScale, r * r, 0, 0, 0, found);
+        return found.toArray();
+    }
+
+    /**
+     * Returns kNearest(XS[i], YS[i], K) for each query i, answering the
+     * queries in parallel on the common ForkJoinPool.
+     */
+    public int[][] kNearest(double[] xs, double[] ys, int k) {
+        int[][] result = new int[xs.length][];
+        IntStream.range(0, xs.length).parallel().forEach(i -> result[i] = kNearest(xs[i], ys[i], k));
+        return result;
+    }
+
+    /**
+     * Returns withinRadius(XS[i], YS[i], R) for each query i, answering the
+     * queries in parallel on the common ForkJoinPool.
+     */
+    public int[][] withinRadius(double[] xs, double[] ys, double r) {
+        int[][] result = new int[xs.length][];
+        IntStream.range(0, xs.length).parallel().forEach(i -> result[i] = withinRadius(xs[i], ys[i], r));
+        return result;
     }
 
     /* Returns a list of points within the given range.
      * Should take O(log N) time. */
     public List<Point> rangeFinding(double[] range) {
         List<Point> collected = new ArrayList<>();
-        rangeFinding(root, collected, range);
+        rangeFinding(0, ids.length, 0, collected, range);
         return collected;
     }
 
@@ -51,75 +287,305 @@ public class KDTree implements PointSet {
      * Helper functions for construction.
      ***************************************************************************/
 
-    private Node growTree(Node n, Point p, boolean dimension) {
-        if (n == null) return new Node(p, dimension);
-        if (n.point.equals(p)) return n;
+    private static double[] xsOf(List<Point> points) {
+        double[] xs = new double[points.size()];
+        int i = 0;
+        for (Point p : points) {
+            xs[i++] = p.getX();
+        }
+        return xs;
+    }
 
-        int cmp = compare(p, n.point, dimension);
-        if (cmp < 0) n.left = growTree(n.left, p, !dimension);
-        else n.right = growTree(n.right, p, !dimension);
+    private static double[] ysOf(List<Point> points) {
+        double[] ys = new double[points.size()];
+        int i = 0;
+        for (Point p : points) {
+            ys[i++] = p.getY();
+        }
+        return ys;
+    }
 
-        return n;
+    /* Arranges slots [LO, HI) into a subtree splitting on DEPTH's axis. */
+    private void build(int lo, int hi, int depth) {
+        while (hi - lo > 1) {
+            int mid = (lo + hi) >>> 1;
+            select(lo, hi, mid, (depth & 1) == 0 ? xs : ys);
+            build(lo, mid, depth + 1);
+            lo = mid + 1;
+            depth++;
+        }
+    }
+
+    /* Builds a subtree as build() does, forking the left subtree of every
+     * range too large to build on one thread. */
+    private class Build extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int lo;
+        private final int hi;
+        private final int depth;
+
+        Build(int lo, int hi, int depth) {
+            this.lo = lo;
+            this.hi = hi;
+            this.depth = depth;
+        }
+
+        @Override
+        protected void compute() {
+            int lo = this.lo;
+            int depth = this.depth;
+            List<Build> forked = new ArrayList<>();
+            while (hi - lo >= PARALLEL_THRESHOLD) {
+                int mid = (lo + hi) >>> 1;
+                select(lo, hi, mid, (depth & 1) == 0 ? xs : ys);
+                Build left = new Build(lo, mid, depth + 1);
+                left.fork();
+                forked.add(left);
+                lo = mid + 1;
+                depth++;
+            }
+            build(lo, hi, depth);
+            for (Build left : forked) {
+                left.join();
+            }
+        }
+    }
+
+    /* Rearranges slots [LO, HI) so that slot K holds the element that would be
+     * there were they sorted by KEYS, with none greater before it and none
+     * smaller after it. */
+    private void select(int lo, int hi, int k, double[] keys) {
+        hi--;
+        while (hi > lo) {
+            int m = (lo + hi) >>> 1;
+            /* Median of three as the pivot, moved to LO. */
+            if (keys[m] < keys[lo]) swap(m, lo);
+            if (keys[hi] < keys[lo]) swap(hi, lo);
+            if (keys[hi] < keys[m]) swap(hi, m);
+            swap(lo, m);
+            double pivot = keys[lo];
+
+            int i = lo;
+            int j = hi + 1;
+            while (true) {
+                do {
+                    i++;
+                } while (i <= hi && keys[i] < pivot);
+                do {
+                    j--;
+                } while (keys[j] > pivot);
+                if (i >= j) {
+                    break;
+                }
+                swap(i, j);
+            }
+            swap(lo, j);
+
+            if (j == k) {
+                return;
+            } else if (j < k) {
+                lo = j + 1;
+            } else {
+                hi = j - 1;
+            }
+        }
+    }
+
+    private void swap(int a, int b) {
+        double x = xs[a];
+        xs[a] = xs[b];
+        xs[b] = x;
+        double y = ys[a];
+        ys[a] = ys[b];
+        ys[b] = y;
+        int id = ids[a];
+        ids[a] = ids[b];
+        ids[b] = id;
     }
 
     /***************************************************************************
-     * Helper functions for nearest().
+     * Helper functions for kNearest() and withinRadius().
      ***************************************************************************/
 
-    private int compare(Point p1, Point p2, boolean dimension) {
-        if (dimension) return Double.compare(p1.getX(), p2.getX());
-        else return Double.compare(p1.getY(), p2.getY());
-    }
+    /* The K closest slots seen so far, in a max-heap on distance, so the
+     * farthest of them is at the root and is the one to replace. */
+    private static class NearestK {
+        private final double[] dist;
+        private final int[] slot;
+        private int size;
+
+        NearestK(int k) {
+            dist = new double[k];
+            slot = new int[k];
+        }
 
-    private double limit(Node n, Point target, boolean dimension) {
-        Point limitPoint;
-        if (dimension) limitPoint = new Point(n.point.getX(), target.getY());
-        else limitPoint = new Point(target.getX(), n.point.getY());
-        return Point.distance(target, limitPoint);
+        /* Returns the distance a slot must beat to be kept. */
+        double bound() {
+            return size < dist.length ? Double.POSITIVE_INFINITY : dist[0];
+        }
+
+        void offer(int s, double d) {
+            if (d >= bound()) {
+                return;
+            }
+            int i;
+            if (size < dist.length) {
+                i = size++;
+                while (i > 0 && dist[(i - 1) / 2] < d) {
+                    dist[i] = dist[(i - 1) / 2];
+                    slot[i] = slot[(i - 1) / 2];
+                    i = (i - 1) / 2;
+                }
+            } else {
+                i = 0;
+                while (true) {
+                    int child = 2 * i + 1;
+                    if (child >= size) break;
+                    if (child + 1 < size && dist[child + 1] > dist[child]) child++;
+                    if (dist[child] <= d) break;
+                    dist[i] = dist[child];
+                    slot[i] = slot[child];
+                    i = child;
+                }
+            }
+            dist[i] = d;
+            slot[i] = s;
+        }
+
+        /* Empties the heap into the ids of its slots, closest first. */
+        int[] sortedIds(int[] ids) {
+            int[] result = new int[size];
+            while (size > 0) {
+                int s = slot[0];
+                double d = dist[--size];
+                int last = slot[size];
+                result[size] = ids[s];
+                int i = 0;
+                while (true) {
+                    int child = 2 * i + 1;
+                    if (child >= size) break;
+                    if (child + 1 < size && dist[child + 1] > dist[child]) child++;
+                    if (dist[child] <= d) break;
+                    dist[i] = dist[child];
+                    slot[i] = slot[child];
+                    i = child;
+                }
+                dist[i] = d;
+                slot[i] = last;
+            }
+            return result;
+        }
     }
 
-    private Point nearest(Node n, Point target, Point best) {
-        if (n == null) return best;
-        if (Point.distance(n.point, target) < Point.distance(best, target)) best = n.point;
+    /* A growable array of ints. */
+    private static class IntBuffer {
+        private int[] items = new int[16];
+        private int size;
 
-        boolean leftFirst = compare(target, n.point, n.dimension) < 0;
-        boolean badSide = limit(n, target, n.dimension) < Point.distance(target, best);
-        best = nearest(n, target, best, leftFirst, badSide);
+        void add(int item) {
+            if (size == items.length) {
+                items = Arrays.copyOf(items, 2 * size);
+            }
+            items[size++] = item;
+        }
 
-        return best;
+        int[] toArray() {
+            return Arrays.copyOf(items, size);
+        }
     }
 
-    // this is Depth First Search (dfs) ?
-    private Point nearest(Node n, Point target, Point result, boolean leftFirst, boolean badSide) {
-        if (leftFirst) {
-            result = nearest(n.left, target, result);
-            if (badSide) result = nearest(n.right, target, result);
-        } else {
-            result = nearest(n.right, target, result);
-            if (badSide) result = nearest(n.left, target, result);
+    /* Offers every slot in [LO, HI) that might be among the closest to FOUND.
+     * BOXDIST is the scaled squared distance from (X, Y) to the subtree's
+     * bounding box, which lies OFFX and OFFY away on each axis. */
+    private void kNearest(int lo, int hi, int depth, double x, double y, double xScale,
+                          double boxDist, double offX, double offY, NearestK found) {
+        while (lo < hi && boxDist < found.bound()) {
+            int mid = (lo + hi) >>> 1;
+            double dx = (x - xs[mid]) * xScale;
+            double dy = y - ys[mid];
+            found.offer(mid, dx * dx + dy * dy);
+
+            boolean onX = (depth & 1) == 0;
+            double diff = onX ? dx : dy;
+            double oldOff = onX ? offX : offY;
+            double farDist = boxDist - oldOff * oldOff + diff * diff;
+            boolean leftNear = diff < 0;
+            kNearest(leftNear ? lo : mid + 1, leftNear ? mid : hi, depth + 1,
+                    x, y, xScale, boxDist, offX, offY, found);
+            /* Continue into the far side, whose box reaches the splitting line. */
+            if (leftNear) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+            boxDist = farDist;
+            if (onX) {
+                offX = diff;
+            } else {
+                offY = diff;
+            }
+            depth++;
+        }
+    }
+
+    /* Adds to FOUND the ids of all slots in [LO, HI) within scaled squared
+     * distance R2 of (X, Y), with BOXDIST, OFFX and OFFY as for kNearest. */
+    private void withinRadius(int lo, int hi, int depth, double x, double y, double xScale,
+                              double r2, double boxDist, double offX, double offY,
+                              IntBuffer found) {
+        while (lo < hi && boxDist <= r2) {
+            int mid = (lo + hi) >>> 1;
+            double dx = (x - xs[mid]) * xScale;
+            double dy = y - ys[mid];
+            if (dx * dx + dy * dy <= r2) {
+                found.add(ids[mid]);
+            }
+
+            boolean onX = (depth & 1) == 0;
+            double diff = onX ? dx : dy;
+            double oldOff = onX ? offX : offY;
+            double farDist = boxDist - oldOff * oldOff + diff * diff;
+            boolean leftNear = diff < 0;
+            withinRadius(leftNear ? lo : mid + 1, leftNear ? mid : hi, depth + 1,
+                    x, y, xScale, r2, boxDist, offX, offY, found);
+            if (leftNear) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+            boxDist = farDist;
+            if (onX) {
+                offX = diff;
+            } else {
+                offY = diff;
+            }
+            depth++;
         }
-        return result;
     }
 
     /***************************************************************************
      * Helper functions for rangeFinding().
      ***************************************************************************/
 
-    private boolean withinRange(Point p, double[] range) {
-        return p.getX() >= range[0] && p.getX() <= range[1]
-                && p.getY() >= range[2] && p.getY() <= range[3];
+    private boolean withinRange(int s, double[] range) {
+        return xs[s] >= range[0] && xs[s] <= range[1]
+                && ys[s] >= range[2] && ys[s] <= range[3];
     }
 
-    private void rangeFinding(Node n, List<Point> collected, double[] range) {
-        if (n == null) return;
-        if (withinRange(n.point, range)) collected.add(n.point);
+    private void rangeFinding(int lo, int hi, int depth, List<Point> collected, double[] range) {
+        if (lo >= hi) return;
+        int mid = (lo + hi) >>> 1;
+        if (withinRange(mid, range)) {
+            collected.add(points != null ? points[ids[mid]] : new Point(xs[mid], ys[mid]));
+        }
 
-        if (n.dimension) {
-            if (range[0] <= n.point.getX()) rangeFinding(n.left, collected, range);
-            if (range[1] >= n.point.getX()) rangeFinding(n.right, collected, range);
+        if ((depth & 1) == 0) {
+            if (range[0] <= xs[mid]) rangeFinding(lo, mid, depth + 1, collected, range);
+            if (range[1] >= xs[mid]) rangeFinding(mid + 1, hi, depth + 1, collected, range);
         } else {
-            if (range[2] <= n.point.getY()) rangeFinding(n.left, collected, range);
-            if (range[3] >= n.point.getY()) rangeFinding(n.right, collected, range);
+            if (range[2] <= ys[mid]) rangeFinding(lo, mid, depth + 1, collected, range);
+            if (range[3] >= ys[mid]) rangeFinding(mid + 1, hi, depth + 1, collected, range);
         }
     }
 }
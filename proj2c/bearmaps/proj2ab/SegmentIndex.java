@@ -0,0 +1,333 @@
+package bearmaps.proj2ab;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * An R-tree over line segments, bulk loaded by sort-tile-recursive packing
+ * and stored flat in primitive arrays.
+ *
+ * Construction sorts the segments by the x of their midpoints into vertical
+ * slices, sorts each slice by y, and packs consecutive runs of NODE_SIZE into
+ * leaves; each level above is packed from the one below the same way. Every
+ * node keeps the bounding box of everything under it and its children as one
+ * contiguous range, either of nodes on the level below or, for a leaf, of
+ * segment slots.
+ *
+ * nearest() visits nodes best first, in order of the distance from the target
+ * to their boxes, and stops as soon as the next box is farther than the
+ * closest segment found.
+ */
+public class SegmentIndex {
+
+    /* Most children of a node. */
+    private static final int NODE_SIZE = 16;
+
+    /* Segment endpoints and input index, by slot. */
+    private final double[] x0;
+    private final double[] y0;
+    private final double[] x1;
+    private final double[] y1;
+    private final int[] ids;
+
+    /* Per node: its bounding box and its children [first, end). Nodes below
+     * leafCount are leaves, whose children are segment slots. The root is
+     * the last node. */
+    private double[] minX;
+    private double[] maxX;
+    private double[] minY;
+    private double[] maxY;
+    private int[] first;
+    private int[] end;
+    private int leafCount;
+    private int nodes;
+
+    /**
+     * Builds an index over the segments from (X0[i], Y0[i]) to (X1[i], Y1[i]).
+     * nearest() returns indices into these arrays, which are not modified.
+     */
+    public SegmentIndex(double[] x0, double[] y0, double[] x1, double[] y1) {
+        int n = x0.length;
+        if (y0.length != n || x1.length != n || y1.length != n) {
+            throw new IllegalArgumentException("Coordinate arrays differ in length");
+        }
+        double[] cx = new double[n];
+        double[] cy = new double[n];
+        for (int i = 0; i < n; i++) {
+            cx[i] = (x0[i] + x1[i]) / 2;
+            cy[i] = (y0[i] + y1[i]) / 2;
+        }
+        ids = strOrder(cx, cy, n);
+        this.x0 = new double[n];
+        this.y0 = new double[n];
+        this.x1 = new double[n];
+        this.y1 = new double[n];
+        for (int s = 0; s < n; s++) {
+            this.x0[s] = x0[ids[s]];
+            this.y0[s] = y0[ids[s]];
+            this.x1[s] = x1[ids[s]];
+            this.y1[s] = y1[ids[s]];
+        }
+
+        int capacity = Math.max(1, 2 * (n / NODE_SIZE + 1));
+        minX = new double[capacity];
+        maxX = new double[capacity];
+        minY = new double[capacity];
+        maxY = new double[capacity];
+        first = new int[capacity];
+        end = new int[capacity];
+        build(n);
+    }
+
+    /** Returns the number of segments in the index. */
+    public int size() {
+        return ids.length;
+    }
+
+    /**
+     * Returns the input index of the segment closest to (X, Y), or -1 if the
+     * index is empty or no segment is at a comparable distance, as when X or
+     * Y is not a number.
+     */
+    public int nearest(double x, double y) {
+        return nearest(x, y, 1);
+    }
+
+    /**
+     * As nearest(x, y), but measuring distance with x differences scaled by
+     * XSCALE. For longitude and latitude, an XSCALE of the cosine of the
+     * latitude makes this the equirectangular approximation of ground
+     * distance.
+     */
+    public int nearest(double x, double y, double xScale) {
+        if (nodes == 0) {
+            return -1;
+        }
+        int best = -1;
+        double bestDist = Double.POSITIVE_INFINITY;
+        NodeQueue queue = new NodeQueue();
+        queue.push(nodes - 1, boxDistance(nodes - 1, x, y, xScale));
+        while (!queue.isEmpty() && queue.minDistance() < bestDist) {
+            int node = queue.pop();
+            if (node < leafCount) {
+                for (int s = first[node]; s < end[node]; s++) {
+                    double d = segmentDistance(x, y, x0[s], y0[s], x1[s], y1[s], xScale);
+                    if (d < bestDist) {
+                        bestDist = d;
+                        best = s;
+                    }
+                }
+                continue;
+            }
+            for (int c = first[node]; c < end[node]; c++) {
+                double d = boxDistance(c, x, y, xScale);
+                if (d < bestDist) {
+                    queue.push(c, d);
+                }
+            }
+        }
+        return best < 0 ? -1 : ids[best];
+    }
+
+    /**
+     * Returns how far along the segment from (X0, Y0) to (X1, Y1) the point
+     * closest to (X, Y) lies, from 0 at the start to 1 at the end, with x
+     * differences scaled by XSCALE.
+     */
+    public static double projection(double x, double y, double x0, double y0,
+                                    double x1, double y1, double xScale) {
+        double dx = (x1 - x0) * xScale;
+        double dy = y1 - y0;
+        double length2 = dx * dx + dy * dy;
+        if (length2 == 0) {
+            return 0;
+        }
+        double t = ((x - x0) * xScale * dx + (y - y0) * dy) / length2;
+        return Math.max(0, Math.min(1, t));
+    }
+
+    /* Returns the squared scaled distance from (X, Y) to the segment. */
+    private static double segmentDistance(double x, double y, double x0, double y0,
+                                          double x1, double y1, double xScale) {
+        double t = projection(x, y, x0, y0, x1, y1, xScale);
+        double dx = (x0 + t * (x1 - x0) - x) * xScale;
+        double dy = y0 + t * (y1 - y0) - y;
+        return dx * dx + dy * dy;
+    }
+
+    /* Returns the squared scaled distance from (X, Y) to the box of NODE. */
+    private double boxDistance(int node, double x, double y, double xScale) {
+        double dx = Math.max(0, Math.max(minX[node] - x, x - maxX[node])) * xScale;
+        double dy = Math.max(0, Math.max(minY[node] - y, y - maxY[node]));
+        return dx * dx + dy * dy;
+    }
+
+    /***************************************************************************
+     * Helper functions for construction.
+     ***************************************************************************/
+
+    /* Packs the N segment slots into leaves, then each level into the one
+     * above, until a single root remains. */
+    private void build(int n) {
+        if (n == 0) {
+            return;
+        }
+        for (int s = 0; s < n; s += NODE_SIZE) {
+            int node = addNode(s, Math.min(s + NODE_SIZE, n));
+            minX[node] = Double.POSITIVE_INFINITY;
+            maxX[node] = Double.NEGATIVE_INFINITY;
+            minY[node] = Double.POSITIVE_INFINITY;
+            maxY[node] = Double.NEGATIVE_INFINITY;
+            for (int t = s; t < end[node]; t++) {
+                minX[node] = Math.min(minX[node], Math.min(x0[t], x1[t]));
+                maxX[node] = Math.max(maxX[node], Math.max(x0[t], x1[t]));
+                minY[node] = Math.min(minY[node], Math.min(y0[t], y1[t]));
+                maxY[node] = Math.max(maxY[node], Math.max(y0[t], y1[t]));
+            }
+        }
+        leafCount = nodes;
+
+        int levelStart = 0;
+        while (nodes - levelStart > 1) {
+            int levelEnd = nodes;
+            sortLevel(levelStart, levelEnd);
+            for (int c = levelStart; c < levelEnd; c += NODE_SIZE) {
+                int node = addNode(c, Math.min(c + NODE_SIZE, levelEnd));
+                minX[node] = Double.POSITIVE_INFINITY;
+                maxX[node] = Double.NEGATIVE_INFINITY;
+                minY[node] = Double.POSITIVE_INFINITY;
+                maxY[node] = Double.NEGATIVE_INFINITY;
+                for (int child = c; child < end[node]; child++) {
+                    minX[node] = Math.min(minX[node], minX[child]);
+                    maxX[node] = Math.max(maxX[node], maxX[child]);
+                    minY[node] = Math.min(minY[node], minY[child]);
+                    maxY[node] = Math.max(maxY[node], maxY[child]);
+                }
+            }
+            levelStart = levelEnd;
+        }
+    }
+
+    /* Appends a node over children [FIRST, END) and returns its number. */
+    private int addNode(int first, int end) {
+        if (nodes == this.first.length) {
+            int capacity = 2 * nodes;
+            minX = Arrays.copyOf(minX, capacity);
+            maxX = Arrays.copyOf(maxX, capacity);
+            minY = Arrays.copyOf(minY, capacity);
+            maxY = Arrays.copyOf(maxY, capacity);
+            this.first = Arrays.copyOf(this.first, capacity);
+            this.end = Arrays.copyOf(this.end, capacity);
+        }
+        this.first[nodes] = first;
+        this.end[nodes] = end;
+        return nodes++;
+    }
+
+    /* Puts the nodes [LO, HI) of one level into sort-tile-recursive order,
+     * so that runs of NODE_SIZE of them are close together. */
+    private void sortLevel(int lo, int hi) {
+        int n = hi - lo;
+        double[] cx = new double[n];
+        double[] cy = new double[n];
+        for (int i = 0; i < n; i++) {
+            cx[i] = (minX[lo + i] + maxX[lo + i]) / 2;
+            cy[i] = (minY[lo + i] + maxY[lo + i]) / 2;
+        }
+        int[] order = strOrder(cx, cy, n);
+        permute(minX, lo, order);
+        permute(maxX, lo, order);
+        permute(minY, lo, order);
+        permute(maxY, lo, order);
+        permute(first, lo, order);
+        permute(end, lo, order);
+    }
+
+    private static void permute(double[] a, int lo, int[] order) {
+        double[] moved = new double[order.length];
+        for (int i = 0; i < order.length; i++) {
+            moved[i] = a[lo + order[i]];
+        }
+        System.arraycopy(moved, 0, a, lo, moved.length);
+    }
+
+    private static void permute(int[] a, int lo, int[] order) {
+        int[] moved = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            moved[i] = a[lo + order[i]];
+        }
+        System.arraycopy(moved, 0, a, lo, moved.length);
+    }
+
+    /* Returns the indices of the N points (CX[i], CY[i]) in sort-tile-recursive
+     * order: sorted on x into vertical slices of about sqrt(N / NODE_SIZE)
+     * runs each, and each slice sorted on y. */
+    private static int[] strOrder(double[] cx, double[] cy, int n) {
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingDouble(i -> cx[i]));
+        int runs = (n + NODE_SIZE - 1) / NODE_SIZE;
+        int slices = (int) Math.ceil(Math.sqrt(runs));
+        int sliceSize = slices * NODE_SIZE;
+        for (int lo = 0; lo < n; lo += sliceSize) {
+            Arrays.sort(order, lo, Math.min(lo + sliceSize, n), Comparator.comparingDouble(i -> cy[i]));
+        }
+        int[] result = new int[n];
+        for (int i = 0; i < n; i++) {
+            result[i] = order[i];
+        }
+        return result;
+    }
+
+    /* Nodes waiting to be visited, in a min-heap on the distance to their
+     * boxes. */
+    private static class NodeQueue {
+        private double[] dist = new double[32];
+        private int[] node = new int[32];
+        private int size;
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        double minDistance() {
+            return dist[0];
+        }
+
+        void push(int n, double d) {
+            if (size == dist.length) {
+                dist = Arrays.copyOf(dist, 2 * size);
+                node = Arrays.copyOf(node, 2 * size);
+            }
+            int i = size++;
+            while (i > 0 && dist[(i - 1) / 2] > d) {
+                dist[i] = dist[(i - 1) / 2];
+                node[i] = node[(i - 1) / 2];
+                i = (i - 1) / 2;
+            }
+            dist[i] = d;
+            node[i] = n;
+        }
+
+        int pop() {
+            int result = node[0];
+            double d = dist[--size];
+            int last = node[size];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) break;
+                if (child + 1 < size && dist[child + 1] < dist[child]) child++;
+                if (dist[child] >= d) break;
+                dist[i] = dist[child];
+                node[i] = node[child];
+                i = child;
+            }
+            dist[i] = d;
+            node[i] = last;
+            return result;
+        }
+    }
+}
@@ -1,13 +1,18 @@
 package bearmaps.proj2c;
 
-import bearmaps.hw4.streetmap.Node;
+import bearmaps.hw4.streetmap.CompactStreetMapGraph;
+import bearmaps.hw4.streetmap.ContractionHierarchy;
+import bearmaps.hw4.streetmap.DistanceMatrix;
+import bearmaps.hw4.streetmap.Isochrone;
+import bearmaps.hw4.streetmap.Landmarks;
 import bearmaps.hw4.streetmap.StreetMapGraph;
 import bearmaps.proj2ab.KDTree;
-import bearmaps.proj2ab.Point;
 import bearmaps.proj2ab.PointSet;
-import edu.princeton.cs.algs4.TrieSET;
+import bearmaps.proj2ab.SegmentIndex;
+import bearmaps.proj2c.utils.Constants;
 
 import java.util.*;
+import java.util.stream.IntStream;
 
 
 /**
@@ -19,37 +24,314 @@ import java.util.*;
  */
 public class AugmentedStreetMapGraph extends StreetMapGraph {
 
-    private PointSet kdTree;
-    private Map<Point, Node> pointToNode;
-    private TrieSET trie;
-    private Map<String, HashSet<Node>> nameToNode;
+    /** Radius of the earth in the units of StreetMapGraph.distance. */
+    private static final double EARTH_RADIUS_MILES = 3963;
+
+    private KDTree kdTree;
+    private int[] spatialVertices;  // vertex index of each point in kdTree
+    private AutocompleteIndex autocomplete;
+    private FuzzyIndex fuzzy;
+    private NameDictionary names;
+    private volatile ContractionHierarchy hierarchy;
+    private final Object hierarchyLock = new Object();  // held for the whole build
+    private volatile Landmarks landmarks;
+    private volatile SegmentIndex segments;
+    private int[] segmentEdges;     // edge of each segment in segments
 
     public AugmentedStreetMapGraph(String dbPath) {
         super(dbPath);
 
-        List<Point> points = new LinkedList<>();
-        pointToNode = new HashMap<>();
-        nameToNode = new HashMap<>();
-        trie = new TrieSET();
-        for (Node n : this.getNodes()) {
-            if (neighbors(n.id()).size() > 0) {
-                Point p = new Point(n.lon(), n.lat());
-                points.add(p);
-                pointToNode.put(p, n);
+        CompactStreetMapGraph csr = compact();
+        names = new NameDictionary(csr);
+        buildSearchIndexes();
+
+        int routable = 0;
+        for (int v = 0; v < csr.vertexCount(); v++) {
+            if (csr.degree(v) > 0) {
+                routable++;
+            }
+        }
+
+        spatialVertices = new int[routable];
+        int i = 0;
+        for (int v = 0; v < csr.vertexCount(); v++) {
+            if (csr.degree(v) > 0) {
+                spatialVertices[i++] = v;
+            }
+        }
+        kdTree = new KDTree(lons(spatialVertices), lats(spatialVertices));
+    }
+
+    /**
+     * Restores a graph and its indexes from the sections of a binary snapshot.
+     * See GraphSnapshot for the file layout.
+     * @param csr The frozen street graph.
+     * @param spatialOrder Routable vertex indices in the order of the k-d tree.
+     * @param names The cleaned location names and the vertices carrying each.
+     * @param autocomplete The prefix index over the cleaned names.
+     * @param fuzzy The trigram index over the cleaned names.
+     * @param hierarchy The contraction hierarchy of CSR.
+     */
+    AugmentedStreetMapGraph(CompactStreetMapGraph csr, int[] spatialOrder, NameDictionary names,
+                            AutocompleteIndex autocomplete, FuzzyIndex fuzzy,
+                            ContractionHierarchy hierarchy) {
+        super(csr);
+
+        this.names = names;
+        this.autocomplete = autocomplete;
+        this.fuzzy = fuzzy;
+        this.hierarchy = hierarchy;
+
+        spatialVertices = spatialOrder;
+        int[] identity = new int[spatialOrder.length];
+        for (int i = 0; i < identity.length; i++) {
+            identity[i] = i;
+        }
+        kdTree = KDTree.fromOrder(lons(spatialOrder), lats(spatialOrder), identity);
+    }
+
+    /* Returns the longitudes of the vertices VS. */
+    private double[] lons(int[] vs) {
+        double[] lons = new double[vs.length];
+        for (int i = 0; i < vs.length; i++) {
+            lons[i] = compact().lon(vs[i]);
+        }
+        return lons;
+    }
+
+    /* Returns the latitudes of the vertices VS. */
+    private double[] lats(int[] vs) {
+        double[] lats = new double[vs.length];
+        for (int i = 0; i < vs.length; i++) {
+            lats[i] = compact().lat(vs[i]);
+        }
+        return lats;
+    }
+
+    /* Indexes each distinct location name for autocomplete and fuzzy search
+     * under its cleaned form, ranked by how many nodes carry it, so that a
+     * chain with many branches comes before a one-off. */
+    private void buildSearchIndexes() {
+        CompactStreetMapGraph csr = compact();
+        int[] counts = new int[csr.nameCount()];
+        int distinct = 0;
+        for (int v = 0; v < csr.vertexCount(); v++) {
+            int nameId = csr.nameId(v);
+            if (nameId != CompactStreetMapGraph.NO_NAME && counts[nameId]++ == 0) {
+                distinct++;
+            }
+        }
+        String[] keys = new String[distinct];
+        String[] values = new String[distinct];
+        int[] weights = new int[distinct];
+        int i = 0;
+        for (int nameId = 0; nameId < counts.length; nameId++) {
+            if (counts[nameId] > 0) {
+                values[i] = csr.nameOf(nameId);
+                keys[i] = cleanString(values[i]);
+                weights[i] = counts[nameId];
+                i++;
             }
-            if (n.name() != null) {
-                String cleanedName = cleanString(n.name());
-                trie.add(cleanedName);
-                if (!nameToNode.containsKey(cleanedName)) {
-                    nameToNode.put(cleanedName, new HashSet<>());
+        }
+        autocomplete = new AutocompleteIndex(keys, values, weights);
+        fuzzy = new FuzzyIndex(keys, values, weights);
+    }
+
+    /**
+     * Returns the routable vertex indices in the order of the k-d tree, so
+     * that a snapshot can restore the identical tree without rebuilding it.
+     */
+    int[] spatialOrder() {
+        int[] order = kdTree.order();
+        for (int i = 0; i < order.length; i++) {
+            order[i] = spatialVertices[order[i]];
+        }
+        return order;
+    }
+
+    /** Returns the prefix index behind getLocationsByPrefix. */
+    AutocompleteIndex autocompleteIndex() {
+        return autocomplete;
+    }
+
+    /** Returns the trigram index behind fuzzy location search. */
+    FuzzyIndex fuzzyIndex() {
+        return fuzzy;
+    }
+
+    /**
+     * Returns the name index, of each cleaned name and the vertices carrying it.
+     */
+    NameDictionary nameIndex() {
+        return names;
+    }
+
+    /**
+     * Returns the contraction hierarchy of this graph, building it on first use.
+     * Building takes a few seconds; the result is shared by all later queries.
+     */
+    public ContractionHierarchy contractionHierarchy() {
+        ContractionHierarchy ch = hierarchy;
+        if (ch == null) {
+            synchronized (hierarchyLock) {
+                ch = hierarchy;
+                if (ch == null) {
+                    ch = new ContractionHierarchy(compact());
+                    hierarchy = ch;
                 }
-                nameToNode.get(cleanedName).add(n);
             }
         }
+        return ch;
+    }
 
-        kdTree = new KDTree(points);
+    /**
+     * Returns whether the contraction hierarchy has been built, so that
+     * contractionHierarchy will return at once.
+     */
+    public boolean hasContractionHierarchy() {
+        return hierarchy != null;
     }
 
+    /**
+     * Starts building the contraction hierarchy on a background thread, so
+     * that the server can answer routes by A* search meanwhile rather than
+     * wait for it at startup.
+     */
+    public void buildContractionHierarchyInBackground() {
+        Thread builder = new Thread(this::contractionHierarchy, "contraction-hierarchy");
+        builder.setDaemon(true);
+        builder.setPriority(Thread.MIN_PRIORITY);
+        builder.start();
+    }
+
+    /**
+     * Returns the ALT landmarks of this graph, selected on first use as
+     * configured in Constants. As an AStarGraph they give A* search with the
+     * landmark heuristic.
+     */
+    public Landmarks landmarks() {
+        Landmarks l = landmarks;
+        if (l == null) {
+            synchronized (this) {
+                l = landmarks;
+                if (l == null) {
+                    l = new Landmarks(compact(), Constants.LANDMARK_COUNT,
+                            Constants.LANDMARK_SELECTION);
+                    landmarks = l;
+                }
+            }
+        }
+        return l;
+    }
+
+    /**
+     * Returns the index of road segments, building it on first use. Each
+     * street edge is one segment; a two-way street's pair of edges is only
+     * indexed once, as the edge from the lower vertex index.
+     */
+    private SegmentIndex segmentIndex() {
+        SegmentIndex index = segments;
+        if (index == null) {
+            synchronized (this) {
+                index = segments;
+                if (index == null) {
+                    CompactStreetMapGraph csr = compact();
+                    int[] edges = new int[csr.edgeCount()];
+                    int n = 0;
+                    for (int v = 0; v < csr.vertexCount(); v++) {
+                        for (int e = csr.edgeStart(v); e < csr.edgeEnd(v); e++) {
+                            int w = csr.target(e);
+                            if (v < w || !hasEdge(csr, w, v)) {
+                                edges[n++] = e;
+                            }
+                        }
+                    }
+                    segmentEdges = Arrays.copyOf(edges, n);
+                    double[] x0 = new double[n];
+                    double[] y0 = new double[n];
+                    double[] x1 = new double[n];
+                    double[] y1 = new double[n];
+                    for (int i = 0; i < n; i++) {
+                        int e = segmentEdges[i];
+                        int w = csr.target(e);
+                        int v = source(csr, e);
+                        x0[i] = csr.lon(v);
+                        y0[i] = csr.lat(v);
+                        x1[i] = csr.lon(w);
+                        y1[i] = csr.lat(w);
+                    }
+                    index = new SegmentIndex(x0, y0, x1, y1);
+                    segments = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    /* Returns whether CSR has an edge from V to W. */
+    private static boolean hasEdge(CompactStreetMapGraph csr, int v, int w) {
+        for (int e = csr.edgeStart(v); e < csr.edgeEnd(v); e++) {
+            if (csr.target(e) == w) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /* Returns the vertex edge E leaves from. */
+    private static int source(CompactStreetMapGraph csr, int e) {
+        int lo = 0;
+        int hi = csr.vertexCount() - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (csr.edgeStart(mid) <= e) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Returns the point on the street network closest to the given longitude
+     * and latitude, and the street it lies on, as a map of parameters for the
+     * Json response as specified: <br>
+     * "way_name" -> String, The name of the street, or null if it has none. <br>
+     * "lon" -> Number, The longitude of the closest point. <br>
+     * "lat" -> Number, The latitude of the closest point. <br>
+     * "distance" -> Number, The distance to it, in the miles of estimatedDistanceToGoal. <br>
+     * "from" -> Number, The id of the node the street segment starts at. <br>
+     * "to" -> Number, The id of the node it ends at. <br>
+     * Returns null if the graph has no streets.
+     * @param lon The target longitude.
+     * @param lat The target latitude.
+     */
+    public Map<String, Object> nearestStreet(double lon, double lat) {
+        SegmentIndex index = segmentIndex();
+        double xScale = Math.cos(Math.toRadians(lat));
+        int segment = index.nearest(lon, lat, xScale);
+        if (segment < 0) {
+            return null;
+        }
+        CompactStreetMapGraph csr = compact();
+        int e = segmentEdges[segment];
+        int v = source(csr, e);
+        int w = csr.target(e);
+        double t = SegmentIndex.projection(lon, lat, csr.lon(v), csr.lat(v),
+                csr.lon(w), csr.lat(w), xScale);
+        double pointLon = csr.lon(v) + t * (csr.lon(w) - csr.lon(v));
+        double pointLat = csr.lat(v) + t * (csr.lat(w) - csr.lat(v));
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("way_name", csr.wayName(e));
+        result.put("lon", pointLon);
+        result.put("lat", pointLat);
+        result.put("distance", distance(lon, pointLon, lat, pointLat));
+        result.put("from", csr.id(v));
+        result.put("to", csr.id(w));
+        return result;
+    }
 
     /**
      * For Project Part II
@@ -57,31 +339,164 @@ public class AugmentedStreetMapGraph extends StreetMapGraph {
      * @param lon The target longitude.
      * @param lat The target latitude.
      * @return The id of the node in the graph closest to the target.
+     * @throws IllegalStateException if no vertex lies on a road, as for a map
+     * with no roads.
+     * @throws IllegalArgumentException if the target is not a location.
      */
     public long closest(double lon, double lat) {
-        Point p = kdTree.nearest(lon, lat);
-        return pointToNode.get(p).id();
+        int i = kdTree.nearestIndex(lon, lat);
+        if (i < 0) {
+            if (spatialVertices.length == 0) {
+                throw new IllegalStateException("The map has no vertices on roads");
+            }
+            throw new IllegalArgumentException("Not a location: " + lon + ", " + lat);
+        }
+        return compact().id(spatialVertices[i]);
+    }
+
+    /**
+     * Returns the ids of the vertices closest to each of the given points,
+     * as closest does for one, looking them up in parallel.
+     * @param lons The target longitudes.
+     * @param lats The target latitudes, as many as LONS.
+     */
+    public long[] closest(double[] lons, double[] lats) {
+        if (lons.length != lats.length) {
+            throw new IllegalArgumentException("Coordinate arrays differ in length");
+        }
+        return IntStream.range(0, lons.length).parallel()
+                .mapToLong(i -> closest(lons[i], lats[i]))
+                .toArray();
+    }
+
+    /**
+     * Returns the shortest path distances between every pair of the given
+     * vertices, over the contraction hierarchy, which is built on first use.
+     * @param sources The ids of the vertices to measure from.
+     * @param targets The ids of the vertices to measure to.
+     * @return The matrix whose entry [i][j] is the distance from SOURCES[i] to
+     * TARGETS[j], in the miles of estimatedDistanceToGoal, or infinity if
+     * there is no path or either id is not in the graph.
+     */
+    public double[][] distanceMatrix(long[] sources, long[] targets) {
+        CompactStreetMapGraph csr = compact();
+        int[] from = new int[sources.length];
+        for (int i = 0; i < from.length; i++) {
+            from[i] = csr.index(sources[i]);
+        }
+        int[] to = new int[targets.length];
+        for (int j = 0; j < to.length; j++) {
+            to[j] = csr.index(targets[j]);
+        }
+        return DistanceMatrix.compute(contractionHierarchy(), from, to);
+    }
+
+    /**
+     * Returns the vertices within the given shortest path distance of the
+     * vertex closest to the given point.
+     * @param lon The longitude of the point.
+     * @param lat The latitude of the point.
+     * @param miles The distance budget, in the miles of estimatedDistanceToGoal.
+     */
+    public Isochrone isochrone(double lon, double lat, double miles) {
+        CompactStreetMapGraph csr = compact();
+        return Isochrone.compute(csr, new int[]{csr.index(closest(lon, lat))}, miles);
+    }
+
+    /**
+     * Returns the isochrone of each of the given points, as isochrone does
+     * for one, computing them in parallel.
+     * @param lons The longitudes of the points.
+     * @param lats The latitudes of the points, as many as LONS.
+     * @param miles The distance budget, in the miles of estimatedDistanceToGoal.
+     */
+    public Isochrone[] isochrones(double[] lons, double[] lats, double miles) {
+        CompactStreetMapGraph csr = compact();
+        long[] ids = closest(lons, lats);
+        int[][] sources = new int[ids.length][];
+        for (int i = 0; i < ids.length; i++) {
+            sources[i] = new int[]{csr.index(ids[i])};
+        }
+        return Isochrone.compute(csr, sources, miles);
     }
 
 
+    /**
+     * Returns the ids of the K routable vertices closest to the given point,
+     * closest first. Unlike closest, this measures distance on the ground
+     * rather than in raw degrees, with the equirectangular approximation.
+     * @param lon The target longitude.
+     * @param lat The target latitude.
+     * @param k The number of vertices wanted.
+     */
+    public List<Long> kClosest(double lon, double lat, int k) {
+        return ids(kdTree.kNearest(lon, lat, k, Math.cos(Math.toRadians(lat))));
+    }
+
+    /**
+     * Returns the ids of all routable vertices within the given great-circle
+     * distance of the given point, in no particular order.
+     * @param lon The target longitude.
+     * @param lat The target latitude.
+     * @param miles The radius, in the miles of estimatedDistanceToGoal.
+     */
+    public List<Long> withinMiles(double lon, double lat, double miles) {
+        /* The k-d tree finds a superset with a flat approximation: the radius
+         * in degrees of latitude, padded a little, with longitude scaled for
+         * the latitude of the search circle nearest the pole, where degrees
+         * of longitude are shortest. The exact distance then filters it. */
+        double degrees = Math.toDegrees(miles / EARTH_RADIUS_MILES);
+        double poleward = Math.min(90, Math.abs(lat) + degrees);
+        int[] candidates = kdTree.withinRadius(lon, lat, degrees * 1.01,
+                Math.cos(Math.toRadians(poleward)));
+        CompactStreetMapGraph csr = compact();
+        List<Long> result = new ArrayList<>();
+        for (int i : candidates) {
+            int v = spatialVertices[i];
+            if (distance(lon, csr.lon(v), lat, csr.lat(v)) <= miles) {
+                result.add(csr.id(v));
+            }
+        }
+        return result;
+    }
+
+    /* Returns the ids of the vertices at the given positions of spatialVertices. */
+    private List<Long> ids(int[] spatialIndices) {
+        CompactStreetMapGraph csr = compact();
+        List<Long> result = new ArrayList<>(spatialIndices.length);
+        for (int i : spatialIndices) {
+            result.add(csr.id(spatialVertices[i]));
+        }
+        return result;
+    }
+
     /**
      * For Project Part III (gold points)
-     * In linear time, collect all the names of OSM locations that prefix-match the query string.
-     * Runtime should be O(k) where k is the number of words sharing the input prefix.
+     * Collect the names of the most common OSM locations that prefix-match
+     * the query string, at most Constants.AUTOCOMPLETE_LIMIT of them. Runs in
+     * time proportional to the number returned, not the number that match.
      * @param prefix Prefix string to be searched for. Could be any case, with or without
      *               punctuation.
      * @return A <code>List</code> of the full names of locations whose cleaned name matches the
-     * cleaned <code>prefix</code>.
+     * cleaned <code>prefix</code>, most common first, each name only once.
      */
     public List<String> getLocationsByPrefix(String prefix) {
-        List<String> locations = new LinkedList<>();
-        List<String> keys = (List<String>) trie.keysWithPrefix(prefix);
-        for (String key : keys) {
-            for (Node n : nameToNode.get(key)) {
-                locations.add(n.name());
-            }
-        }
-        return locations;
+        return autocomplete.topK(cleanString(prefix), Constants.AUTOCOMPLETE_LIMIT);
+    }
+
+    /**
+     * Collect the names of OSM locations whose cleaned name has a prefix
+     * within the given number of typos of the cleaned query, at most
+     * Constants.AUTOCOMPLETE_LIMIT of them. Names needing the fewest edits
+     * come first, then the most common. The search stops early, with the best
+     * names found so far, after Constants.FUZZY_BUDGET_NANOS.
+     * @param query What the user typed. Could be any case, with or without punctuation.
+     * @param maxEdits The most insertions, deletions and substitutions to allow.
+     * @return A <code>List</code> of the full names of the matching locations.
+     */
+    public List<String> getLocationsFuzzy(String query, int maxEdits) {
+        return fuzzy.search(cleanString(query), maxEdits, Constants.AUTOCOMPLETE_LIMIT,
+                Constants.FUZZY_BUDGET_NANOS);
     }
 
     /**
@@ -99,13 +514,18 @@ public class AugmentedStreetMapGraph extends StreetMapGraph {
      */
     public List<Map<String, Object>> getLocations(String locationName) {
         List<Map<String, Object>> locations = new LinkedList<>();
-        Set<Node> nodes = nameToNode.get(cleanString(locationName));
-        for (Node n : nodes) {
+        int name = names.find(cleanString(locationName));
+        if (name < 0) {
+            return locations;
+        }
+        CompactStreetMapGraph csr = compact();
+        for (int p = names.postingStart(name); p < names.postingEnd(name); p++) {
+            int v = names.vertex(p);
             Map<String, Object> info = new HashMap<>();
-            info.put("lat", n.lat());
-            info.put("lon", n.lon());
-            info.put("name", n.name());
-            info.put("id", n.id());
+            info.put("lat", csr.lat(v));
+            info.put("lon", csr.lon(v));
+            info.put("name", csr.name(v));
+            info.put("id", csr.id(v));
             locations.add(info);
         }
         return locations;
@@ -119,7 +539,7 @@ public class AugmentedStreetMapGraph extends StreetMapGraph {
      * @return Cleaned string.
      */
     private static String cleanString(String s) {
-        return s.replaceAll("[^a-zA-Z ]", "").toLowerCase();
+        return NameDictionary.clean(s);
     }
 
 }
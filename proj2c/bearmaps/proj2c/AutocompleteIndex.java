@@ -0,0 +1,180 @@
+package bearmaps.proj2c;
+
+import bearmaps.hw4.streetmap.SnapshotIO;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Ranked prefix search over a fixed set of names.
+ *
+ * The keys are kept in one sorted array, so the keys with a given prefix are
+ * a contiguous range of it, found by two binary searches. A sparse table
+ * holds, for every position and power of two, the position of the heaviest
+ * key in the run of that length starting there, which answers "heaviest key
+ * in range" in constant time. The top k of a range then come out of a small
+ * heap of subranges: take the heaviest key of the range, and split the range
+ * around it. A query costs O(log n + k log k), however many keys match.
+ *
+ * Immutable, and so safe for use by any number of threads.
+ */
+public class AutocompleteIndex {
+
+    private final String[] keys;        // sorted
+    private final String[] values;      // value returned for each key
+    private final int[] weights;        // rank of each key, heaviest first
+    private final int[][] heaviest;     // heaviest[j][i]: heaviest in [i, i + 2^j)
+
+    /**
+     * Creates an index over KEYS. A search returns VALUES[i] for KEYS[i],
+     * ranked by WEIGHTS[i], heaviest first, with ties going to the key, and
+     * then the value, first in alphabetical order.
+     */
+    public AutocompleteIndex(String[] keys, String[] values, int[] weights) {
+        int n = keys.length;
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.<Integer, String>comparing(i -> keys[i])
+                .thenComparing(i -> values[i]));
+        this.keys = new String[n];
+        this.values = new String[n];
+        this.weights = new int[n];
+        for (int i = 0; i < n; i++) {
+            this.keys[i] = keys[order[i]];
+            this.values[i] = values[order[i]];
+            this.weights[i] = weights[order[i]];
+        }
+
+        int levels = 1;
+        while ((1 << levels) <= n) {
+            levels++;
+        }
+        heaviest = new int[levels][];
+        heaviest[0] = new int[n];
+        for (int i = 0; i < n; i++) {
+            heaviest[0][i] = i;
+        }
+        for (int j = 1; j < levels; j++) {
+            int half = 1 << (j - 1);
+            heaviest[j] = new int[n - (1 << j) + 1];
+            for (int i = 0; i < heaviest[j].length; i++) {
+                heaviest[j][i] = heavier(heaviest[j - 1][i], heaviest[j - 1][i + half]);
+            }
+        }
+    }
+
+    /* Restores an index from the arrays written by write(). */
+    private AutocompleteIndex(String[] keys, String[] values, int[] weights, int[][] heaviest) {
+        if (values.length != keys.length || weights.length != keys.length) {
+            throw new IllegalArgumentException("Autocomplete index arrays differ in length");
+        }
+        this.keys = keys;
+        this.values = values;
+        this.weights = weights;
+        this.heaviest = heaviest;
+    }
+
+    /**
+     * Writes this index to OUT in the layout expected by read(ByteBuffer).
+     */
+    public void write(DataOutputStream out) throws IOException {
+        SnapshotIO.writeStrings(out, keys);
+        SnapshotIO.writeStrings(out, values);
+        SnapshotIO.writeInts(out, weights);
+        out.writeInt(heaviest.length);
+        for (int[] level : heaviest) {
+            SnapshotIO.writeInts(out, level);
+        }
+    }
+
+    /**
+     * Reads an index previously written by write(DataOutputStream), advancing
+     * the position of IN past it.
+     */
+    public static AutocompleteIndex read(ByteBuffer in) {
+        String[] keys = SnapshotIO.readStrings(in);
+        String[] values = SnapshotIO.readStrings(in);
+        int[] weights = SnapshotIO.readInts(in);
+        int levels = in.getInt();
+        if (levels < 0 || levels > Integer.SIZE) {
+            throw new IllegalArgumentException("Bad autocomplete index depth " + levels);
+        }
+        int[][] heaviest = new int[levels][];
+        for (int j = 0; j < levels; j++) {
+            heaviest[j] = SnapshotIO.readInts(in);
+        }
+        return new AutocompleteIndex(keys, values, weights, heaviest);
+    }
+
+    /** Returns the number of keys in the index. */
+    public int size() {
+        return keys.length;
+    }
+
+    /**
+     * Returns the values of the K heaviest keys starting with PREFIX,
+     * heaviest first.
+     */
+    public List<String> topK(String prefix, int k) {
+        int lo = lowerBound(prefix);
+        int hi = lowerBound(prefix + Character.MAX_VALUE);
+        List<String> result = new ArrayList<>(Math.max(0, Math.min(k, hi - lo)));
+        if (lo >= hi || k <= 0) {
+            return result;
+        }
+
+        /* Pending ranges as {lo, hi, heaviest}, heaviest key first. */
+        PriorityQueue<int[]> ranges = new PriorityQueue<>(
+                (a, b) -> a[2] == b[2] ? 0 : heavier(a[2], b[2]) == a[2] ? -1 : 1);
+        ranges.add(new int[]{lo, hi, heaviest(lo, hi)});
+        while (result.size() < k && !ranges.isEmpty()) {
+            int[] range = ranges.poll();
+            int top = range[2];
+            result.add(values[top]);
+            if (range[0] < top) {
+                ranges.add(new int[]{range[0], top, heaviest(range[0], top)});
+            }
+            if (top + 1 < range[1]) {
+                ranges.add(new int[]{top + 1, range[1], heaviest(top + 1, range[1])});
+            }
+        }
+        return result;
+    }
+
+    /* Returns the position of the heaviest key in [LO, HI), which is not empty. */
+    private int heaviest(int lo, int hi) {
+        int j = 31 - Integer.numberOfLeadingZeros(hi - lo);
+        return heavier(heaviest[j][lo], heaviest[j][hi - (1 << j)]);
+    }
+
+    /* Returns whichever of positions A and B ranks first. */
+    private int heavier(int a, int b) {
+        if (weights[a] != weights[b]) {
+            return weights[a] > weights[b] ? a : b;
+        }
+        return Math.min(a, b);
+    }
+
+    /* Returns the position of the first key not less than KEY. */
+    private int lowerBound(String key) {
+        int lo = 0;
+        int hi = keys.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (keys[mid].compareTo(key) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+}
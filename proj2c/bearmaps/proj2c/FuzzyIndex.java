@@ -0,0 +1,313 @@
+package bearmaps.proj2c;
+
+import bearmaps.hw4.streetmap.SnapshotIO;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Typo-tolerant prefix search over a fixed set of names.
+ *
+ * A key matches a query within d edits if some prefix of the key can be
+ * turned into the query by d insertions, deletions or substitutions, so a
+ * query typed halfway with a typo still finds the full name.
+ *
+ * Keys are indexed by their trigrams, after padding the front with two
+ * spaces, so that a query of n characters has n trigrams. Each edit touches
+ * at most three of them, so a key within d edits shares at least n - 3d
+ * trigrams with the query. Counting shared trigrams over the query's posting
+ * lists finds the candidates, which are verified most promising first with
+ * a banded edit distance that gives up as soon as it exceeds d. If the
+ * query is so short that the count rules nothing out, every key is a
+ * candidate.
+ *
+ * Immutable, and so safe for use by any number of threads.
+ */
+public class FuzzyIndex {
+
+    /* Verifications between checks of the clock. */
+    private static final int CLOCK_INTERVAL = 64;
+
+    private final String[] keys;
+    private final String[] values;      // value returned for each key
+    private final int[] weights;        // rank of each key among equal matches
+    private final Map<String, int[]> postings;  // keys containing each trigram, ascending
+    private final Comparator<Match> ranking;
+
+    /**
+     * Creates an index over KEYS, which should already be cleaned. A search
+     * returns VALUES[i] for KEYS[i], and ranks keys matched with equally
+     * few edits by WEIGHTS[i], heaviest first.
+     */
+    public FuzzyIndex(String[] keys, String[] values, int[] weights) {
+        this(keys.clone(), values.clone(), weights.clone(), postings(keys));
+    }
+
+    private FuzzyIndex(String[] keys, String[] values, int[] weights,
+                       Map<String, int[]> postings) {
+        if (values.length != keys.length || weights.length != keys.length) {
+            throw new IllegalArgumentException("Fuzzy index arrays differ in length");
+        }
+        this.keys = keys;
+        this.values = values;
+        this.weights = weights;
+        this.postings = postings;
+        ranking = Comparator.<Match>comparingInt(m -> m.edits)
+                .thenComparingInt(m -> -this.weights[m.key])
+                .thenComparing(m -> this.keys[m.key])
+                .thenComparing(m -> this.values[m.key]);
+    }
+
+    /* Returns the ascending indices of the KEYS containing each trigram. */
+    private static Map<String, int[]> postings(String[] keys) {
+        Map<String, List<Integer>> lists = new HashMap<>();
+        for (int i = 0; i < keys.length; i++) {
+            String padded = "  " + keys[i];
+            String last = null;
+            for (String gram : sortedTrigrams(padded)) {
+                if (!gram.equals(last)) {
+                    lists.computeIfAbsent(gram, g -> new ArrayList<>()).add(i);
+                    last = gram;
+                }
+            }
+        }
+        Map<String, int[]> postings = new HashMap<>();
+        for (Map.Entry<String, List<Integer>> e : lists.entrySet()) {
+            postings.put(e.getKey(), e.getValue().stream().mapToInt(Integer::intValue).toArray());
+        }
+        return postings;
+    }
+
+    /**
+     * Writes this index to OUT in the layout expected by read(ByteBuffer).
+     * The postings are written as their trigrams, then one concatenated list
+     * of keys with the offset at which each trigram's list starts.
+     */
+    public void write(DataOutputStream out) throws IOException {
+        SnapshotIO.writeStrings(out, keys);
+        SnapshotIO.writeStrings(out, values);
+        SnapshotIO.writeInts(out, weights);
+        String[] grams = postings.keySet().toArray(new String[0]);
+        Arrays.sort(grams);
+        int[] offsets = new int[grams.length + 1];
+        for (int g = 0; g < grams.length; g++) {
+            offsets[g + 1] = offsets[g] + postings.get(grams[g]).length;
+        }
+        int[] lists = new int[offsets[grams.length]];
+        for (int g = 0; g < grams.length; g++) {
+            int[] list = postings.get(grams[g]);
+            System.arraycopy(list, 0, lists, offsets[g], list.length);
+        }
+        SnapshotIO.writeStrings(out, grams);
+        SnapshotIO.writeInts(out, offsets);
+        SnapshotIO.writeInts(out, lists);
+    }
+
+    /**
+     * Reads an index previously written by write(DataOutputStream), advancing
+     * the position of IN past it.
+     */
+    public static FuzzyIndex read(ByteBuffer in) {
+        String[] keys = SnapshotIO.readStrings(in);
+        String[] values = SnapshotIO.readStrings(in);
+        int[] weights = SnapshotIO.readInts(in);
+        String[] grams = SnapshotIO.readStrings(in);
+        int[] offsets = SnapshotIO.readInts(in);
+        int[] lists = SnapshotIO.readInts(in);
+        if (offsets.length != grams.length + 1 || offsets[grams.length] != lists.length) {
+            throw new IllegalArgumentException("Bad fuzzy index postings");
+        }
+        Map<String, int[]> postings = new HashMap<>(grams.length * 2);
+        for (int g = 0; g < grams.length; g++) {
+            postings.put(grams[g], Arrays.copyOfRange(lists, offsets[g], offsets[g + 1]));
+        }
+        return new FuzzyIndex(keys, values, weights, postings);
+    }
+
+    /** Returns the number of keys in the index. */
+    public int size() {
+        return keys.length;
+    }
+
+    /**
+     * Returns the values of at most K keys with a prefix within MAXEDITS
+     * edits of QUERY, fewest edits first, then heaviest. Stops verifying
+     * candidates once BUDGETNANOS have passed, returning the best found so
+     * far; candidates sharing the most trigrams with QUERY are tried first.
+     */
+    public List<String> search(String query, int maxEdits, int k, long budgetNanos) {
+        long deadline = System.nanoTime() + budgetNanos;
+        int n = query.length();
+        int threshold = n - 3 * maxEdits;
+
+        /* Candidates, grouped by how many of the query's trigrams they share. */
+        int[] shared = new int[keys.length];
+        int distinct = 0;
+        if (threshold > 0) {
+            String[] grams = sortedTrigrams("  " + query);
+            String last = null;
+            for (String gram : grams) {
+                if (gram.equals(last)) {
+                    continue;
+                }
+                last = gram;
+                distinct++;
+                int[] list = postings.get(gram);
+                if (list != null) {
+                    for (int key : list) {
+                        shared[key]++;
+                    }
+                }
+            }
+            /* Repeated trigrams in the query count once, which lowers the bound. */
+            threshold -= grams.length - distinct;
+        }
+        int[][] byCount = threshold > 0 ? group(shared, threshold, distinct) : new int[][]{allKeys()};
+
+        Match[] best = new Match[0];
+        int verified = 0;
+        int[] row = new int[n + 1];
+        int[] previous = new int[n + 1];
+        search:
+        for (int[] group : byCount) {
+            for (int key : group) {
+                if (++verified % CLOCK_INTERVAL == 0 && System.nanoTime() > deadline) {
+                    break search;
+                }
+                int edits = prefixDistance(query, keys[key], maxEdits, row, previous);
+                if (edits <= maxEdits) {
+                    best = offer(best, new Match(key, edits), k);
+                }
+            }
+        }
+
+        List<String> result = new ArrayList<>(best.length);
+        for (Match m : best) {
+            result.add(values[m.key]);
+        }
+        return result;
+    }
+
+    /* A key and the edits it took to match. */
+    private static class Match {
+        private final int key;
+        private final int edits;
+
+        Match(int key, int edits) {
+            this.key = key;
+            this.edits = edits;
+        }
+    }
+
+    /* Returns BEST, a ranked array of at most K matches, with M added in its
+     * place, or unchanged if M ranks below all K. */
+    private Match[] offer(Match[] best, Match m, int k) {
+        int i = best.length;
+        while (i > 0 && ranking.compare(m, best[i - 1]) < 0) {
+            i--;
+        }
+        if (i >= k) {
+            return best;
+        }
+        Match[] next = Arrays.copyOf(best, Math.min(k, best.length + 1));
+        System.arraycopy(best, i, next, i + 1, next.length - i - 1);
+        next[i] = m;
+        return next;
+    }
+
+    /* Returns the keys sharing at least THRESHOLD trigrams, according to
+     * SHARED, grouped from most shared, MAX, down. */
+    private static int[][] group(int[] shared, int threshold, int max) {
+        int[] sizes = new int[max + 1];
+        for (int count : shared) {
+            if (count >= threshold) {
+                sizes[count]++;
+            }
+        }
+        int[][] groups = new int[max - threshold + 1][];
+        for (int count = max; count >= threshold; count--) {
+            groups[max - count] = new int[sizes[count]];
+        }
+        int[] filled = new int[max + 1];
+        for (int key = 0; key < shared.length; key++) {
+            int count = shared[key];
+            if (count >= threshold) {
+                groups[max - count][filled[count]++] = key;
+            }
+        }
+        return groups;
+    }
+
+    private int[] allKeys() {
+        int[] all = new int[keys.length];
+        for (int i = 0; i < all.length; i++) {
+            all[i] = i;
+        }
+        return all;
+    }
+
+    /* Returns the trigrams of S, sorted. */
+    private static String[] sortedTrigrams(String s) {
+        String[] grams = new String[Math.max(0, s.length() - 2)];
+        for (int i = 0; i < grams.length; i++) {
+            grams[i] = s.substring(i, i + 3);
+        }
+        Arrays.sort(grams);
+        return grams;
+    }
+
+    /**
+     * Returns the fewest edits that turn some prefix of KEY into QUERY, or
+     * MAXEDITS + 1 if that takes more than MAXEDITS. ROW and PREVIOUS are
+     * scratch space of QUERY.length() + 1 entries.
+     *
+     * Row j of the table holds, for each prefix of QUERY, the edits from the
+     * first j characters of KEY; only cells within MAXEDITS of the diagonal
+     * can be small enough to matter.
+     */
+    static int prefixDistance(String query, String key, int maxEdits, int[] row, int[] previous) {
+        int n = query.length();
+        int over = maxEdits + 1;
+        for (int i = 0; i <= n; i++) {
+            previous[i] = Math.min(i, over);
+        }
+        int best = previous[n];
+        for (int j = 1; j <= key.length() && best > 0; j++) {
+            char c = key.charAt(j - 1);
+            int lo = Math.max(1, j - maxEdits);
+            int hi = Math.min(n, j + maxEdits);
+            row[0] = Math.min(j, over);
+            if (lo > 1) {
+                row[lo - 1] = over;
+            }
+            int rowMin = row[0];
+            for (int i = lo; i <= hi; i++) {
+                int cost = previous[i - 1] + (query.charAt(i - 1) == c ? 0 : 1);
+                cost = Math.min(cost, previous[i] + 1);
+                cost = Math.min(cost, row[i - 1] + 1);
+                row[i] = Math.min(cost, over);
+                rowMin = Math.min(rowMin, row[i]);
+            }
+            if (hi < n) {
+                row[hi + 1] = over;
+            }
+            if (hi == n) {
+                best = Math.min(best, row[n]);
+            }
+            if (rowMin >= over) {
+                break;
+            }
+            int[] t = previous;
+            previous = row;
+            row = t;
+        }
+        return best;
+    }
+}
@@ -0,0 +1,128 @@
+package bearmaps.proj2c;
+
+import bearmaps.hw4.streetmap.CompactStreetMapGraph;
+import bearmaps.hw4.streetmap.ContractionHierarchy;
+import bearmaps.hw4.streetmap.SnapshotIO;
+import bearmaps.proj2c.utils.Constants;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Versioned binary snapshot of an AugmentedStreetMapGraph, so that the server
+ * can start without re-parsing the OSM XML.
+ *
+ * Compile a snapshot offline with
+ * <pre>
+ *     java bearmaps.proj2c.GraphSnapshot [osm.xml] [out.snapshot]
+ * </pre>
+ * The file layout is, in order:
+ * <ul>
+ *     <li>header: magic number (long) and format version (int)</li>
+ *     <li>graph: the CSR arrays of the CompactStreetMapGraph</li>
+ *     <li>spatial index: routable vertex indices in k-d tree order</li>
+ *     <li>name index: the arrays of the NameDictionary, which are the packed
+ *     cleaned names and the vertex indices carrying each</li>
+ *     <li>autocomplete index: the sorted keys, values and weights, and the
+ *     sparse table of the heaviest key in each range</li>
+ *     <li>fuzzy index: the keys, values and weights, and the trigram posting
+ *     lists</li>
+ *     <li>contraction hierarchy: the vertex ranks, the edges and shortcuts,
+ *     and the upward and downward adjacency arrays</li>
+ * </ul>
+ * At startup the file is memory-mapped with FileChannel.map, and each section
+ * is bulk-copied out of the mapping into the graph's primitive arrays, so
+ * nothing is rebuilt; the hierarchy is built while writing if it was not
+ * already. A single mapping is limited to 2GB.
+ */
+public class GraphSnapshot {
+
+    /** "BMAPSNAP" in ASCII. */
+    private static final long MAGIC = 0x424D4150534E4150L;
+
+    /** Bump whenever the layout changes; older snapshots are then rejected. */
+    static final int VERSION = 4;
+
+    /**
+     * Writes G to a snapshot file at PATH.
+     */
+    public static void write(AugmentedStreetMapGraph g, String path) throws IOException {
+        CompactStreetMapGraph csr = g.compact();
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(path)))) {
+            out.writeLong(MAGIC);
+            out.writeInt(VERSION);
+            csr.write(out);
+            SnapshotIO.writeInts(out, g.spatialOrder());
+            g.nameIndex().write(out);
+            g.autocompleteIndex().write(out);
+            g.fuzzyIndex().write(out);
+            g.contractionHierarchy().write(out);
+        }
+    }
+
+    /**
+     * Memory-maps the snapshot at PATH and restores the graph it holds.
+     * @throws IOException if the file cannot be read, or is not a snapshot of
+     * the current version.
+     */
+    public static AugmentedStreetMapGraph read(String path) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (in.getLong() != MAGIC) {
+                throw new IOException(path + " is not a graph snapshot");
+            }
+            int version = in.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported snapshot version " + version
+                        + ", expected " + VERSION);
+            }
+            CompactStreetMapGraph csr = CompactStreetMapGraph.read(in);
+            int[] spatialOrder = SnapshotIO.readInts(in);
+            NameDictionary names = NameDictionary.read(in);
+            AutocompleteIndex autocomplete = AutocompleteIndex.read(in);
+            FuzzyIndex fuzzy = FuzzyIndex.read(in);
+            ContractionHierarchy hierarchy = ContractionHierarchy.read(in, csr);
+            return new AugmentedStreetMapGraph(csr, spatialOrder, names, autocomplete, fuzzy,
+                    hierarchy);
+        }
+    }
+
+    /**
+     * Loads the graph from the snapshot at SNAPSHOTPATH if it exists and is
+     * newer than the OSM file at DBPATH, and falls back to parsing DBPATH
+     * otherwise, including when the snapshot is truncated or corrupt.
+     */
+    public static AugmentedStreetMapGraph loadOrParse(String snapshotPath, String dbPath) {
+        File snapshot = new File(snapshotPath);
+        if (snapshot.isFile() && snapshot.lastModified() >= new File(dbPath).lastModified()) {
+            try {
+                return read(snapshotPath);
+            } catch (IOException | RuntimeException e) {
+                /* A damaged file fails inside the array readers, with a
+                 * BufferUnderflowException or a bad array length. */
+                System.err.println("Could not load snapshot " + snapshotPath + " (" + e
+                        + "); parsing " + dbPath + " instead");
+            }
+        }
+        return new AugmentedStreetMapGraph(dbPath);
+    }
+
+    /**
+     * Offline compile step: parses an OSM file and writes its snapshot.
+     * @param args Optional OSM XML path and snapshot path; default to the paths
+     *             in Constants.
+     */
+    public static void main(String[] args) throws IOException {
+        String dbPath = args.length > 0 ? args[0] : Constants.OSM_DB_PATH;
+        String snapshotPath = args.length > 1 ? args[1] : Constants.SNAPSHOT_PATH;
+        write(new AugmentedStreetMapGraph(dbPath), snapshotPath);
+    }
+}
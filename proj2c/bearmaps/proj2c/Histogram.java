@@ -0,0 +1,97 @@
+package bearmaps.proj2c;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A distribution of non-negative longs, such as latencies in nanoseconds,
+ * kept in log-linear buckets in the manner of HdrHistogram.
+ *
+ * Values below 64 get a bucket each. Above that, each power of two is split
+ * into 32 equal buckets, so any value is known to within about 3% in a fixed
+ * 1888 counters, whatever the range recorded. Quantiles are reported as the
+ * largest value of the bucket they fall in.
+ *
+ * Recording is lock-free and safe for use by any number of threads. Reads
+ * made while values are being recorded see some consistent-enough snapshot:
+ * the count, sum and buckets may each be a few recordings apart.
+ */
+public class Histogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = bucketOf(Long.MAX_VALUE) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /** Records VALUE, or 0 if it is negative. */
+    public void record(long value) {
+        value = Math.max(0, value);
+        counts.incrementAndGet(bucketOf(value));
+        count.increment();
+        sum.add(value);
+        if (value > max.get()) {
+            max.accumulateAndGet(value, Math::max);
+        }
+    }
+
+    /** Returns the number of values recorded. */
+    public long count() {
+        return count.sum();
+    }
+
+    /** Returns the sum of the values recorded. */
+    public long sum() {
+        return sum.sum();
+    }
+
+    /** Returns the largest value recorded, or 0 if there are none. */
+    public long max() {
+        return max.get();
+    }
+
+    /**
+     * Returns the smallest value at least the fraction Q of the values
+     * recorded are no greater than, to within the precision of a bucket, or
+     * 0 if there are none.
+     */
+    public long valueAtQuantile(double q) {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += counts.get(i);
+        }
+        long rank = Math.max(1, (long) Math.ceil(q * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(highestValueIn(i), max());
+            }
+        }
+        return 0;
+    }
+
+    /* Returns the bucket VALUE falls in: itself below 2 * SUB_BUCKETS, and
+     * above that SUB_BUCKETS per power of two. */
+    private static int bucketOf(long value) {
+        if (value < 2 * SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift << SUB_BUCKET_BITS) + (int) (value >>> shift);
+    }
+
+    /* Returns the largest value that falls in bucket I. */
+    private static long highestValueIn(int i) {
+        if (i < 2 * SUB_BUCKETS) {
+            return i;
+        }
+        int shift = (i >>> SUB_BUCKET_BITS) - 1;
+        long sub = (i & (SUB_BUCKETS - 1)) + SUB_BUCKETS;
+        return ((sub + 1) << shift) - 1;
+    }
+}
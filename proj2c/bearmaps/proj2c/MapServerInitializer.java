@@ -21,7 +21,18 @@ public class MapServerInitializer {
      **/
     public static void initializeServer(Map<String, APIRouteHandler> apiHandlers){
 
-        Constants.SEMANTIC_STREET_GRAPH = new AugmentedStreetMapGraph(Constants.OSM_DB_PATH);
+        Constants.SEMANTIC_STREET_GRAPH = GraphSnapshot.loadOrParse(Constants.SNAPSHOT_PATH,
+                Constants.OSM_DB_PATH);
+        if (Constants.ROUTING_ENGINE == Router.Engine.CONTRACTION_HIERARCHY) {
+            /* Not in the snapshot; routes are answered by A* until it is built. */
+            Constants.SEMANTIC_STREET_GRAPH.buildContractionHierarchyInBackground();
+        } else if (Constants.ROUTING_ENGINE == Router.Engine.ALT
+                || Constants.ROUTING_ENGINE == Router.Engine.BIDIRECTIONAL_ALT) {
+            Constants.SEMANTIC_STREET_GRAPH.landmarks();
+        }
+        /* Routes live in per-session state and the handlers keep none of their own, so
+         * requests can be served in parallel. */
+        threadPool(Constants.SERVER_THREADS);
         staticFileLocation("/page");
         /* Allow for all origin requests (since this is not an authenticated server, we do not
          * care about CSRF).  */
@@ -31,15 +42,24 @@ public class MapServerInitializer {
             response.header("Access-Control-Allow-Headers", "*");
         });
 
+        addRoutes(apiHandlers);
+    }
+
+    /**
+     * Registers each handler under its path, for GET and, if it accepts them,
+     * for POST requests.
+     **/
+    public static void addRoutes(Map<String, APIRouteHandler> apiHandlers){
         Set<String> paths = new HashSet<>();
         for(Map.Entry<String, APIRouteHandler> apiRoute: apiHandlers.entrySet()){
             if(paths.contains(apiRoute.getKey())){
                 throw new RuntimeException("Duplicate API Path found");
             }
             get("/"+apiRoute.getKey(), apiRoute.getValue());
+            if(apiRoute.getValue().acceptsPost()){
+                post("/"+apiRoute.getKey(), apiRoute.getValue());
+            }
             paths.add(apiRoute.getKey());
         }
-
-
     }
 }
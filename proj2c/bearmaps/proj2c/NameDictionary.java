@@ -0,0 +1,192 @@
+package bearmaps.proj2c;
+
+import bearmaps.hw4.streetmap.CompactStreetMapGraph;
+import bearmaps.hw4.streetmap.SnapshotIO;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The cleaned location names of a graph, and the vertices carrying each.
+ *
+ * Cleaning keeps only ASCII letters and spaces, lowercased, so a cleaned
+ * name is one byte per character. The distinct cleaned names are sorted and
+ * packed back to back into one byte array, and name ids are their positions
+ * in that order, so finding a name is a binary search. The vertices carrying
+ * name i are [postingStart(i), postingEnd(i)) of one array of vertex indices,
+ * in ascending order, in the same layout as the edges of a
+ * CompactStreetMapGraph.
+ *
+ * Immutable, and so safe for use by any number of threads.
+ */
+public class NameDictionary {
+
+    /* What each ASCII character becomes in a cleaned name, or 0 to drop it. */
+    private static final char[] CLEANED = new char[128];
+
+    static {
+        for (char c = 'a'; c <= 'z'; c++) {
+            CLEANED[c] = c;
+            CLEANED[Character.toUpperCase(c)] = c;
+        }
+        CLEANED[' '] = ' ';
+    }
+
+    private final byte[] bytes;             // the sorted names, back to back
+    private final int[] nameOffsets;        // name i is bytes [nameOffsets[i], nameOffsets[i + 1])
+    private final int[] postingOffsets;     // its vertices are [postingOffsets[i], postingOffsets[i + 1])
+    private final int[] vertices;
+
+    private NameDictionary(byte[] bytes, int[] nameOffsets, int[] postingOffsets, int[] vertices) {
+        this.bytes = bytes;
+        this.nameOffsets = nameOffsets;
+        this.postingOffsets = postingOffsets;
+        this.vertices = vertices;
+    }
+
+    /**
+     * Builds the dictionary of the named vertices of CSR. Each distinct name
+     * is cleaned once, however many vertices carry it.
+     */
+    public NameDictionary(CompactStreetMapGraph csr) {
+        String[] cleanedByNameId = new String[csr.nameCount()];
+        Map<String, Integer> counts = new HashMap<>();
+        for (int v = 0; v < csr.vertexCount(); v++) {
+            int nameId = csr.nameId(v);
+            if (nameId == CompactStreetMapGraph.NO_NAME) {
+                continue;
+            }
+            if (cleanedByNameId[nameId] == null) {
+                cleanedByNameId[nameId] = clean(csr.nameOf(nameId));
+            }
+            counts.merge(cleanedByNameId[nameId], 1, Integer::sum);
+        }
+
+        String[] names = counts.keySet().toArray(new String[0]);
+        Arrays.sort(names);
+        Map<String, Integer> ids = new HashMap<>();
+        nameOffsets = new int[names.length + 1];
+        postingOffsets = new int[names.length + 1];
+        for (int i = 0; i < names.length; i++) {
+            ids.put(names[i], i);
+            nameOffsets[i + 1] = nameOffsets[i] + names[i].length();
+            postingOffsets[i + 1] = postingOffsets[i] + counts.get(names[i]);
+        }
+        bytes = new byte[nameOffsets[names.length]];
+        for (int i = 0; i < names.length; i++) {
+            for (int j = 0; j < names[i].length(); j++) {
+                bytes[nameOffsets[i] + j] = (byte) names[i].charAt(j);
+            }
+        }
+
+        vertices = new int[postingOffsets[names.length]];
+        int[] filled = Arrays.copyOf(postingOffsets, names.length);
+        for (int v = 0; v < csr.vertexCount(); v++) {
+            int nameId = csr.nameId(v);
+            if (nameId != CompactStreetMapGraph.NO_NAME) {
+                vertices[filled[ids.get(cleanedByNameId[nameId])]++] = v;
+            }
+        }
+    }
+
+    /**
+     * Returns S with everything but letters and spaces removed, and the
+     * letters lowercased.
+     */
+    public static String clean(String s) {
+        char[] cleaned = new char[s.length()];
+        int n = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < CLEANED.length && CLEANED[c] != 0) {
+                cleaned[n++] = CLEANED[c];
+            }
+        }
+        return new String(cleaned, 0, n);
+    }
+
+    /** Returns the number of distinct cleaned names. */
+    public int size() {
+        return nameOffsets.length - 1;
+    }
+
+    /** Returns the cleaned name with id I. */
+    public String name(int i) {
+        return new String(bytes, nameOffsets[i], nameOffsets[i + 1] - nameOffsets[i],
+                StandardCharsets.US_ASCII);
+    }
+
+    /** Returns the id of the cleaned name CLEANED, or -1 if no vertex carries it. */
+    public int find(String cleaned) {
+        int lo = 0;
+        int hi = size() - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = compare(mid, cleaned);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /** Returns the position in the posting array of the first vertex named I. */
+    public int postingStart(int i) {
+        return postingOffsets[i];
+    }
+
+    /** Returns the position just past the last vertex named I. */
+    public int postingEnd(int i) {
+        return postingOffsets[i + 1];
+    }
+
+    /** Returns the vertex at position P of the posting array. */
+    public int vertex(int p) {
+        return vertices[p];
+    }
+
+    /* Compares name I with S, as String.compareTo would. */
+    private int compare(int i, String s) {
+        int start = nameOffsets[i];
+        int length = nameOffsets[i + 1] - start;
+        int n = Math.min(length, s.length());
+        for (int j = 0; j < n; j++) {
+            int diff = (char) bytes[start + j] - s.charAt(j);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return length - s.length();
+    }
+
+    /**
+     * Writes this dictionary to OUT in the layout expected by read(ByteBuffer).
+     */
+    public void write(DataOutputStream out) throws IOException {
+        SnapshotIO.writeBytes(out, bytes);
+        SnapshotIO.writeInts(out, nameOffsets);
+        SnapshotIO.writeInts(out, postingOffsets);
+        SnapshotIO.writeInts(out, vertices);
+    }
+
+    /**
+     * Reads a dictionary previously written by write(DataOutputStream),
+     * advancing the position of IN past it.
+     */
+    public static NameDictionary read(ByteBuffer in) {
+        byte[] bytes = SnapshotIO.readBytes(in);
+        int[] nameOffsets = SnapshotIO.readInts(in);
+        int[] postingOffsets = SnapshotIO.readInts(in);
+        int[] vertices = SnapshotIO.readInts(in);
+        return new NameDictionary(bytes, nameOffsets, postingOffsets, vertices);
+    }
+}
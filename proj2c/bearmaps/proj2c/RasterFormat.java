@@ -0,0 +1,88 @@
+package bearmaps.proj2c;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+
+/**
+ * The image formats rasters can be encoded in.
+ *
+ * Each takes a quality from 0 to 1, or DEFAULT_QUALITY for the writer's own
+ * default. For JPEG it is the usual lossy quality. PNG is lossless, so there
+ * it trades size for speed instead: 0 compresses hardest and 1 not at all,
+ * which encodes several times faster for interactive panning.
+ */
+public enum RasterFormat {
+    PNG("png", "image/png"),
+    JPEG("jpeg", "image/jpeg");
+
+    /** Quality that leaves the choice of compression to the writer. */
+    public static final float DEFAULT_QUALITY = -1;
+
+    private final String formatName;
+    private final String contentType;
+
+    RasterFormat(String formatName, String contentType) {
+        this.formatName = formatName;
+        this.contentType = contentType;
+    }
+
+    /** Returns the MIME type of images in this format. */
+    public String contentType() {
+        return contentType;
+    }
+
+    /**
+     * Returns the format called NAME, ignoring case, and accepting "jpg" for
+     * JPEG. Throws an IllegalArgumentException for any other name.
+     */
+    public static RasterFormat forName(String name) {
+        switch (name.toLowerCase()) {
+            case "png":
+                return PNG;
+            case "jpg":
+            case "jpeg":
+                return JPEG;
+            default:
+                throw new IllegalArgumentException("Unknown raster format: " + name);
+        }
+    }
+
+    /**
+     * Returns QUALITY clamped to [0, 1], or DEFAULT_QUALITY if it is that or
+     * not a number, so that equal encodings have equal qualities.
+     */
+    public static float normalizeQuality(float quality) {
+        if (quality == DEFAULT_QUALITY || Float.isNaN(quality)) {
+            return DEFAULT_QUALITY;
+        }
+        return Math.max(0, Math.min(1, quality));
+    }
+
+    /** Writes IMG to OUT in this format at QUALITY. */
+    public void write(BufferedImage img, float quality, OutputStream out) throws IOException {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(formatName);
+        if (!writers.hasNext()) {
+            throw new IOException("No writer for " + formatName);
+        }
+        ImageWriter writer = writers.next();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        quality = normalizeQuality(quality);
+        if (quality != DEFAULT_QUALITY && param.canWriteCompressed()) {
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+        }
+        try (ImageOutputStream ios = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(ios);
+            writer.write(null, new IIOImage(img, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+}
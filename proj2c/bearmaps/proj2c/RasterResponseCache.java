@@ -0,0 +1,237 @@
+package bearmaps.proj2c;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Encoded raster images, keyed by the tile range they cover, the route and
+ * isochrone outline drawn over them and how they were encoded, kept up to a
+ * budget in bytes and evicted least recently used first.
+ *
+ * A rendering is fully determined by its key, so a hit is always correct;
+ * the cache also listens to RouteStores and drops the renderings of a route
+ * or outline as soon as the last session holding it replaces or clears it,
+ * rather than letting them age out while holding memory no one is likely to
+ * ask for again. The renderings are indexed by the hash of their route and
+ * outline, so dropping a route's renderings does not scan the whole cache.
+ *
+ * Safe for use by any number of threads.
+ */
+public class RasterResponseCache implements RouteStore.Listener {
+
+    /**
+     * The tile range {depth, xStart, yStart, xEnd, yEnd}, route, isochrone
+     * outline and encoding of a raster.
+     */
+    public static final class Key {
+        private final int[] grid;
+        private final List<Long> route;
+        private final List<Long> outline;
+        private final RasterFormat format;
+        private final float quality;
+        private final int routeHash;
+        private final int outlineHash;
+        private final int hash;
+
+        public Key(int[] grid, List<Long> route, RasterFormat format, float quality) {
+            this(grid, route, Collections.emptyList(), format, quality);
+        }
+
+        public Key(int[] grid, List<Long> route, List<Long> outline, RasterFormat format,
+                   float quality) {
+            this.grid = grid.clone();
+            this.route = route;
+            this.outline = outline;
+            this.format = format;
+            this.quality = quality;
+            this.routeHash = route.hashCode();
+            this.outlineHash = outline.hashCode();
+            this.hash = 31 * (31 * (31 * (31 * Arrays.hashCode(grid) + routeHash) + outlineHash)
+                    + format.hashCode()) + Float.hashCode(quality);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return hash == other.hash && format == other.format && quality == other.quality
+                    && Arrays.equals(grid, other.grid) && route.equals(other.route)
+                    && outline.equals(other.outline);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /** An encoded raster image and its size in pixels. */
+    public static final class Rendering {
+        private final byte[] image;
+        private final int width;
+        private final int height;
+
+        public Rendering(byte[] image, int width, int height) {
+            this.image = image;
+            this.width = width;
+            this.height = height;
+        }
+
+        /** Returns the encoded image, which must not be modified. */
+        public byte[] image() {
+            return image;
+        }
+
+        public int width() {
+            return width;
+        }
+
+        public int height() {
+            return height;
+        }
+
+        private long bytes() {
+            return image.length;
+        }
+    }
+
+    private final long maxBytes;
+    private final RouteStore[] stores;
+    private final LinkedHashMap<Key, Rendering> renderings = new LinkedHashMap<>(64, 0.75f, true);
+    private final Map<Integer, Set<Key>> byRouteHash = new HashMap<>();  // keys drawing each route or outline
+    private long bytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Creates a cache holding at most MAXBYTES of encoded images, which
+     * forgets a route's or outline's renderings once no session of any of
+     * STORES holds it.
+     */
+    public RasterResponseCache(long maxBytes, RouteStore... stores) {
+        this.maxBytes = maxBytes;
+        this.stores = stores.clone();
+        for (RouteStore store : stores) {
+            store.addListener(this);
+        }
+    }
+
+    /** Returns the rendering of KEY, or null if it is not cached. */
+    public Rendering get(Key key) {
+        Rendering rendering;
+        synchronized (this) {
+            rendering = renderings.get(key);
+        }
+        (rendering == null ? misses : hits).incrementAndGet();
+        return rendering;
+    }
+
+    /** Caches RENDERING under KEY, then evicts until the cache fits its budget. */
+    public synchronized void put(Key key, Rendering rendering) {
+        if (rendering.bytes() > maxBytes) {
+            return;
+        }
+        Rendering old = renderings.put(key, rendering);
+        if (old != null) {
+            bytes -= old.bytes();
+        } else {
+            index(key);
+        }
+        bytes += rendering.bytes();
+        Iterator<Map.Entry<Key, Rendering>> eldest = renderings.entrySet().iterator();
+        while (bytes > maxBytes) {
+            Map.Entry<Key, Rendering> e = eldest.next();
+            bytes -= e.getValue().bytes();
+            eldest.remove();
+            unindex(e.getKey());
+        }
+    }
+
+    /**
+     * Drops the renderings with OLDROUTE drawn over them, as a route or
+     * outline, unless another session still holds it.
+     */
+    @Override
+    public void routeChanged(String session, List<Long> oldRoute) {
+        if (oldRoute.isEmpty()) {
+            return;
+        }
+        /* Asking the stores walks their sessions, so it is done before taking
+         * the lock. A session taking up the route meanwhile can only lose its
+         * renderings to a later miss, since every hit is correct. */
+        for (RouteStore store : stores) {
+            if (store.holds(oldRoute)) {
+                return;
+            }
+        }
+        int oldHash = oldRoute.hashCode();
+        synchronized (this) {
+            Set<Key> keys = byRouteHash.get(oldHash);
+            if (keys == null) {
+                return;
+            }
+            for (Key key : new ArrayList<>(keys)) {
+                if (key.routeHash == oldHash && key.route.equals(oldRoute)
+                        || key.outlineHash == oldHash && key.outline.equals(oldRoute)) {
+                    bytes -= renderings.remove(key).bytes();
+                    unindex(key);
+                }
+            }
+        }
+    }
+
+    /** Returns the number of renderings cached. */
+    public synchronized int size() {
+        return renderings.size();
+    }
+
+    /** Returns the bytes of encoded images cached. */
+    public synchronized long bytes() {
+        return bytes;
+    }
+
+    /** Returns the number of lookups answered from the cache. */
+    public long hits() {
+        return hits.get();
+    }
+
+    /** Returns the number of lookups that found nothing. */
+    public long misses() {
+        return misses.get();
+    }
+
+    /* Files KEY under the hashes of its route and outline, if drawn. */
+    private void index(Key key) {
+        if (!key.route.isEmpty()) {
+            byRouteHash.computeIfAbsent(key.routeHash, h -> new HashSet<>()).add(key);
+        }
+        if (!key.outline.isEmpty()) {
+            byRouteHash.computeIfAbsent(key.outlineHash, h -> new HashSet<>()).add(key);
+        }
+    }
+
+    /* Undoes index(KEY). */
+    private void unindex(Key key) {
+        for (int hash : new int[]{key.routeHash, key.outlineHash}) {
+            Set<Key> keys = byRouteHash.get(hash);
+            if (keys != null && keys.remove(key) && keys.isEmpty()) {
+                byRouteHash.remove(hash);
+            }
+        }
+    }
+}
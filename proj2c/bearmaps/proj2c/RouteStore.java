@@ -0,0 +1,149 @@
+package bearmaps.proj2c;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * The route each browser session last asked for, so that concurrent users
+ * no longer share one route list.
+ *
+ * Routes are stored as immutable lists and replaced wholesale, so a raster
+ * request drawing a route never sees another request's half-written one.
+ * A session's route expires once it has gone unread and unwritten for the
+ * time-to-live; expired routes are dropped when read, and all of them are
+ * swept out at most once per time-to-live as new routes are stored.
+ * Listeners hear about every route that is replaced, cleared or expired.
+ *
+ * Safe for use by any number of threads.
+ */
+public class RouteStore {
+
+    /** Told when a session's route is replaced, cleared or expires. */
+    public interface Listener {
+        /** Called after SESSION stops using OLDROUTE, which may be empty. */
+        void routeChanged(String session, List<Long> oldRoute);
+    }
+
+    private static final class Entry {
+        final List<Long> route;
+        final int hash;
+        volatile long lastAccess;
+
+        Entry(List<Long> route, long now) {
+            this.route = route;
+            this.hash = route.hashCode();
+            this.lastAccess = now;
+        }
+    }
+
+    private final Map<String, Entry> routes = new ConcurrentHashMap<>();
+    private final long ttlMillis;
+    private final LongSupplier clock;
+    private final AtomicLong lastSweep;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    /** Creates a store whose routes expire TTLMILLIS after their last use. */
+    public RouteStore(long ttlMillis) {
+        this(ttlMillis, System::currentTimeMillis);
+    }
+
+    /** Creates a store that reads the time in milliseconds from CLOCK. */
+    public RouteStore(long ttlMillis, LongSupplier clock) {
+        if (ttlMillis <= 0) {
+            throw new IllegalArgumentException("TTL must be positive: " + ttlMillis);
+        }
+        this.ttlMillis = ttlMillis;
+        this.clock = clock;
+        this.lastSweep = new AtomicLong(clock.getAsLong());
+    }
+
+    /**
+     * Returns the route of SESSION, or an empty list if it has none, it has
+     * expired or SESSION is null. The returned list is immutable.
+     */
+    public List<Long> get(String session) {
+        Entry entry = session == null ? null : routes.get(session);
+        if (entry == null) {
+            return Collections.emptyList();
+        }
+        long now = clock.getAsLong();
+        if (now - entry.lastAccess > ttlMillis) {
+            if (routes.remove(session, entry)) {
+                changed(session, entry);
+            }
+            return Collections.emptyList();
+        }
+        entry.lastAccess = now;
+        return entry.route;
+    }
+
+    /** Replaces the route of SESSION with a copy of ROUTE. */
+    public void put(String session, List<Long> route) {
+        long now = clock.getAsLong();
+        Entry old = routes.put(session,
+                new Entry(Collections.unmodifiableList(new ArrayList<>(route)), now));
+        changed(session, old);
+        long last = lastSweep.get();
+        if (now - last > ttlMillis && lastSweep.compareAndSet(last, now)) {
+            evictExpired();
+        }
+    }
+
+    /** Forgets the route of SESSION. */
+    public void clear(String session) {
+        changed(session, routes.remove(session));
+    }
+
+    /** Drops every route that has expired. */
+    public void evictExpired() {
+        long now = clock.getAsLong();
+        for (Map.Entry<String, Entry> e : routes.entrySet()) {
+            Entry entry = e.getValue();
+            if (now - entry.lastAccess > ttlMillis && routes.remove(e.getKey(), entry)) {
+                changed(e.getKey(), entry);
+            }
+        }
+    }
+
+    /**
+     * Returns whether some session's unexpired route equals ROUTE. Takes time
+     * linear in the number of sessions.
+     */
+    public boolean holds(List<Long> route) {
+        int hash = route.hashCode();
+        long now = clock.getAsLong();
+        for (Entry entry : routes.values()) {
+            if (entry.hash == hash && now - entry.lastAccess <= ttlMillis
+                    && entry.route.equals(route)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Adds LISTENER to be told of every route change from now on. */
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    /** Returns the number of sessions holding a route, expired or not. */
+    public int size() {
+        return routes.size();
+    }
+
+    /* Tells the listeners that SESSION dropped the route of OLD, if any. */
+    private void changed(String session, Entry old) {
+        if (old == null) {
+            return;
+        }
+        for (Listener listener : listeners) {
+            listener.routeChanged(session, old.route);
+        }
+    }
+}
@@ -1,15 +1,21 @@
 package bearmaps.proj2c;
 
-import bearmaps.hw4.AStarSolver;
-import bearmaps.hw4.WeightedEdge;
+import bearmaps.hw4.BidirectionalAStarSolver;
+import bearmaps.hw4.IndexedAStarSolver;
+import bearmaps.hw4.streetmap.AlternativeRoutes;
+import bearmaps.hw4.streetmap.CHSolver;
+import bearmaps.hw4.streetmap.CompactStreetMapGraph;
 import org.apache.commons.math3.distribution.TDistribution;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import static bearmaps.proj2c.utils.Constants.ALTERNATIVE_ROUTES_BUDGET_NANOS;
+import static bearmaps.proj2c.utils.Constants.METRICS;
+
 /**
  * This class acts as a helper for the RoutingAPIHandler.
  * @author Josh Hug, ______
@@ -29,9 +35,191 @@ public class Router {
      */
     public static List<Long> shortestPath(AugmentedStreetMapGraph g, double stlon, double stlat,
                                           double destlon, double destlat) {
+        return shortestPath(g, stlon, stlat, destlon, destlat, Engine.A_STAR);
+    }
+
+    /**
+     * Shortest path engines. All return paths of identical weight.
+     */
+    public enum Engine {
+        /** A* search with the great-circle heuristic; needs no preprocessing. */
+        A_STAR,
+        /** A* search with the landmark (ALT) heuristic; landmarks are selected
+         *  on first use. */
+        ALT,
+        /** Bidirectional A* search with the landmark heuristic. */
+        BIDIRECTIONAL_ALT,
+        /** Bidirectional query over the graph's contraction hierarchy, which is
+         *  built on first use. */
+        CONTRACTION_HIERARCHY
+    }
+
+    /**
+     * Returns ENGINE, or A_STAR in its place while the contraction hierarchy
+     * it needs is still being built, so that requests never wait for it.
+     */
+    public static Engine readyEngine(AugmentedStreetMapGraph g, Engine engine) {
+        if (engine == Engine.CONTRACTION_HIERARCHY && !g.hasContractionHierarchy()) {
+            return Engine.A_STAR;
+        }
+        return engine;
+    }
+
+    /**
+     * Same as shortestPath above, answered by the given ENGINE.
+     */
+    public static List<Long> shortestPath(AugmentedStreetMapGraph g, double stlon, double stlat,
+                                          double destlon, double destlat, Engine engine) {
+        return shortestRoute(g, stlon, stlat, destlon, destlat, engine).nodes();
+    }
+
+    /**
+     * Same as shortestPath above, but returns the edges taken as well as the
+     * vertices, so that routeDirections need not look them up again.
+     */
+    public static Route shortestRoute(AugmentedStreetMapGraph g, double stlon, double stlat,
+                                      double destlon, double destlat, Engine engine) {
         long src = g.closest(stlon, stlat);
         long dest = g.closest(destlon, destlat);
-        return new AStarSolver<>(g, src, dest, 20).solution();
+        CompactStreetMapGraph csr = g.compact();
+        ServerMetrics.Searches metrics = METRICS.searches(engine.name());
+        switch (engine) {
+            case ALT: {
+                IndexedAStarSolver solver = new IndexedAStarSolver(g.landmarks(),
+                        csr.index(src), csr.index(dest), 20);
+                metrics.record(solver.numStatesExplored(), solver.explorationTime());
+                return new Route(csr, solver.path(), solver.edges());
+            }
+            case BIDIRECTIONAL_ALT: {
+                BidirectionalAStarSolver<Long> solver =
+                        new BidirectionalAStarSolver<>(g.landmarks(), src, dest, 20);
+                metrics.record(solver.numStatesExplored(), solver.explorationTime());
+                return Route.of(csr, solver.solution());
+            }
+            case CONTRACTION_HIERARCHY: {
+                CHSolver solver = new CHSolver(g.contractionHierarchy(), src, dest);
+                metrics.record(solver.numStatesExplored(), solver.explorationTime());
+                if (solver.solution().isEmpty()) {
+                    return new Route(csr, NO_VERTICES, NO_VERTICES);
+                }
+                return new Route(csr, new int[]{csr.index(src)}, solver.edges());
+            }
+            case A_STAR:
+            default: {
+                IndexedAStarSolver solver = new IndexedAStarSolver(csr,
+                        csr.index(src), csr.index(dest), 20);
+                metrics.record(solver.numStatesExplored(), solver.explorationTime());
+                return new Route(csr, solver.path(), solver.edges());
+            }
+        }
+    }
+
+    private static final int[] NO_VERTICES = new int[0];
+
+    /**
+     * Returns up to K routes from the node closest to the start location to
+     * the node closest to the destination, the first a shortest path and the
+     * rest reasonable alternatives to it, shortest first. Alternatives are at
+     * most a quarter longer than the shortest path and differ from every
+     * route before them; there may be none. All come from a single forward
+     * and backward search, as described in AlternativeRoutes, which looks
+     * for alternatives for at most Constants.ALTERNATIVE_ROUTES_BUDGET_NANOS.
+     */
+    public static List<Route> alternativeRoutes(AugmentedStreetMapGraph g, double stlon, double stlat,
+                                                double destlon, double destlat, int k) {
+        CompactStreetMapGraph csr = g.compact();
+        int src = csr.index(g.closest(stlon, stlat));
+        int dest = csr.index(g.closest(destlon, destlat));
+        List<Route> routes = new ArrayList<>();
+        for (int[] edges : AlternativeRoutes.compute(csr, src, dest, k,
+                ALTERNATIVE_ROUTES_BUDGET_NANOS)) {
+            routes.add(new Route(csr, new int[]{src}, edges));
+        }
+        return routes;
+    }
+
+    /**
+     * A path through a CompactStreetMapGraph, as the vertex it starts from and
+     * the edges it takes from there. A route with no start is empty; one that
+     * starts where it ends has a start but no edges.
+     */
+    public static class Route {
+        private final CompactStreetMapGraph graph;
+        private final int start;    // first vertex, or -1 if the route is empty
+        private final int[] edges;
+
+        /* Takes the start from PATH, the vertices of the route, which are
+         * otherwise implied by EDGES. */
+        private Route(CompactStreetMapGraph graph, int[] path, int[] edges) {
+            this.graph = graph;
+            this.start = path.length == 0 ? -1 : path[0];
+            this.edges = edges;
+        }
+
+        /**
+         * Returns the route through GRAPH visiting the vertices with the OSM
+         * ids in IDS, taking the first edge between each consecutive pair.
+         * @throws IllegalArgumentException if some consecutive pair is not
+         * joined by an edge.
+         */
+        public static Route of(CompactStreetMapGraph graph, List<Long> ids) {
+            if (ids.isEmpty()) {
+                return new Route(graph, NO_VERTICES, NO_VERTICES);
+            }
+            int start = graph.index(ids.get(0));
+            int[] edges = new int[ids.size() - 1];
+            int from = start;
+            for (int i = 0; i < edges.length; i++) {
+                int to = graph.index(ids.get(i + 1));
+                int e = from < 0 ? -1 : graph.edgeStart(from);
+                while (e >= 0 && e < graph.edgeEnd(from) && graph.target(e) != to) {
+                    e++;
+                }
+                if (e < 0 || e == graph.edgeEnd(from)) {
+                    throw new IllegalArgumentException("No edge from " + ids.get(i)
+                            + " to " + ids.get(i + 1));
+                }
+                edges[i] = e;
+                from = to;
+            }
+            return new Route(graph, new int[]{start}, edges);
+        }
+
+        /** Returns whether the route has no vertices at all. */
+        public boolean isEmpty() {
+            return start < 0;
+        }
+
+        /** Returns the vertex the route starts from, or -1 if it is empty. */
+        public int start() {
+            return start;
+        }
+
+        /** Returns the edges of the route, in order. Do not modify. */
+        public int[] edges() {
+            return edges;
+        }
+
+        /** Returns the length of the route in miles. */
+        public double miles() {
+            double miles = 0;
+            for (int e : edges) {
+                miles += graph.weight(e);
+            }
+            return miles;
+        }
+
+        /** Returns the OSM ids of the vertices of the route, in order. */
+        public List<Long> nodes() {
+            List<Long> ids = new ArrayList<>(isEmpty() ? 0 : edges.length + 1);
+            if (!isEmpty()) {
+                ids.add(graph.id(start));
+                for (int e : edges) {
+                    ids.add(graph.id(graph.target(e)));
+                }
+            }
+            return ids;
+        }
     }
 
     /**
@@ -44,49 +232,60 @@ public class Router {
      * route.
      */
     public static List<NavigationDirection> routeDirections(AugmentedStreetMapGraph g, List<Long> route) {
+        return routeDirections(g, Route.of(g.compact(), route));
+    }
 
-        List<NavigationDirection> navigation = new LinkedList<>();
+    /**
+     * Same as routeDirections above, for a ROUTE that already knows its
+     * edges. Takes a single pass over them, comparing ways by interned name
+     * id and reading coordinates straight from the graph's arrays.
+     */
+    public static List<NavigationDirection> routeDirections(AugmentedStreetMapGraph g, Route route) {
+        List<NavigationDirection> navigation = new ArrayList<>();
+        CompactStreetMapGraph csr = route.graph;
+        int[] edges = route.edges;
+        if (edges.length == 0) {
+            return navigation;
+        }
         int direction = NavigationDirection.START;
-        String road = null;
+        int road = csr.wayNameId(edges[0]);
         double miles = 0;
-        long prev = 0;
-
-        for (int i = 0; i < route.size() - 1; i++) {
-            long curr = route.get(i);
-            long next = route.get(i + 1);
-            for (WeightedEdge<Long> e : g.neighbors(curr)) {
-                if (e.to().equals(next)) {
-                    String roadName = e.getName() == null ?
-                            NavigationDirection.UNKNOWN_ROAD : e.getName();
-                    road = road == null ? roadName : road;
-                    if (!road.equals(roadName)) {
-                        navigation.add(newND(direction, road, miles));
-                        direction = getDirection(g, prev, curr, next);
-                        road = roadName;
-                        miles = e.weight();
-                    } else {
-                        miles += e.weight();
-                    }
-                    if (i == route.size() - 2) {
-                        navigation.add(newND(direction, road, miles));
-                    }
-                    break;
-                }
+        int prev = -1;
+        int curr = route.start;
+
+        for (int e : edges) {
+            int next = csr.target(e);
+            int roadName = csr.wayNameId(e);
+            if (roadName != road) {
+                navigation.add(newND(direction, wayName(csr, road), miles));
+                direction = getDirection(csr, prev, curr, next);
+                road = roadName;
+                miles = csr.weight(e);
+            } else {
+                miles += csr.weight(e);
             }
             prev = curr;
+            curr = next;
         }
+        navigation.add(newND(direction, wayName(csr, road), miles));
         return navigation;
     }
 
+    /* Returns the name with id NAMEID in CSR, or the unknown road for NO_NAME. */
+    private static String wayName(CompactStreetMapGraph csr, int nameId) {
+        return nameId == CompactStreetMapGraph.NO_NAME
+                ? NavigationDirection.UNKNOWN_ROAD : csr.nameOf(nameId);
+    }
+
     /**
      * Helper method that combines NavigationDirection.bearing and
      * NavigationDirection.getDirection into one method.
      */
-    private static int getDirection(AugmentedStreetMapGraph g, long prev, long curr, long next) {
-        double prevBearing = NavigationDirection.bearing(g.lon(prev),g.lon(curr),
-                g.lat(prev), g.lat(curr));
-        double currBearing = NavigationDirection.bearing(g.lon(curr), g.lon(next),
-                g.lat(curr), g.lat(next));
+    private static int getDirection(CompactStreetMapGraph csr, int prev, int curr, int next) {
+        double prevBearing = NavigationDirection.bearing(csr.lon(prev), csr.lon(curr),
+                csr.lat(prev), csr.lat(curr));
+        double currBearing = NavigationDirection.bearing(csr.lon(curr), csr.lon(next),
+                csr.lat(curr), csr.lat(next));
         return NavigationDirection.getDirection(prevBearing, currBearing);
     }
 
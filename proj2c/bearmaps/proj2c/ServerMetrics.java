@@ -0,0 +1,230 @@
+package bearmaps.proj2c;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * What the map server has been doing: how long each handler takes and how
+ * much it allocates per request, how much searching each route took, and
+ * how well the tile and raster caches are doing. Written out on request in
+ * the plain-text format Prometheus scrapes.
+ *
+ * Handlers look up their Requests once and record into it on every call,
+ * which costs a few atomic adds, two reads of the clock and, where the JVM
+ * can count them, two reads of the thread's allocated bytes.
+ *
+ * Safe for use by any number of threads.
+ */
+public class ServerMetrics {
+
+    /** The quantiles written out for each histogram. */
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    /* Counts the bytes each thread has allocated, or is null if the JVM
+     * cannot. */
+    private static final com.sun.management.ThreadMXBean THREADS = allocationCounter();
+
+    /** The latency and allocation of the requests to one handler. */
+    public static final class Requests {
+        private final Histogram nanos = new Histogram();
+        private final Histogram allocatedBytes = new Histogram();
+
+        private Requests() {
+        }
+
+        /**
+         * Records a request that took NANOS and allocated ALLOCATED bytes, or
+         * -1 if that is not known.
+         */
+        public void record(long nanos, long allocated) {
+            this.nanos.record(nanos);
+            if (allocated >= 0) {
+                allocatedBytes.record(allocated);
+            }
+        }
+
+        /** Returns the latencies recorded, in nanoseconds. */
+        public Histogram nanos() {
+            return nanos;
+        }
+
+        /** Returns the bytes allocated per request recorded. */
+        public Histogram allocatedBytes() {
+            return allocatedBytes;
+        }
+    }
+
+    /** The work done by the searches of one routing engine. */
+    public static final class Searches {
+        private final Histogram states = new Histogram();
+        private final Histogram nanos = new Histogram();
+
+        private Searches() {
+        }
+
+        /** Records a search that explored STATES states in SECONDS. */
+        public void record(int states, double seconds) {
+            this.states.record(states);
+            nanos.record((long) (seconds * NANOS_PER_SECOND));
+        }
+
+        /** Returns the numbers of states explored recorded. */
+        public Histogram states() {
+            return states;
+        }
+
+        /** Returns the search times recorded, in nanoseconds. */
+        public Histogram nanos() {
+            return nanos;
+        }
+    }
+
+    private final ConcurrentMap<String, Requests> requests = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Searches> searches = new ConcurrentHashMap<>();
+    private final LongAdder rasterQueryFailures = new LongAdder();
+
+    /** Returns the metrics of the requests to the handler named HANDLER. */
+    public Requests requests(String handler) {
+        return requests.computeIfAbsent(handler, h -> new Requests());
+    }
+
+    /** Returns the metrics of the searches of the engine named ENGINE. */
+    public Searches searches(String engine) {
+        return searches.computeIfAbsent(engine, e -> new Searches());
+    }
+
+    /** Counts a raster query that could not be rendered, such as one off the map. */
+    public void rasterQueryFailed() {
+        rasterQueryFailures.increment();
+    }
+
+    /** Returns the number of raster queries that could not be rendered. */
+    public long rasterQueryFailures() {
+        return rasterQueryFailures.sum();
+    }
+
+    /**
+     * Returns the number of bytes the calling thread has allocated so far,
+     * or -1 if the JVM does not count them. Only differences between two
+     * calls on one thread mean anything.
+     */
+    public static long threadAllocatedBytes() {
+        return THREADS == null ? -1 : THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Returns every metric in the Prometheus text exposition format, with
+     * the counters of TILES and RASTERS.
+     */
+    public String scrape(TileCache tiles, RasterResponseCache rasters) {
+        StringBuilder out = new StringBuilder();
+        header(out, "bearmaps_request_duration_seconds", "summary",
+                "Time to handle a request, by handler.");
+        for (Map.Entry<String, Requests> e : new TreeMap<>(requests).entrySet()) {
+            summary(out, "bearmaps_request_duration_seconds", "handler", e.getKey(),
+                    e.getValue().nanos, NANOS_PER_SECOND);
+        }
+        header(out, "bearmaps_request_allocated_bytes", "summary",
+                "Bytes allocated by the thread handling a request, by handler.");
+        for (Map.Entry<String, Requests> e : new TreeMap<>(requests).entrySet()) {
+            summary(out, "bearmaps_request_allocated_bytes", "handler", e.getKey(),
+                    e.getValue().allocatedBytes, 1);
+        }
+        header(out, "bearmaps_route_states_explored", "summary",
+                "States explored by a shortest path search, by engine.");
+        for (Map.Entry<String, Searches> e : new TreeMap<>(searches).entrySet()) {
+            summary(out, "bearmaps_route_states_explored", "engine", e.getKey(),
+                    e.getValue().states, 1);
+        }
+        header(out, "bearmaps_route_search_seconds", "summary",
+                "Time spent in a shortest path search, by engine.");
+        for (Map.Entry<String, Searches> e : new TreeMap<>(searches).entrySet()) {
+            summary(out, "bearmaps_route_search_seconds", "engine", e.getKey(),
+                    e.getValue().nanos, NANOS_PER_SECOND);
+        }
+
+        counter(out, "bearmaps_tile_cache_hits_total", "Tile lookups answered from memory.",
+                tiles.hits());
+        counter(out, "bearmaps_tile_cache_misses_total", "Tile lookups that decoded the tile.",
+                tiles.misses());
+        counter(out, "bearmaps_tile_cache_evictions_total", "Tiles evicted to stay within budget.",
+                tiles.evictions());
+        counter(out, "bearmaps_tile_cache_unreadable_total",
+                "Tile lookups that found the tile missing or undecodable.", tiles.unreadable());
+        gauge(out, "bearmaps_tile_cache_bytes", "Bytes of decoded tiles held.", tiles.bytes());
+        counter(out, "bearmaps_raster_cache_hits_total", "Raster lookups answered from memory.",
+                rasters.hits());
+        counter(out, "bearmaps_raster_cache_misses_total", "Raster lookups that had to render.",
+                rasters.misses());
+        gauge(out, "bearmaps_raster_cache_bytes", "Bytes of encoded rasters held.", rasters.bytes());
+        counter(out, "bearmaps_raster_query_failures_total",
+                "Raster queries that could not be rendered, such as those off the map.",
+                rasterQueryFailures());
+        return out.toString();
+    }
+
+    /***************************************************************************
+     * Helper functions.
+     ***************************************************************************/
+
+    private static com.sun.management.ThreadMXBean allocationCounter() {
+        try {
+            java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            if (threads instanceof com.sun.management.ThreadMXBean) {
+                com.sun.management.ThreadMXBean counter = (com.sun.management.ThreadMXBean) threads;
+                if (counter.isThreadAllocatedMemorySupported()) {
+                    counter.setThreadAllocatedMemoryEnabled(true);
+                    return counter;
+                }
+            }
+        } catch (UnsupportedOperationException | SecurityException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    private static void header(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    /* Writes the quantiles, sum and count of H, each value divided by UNIT. */
+    private static void summary(StringBuilder out, String name, String label, String value,
+                                Histogram h, double unit) {
+        String labels = label + "=\"" + escape(value) + "\"";
+        for (double q : QUANTILES) {
+            out.append(name).append('{').append(labels).append(",quantile=\"").append(q)
+                    .append("\"} ").append(number(h.valueAtQuantile(q) / unit)).append('\n');
+        }
+        out.append(name).append("_sum{").append(labels).append("} ")
+                .append(number(h.sum() / unit)).append('\n');
+        out.append(name).append("_count{").append(labels).append("} ")
+                .append(h.count()).append('\n');
+    }
+
+    private static void counter(StringBuilder out, String name, String help, long value) {
+        header(out, name, "counter", help);
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void gauge(StringBuilder out, String name, String help, long value) {
+        header(out, name, "gauge", help);
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    /* Writes whole numbers without a decimal point. */
+    private static String number(double value) {
+        return value == Math.rint(value) && Math.abs(value) < 1e15
+                ? Long.toString((long) value) : Double.toString(value);
+    }
+
+    private static String escape(String label) {
+        return label.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,154 @@
+package bearmaps.proj2c;
+
+import javax.imageio.ImageIO;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decoded map tiles, kept in memory up to a budget in bytes and evicted least
+ * recently used first.
+ *
+ * Tiles are converted to TYPE_INT_RGB as they are loaded, which is both the
+ * layout the raster is composited into, so drawing one is a plain copy, and
+ * a fixed four bytes per pixel, so the budget can be enforced exactly.
+ *
+ * A tile that is missing or cannot be decoded is cached too, as a shared
+ * one-pixel sentinel, so that every raster over it does not try the disk
+ * again; such tiles are counted rather than logged.
+ *
+ * Safe for use by any number of threads. Tiles are decoded outside the lock,
+ * so two threads missing on the same tile at once may both decode it.
+ */
+public class TileCache {
+
+    /* Cached in place of a tile that could not be read. */
+    private static final BufferedImage UNREADABLE =
+            new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+
+    private final long maxBytes;
+    private final LinkedHashMap<String, BufferedImage> tiles = new LinkedHashMap<>(64, 0.75f, true);
+    private long bytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong unreadable = new AtomicLong();
+
+    /** Creates a cache holding at most MAXBYTES of decoded pixels. */
+    public TileCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the tile stored at PATH, decoding it if it is not cached, or
+     * null if it cannot be read.
+     */
+    public BufferedImage get(String path) {
+        BufferedImage tile;
+        synchronized (this) {
+            tile = tiles.get(path);
+        }
+        if (tile != null) {
+            hits.incrementAndGet();
+            return tile == UNREADABLE ? null : tile;
+        }
+        misses.incrementAndGet();
+        tile = load(path);
+        if (tile == null) {
+            unreadable.incrementAndGet();
+            put(path, UNREADABLE);
+            return null;
+        }
+        put(path, tile);
+        return tile;
+    }
+
+    /* Adds TILE under PATH, then evicts until the cache fits its budget. */
+    private synchronized void put(String path, BufferedImage tile) {
+        BufferedImage old = tiles.put(path, tile);
+        if (old != null) {
+            bytes -= sizeOf(old);
+        }
+        bytes += sizeOf(tile);
+        Iterator<Map.Entry<String, BufferedImage>> eldest = tiles.entrySet().iterator();
+        while (bytes > maxBytes && eldest.hasNext()) {
+            Map.Entry<String, BufferedImage> e = eldest.next();
+            if (e.getValue() == tile) {
+                continue;
+            }
+            bytes -= sizeOf(e.getValue());
+            eldest.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    /** Drops every tile. */
+    public synchronized void clear() {
+        tiles.clear();
+        bytes = 0;
+    }
+
+    /** Returns the number of tiles cached. */
+    public synchronized int size() {
+        return tiles.size();
+    }
+
+    /** Returns the bytes of decoded pixels cached. */
+    public synchronized long bytes() {
+        return bytes;
+    }
+
+    /** Returns the number of lookups answered from the cache. */
+    public long hits() {
+        return hits.get();
+    }
+
+    /** Returns the number of lookups that had to decode the tile. */
+    public long misses() {
+        return misses.get();
+    }
+
+    /** Returns the number of tiles evicted to stay within the budget. */
+    public long evictions() {
+        return evictions.get();
+    }
+
+    /** Returns the number of misses on tiles that were missing or could not be decoded. */
+    public long unreadable() {
+        return unreadable.get();
+    }
+
+    /***************************************************************************
+     * Helper functions.
+     ***************************************************************************/
+
+    private static long sizeOf(BufferedImage tile) {
+        return 4L * tile.getWidth() * tile.getHeight();
+    }
+
+    /* Decodes the image at PATH into TYPE_INT_RGB, or returns null if it is
+     * missing or unreadable. */
+    private static BufferedImage load(String path) {
+        BufferedImage decoded;
+        try {
+            decoded = ImageIO.read(new File(path));
+        } catch (IOException e) {
+            return null;
+        }
+        if (decoded == null || decoded.getType() == BufferedImage.TYPE_INT_RGB) {
+            return decoded;
+        }
+        BufferedImage tile = new BufferedImage(decoded.getWidth(), decoded.getHeight(),
+                BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = tile.createGraphics();
+        g.drawImage(decoded, 0, 0, null);
+        g.dispose();
+        return tile;
+    }
+}
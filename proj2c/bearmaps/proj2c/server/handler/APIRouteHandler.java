@@ -1,13 +1,24 @@
 package bearmaps.proj2c.server.handler;
 
+import bearmaps.proj2c.ServerMetrics;
 import com.google.gson.Gson;
 import spark.Request;
 import spark.Response;
 import spark.Route;
 
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
 import java.util.HashMap;
 import java.util.Set;
 
+import static bearmaps.proj2c.utils.Constants.METRICS;
+import static bearmaps.proj2c.utils.Constants.SESSION_COOKIE;
 import static spark.Spark.halt;
 
 /**
@@ -20,19 +31,124 @@ import static spark.Spark.halt;
 public abstract class APIRouteHandler<Req, Res> implements Route {
 
     /** HTTP failed response. */
-    private static final int HALT_RESPONSE = 403;
+    protected static final int HALT_RESPONSE = 403;
+
+    /** HTTP response telling the client its cached copy is still good. */
+    private static final int NOT_MODIFIED = 304;
+
+    /** Random bytes in a session id, and bytes of the tag vouching for them. */
+    private static final int SESSION_BYTES = 16;
+
+    private static final SecureRandom SESSION_RANDOM = new SecureRandom();
+
+    /**
+     * Key this server signs the session ids it issues with, fresh on every
+     * start, so that ids issued before a restart, like the routes they named,
+     * are gone.
+     */
+    private static final SecretKeySpec SESSION_KEY = newSessionKey();
+
+    private static final ThreadLocal<Mac> SESSION_MACS = ThreadLocal.withInitial(() -> {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(SESSION_KEY);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 is unavailable", e);
+        }
+    });
 
     private Gson gson;
 
+    /** Latency and allocation of this handler's requests, halted ones included. */
+    private final ServerMetrics.Requests metrics;
+
     public APIRouteHandler() {
         gson = new Gson();
+        metrics = METRICS.requests(getClass().getSimpleName());
     }
 
     @Override
     public Object handle(Request request, Response response) throws Exception {
-        Req requestParams = parseRequestParams(request);
-        Res result = processRequest(requestParams, response);
-        return buildJsonResponse(result);
+        long allocatedBefore = ServerMetrics.threadAllocatedBytes();
+        long start = System.nanoTime();
+        try {
+            Req requestParams = parseRequestParams(request);
+            String sessionId = usesSession() ? sessionId(request, response) : null;
+            Res result = processRequest(requestParams, sessionId, response);
+            return buildJsonResponse(result);
+        } finally {
+            long allocated = allocatedBefore < 0 ? -1
+                    : ServerMetrics.threadAllocatedBytes() - allocatedBefore;
+            metrics.record(System.nanoTime() - start, allocated);
+        }
+    }
+
+    /**
+     * Whether this handler keeps per-session state, and so needs the id of
+     * the session that sent each request. Only such handlers start sessions:
+     * the others never set a cookie, so their responses stay fit for shared
+     * caches.
+     * @return  whether processRequest should be given the session id
+     */
+    protected boolean usesSession() {
+        return false;
+    }
+
+    /**
+     * Whether this handler also answers POST requests, whose form body holds
+     * the parameters. Handlers taking more data than fits in a URL, which the
+     * server caps at a few kilobytes, override this.
+     * @return  whether the handler is registered for POST as well as GET
+     */
+    public boolean acceptsPost() {
+        return false;
+    }
+
+    /**
+     * Returns the id of the browser session that sent the request, taken from
+     * the session cookie. Only ids this server issued are accepted, so a
+     * client cannot pick, or guess, another session's id. A request without
+     * one starts a new session, whose id is handed back in an HttpOnly cookie.
+     * @param request   the request object received
+     * @param response  response object, to set the cookie on
+     * @return  the session id
+     */
+    protected static String sessionId(Request request, Response response) {
+        String id = request.cookie(SESSION_COOKIE);
+        if (id == null || !issued(id)) {
+            byte[] random = new byte[SESSION_BYTES];
+            SESSION_RANDOM.nextBytes(random);
+            String nonce = Base64.getUrlEncoder().withoutPadding().encodeToString(random);
+            id = nonce + "." + sessionTag(nonce);
+            response.cookie("/", SESSION_COOKIE, id, -1, false, true);
+        }
+        return id;
+    }
+
+    /* Returns a random key for signing session ids. */
+    private static SecretKeySpec newSessionKey() {
+        byte[] key = new byte[32];
+        SESSION_RANDOM.nextBytes(key);
+        return new SecretKeySpec(key, "HmacSHA256");
+    }
+
+    /* Whether ID is a nonce followed by the tag this server gives it. */
+    private static boolean issued(String id) {
+        int dot = id.indexOf('.');
+        if (dot < 0) {
+            return false;
+        }
+        return MessageDigest.isEqual(
+                sessionTag(id.substring(0, dot)).getBytes(StandardCharsets.US_ASCII),
+                id.substring(dot + 1).getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /* Returns the signature of NONCE under this server's session key. */
+    private static String sessionTag(String nonce) {
+        byte[] mac = SESSION_MACS.get().doFinal(nonce.getBytes(StandardCharsets.US_ASCII));
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(Arrays.copyOf(mac, SESSION_BYTES));
     }
 
     /**
@@ -50,6 +166,22 @@ public abstract class APIRouteHandler<Req, Res> implements Route {
      */
     protected abstract Res processRequest(Req requestParams, Response response);
 
+    /**
+     * Process the request on behalf of the given session. Handlers that keep
+     * per-session state override this and usesSession; by default the
+     * session is ignored.
+     * Handlers are shared by all of the server's worker threads, so neither
+     * method may keep request state in fields.
+     * @param requestParams request parameters
+     * @param sessionId the session that sent the request, or null unless
+     *                  usesSession
+     * @param response  response object
+     * @return  the result computed after processing request
+     */
+    protected Res processRequest(Req requestParams, String sessionId, Response response) {
+        return processRequest(requestParams, response);
+    }
+
     /**
      * Builds a JSON response to return from the result object
      * @param result
@@ -59,6 +191,29 @@ public abstract class APIRouteHandler<Req, Res> implements Route {
         return gson.toJson(result);
     }
 
+    /**
+     * Tags the response with ETAG, and tells the client to use its cached copy
+     * if that copy carries the same tag.
+     * @param ifNoneMatch the If-None-Match header of the request, or null
+     * @param etag  the entity tag of the response, quoted
+     * @param response  response object
+     * @return  whether the client's copy is current, so no body need be sent
+     */
+    protected static boolean notModified(String ifNoneMatch, String etag, Response response) {
+        response.header("ETag", etag);
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String tag : ifNoneMatch.split(",")) {
+            String t = tag.trim();
+            if (t.equals("*") || t.equals(etag) || t.equals("W/" + etag)) {
+                response.status(NOT_MODIFIED);
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Validate & return a parameter map of the required request parameters.
      * Requires that all input parameters are doubles.
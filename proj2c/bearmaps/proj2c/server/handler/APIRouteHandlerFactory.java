@@ -19,9 +19,18 @@ public class APIRouteHandlerFactory {
     static {
         handlerMap = new HashMap<>();
         handlerMap.put("raster", new RasterAPIHandler());
+        handlerMap.put("raster_metadata", new RasterMetadataAPIHandler());
+        handlerMap.put("raster_image", new RasterImageAPIHandler());
+        handlerMap.put("tile", new TileAPIHandler());
+        handlerMap.put("route_polyline", new RoutePolylineAPIHandler());
         handlerMap.put("route", new RoutingAPIHandler());
+        handlerMap.put("alternative_routes", new AlternativeRoutesAPIHandler());
         handlerMap.put("clear_route", new ClearRouteAPIHandler());
         handlerMap.put("search", new SearchAPIHandler());
+        handlerMap.put("reverse_geocode", new ReverseGeocodeAPIHandler());
+        handlerMap.put("distance_matrix", new DistanceMatrixAPIHandler());
+        handlerMap.put("isochrone", new IsochroneAPIHandler());
+        handlerMap.put("metrics", new MetricsAPIHandler());
         handlerMap.put("", new RedirectAPIHandler());
     }
 
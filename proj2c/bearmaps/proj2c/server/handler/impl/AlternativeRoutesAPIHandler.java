@@ -0,0 +1,74 @@
+package bearmaps.proj2c.server.handler.impl;
+
+import bearmaps.proj2c.Router;
+import bearmaps.proj2c.server.handler.APIRouteHandler;
+import spark.Request;
+import spark.Response;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static bearmaps.proj2c.utils.Constants.ALTERNATIVE_ROUTES_MAX;
+import static bearmaps.proj2c.utils.Constants.SEMANTIC_STREET_GRAPH;
+import static spark.Spark.halt;
+
+/**
+ * Handles requests for a choice of routes between two locations: the
+ * shortest, and up to a few reasonable alternatives to it.
+ */
+public class AlternativeRoutesAPIHandler extends APIRouteHandler<Map<String, Double>, Map<String, Object>> {
+
+    /**
+     * Each alternative routes request to the server will have the following
+     * parameters as keys in the params map.<br>
+     * start_lat : start point latitude,<br> start_lon : start point longitude,<br>
+     * end_lat : end point latitude, <br>end_lon : end point longitude,<br>
+     * count : the most routes wanted, from 1 to Constants.ALTERNATIVE_ROUTES_MAX.
+     **/
+    private static final String[] REQUIRED_ALTERNATIVE_ROUTES_REQUEST_PARAMS = {"start_lat",
+            "start_lon", "end_lat", "end_lon", "count"};
+
+    @Override
+    protected Map<String, Double> parseRequestParams(Request request) {
+        Map<String, Double> params = getRequestParams(request, REQUIRED_ALTERNATIVE_ROUTES_REQUEST_PARAMS);
+        double count = params.get("count");
+        if (!(count >= 1 && count <= ALTERNATIVE_ROUTES_MAX) || count != Math.floor(count)) {
+            halt(HALT_RESPONSE, "Incorrect parameters - count must be a whole number from 1 to "
+                    + ALTERNATIVE_ROUTES_MAX + ".");
+        }
+        return params;
+    }
+
+    /**
+     * Finds the shortest route between the points and up to count - 1
+     * alternatives to it.
+     * @param requestParams Map of the HTTP GET request's query parameters - the starting lat/lon,
+     *                      the destination lat/lon and the count.
+     * @param response : Not used by this function.
+     * @return A map of results for the front end as specified: <br>
+     * "routes" : a list of the routes found, shortest first and empty if there
+     *            is no route, each a map of <br>
+     *            "nodes" : Number[], the ids of the vertices of the route in order, and <br>
+     *            "miles" : Number, its length.
+     */
+    @Override
+    public Map<String, Object> processRequest(Map<String, Double> requestParams, Response response) {
+        List<Router.Route> routes = Router.alternativeRoutes(SEMANTIC_STREET_GRAPH,
+                requestParams.get("start_lon"), requestParams.get("start_lat"),
+                requestParams.get("end_lon"), requestParams.get("end_lat"),
+                requestParams.get("count").intValue());
+
+        List<Map<String, Object>> results = new ArrayList<>(routes.size());
+        for (Router.Route route : routes) {
+            Map<String, Object> result = new HashMap<>();
+            result.put("nodes", route.nodes());
+            result.put("miles", route.miles());
+            results.add(result);
+        }
+        Map<String, Object> routeParams = new HashMap<>();
+        routeParams.put("routes", results);
+        return routeParams;
+    }
+}
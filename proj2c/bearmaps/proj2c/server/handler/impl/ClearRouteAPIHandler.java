@@ -4,11 +4,13 @@ import bearmaps.proj2c.server.handler.APIRouteHandler;
 import spark.Request;
 import spark.Response;
 
-import static bearmaps.proj2c.utils.Constants.ROUTE_LIST;
+import static bearmaps.proj2c.utils.Constants.ISOCHRONE_STORE;
+import static bearmaps.proj2c.utils.Constants.ROUTE_STORE;
 
 
 /**
- * Handles the "Clear Route" button in Bearmaps.
+ * Handles the "Clear Route" button in Bearmaps, which clears the isochrone
+ * too.
  * Created by rahul
  */
 public class ClearRouteAPIHandler extends APIRouteHandler {
@@ -21,7 +23,19 @@ public class ClearRouteAPIHandler extends APIRouteHandler {
 
     @Override
     protected Object processRequest(Object requestParams, Response response) {
-        ROUTE_LIST.clear();
+        return true;
+    }
+
+    /** Clears the route and isochrone of the session that sent the request. */
+    @Override
+    protected boolean usesSession() {
+        return true;
+    }
+
+    @Override
+    public Object processRequest(Object requestParams, String sessionId, Response response) {
+        ROUTE_STORE.clear(sessionId);
+        ISOCHRONE_STORE.clear(sessionId);
         return true;
     }
 }
@@ -0,0 +1,112 @@
+package bearmaps.proj2c.server.handler.impl;
+
+import bearmaps.proj2c.server.handler.APIRouteHandler;
+import spark.Request;
+import spark.Response;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static bearmaps.proj2c.utils.Constants.DISTANCE_MATRIX_MAX_POINTS;
+import static bearmaps.proj2c.utils.Constants.SEMANTIC_STREET_GRAPH;
+import static spark.Spark.halt;
+
+/**
+ * Handles requests for the travel distances between many points at once, so
+ * that N starts and M destinations take one request rather than N x M
+ * route requests.
+ */
+public class DistanceMatrixAPIHandler extends APIRouteHandler<Map<String, double[]>, Map<String, Object>> {
+
+    /**
+     * Each distance matrix request to the server will have the following
+     * parameters, each a list of points written lon,lat and separated by
+     * semicolons, such as -122.26,37.87;-122.25,37.86. Lists of more than a
+     * few hundred points do not fit in a URL, so send them as the form body
+     * of a POST request.<br>
+     * sources : the points to measure from,<br> targets : the points to measure to.
+     **/
+    private static final String[] REQUIRED_DISTANCE_MATRIX_REQUEST_PARAMS = {"sources", "targets"};
+
+    /** Full point lists are far longer than the server allows a URL to be. */
+    @Override
+    public boolean acceptsPost() {
+        return true;
+    }
+
+    /**
+     * Reads the sources and targets into the parameters source_lons,
+     * source_lats, target_lons and target_lats.
+     */
+    @Override
+    protected Map<String, double[]> parseRequestParams(Request request) {
+        Map<String, double[]> params = new HashMap<>();
+        for (String param : REQUIRED_DISTANCE_MATRIX_REQUEST_PARAMS) {
+            String points = request.queryParams(param);
+            if (points == null) {
+                halt(HALT_RESPONSE, "Request failed - parameters missing.");
+            }
+            String[] pairs = points.isEmpty() ? new String[0] : points.split(";");
+            if (pairs.length > DISTANCE_MATRIX_MAX_POINTS) {
+                halt(HALT_RESPONSE, "Request failed - at most " + DISTANCE_MATRIX_MAX_POINTS
+                        + " " + param + ".");
+            }
+            double[] lons = new double[pairs.length];
+            double[] lats = new double[pairs.length];
+            for (int i = 0; i < pairs.length; i++) {
+                String[] lonLat = pairs[i].split(",");
+                if (lonLat.length != 2) {
+                    halt(HALT_RESPONSE, "Incorrect parameters - give points as lon,lat.");
+                }
+                try {
+                    lons[i] = Double.parseDouble(lonLat[0]);
+                    lats[i] = Double.parseDouble(lonLat[1]);
+                } catch (NumberFormatException e) {
+                    halt(HALT_RESPONSE, "Incorrect parameters - provide numbers.");
+                }
+            }
+            String prefix = param.substring(0, param.length() - 1);
+            params.put(prefix + "_lons", lons);
+            params.put(prefix + "_lats", lats);
+        }
+        return params;
+    }
+
+    /**
+     * Snaps each source and target to the vertex closest to it, and measures
+     * the shortest path from every source vertex to every target vertex.
+     * @param requestParams The parsed points.
+     * @param response : Not used by this function.
+     * @return A map of results as specified: <br>
+     * "sources" : the ids of the vertices the sources snapped to, in order. <br>
+     * "targets" : the ids of the vertices the targets snapped to, in order. <br>
+     * "distances" : a list per source of the distance in miles to each
+     *               target, or null where no path leads there.
+     */
+    @Override
+    public Map<String, Object> processRequest(Map<String, double[]> requestParams, Response response) {
+        long[] sources = SEMANTIC_STREET_GRAPH.closest(
+                requestParams.get("source_lons"), requestParams.get("source_lats"));
+        long[] targets = SEMANTIC_STREET_GRAPH.closest(
+                requestParams.get("target_lons"), requestParams.get("target_lats"));
+        double[][] distances = SEMANTIC_STREET_GRAPH.distanceMatrix(sources, targets);
+
+        /* JSON has no infinity, so unreachable targets are written as null. */
+        List<List<Double>> rows = new ArrayList<>(distances.length);
+        for (double[] distance : distances) {
+            List<Double> row = new ArrayList<>(distance.length);
+            for (double d : distance) {
+                row.add(Double.isInfinite(d) ? null : d);
+            }
+            rows.add(row);
+        }
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("sources", sources);
+        result.put("targets", targets);
+        result.put("distances", rows);
+        return result;
+    }
+}
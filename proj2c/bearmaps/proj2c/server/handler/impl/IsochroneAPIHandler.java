@@ -0,0 +1,100 @@
+package bearmaps.proj2c.server.handler.impl;
+
+import bearmaps.hw4.streetmap.CompactStreetMapGraph;
+import bearmaps.hw4.streetmap.Isochrone;
+import bearmaps.proj2c.server.handler.APIRouteHandler;
+import spark.Request;
+import spark.Response;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static bearmaps.proj2c.utils.Constants.ISOCHRONE_MAX_MILES;
+import static bearmaps.proj2c.utils.Constants.ISOCHRONE_STORE;
+import static bearmaps.proj2c.utils.Constants.SEMANTIC_STREET_GRAPH;
+import static spark.Spark.halt;
+
+/**
+ * Handles requests for everything reachable within a distance of a point.
+ * The outline found is remembered for the caller's session and shaded on its
+ * map by the raster handlers until the session clears its route.
+ */
+public class IsochroneAPIHandler extends APIRouteHandler<Map<String, Double>, Map<String, Object>> {
+
+    /**
+     * Each isochrone request to the server will have the following parameters
+     * as keys in the params map.<br>
+     * lon : point longitude,<br> lat : point latitude,<br>
+     * miles : the distance budget, from 0 to Constants.ISOCHRONE_MAX_MILES.
+     **/
+    private static final String[] REQUIRED_ISOCHRONE_REQUEST_PARAMS = {"lon", "lat", "miles"};
+
+    @Override
+    protected Map<String, Double> parseRequestParams(Request request) {
+        Map<String, Double> params = getRequestParams(request, REQUIRED_ISOCHRONE_REQUEST_PARAMS);
+        double miles = params.get("miles");
+        if (!(miles >= 0 && miles <= ISOCHRONE_MAX_MILES)) {
+            halt(HALT_RESPONSE, "Incorrect parameters - miles must be from 0 to "
+                    + ISOCHRONE_MAX_MILES + ".");
+        }
+        return params;
+    }
+
+    /**
+     * Finds the vertices within the distance budget of the point, without
+     * remembering their outline.
+     */
+    @Override
+    public Map<String, Object> processRequest(Map<String, Double> requestParams, Response response) {
+        return processRequest(requestParams, null, response);
+    }
+
+    /** Each session has its own isochrone, drawn into its rastered images. */
+    @Override
+    protected boolean usesSession() {
+        return true;
+    }
+
+    /**
+     * As above, and also makes the outline the one shaded on SESSIONID's map,
+     * unless SESSIONID is null.
+     * @param requestParams Map of the HTTP GET request's query parameters - the lon, lat and miles.
+     * @param response : Not used by this function.
+     * @return A map of results for the front end as specified: <br>
+     * "reachable" : Number[], the ids of the vertices within the budget,
+     *               nearest first. <br>
+     * "outline"   : Number[], the longitude and latitude of each corner of the
+     *               convex polygon around them in turn, i.e. lon0, lat0, lon1,
+     *               lat1, ...; empty if nothing is reachable.
+     */
+    @Override
+    public Map<String, Object> processRequest(Map<String, Double> requestParams,
+                                              String sessionId, Response response) {
+        Isochrone isochrone = SEMANTIC_STREET_GRAPH.isochrone(requestParams.get("lon"),
+                requestParams.get("lat"), requestParams.get("miles"));
+        CompactStreetMapGraph csr = SEMANTIC_STREET_GRAPH.compact();
+
+        long[] reachable = new long[isochrone.size()];
+        for (int i = 0; i < reachable.length; i++) {
+            reachable[i] = csr.id(isochrone.vertex(i));
+        }
+        int[] corners = isochrone.outline();
+        List<Long> outline = new ArrayList<>(corners.length);
+        double[] coordinates = new double[2 * corners.length];
+        for (int i = 0; i < corners.length; i++) {
+            outline.add(csr.id(corners[i]));
+            coordinates[2 * i] = csr.lon(corners[i]);
+            coordinates[2 * i + 1] = csr.lat(corners[i]);
+        }
+        if (sessionId != null) {
+            ISOCHRONE_STORE.put(sessionId, outline);
+        }
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("reachable", reachable);
+        result.put("outline", coordinates);
+        return result;
+    }
+}
@@ -0,0 +1,41 @@
+package bearmaps.proj2c.server.handler.impl;
+
+import bearmaps.proj2c.server.handler.APIRouteHandler;
+import spark.Request;
+import spark.Response;
+
+import static bearmaps.proj2c.utils.Constants.METRICS;
+import static bearmaps.proj2c.utils.Constants.RASTER_CACHE;
+import static bearmaps.proj2c.utils.Constants.TILE_CACHE;
+
+/**
+ * Handles scrapes of the server's metrics: per-handler latency and
+ * allocation, states explored per route and cache hit counts, as plain text
+ * in the Prometheus exposition format rather than JSON.
+ */
+public class MetricsAPIHandler extends APIRouteHandler<Void, String> {
+
+    /** Content type of version 0.0.4 of the exposition format. */
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    /** A scrape takes no parameters. */
+    @Override
+    protected Void parseRequestParams(Request request) {
+        return null;
+    }
+
+    /** Returns every metric as text. */
+    @Override
+    public String processRequest(Void requestParams, Response response) {
+        if (response != null) {
+            response.type(CONTENT_TYPE);
+        }
+        return METRICS.scrape(TILE_CACHE, RASTER_CACHE);
+    }
+
+    /** The text is the response as it stands. */
+    @Override
+    protected Object buildJsonResponse(String result) {
+        return result;
+    }
+}
@@ -1,24 +1,28 @@
 package bearmaps.proj2c.server.handler.impl;
 
 import bearmaps.proj2c.AugmentedStreetMapGraph;
+import bearmaps.proj2c.RasterFormat;
+import bearmaps.proj2c.RasterResponseCache;
 import bearmaps.proj2c.server.handler.APIRouteHandler;
 import spark.Request;
 import spark.Response;
 import bearmaps.proj2c.utils.Constants;
 
-import javax.imageio.ImageIO;
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayOutputStream;
-import java.io.File;
 import java.io.IOException;
 import java.util.Base64;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.IntStream;
 
+import static bearmaps.proj2c.utils.Constants.ISOCHRONE_STORE;
+import static bearmaps.proj2c.utils.Constants.METRICS;
 import static bearmaps.proj2c.utils.Constants.SEMANTIC_STREET_GRAPH;
-import static bearmaps.proj2c.utils.Constants.ROUTE_LIST;
+import static bearmaps.proj2c.utils.Constants.RASTER_CACHE;
+import static bearmaps.proj2c.utils.Constants.ROUTE_STORE;
 
 /**
  * Handles requests from the web browser for map images. These images
@@ -84,10 +88,70 @@ public class RasterAPIHandler extends APIRouteHandler<Map<String, Double>, Map<S
      */
     @Override
     public Map<String, Object> processRequest(Map<String, Double> requestParams, Response response) {
-        System.out.println("yo, wanna know the parameters given by the web browser? They are:");
-        System.out.println(requestParams);
-        Map<String, Object> results = new HashMap<>();
+        int[] grid = tileGrid(requestParams);
+        return grid == null ? queryFail() : gridResults(grid);
+    }
+
+    /** Each session's route and isochrone are drawn into its rastered images. */
+    @Override
+    protected boolean usesSession() {
+        return true;
+    }
 
+    /**
+     * As above, and also renders the grid, with SESSIONID's route and
+     * isochrone drawn over it, into the "b64_encoded_image_data" field of the
+     * results.
+     */
+    @Override
+    public Map<String, Object> processRequest(Map<String, Double> requestParams,
+                                              String sessionId, Response response) {
+        int[] grid = tileGrid(requestParams);
+        Map<String, Object> result = grid == null ? queryFail() : gridResults(grid);
+        if (!validateRasteredImgParams(result)) {
+            return result;
+        }
+        RasterResponseCache.Rendering rendering = render(grid, ROUTE_STORE.get(sessionId),
+                ISOCHRONE_STORE.get(sessionId), RasterFormat.PNG, RasterFormat.DEFAULT_QUALITY);
+        result.put("raster_width", rendering.width());
+        result.put("raster_height", rendering.height());
+        result.put("b64_encoded_image_data",
+                Base64.getEncoder().encodeToString(rendering.image()));
+        return result;
+    }
+
+    /**
+     * Returns the image of the tile range GRID with ROUTE drawn over it, and
+     * under that the polygon of vertices OUTLINE filled in, encoded in FORMAT
+     * at QUALITY. The same grid, route, outline and encoding always give the
+     * same image, so renderings are cached.
+     */
+    protected RasterResponseCache.Rendering render(int[] grid, List<Long> route,
+                                                   List<Long> outline, RasterFormat format,
+                                                   float quality) {
+        quality = RasterFormat.normalizeQuality(quality);
+        RasterResponseCache.Key key =
+                new RasterResponseCache.Key(grid, route, outline, format, quality);
+        RasterResponseCache.Rendering rendering = RASTER_CACHE.get(key);
+        if (rendering == null) {
+            Map<String, Object> result = gridResults(grid);
+            ByteArrayOutputStream os = new ByteArrayOutputStream();
+            boolean written = writeImagesToOutputStream(result, route, outline, format, quality, os);
+            rendering = new RasterResponseCache.Rendering(os.toByteArray(),
+                    (int) result.get("raster_width"), (int) result.get("raster_height"));
+            if (written) {
+                RASTER_CACHE.put(key, rendering);
+            }
+        }
+        return rendering;
+    }
+
+    /**
+     * Returns the depth and the range of tiles {depth, xStart, yStart, xEnd,
+     * yEnd} that best matches the query box of REQUESTPARAMS, as described
+     * for processRequest, or null if the query box is bad or not covered.
+     */
+    protected int[] tileGrid(Map<String, Double> requestParams) {
         double ullon = requestParams.get("ullon");
         double ullat = requestParams.get("ullat");
         double lrlon = requestParams.get("lrlon");
@@ -97,7 +161,7 @@ public class RasterAPIHandler extends APIRouteHandler<Map<String, Double>, Map<S
         if (ullon > lrlon || ullat < lrlat ||
                 ullon > Constants.ROOT_LRLON || ullat < Constants.ROOT_LRLAT ||
                 lrlon < Constants.ROOT_ULLON || lrlat > Constants.ROOT_ULLAT) {
-            return queryFail();
+            return null;
         }
 
         // determine the level of zoom by computing LonDPP
@@ -121,7 +185,14 @@ public class RasterAPIHandler extends APIRouteHandler<Map<String, Double>, Map<S
                 (int) ((Constants.ROOT_ULLAT - ullat) / imageLatDist) : 0;
         int yEnd = lrlat >= Constants.ROOT_LRLAT ?
                 (int) ((Constants.ROOT_ULLAT - lrlat) / imageLatDist) : (int) Math.pow(2, depth);
+        return new int[]{depth, xStart, yStart, xEnd, yEnd};
+    }
 
+    /** Returns the results, without the image, for the tile range GRID. */
+    protected Map<String, Object> gridResults(int[] grid) {
+        int depth = grid[0], xStart = grid[1], yStart = grid[2], xEnd = grid[3], yEnd = grid[4];
+        double imageLonDist = (Constants.ROOT_LRLON - Constants.ROOT_ULLON) / Math.pow(2, depth);
+        double imageLatDist = (Constants.ROOT_ULLAT - Constants.ROOT_LRLAT) / Math.pow(2, depth);
 
         String[][] images = new String[yEnd - yStart + 1][xEnd - xStart + 1];
         for (int i = 0; i < images.length; i++) {
@@ -130,6 +201,7 @@ public class RasterAPIHandler extends APIRouteHandler<Map<String, Double>, Map<S
             }
         }
 
+        Map<String, Object> results = new HashMap<>();
         results.put("render_grid", images);
         results.put("raster_ul_lon", Constants.ROOT_ULLON + (xStart * imageLonDist));
         results.put("raster_ul_lat", Constants.ROOT_ULLAT - (yStart * imageLatDist));
@@ -137,23 +209,9 @@ public class RasterAPIHandler extends APIRouteHandler<Map<String, Double>, Map<S
         results.put("raster_lr_lat", Constants.ROOT_ULLAT - ((yEnd + 1) * imageLatDist));
         results.put("depth", depth);
         results.put("query_success", true);
-
         return results;
     }
 
-    @Override
-    protected Object buildJsonResponse(Map<String, Object> result) {
-        boolean rasterSuccess = validateRasteredImgParams(result);
-
-        if (rasterSuccess) {
-            ByteArrayOutputStream os = new ByteArrayOutputStream();
-            writeImagesToOutputStream(result, os);
-            String encodedImage = Base64.getEncoder().encodeToString(os.toByteArray());
-            result.put("b64_encoded_image_data", encodedImage);
-        }
-        return super.buildJsonResponse(result);
-    }
-
     private Map<String, Object> queryFail() {
         Map<String, Object> results = new HashMap<>();
         results.put("render_grid", null);
@@ -168,19 +226,22 @@ public class RasterAPIHandler extends APIRouteHandler<Map<String, Double>, Map<S
 
     /**
      * Validates that Rasterer has returned a result that can be rendered.
+     * Failed queries, such as boxes outside the map, are counted in the
+     * server's metrics rather than logged, as they arrive with every pan
+     * off the edge of the map.
      * @param rip : Parameters provided by the rasterer
      */
     private boolean validateRasteredImgParams(Map<String, Object> rip) {
         for (String p : REQUIRED_RASTER_RESULT_PARAMS) {
             if (!rip.containsKey(p)) {
-                System.out.println("Your rastering result is missing the " + p + " field.");
+                METRICS.rasterQueryFailed();
                 return false;
             }
         }
         if (rip.containsKey("query_success")) {
             boolean success = (boolean) rip.get("query_success");
             if (!success) {
-                System.out.println("query_success was reported as a failure");
+                METRICS.rasterQueryFailed();
                 return false;
             }
         }
@@ -188,31 +249,35 @@ public class RasterAPIHandler extends APIRouteHandler<Map<String, Double>, Map<S
     }
 
     /**
-     * Writes the images corresponding to rasteredImgParams to the output stream.
+     * Writes the images corresponding to rasteredImgParams, with ROUTE and
+     * OUTLINE drawn over them, to the output stream in FORMAT at QUALITY.
+     * Returns whether the image could be encoded; one that could not is
+     * counted as a failed raster query.
      * In Spring 2016, students had to do this on their own, but in 2017,
      * we made this into provided code since it was just a bit too low level.
      */
-    private  void writeImagesToOutputStream(Map<String, Object> rasteredImageParams,
-                                                  ByteArrayOutputStream os) {
+    private boolean writeImagesToOutputStream(Map<String, Object> rasteredImageParams,
+                                              List<Long> route, List<Long> outline,
+                                              RasterFormat format, float quality,
+                                              ByteArrayOutputStream os) {
         String[][] renderGrid = (String[][]) rasteredImageParams.get("render_grid");
         int numVertTiles = renderGrid.length;
         int numHorizTiles = renderGrid[0].length;
 
         BufferedImage img = new BufferedImage(numHorizTiles * Constants.TILE_SIZE,
                 numVertTiles * Constants.TILE_SIZE, BufferedImage.TYPE_INT_RGB);
-        Graphics graphic = img.getGraphics();
-        int x = 0, y = 0;
 
-        for (int r = 0; r < numVertTiles; r += 1) {
+        /* Each row of tiles is a disjoint band of the image, so the rows can be
+         * decoded and drawn by separate workers, each with its own Graphics. */
+        IntStream.range(0, numVertTiles).parallel().forEach(r -> {
+            Graphics band = img.createGraphics();
             for (int c = 0; c < numHorizTiles; c += 1) {
-                graphic.drawImage(getImage(Constants.IMG_ROOT + renderGrid[r][c]), x, y, null);
-                x += Constants.TILE_SIZE;
-                if (x >= img.getWidth()) {
-                    x = 0;
-                    y += Constants.TILE_SIZE;
-                }
+                band.drawImage(getImage(Constants.IMG_ROOT + renderGrid[r][c]),
+                        c * Constants.TILE_SIZE, r * Constants.TILE_SIZE, null);
             }
-        }
+            band.dispose();
+        });
+        Graphics graphic = img.getGraphics();
 
         /* If there is a route, draw it. */
         double ullon = (double) rasteredImageParams.get("raster_ul_lon"); //tiles.get(0).ulp;
@@ -223,7 +288,22 @@ public class RasterAPIHandler extends APIRouteHandler<Map<String, Double>, Map<S
         final double wdpp = (lrlon - ullon) / img.getWidth();
         final double hdpp = (ullat - lrlat) / img.getHeight();
         AugmentedStreetMapGraph graph = SEMANTIC_STREET_GRAPH;
-        List<Long> route = ROUTE_LIST;
+
+        /* If there is an isochrone, shade it under the route. */
+        if (outline != null && !outline.isEmpty()) {
+            Graphics2D g2d = (Graphics2D) graphic;
+            Polygon polygon = new Polygon();
+            for (long v : outline) {
+                polygon.addPoint((int) ((graph.lon(v) - ullon) * (1 / wdpp)),
+                        (int) ((ullat - graph.lat(v)) * (1 / hdpp)));
+            }
+            g2d.setColor(Constants.ISOCHRONE_FILL_COLOR);
+            g2d.fillPolygon(polygon);
+            g2d.setColor(Constants.ISOCHRONE_STROKE_COLOR);
+            g2d.setStroke(new BasicStroke(Constants.ROUTE_STROKE_WIDTH_PX / 2,
+                    BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+            g2d.drawPolygon(polygon);
+        }
 
         if (route != null && !route.isEmpty()) {
             Graphics2D g2d = (Graphics2D) graphic;
@@ -243,23 +323,16 @@ public class RasterAPIHandler extends APIRouteHandler<Map<String, Double>, Map<S
         rasteredImageParams.put("raster_height", img.getHeight());
 
         try {
-            ImageIO.write(img, "png", os);
+            format.write(img, quality, os);
+            return true;
         } catch (IOException e) {
-            e.printStackTrace();
+            METRICS.rasterQueryFailed();
+            return false;
         }
 
     }
 
     private BufferedImage getImage(String imgPath) {
-        BufferedImage tileImg = null;
-        if (tileImg == null) {
-            try {
-                File in = new File(imgPath);
-                tileImg = ImageIO.read(in);
-            } catch (IOException | NullPointerException e) {
-                e.printStackTrace();
-            }
-        }
-        return tileImg;
+        return Constants.TILE_CACHE.get(imgPath);
     }
 }
@@ -0,0 +1,103 @@
+package bearmaps.proj2c.server.handler.impl;
+
+import bearmaps.proj2c.RasterFormat;
+import bearmaps.proj2c.server.handler.APIRouteHandler;
+import bearmaps.proj2c.utils.Tuple;
+import spark.Request;
+import spark.Response;
+
+import java.util.Map;
+
+import static bearmaps.proj2c.utils.Constants.ISOCHRONE_STORE;
+import static bearmaps.proj2c.utils.Constants.ROUTE_STORE;
+import static spark.Spark.halt;
+
+/**
+ * Handles requests from the web browser for the rastered map image itself.
+ * Takes the same query box as RasterAPIHandler, whose grid and bounds the
+ * browser gets from RasterMetadataAPIHandler, and answers with the bare image
+ * bytes rather than Base64 inside JSON.
+ */
+public class RasterImageAPIHandler extends APIRouteHandler<Tuple<Map<String, Double>, RasterFormat>, byte[]> {
+
+    private static final String[] REQUIRED_RASTER_REQUEST_PARAMS = {"ullat", "ullon", "lrlat",
+            "lrlon", "w", "h"};
+
+    /**
+     * The image shows the session's own route and isochrone, so no cache may
+     * keep it; the page adds the version of its overlays to each URL instead.
+     */
+    private static final String CACHE_CONTROL = "no-store";
+
+    private static final byte[] NO_IMAGE = new byte[0];
+    private static final int NO_CONTENT = 204;
+
+    private final RasterAPIHandler rasterer = new RasterAPIHandler();
+
+    /**
+     * Reads the query box, as for RasterAPIHandler, and two optional parameters: <br>
+     * format : "png" (the default) or "jpg", <br>
+     * quality : from 0 to 1; the JPEG quality, or for PNG how little to compress,
+     *           so that 1 gives the fastest response at the largest size.
+     */
+    @Override
+    protected Tuple<Map<String, Double>, RasterFormat> parseRequestParams(Request request) {
+        Map<String, Double> params = getRequestParams(request, REQUIRED_RASTER_REQUEST_PARAMS);
+        params.put("quality", (double) RasterFormat.DEFAULT_QUALITY);
+        RasterFormat format = RasterFormat.PNG;
+        try {
+            if (request.queryParams("quality") != null) {
+                double quality = Double.parseDouble(request.queryParams("quality"));
+                if (!(quality >= 0 && quality <= 1)) {
+                    throw new IllegalArgumentException("quality must be from 0 to 1.");
+                }
+                params.put("quality", quality);
+            }
+            if (request.queryParams("format") != null) {
+                format = RasterFormat.forName(request.queryParams("format"));
+            }
+        } catch (IllegalArgumentException e) {
+            halt(HALT_RESPONSE, "Incorrect parameters - " + e.getMessage());
+        }
+        return new Tuple<>(params, format);
+    }
+
+    @Override
+    protected byte[] processRequest(Tuple<Map<String, Double>, RasterFormat> requestParams,
+                                    Response response) {
+        return processRequest(requestParams, null, response);
+    }
+
+    /** The route and isochrone drawn over the image are the session's own. */
+    @Override
+    protected boolean usesSession() {
+        return true;
+    }
+
+    /**
+     * Renders the grid of images that best matches the query box, with
+     * SESSIONID's route and isochrone drawn over it, and sets the content type to match.
+     * Answers 204 No Content if the query box is bad or not covered.
+     */
+    @Override
+    protected byte[] processRequest(Tuple<Map<String, Double>, RasterFormat> requestParams,
+                                    String sessionId, Response response) {
+        Map<String, Double> params = requestParams.getFirst();
+        RasterFormat format = requestParams.getSecond();
+        response.header("Cache-Control", CACHE_CONTROL);
+        int[] grid = rasterer.tileGrid(params);
+        if (grid == null) {
+            response.status(NO_CONTENT);
+            return NO_IMAGE;
+        }
+        response.type(format.contentType());
+        return rasterer.render(grid, ROUTE_STORE.get(sessionId), ISOCHRONE_STORE.get(sessionId),
+                format, params.get("quality").floatValue()).image();
+    }
+
+    /** Spark writes a byte[] straight to the response, with no JSON around it. */
+    @Override
+    protected Object buildJsonResponse(byte[] result) {
+        return result;
+    }
+}
@@ -0,0 +1,27 @@
+package bearmaps.proj2c.server.handler.impl;
+
+import bearmaps.proj2c.utils.Constants;
+import spark.Response;
+
+import java.util.Map;
+
+/**
+ * Handles requests from the web browser for where the rastered map image
+ * will fall, without the image. The results are those of RasterAPIHandler
+ * minus "b64_encoded_image_data"; the browser fetches the image itself from
+ * RasterImageAPIHandler with the same query box.
+ */
+public class RasterMetadataAPIHandler extends RasterAPIHandler {
+
+    @Override
+    public Map<String, Object> processRequest(Map<String, Double> requestParams,
+                                              String sessionId, Response response) {
+        Map<String, Object> result = processRequest(requestParams, response);
+        String[][] renderGrid = (String[][]) result.get("render_grid");
+        if (renderGrid != null) {
+            result.put("raster_width", renderGrid[0].length * Constants.TILE_SIZE);
+            result.put("raster_height", renderGrid.length * Constants.TILE_SIZE);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,47 @@
+package bearmaps.proj2c.server.handler.impl;
+
+import bearmaps.proj2c.server.handler.APIRouteHandler;
+import spark.Request;
+import spark.Response;
+
+import java.util.Map;
+
+import static bearmaps.proj2c.utils.Constants.SEMANTIC_STREET_GRAPH;
+import static spark.Spark.halt;
+
+/**
+ * Handles requests from the web browser for the street nearest a point, so
+ * that a click on the map can be named without routing to it.
+ */
+public class ReverseGeocodeAPIHandler extends APIRouteHandler<Map<String, Double>, Map<String, Object>> {
+
+    /**
+     * Each reverse geocoding request to the server will have the following
+     * parameters as keys in the params map.<br>
+     * lon : point longitude,<br> lat : point latitude.
+     **/
+    private static final String[] REQUIRED_REVERSE_GEOCODE_REQUEST_PARAMS = {"lon", "lat"};
+
+    @Override
+    protected Map<String, Double> parseRequestParams(Request request) {
+        Map<String, Double> params = getRequestParams(request, REQUIRED_REVERSE_GEOCODE_REQUEST_PARAMS);
+        for (String param : REQUIRED_REVERSE_GEOCODE_REQUEST_PARAMS) {
+            if (!Double.isFinite(params.get(param))) {
+                halt(HALT_RESPONSE, "Incorrect parameters - " + param + " must be finite.");
+            }
+        }
+        return params;
+    }
+
+    /**
+     * Finds the point on the street network closest to the requested one.
+     * @param requestParams Map of the HTTP GET request's query parameters - the lon and lat.
+     * @param response : Not used by this function.
+     * @return A map of results for the front end, as specified by
+     * AugmentedStreetMapGraph.nearestStreet.
+     */
+    @Override
+    public Map<String, Object> processRequest(Map<String, Double> requestParams, Response response) {
+        return SEMANTIC_STREET_GRAPH.nearestStreet(requestParams.get("lon"), requestParams.get("lat"));
+    }
+}
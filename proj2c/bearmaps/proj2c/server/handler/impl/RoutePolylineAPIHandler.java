@@ -0,0 +1,115 @@
+package bearmaps.proj2c.server.handler.impl;
+
+import bearmaps.proj2c.AugmentedStreetMapGraph;
+import bearmaps.proj2c.server.handler.APIRouteHandler;
+import spark.Request;
+import spark.Response;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static bearmaps.proj2c.utils.Constants.ROUTE_STORE;
+import static bearmaps.proj2c.utils.Constants.SEMANTIC_STREET_GRAPH;
+
+/**
+ * Handles requests from the web browser for the current route as a polyline,
+ * for the browser to draw over base map tiles itself. A few kilobytes of
+ * coordinates replace redrawing the route into every rastered image.
+ */
+public class RoutePolylineAPIHandler extends APIRouteHandler<String, Map<String, Object>> {
+
+    /**
+     * The route belongs to one session, so only the browser may keep it, and
+     * must check it is still current each time.
+     */
+    private static final String CACHE_CONTROL = "private, no-cache";
+
+    /** Bytes of the route digest used as its entity tag. */
+    private static final int ETAG_BYTES = 16;
+
+    /** Reads the If-None-Match header. */
+    @Override
+    protected String parseRequestParams(Request request) {
+        return request.headers("If-None-Match");
+    }
+
+    @Override
+    protected Map<String, Object> processRequest(String requestParams, Response response) {
+        return polyline(ROUTE_STORE.get(null));
+    }
+
+    /** Each session has its own route. */
+    @Override
+    protected boolean usesSession() {
+        return true;
+    }
+
+    /**
+     * Returns SESSIONID's route, or nothing if the client's cached copy is
+     * current, as a map for the front end as specified: <br>
+     * "polyline" : Number[], the longitude and latitude of each vertex of the
+     *              route in turn, i.e. lon0, lat0, lon1, lat1, ...; empty if
+     *              there is no route.
+     */
+    @Override
+    protected Map<String, Object> processRequest(String requestParams, String sessionId,
+                                                 Response response) {
+        List<Long> route = ROUTE_STORE.get(sessionId);
+        response.header("Cache-Control", CACHE_CONTROL);
+        response.header("Vary", "Cookie");
+        String etag = "\"" + digest(route) + "\"";
+        if (notModified(requestParams, etag, response)) {
+            return null;
+        }
+        return polyline(route);
+    }
+
+    @Override
+    protected Object buildJsonResponse(Map<String, Object> result) {
+        return result == null ? "" : super.buildJsonResponse(result);
+    }
+
+    /**
+     * Returns the leading bytes, in hex, of the SHA-256 digest of the vertex ids
+     * of ROUTE, which tell two routes apart with any likelihood that matters.
+     */
+    static String digest(List<Long> route) {
+        try {
+            MessageDigest sha = MessageDigest.getInstance("SHA-256");
+            ByteBuffer id = ByteBuffer.allocate(Long.BYTES);
+            for (long v : route) {
+                id.clear();
+                sha.update(id.putLong(v).array());
+            }
+            byte[] hash = sha.digest();
+            StringBuilder hex = new StringBuilder(2 * ETAG_BYTES);
+            for (int i = 0; i < ETAG_BYTES; i++) {
+                hex.append(String.format("%02x", hash[i]));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            /* Every Java platform is required to provide SHA-256. */
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Returns the polyline of ROUTE as described for processRequest.
+     */
+    public Map<String, Object> polyline(List<Long> route) {
+        AugmentedStreetMapGraph graph = SEMANTIC_STREET_GRAPH;
+        double[] coordinates = new double[2 * route.size()];
+        int i = 0;
+        for (long v : route) {
+            coordinates[i++] = graph.lon(v);
+            coordinates[i++] = graph.lat(v);
+        }
+        Map<String, Object> result = new HashMap<>();
+        result.put("polyline", coordinates);
+        return result;
+    }
+}
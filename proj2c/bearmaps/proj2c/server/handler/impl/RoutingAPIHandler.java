@@ -9,8 +9,9 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import static bearmaps.proj2c.utils.Constants.ROUTING_ENGINE;
 import static bearmaps.proj2c.utils.Constants.SEMANTIC_STREET_GRAPH;
-import static bearmaps.proj2c.utils.Constants.ROUTE_LIST;
+import static bearmaps.proj2c.utils.Constants.ROUTE_STORE;
 
 /**
  * Handles requests from the web browser for routes between locations. The
@@ -38,9 +39,9 @@ public class RoutingAPIHandler extends APIRouteHandler<Map<String, Double>, Map<
      * street directions between the given points. THis method has been
      * completed for you.
      *
-     * The route to draw on the map should be added to the end of
-     * bearmaps.proj2c.utils.Constants.ROUTE_LIST. This is a LinkedList of longs,
-     * where each long corresponds to one point on the map.
+     * The route is not remembered for drawing on the map; requests from a
+     * browser go through the session-aware overload, which stores it in
+     * bearmaps.proj2c.utils.Constants.ROUTE_STORE under the caller's session.
      *
      * Street directions can also be provided in the form of text as a return
      * value to this function.
@@ -57,13 +58,32 @@ public class RoutingAPIHandler extends APIRouteHandler<Map<String, Double>, Map<
      * "directions"      : String. The text directions you want to display, in HTML format.
      */
     @Override
-    protected Map<String, Object> processRequest(Map<String, Double> requestParams, Response response) {
-        List<Long> route = Router.shortestPath(
+    public Map<String, Object> processRequest(Map<String, Double> requestParams, Response response) {
+        return processRequest(requestParams, null, response);
+    }
+
+    /** Each session has its own route. */
+    @Override
+    protected boolean usesSession() {
+        return true;
+    }
+
+    /**
+     * As above, and also makes the route the one drawn on SESSIONID's map,
+     * unless SESSIONID is null.
+     */
+    @Override
+    public Map<String, Object> processRequest(Map<String, Double> requestParams,
+                                              String sessionId, Response response) {
+        Router.Route route = Router.shortestRoute(
                 SEMANTIC_STREET_GRAPH,
                 requestParams.get("start_lon"), requestParams.get("start_lat"),
-                requestParams.get("end_lon"), requestParams.get("end_lat"));
-        ROUTE_LIST.addAll(route);
-        String directions = getDirectionsText();
+                requestParams.get("end_lon"), requestParams.get("end_lat"),
+                Router.readyEngine(SEMANTIC_STREET_GRAPH, ROUTING_ENGINE));
+        if (sessionId != null) {
+            ROUTE_STORE.put(sessionId, route.nodes());
+        }
+        String directions = getDirectionsText(route);
 
         Map<String, Object> routeParams = new HashMap<>();
         routeParams.put("routing_success", !route.isEmpty());
@@ -73,12 +93,12 @@ public class RoutingAPIHandler extends APIRouteHandler<Map<String, Double>, Map<
     }
 
     /**
-     * Takes the route of this MapServer and converts it into an HTML friendly
+     * Takes a route and converts it into an HTML friendly
      * String to be passed to the frontend.
      */
-    private String getDirectionsText() {
+    private String getDirectionsText(Router.Route route) {
 
-        List<Router.NavigationDirection> directions = Router.routeDirections(SEMANTIC_STREET_GRAPH, ROUTE_LIST);
+        List<Router.NavigationDirection> directions = Router.routeDirections(SEMANTIC_STREET_GRAPH, route);
         if (directions == null || directions.isEmpty()) {
             return "";
         }
@@ -3,33 +3,58 @@ package bearmaps.proj2c.server.handler.impl;
 import bearmaps.proj2c.server.handler.APIRouteHandler;
 import spark.Request;
 import spark.Response;
-import bearmaps.proj2c.utils.Tuple;
 
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
+import static bearmaps.proj2c.utils.Constants.FUZZY_DEFAULT_EDITS;
+import static bearmaps.proj2c.utils.Constants.FUZZY_MAX_EDITS;
 import static bearmaps.proj2c.utils.Constants.SEMANTIC_STREET_GRAPH;
+import static spark.Spark.halt;
 
 /**
  * Created by rahul
  */
-public class SearchAPIHandler extends APIRouteHandler<Tuple<Set<String>, String>, Object> {
-
+public class SearchAPIHandler extends APIRouteHandler<Map<String, String>, Object> {
 
+    /**
+     * Reads the search term, and the optional parameters: <br>
+     * full : present to look up the locations with exactly this name, <br>
+     * fuzzy : present to allow typos in the prefix; its value, if any, is
+     *         the number of typos to allow, up to Constants.FUZZY_MAX_EDITS.
+     */
     @Override
-    protected Tuple<Set<String>, String> parseRequestParams(Request request) {
-        return new Tuple<>(request.queryParams(), request.queryParams("term"));
+    protected Map<String, String> parseRequestParams(Request request) {
+        Map<String, String> params = new HashMap<>();
+        for (String param : request.queryParams()) {
+            params.put(param, request.queryParams(param));
+        }
+        String fuzzy = params.get("fuzzy");
+        if (fuzzy != null && !fuzzy.isEmpty()) {
+            try {
+                Integer.parseInt(fuzzy);
+            } catch (NumberFormatException e) {
+                e.printStackTrace();
+                halt(HALT_RESPONSE, "Incorrect parameters - provide numbers.");
+            }
+        }
+        return params;
     }
 
     @Override
-    protected Object processRequest(Tuple<Set<String>, String> requestParams, Response response) {
-        Set<String> reqParams = requestParams.getFirst();
-        String term = requestParams.getSecond();
+    protected Object processRequest(Map<String, String> requestParams, Response response) {
+        String term = requestParams.get("term");
         Object result;
         /* Search for actual location data. */
-        if (reqParams.contains("full")) {
+        if (requestParams.containsKey("full")) {
             result = getLocations(term);
+        } else if (requestParams.containsKey("fuzzy")) {
+            /* Search for names starting with something close to the term. */
+            String fuzzy = requestParams.get("fuzzy");
+            int maxEdits = fuzzy == null || fuzzy.isEmpty() ? FUZZY_DEFAULT_EDITS
+                    : Math.max(0, Math.min(FUZZY_MAX_EDITS, Integer.parseInt(fuzzy)));
+            result = getLocationsFuzzy(term, maxEdits);
         } else {
             /* Search for prefix matching strings. */
             result = getLocationsByPrefix(term);
@@ -38,7 +63,7 @@ public class SearchAPIHandler extends APIRouteHandler<Tuple<Set<String>, String>
     }
 
     /**
-     * In linear time, collect all the names of OSM locations that prefix-match the query string.
+     * Collect the names of the most common OSM locations that prefix-match the query string.
      * @param prefix Prefix string to be searched for. Could be any case, with our without
      *               punctuation.
      * @return A <code>List</code> of the full names of locations whose cleaned name matches the
@@ -49,6 +74,17 @@ public class SearchAPIHandler extends APIRouteHandler<Tuple<Set<String>, String>
         return SEMANTIC_STREET_GRAPH.getLocationsByPrefix(prefix);
     }
 
+    /**
+     * Collect the names of OSM locations that prefix-match the query string
+     * with up to MAXEDITS typos, most likely first.
+     * @param query Prefix string to be searched for, possibly misspelt.
+     * @param maxEdits The most insertions, deletions and substitutions to allow.
+     * @return A <code>List</code> of the full names of the matching locations.
+     */
+    public List<String> getLocationsFuzzy(String query, int maxEdits) {
+        return SEMANTIC_STREET_GRAPH.getLocationsFuzzy(query, maxEdits);
+    }
+
     /**
      * Collect all locations that match a cleaned <code>locationName</code>, and return
      * information about each node that matches.
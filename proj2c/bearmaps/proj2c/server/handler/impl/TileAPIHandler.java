@@ -0,0 +1,81 @@
+package bearmaps.proj2c.server.handler.impl;
+
+import bearmaps.proj2c.server.handler.APIRouteHandler;
+import bearmaps.proj2c.utils.Constants;
+import bearmaps.proj2c.utils.Tuple;
+import spark.Request;
+import spark.Response;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.regex.Pattern;
+
+import static spark.Spark.halt;
+
+/**
+ * Handles requests from the web browser for single base map tiles, served
+ * unchanged from IMG_ROOT. Tiles never carry a route and never start a
+ * session, so unlike rastered images they can be cached by the browser and
+ * any proxy in between, and revalidated with their ETag. The bundled map
+ * page lays tiles out itself, as named in the render grid of
+ * RasterMetadataAPIHandler, and draws RoutePolylineAPIHandler's route over
+ * them.
+ */
+public class TileAPIHandler extends APIRouteHandler<Tuple<String, String>, byte[]> {
+
+    /** Tile names as in the render grid: depth, then x and y within that depth. */
+    private static final Pattern TILE_NAME = Pattern.compile("d\\d+_x\\d+_y\\d+\\.png");
+
+    private static final byte[] NO_TILE = new byte[0];
+    private static final int NOT_FOUND = 404;
+
+    /** Tiles only change with a new deployment; let clients keep them a day. */
+    private static final String CACHE_CONTROL = "public, max-age=86400";
+
+    /**
+     * Reads the tile parameter, a file name as found in a render grid, and the
+     * If-None-Match header.
+     */
+    @Override
+    protected Tuple<String, String> parseRequestParams(Request request) {
+        String name = request.queryParams("tile");
+        if (name == null || !TILE_NAME.matcher(name).matches()) {
+            halt(HALT_RESPONSE, "Request failed - give a tile name such as d0_x0_y0.png.");
+        }
+        return new Tuple<>(name, request.headers("If-None-Match"));
+    }
+
+    /**
+     * Returns the bytes of the tile, or nothing if the client's cached copy
+     * is current or there is no such tile.
+     */
+    @Override
+    protected byte[] processRequest(Tuple<String, String> requestParams, Response response) {
+        File tile = new File(Constants.IMG_ROOT + requestParams.getFirst());
+        if (!tile.isFile()) {
+            response.status(NOT_FOUND);
+            return NO_TILE;
+        }
+        response.header("Cache-Control", CACHE_CONTROL);
+        String etag = String.format("\"%x-%x\"", tile.length(), tile.lastModified());
+        if (notModified(requestParams.getSecond(), etag, response)) {
+            return NO_TILE;
+        }
+        try {
+            byte[] bytes = Files.readAllBytes(tile.toPath());
+            response.type("image/png");
+            return bytes;
+        } catch (IOException e) {
+            e.printStackTrace();
+            response.status(NOT_FOUND);
+            return NO_TILE;
+        }
+    }
+
+    /** Spark writes a byte[] straight to the response, with no JSON around it. */
+    @Override
+    protected Object buildJsonResponse(byte[] result) {
+        return result;
+    }
+}
@@ -1,10 +1,14 @@
 package bearmaps.proj2c.utils;
 
+import bearmaps.hw4.streetmap.Landmarks;
 import bearmaps.proj2c.AugmentedStreetMapGraph;
+import bearmaps.proj2c.RasterResponseCache;
+import bearmaps.proj2c.RouteStore;
+import bearmaps.proj2c.Router;
+import bearmaps.proj2c.ServerMetrics;
+import bearmaps.proj2c.TileCache;
 
 import java.awt.*;
-import java.util.LinkedList;
-import java.util.List;
 
 /**
  * A class holding all the constant values used throughout the project
@@ -27,6 +31,12 @@ public class Constants {
      **/
     public static final String OSM_DB_PATH = "../library-sp19/data/proj2c_xml/berkeley-2019.osm.xml";
 
+    /**
+     * The binary snapshot compiled from OSM_DB_PATH by GraphSnapshot. The server loads it
+     * instead of the XML whenever it is present and up to date.
+     **/
+    public static final String SNAPSHOT_PATH = "../library-sp19/data/proj2c_xml/berkeley-2019.snapshot";
+
     /** The tile images are in the IMG_ROOT folder. */
     public static final String IMG_ROOT = "../library-sp19/data/proj2c_imgs/";
 
@@ -36,14 +46,67 @@ public class Constants {
     /** Route stroke information: typically roads are not more than 5px wide. */
     public static final float ROUTE_STROKE_WIDTH_PX = 5.0f;
 
+    /** Fill and edge color of an isochrone drawn over the map. */
+    public static final Color ISOCHRONE_FILL_COLOR = new Color(240, 160, 60, 70);
+    public static final Color ISOCHRONE_STROKE_COLOR = new Color(240, 160, 60, 200);
+
     /** Each tile is 256x256 pixels. */
     public static final int TILE_SIZE = 256;
 
+    /** Decoded tiles kept in memory: 256MB, about a thousand tiles. */
+    public static final long TILE_CACHE_BYTES = 256L << 20;
+    public static final TileCache TILE_CACHE = new TileCache(TILE_CACHE_BYTES);
+
     public static AugmentedStreetMapGraph SEMANTIC_STREET_GRAPH;
 
     /**
-     * This is used to maintain a single List of route so that the same instance(object) is accessed
-     * from everywhere in the code. Enum is a cleaner way to achieve such a singleton pattern.
+     * The engine RoutingAPIHandler answers route requests with. A contraction
+     * hierarchy is built in the background at startup, and A* answers until it
+     * is ready.
      */
-    public static final List<Long> ROUTE_LIST = new LinkedList<>();
+    public static final Router.Engine ROUTING_ENGINE = Router.Engine.CONTRACTION_HIERARCHY;
+
+    /** Most names returned for a search prefix. */
+    public static final int AUTOCOMPLETE_LIMIT = 10;
+
+    /** Typos allowed in a fuzzy search by default and at most, and the time it may take. */
+    public static final int FUZZY_DEFAULT_EDITS = 1;
+    public static final int FUZZY_MAX_EDITS = 3;
+    public static final long FUZZY_BUDGET_NANOS = 20_000_000;
+
+    /** Most sources, and most targets, in one distance matrix request. */
+    public static final int DISTANCE_MATRIX_MAX_POINTS = 1000;
+
+    /** Most routes, the shortest included, in one alternative routes request,
+     *  and the time it may spend looking for alternatives. */
+    public static final int ALTERNATIVE_ROUTES_MAX = 5;
+    public static final long ALTERNATIVE_ROUTES_BUDGET_NANOS = 2_000_000;
+
+    /** Number of landmarks, and how they are picked, for the ALT engine. */
+    public static final int LANDMARK_COUNT = 16;
+    public static final Landmarks.Selection LANDMARK_SELECTION = Landmarks.Selection.AVOID;
+
+    /** Each browser session's current route, dropped after half an hour unused. */
+    public static final long ROUTE_TTL_MILLIS = 30 * 60 * 1000;
+    public static final RouteStore ROUTE_STORE = new RouteStore(ROUTE_TTL_MILLIS);
+
+    /** Each browser session's current isochrone outline, kept like its route. */
+    public static final RouteStore ISOCHRONE_STORE = new RouteStore(ROUTE_TTL_MILLIS);
+
+    /** Largest distance budget of an isochrone request, in miles. */
+    public static final double ISOCHRONE_MAX_MILES = 10;
+
+    /** Encoded raster images kept for repeat requests: 64MB, a few hundred screens. */
+    public static final long RASTER_CACHE_BYTES = 64L << 20;
+    public static final RasterResponseCache RASTER_CACHE =
+            new RasterResponseCache(RASTER_CACHE_BYTES, ROUTE_STORE, ISOCHRONE_STORE);
+
+    /** Cookie naming the session, holding an id the server issued. */
+    public static final String SESSION_COOKIE = "bearmaps_session";
+
+    /** Worker threads serving requests; raster and route requests are CPU bound. */
+    public static final int SERVER_THREADS = Math.max(8, 2 * Runtime.getRuntime().availableProcessors());
+
+    /** Request, search and cache metrics, served at /metrics. */
+    public static final ServerMetrics METRICS = new ServerMetrics();
 }
@@ -0,0 +1,59 @@
+package bearmaps.test;
+
+import bearmaps.hw4.IndexedAStarSolver;
+import bearmaps.hw4.streetmap.AlternativeRoutes;
+import bearmaps.hw4.streetmap.CHSolver;
+import bearmaps.hw4.streetmap.CompactStreetMapGraph;
+import bearmaps.hw4.streetmap.ContractionHierarchy;
+import bearmaps.proj2c.AugmentedStreetMapGraph;
+import bearmaps.proj2c.utils.Constants;
+
+import java.util.Random;
+
+/**
+ * Times three alternative routes against one A* and one CH query between the
+ * same random vertices, with and without the server's latency budget. Not
+ * part of the unit tests, as timings depend on the machine; run it directly,
+ * optionally giving the OSM file and the number of queries.
+ */
+public class AlternativeRoutesBenchmark {
+    private static final int ROUNDS = 3;
+
+    public static void main(String[] args) {
+        String dbPath = args.length > 0 ? args[0] : Constants.OSM_DB_PATH;
+        int queries = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        AugmentedStreetMapGraph graph = new AugmentedStreetMapGraph(dbPath);
+        CompactStreetMapGraph csr = graph.compact();
+        ContractionHierarchy ch = graph.contractionHierarchy();
+        int[][] pairs = RandomVertices.pairs(csr, new Random(91), queries);
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            int routes = 0;
+            for (int[] q : pairs) {
+                routes += AlternativeRoutes.compute(csr, q[0], q[1], 3).length;
+            }
+            double alternatives = (System.nanoTime() - start) / 1e3 / queries;
+            start = System.nanoTime();
+            int budgeted = 0;
+            for (int[] q : pairs) {
+                budgeted += AlternativeRoutes.compute(csr, q[0], q[1], 3,
+                        Constants.ALTERNATIVE_ROUTES_BUDGET_NANOS).length;
+            }
+            double withBudget = (System.nanoTime() - start) / 1e3 / queries;
+            start = System.nanoTime();
+            for (int[] q : pairs) {
+                new IndexedAStarSolver(csr, q[0], q[1], 20);
+            }
+            double aStar = (System.nanoTime() - start) / 1e3 / queries;
+            start = System.nanoTime();
+            for (int[] q : pairs) {
+                new CHSolver(ch, csr.id(q[0]), csr.id(q[1]));
+            }
+            double chTime = (System.nanoTime() - start) / 1e3 / queries;
+            System.out.println(String.format("%.2f routes in %.1fus each, %.2f in %.1fus within "
+                    + "the budget; one A* query %.1fus, one CH query %.1fus",
+                    (double) routes / queries, alternatives, (double) budgeted / queries,
+                    withBudget, aStar, chTime));
+        }
+    }
+}
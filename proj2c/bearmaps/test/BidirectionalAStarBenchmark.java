@@ -0,0 +1,48 @@
+package bearmaps.test;
+
+import bearmaps.hw4.AStarSolver;
+import bearmaps.hw4.BidirectionalAStarSolver;
+import bearmaps.hw4.ReversibleAStarGraph;
+import bearmaps.proj2c.AugmentedStreetMapGraph;
+import bearmaps.proj2c.utils.Constants;
+
+import java.util.Random;
+
+/**
+ * Compares the states explored and the time taken by A* and bidirectional
+ * A* on the same random queries, with the great-circle and the landmark
+ * heuristic. Not part of the unit tests, as timings depend on the machine;
+ * run it directly, optionally giving the OSM file and the number of queries.
+ */
+public class BidirectionalAStarBenchmark {
+
+    public static void main(String[] args) {
+        String dbPath = args.length > 0 ? args[0] : Constants.OSM_DB_PATH;
+        int queries = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        AugmentedStreetMapGraph graph = new AugmentedStreetMapGraph(dbPath);
+        long[][] pairs = RandomVertices.idPairs(graph.compact(), new Random(61), queries);
+        report("great-circle", graph, pairs);
+        report("landmarks", graph.landmarks(), pairs);
+    }
+
+    private static void report(String heuristic, ReversibleAStarGraph<Long> g, long[][] pairs) {
+        long forwardStates = 0;
+        long bidirectionalStates = 0;
+        double forwardTime = 0;
+        double bidirectionalTime = 0;
+        for (long[] q : pairs) {
+            AStarSolver<Long> forward = new AStarSolver<>(g, q[0], q[1], 20);
+            BidirectionalAStarSolver<Long> bidirectional =
+                    new BidirectionalAStarSolver<>(g, q[0], q[1], 20);
+            forwardStates += forward.numStatesExplored();
+            bidirectionalStates += bidirectional.numStatesExplored();
+            forwardTime += forward.explorationTime();
+            bidirectionalTime += bidirectional.explorationTime();
+        }
+        int n = pairs.length;
+        System.out.println(String.format("%s: A* %.1f states in %.2fms, "
+                + "bidirectional A* %.1f states in %.2fms", heuristic,
+                (double) forwardStates / n, forwardTime / n * 1e3,
+                (double) bidirectionalStates / n, bidirectionalTime / n * 1e3));
+    }
+}
@@ -0,0 +1,76 @@
+package bearmaps.test;
+
+import bearmaps.proj2c.AugmentedStreetMapGraph;
+import bearmaps.proj2c.server.handler.impl.RoutingAPIHandler;
+import bearmaps.proj2c.utils.Constants;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Measures route requests per second with 1, 2, 4, ... clients, each with its
+ * own session, sending random routes through the route handler at once. Not
+ * part of the unit tests, as timings depend on the machine; run it directly,
+ * optionally giving the OSM file and the most clients to try.
+ */
+public class ConcurrentSessionsBenchmark {
+    private static final int REQUESTS_PER_CLIENT = 200;
+
+    public static void main(String[] args) throws Exception {
+        String dbPath = args.length > 0 ? args[0] : Constants.OSM_DB_PATH;
+        int maxClients = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        Constants.SEMANTIC_STREET_GRAPH = new AugmentedStreetMapGraph(dbPath);
+        RoutingAPIHandler routing = new RoutingAPIHandler();
+
+        for (int clients = 1; clients <= maxClients; clients *= 2) {
+            CountDownLatch start = new CountDownLatch(1);
+            ExecutorService pool = Executors.newFixedThreadPool(clients);
+            List<Future<?>> running = new ArrayList<>();
+            for (int c = 0; c < clients; c++) {
+                String session = "client-" + c;
+                Random random = new Random(c);
+                running.add(pool.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < REQUESTS_PER_CLIENT; i++) {
+                        routing.processRequest(randomQuery(random), session, null);
+                    }
+                    return null;
+                }));
+            }
+            long began = System.nanoTime();
+            start.countDown();
+            for (Future<?> f : running) {
+                f.get();
+            }
+            double seconds = (System.nanoTime() - began) / 1e9;
+            pool.shutdown();
+            int total = clients * REQUESTS_PER_CLIENT;
+            System.out.println(String.format("%d clients: %d route requests in %.2fs (%.0f/s)",
+                    clients, total, seconds, total / seconds));
+        }
+    }
+
+    private static Map<String, Double> randomQuery(Random random) {
+        Map<String, Double> params = new HashMap<>();
+        params.put("start_lon", randomLon(random));
+        params.put("start_lat", randomLat(random));
+        params.put("end_lon", randomLon(random));
+        params.put("end_lat", randomLat(random));
+        return params;
+    }
+
+    private static double randomLon(Random random) {
+        return Constants.ROOT_ULLON + random.nextDouble() * (Constants.ROOT_LRLON - Constants.ROOT_ULLON);
+    }
+
+    private static double randomLat(Random random) {
+        return Constants.ROOT_LRLAT + random.nextDouble() * (Constants.ROOT_ULLAT - Constants.ROOT_LRLAT);
+    }
+}
@@ -0,0 +1,38 @@
+package bearmaps.test;
+
+import bearmaps.hw4.AStarSolver;
+import bearmaps.hw4.streetmap.CHSolver;
+import bearmaps.hw4.streetmap.ContractionHierarchy;
+import bearmaps.proj2c.AugmentedStreetMapGraph;
+import bearmaps.proj2c.utils.Constants;
+
+import java.util.Random;
+
+/**
+ * Times building the contraction hierarchy, and CH queries against A* on the
+ * same random queries. Not part of the unit tests, as timings depend on the
+ * machine; run it directly, optionally giving the OSM file and the number of
+ * queries.
+ */
+public class ContractionHierarchyBenchmark {
+
+    public static void main(String[] args) {
+        String dbPath = args.length > 0 ? args[0] : Constants.OSM_DB_PATH;
+        int queries = args.length > 1 ? Integer.parseInt(args[1]) : 300;
+        AugmentedStreetMapGraph graph = new AugmentedStreetMapGraph(dbPath);
+        long start = System.nanoTime();
+        ContractionHierarchy ch = graph.contractionHierarchy();
+        System.out.println(String.format("Built hierarchy in %.2fs with %d shortcuts",
+                (System.nanoTime() - start) / 1e9, ch.shortcutCount()));
+
+        long[][] pairs = RandomVertices.idPairs(graph.compact(), new Random(61), queries);
+        double aStarTime = 0;
+        double chTime = 0;
+        for (long[] q : pairs) {
+            aStarTime += new AStarSolver<>(graph, q[0], q[1], 20).explorationTime();
+            chTime += new CHSolver(ch, q[0], q[1]).explorationTime();
+        }
+        System.out.println(String.format("A*: %.1fus per query, CH: %.1fus per query",
+                aStarTime / queries * 1e6, chTime / queries * 1e6));
+    }
+}
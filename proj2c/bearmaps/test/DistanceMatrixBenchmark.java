@@ -0,0 +1,45 @@
+package bearmaps.test;
+
+import bearmaps.hw4.streetmap.CHSolver;
+import bearmaps.hw4.streetmap.CompactStreetMapGraph;
+import bearmaps.hw4.streetmap.ContractionHierarchy;
+import bearmaps.hw4.streetmap.DistanceMatrix;
+import bearmaps.proj2c.AugmentedStreetMapGraph;
+import bearmaps.proj2c.utils.Constants;
+
+import java.util.Random;
+
+/**
+ * Times square distance matrices filled by bucket search and by one CH query
+ * per pair. Not part of the unit tests, as timings depend on the machine;
+ * run it directly, optionally giving the OSM file.
+ */
+public class DistanceMatrixBenchmark {
+
+    public static void main(String[] args) {
+        String dbPath = args.length > 0 ? args[0] : Constants.OSM_DB_PATH;
+        AugmentedStreetMapGraph graph = new AugmentedStreetMapGraph(dbPath);
+        CompactStreetMapGraph csr = graph.compact();
+        ContractionHierarchy ch = graph.contractionHierarchy();
+        Random random = new Random(83);
+        for (int size : new int[]{10, 100, 300}) {
+            int[] sources = RandomVertices.routable(csr, random, size);
+            int[] targets = RandomVertices.routable(csr, random, size);
+            long start = System.nanoTime();
+            DistanceMatrix.compute(ch, sources, targets);
+            double matrixMillis = (System.nanoTime() - start) / 1e6;
+
+            /* Larger matrices are extrapolated from the first 100 by 100 pairs. */
+            int pairs = Math.min(size, 100);
+            start = System.nanoTime();
+            for (int i = 0; i < pairs; i++) {
+                for (int j = 0; j < pairs; j++) {
+                    new CHSolver(ch, csr.id(sources[i]), csr.id(targets[j]));
+                }
+            }
+            double pairMillis = (System.nanoTime() - start) / 1e6 * size * size / (pairs * pairs);
+            System.out.println(String.format("%d x %d: bucket search %.1fms, "
+                    + "one query per pair %.1fms", size, size, matrixMillis, pairMillis));
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package bearmaps.test;
+
+import bearmaps.hw4.streetmap.CompactStreetMapGraph;
+import bearmaps.proj2c.AugmentedStreetMapGraph;
+import bearmaps.proj2c.utils.Constants;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Misspells prefixes of the map's names once each, and prints how long fuzzy
+ * search takes and how often it suggests a name with the prefix that was
+ * meant. Not part of the unit tests, as timings, and with them how many
+ * candidates fit the search budget, depend on the machine; run it directly,
+ * optionally giving the OSM file and the number of queries.
+ */
+public class FuzzyIndexBenchmark {
+
+    public static void main(String[] args) {
+        String dbPath = args.length > 0 ? args[0] : Constants.OSM_DB_PATH;
+        int queries = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        AugmentedStreetMapGraph graph = new AugmentedStreetMapGraph(dbPath);
+        CompactStreetMapGraph csr = graph.compact();
+        List<String> names = new ArrayList<>();
+        for (int v = 0; v < csr.vertexCount(); v++) {
+            String cleaned = csr.name(v) == null ? "" : clean(csr.name(v));
+            if (cleaned.length() >= 6) {
+                names.add(cleaned);
+            }
+        }
+        System.out.println(dbPath + ": " + names.size() + " names");
+
+        Random random = new Random(78);
+        long[] nanos = new long[queries];
+        int found = 0;
+        for (int q = 0; q < queries; q++) {
+            String name = names.get(random.nextInt(names.size()));
+            String meant = name.substring(0, Math.min(name.length(), 4 + random.nextInt(6)));
+            String typed = misspell(random, meant);
+
+            long start = System.nanoTime();
+            List<String> results = graph.getLocationsFuzzy(typed, 1);
+            nanos[q] = System.nanoTime() - start;
+            for (String result : results) {
+                if (clean(result).startsWith(meant)) {
+                    found++;
+                    break;
+                }
+            }
+        }
+        Arrays.sort(nanos);
+        System.out.println(String.format("Fuzzy search: median %.3f ms, 99th percentile %.3f ms, "
+                        + "meant prefix suggested for %.1f%% of queries",
+                nanos[queries / 2] / 1e6, nanos[queries * 99 / 100] / 1e6, 100.0 * found / queries));
+    }
+
+    private static String clean(String s) {
+        return s.replaceAll("[^a-zA-Z ]", "").toLowerCase();
+    }
+
+    /* Returns S with one random character inserted, deleted or replaced. */
+    private static String misspell(Random random, String s) {
+        int i = random.nextInt(s.length());
+        char c = (char) ('a' + random.nextInt(26));
+        switch (random.nextInt(3)) {
+            case 0:
+                return s.substring(0, i) + c + s.substring(i);
+            case 1:
+                return s.substring(0, i) + s.substring(i + 1);
+            default:
+                return s.substring(0, i) + c + s.substring(i + 1);
+        }
+    }
+}
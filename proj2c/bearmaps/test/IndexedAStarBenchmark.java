@@ -0,0 +1,38 @@
+package bearmaps.test;
+
+import bearmaps.hw4.AStarSolver;
+import bearmaps.hw4.IndexedAStarSolver;
+import bearmaps.hw4.streetmap.CompactStreetMapGraph;
+import bearmaps.proj2c.AugmentedStreetMapGraph;
+import bearmaps.proj2c.utils.Constants;
+
+import java.util.Random;
+
+/**
+ * Compares the time taken by AStarSolver and IndexedAStarSolver on the same
+ * random queries. Not part of the unit tests, as timings depend on the
+ * machine; run it directly, optionally giving the OSM file and the number of
+ * queries.
+ */
+public class IndexedAStarBenchmark {
+    private static final int ROUNDS = 3;
+
+    public static void main(String[] args) {
+        String dbPath = args.length > 0 ? args[0] : Constants.OSM_DB_PATH;
+        int queries = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        AugmentedStreetMapGraph graph = new AugmentedStreetMapGraph(dbPath);
+        CompactStreetMapGraph csr = graph.compact();
+        int[][] pairs = RandomVertices.pairs(csr, new Random(61), queries);
+        for (int round = 0; round < ROUNDS; round++) {
+            double boxedTime = 0;
+            double indexedTime = 0;
+            for (int[] q : pairs) {
+                boxedTime += new AStarSolver<>(graph, csr.id(q[0]), csr.id(q[1]), 20)
+                        .explorationTime();
+                indexedTime += new IndexedAStarSolver(csr, q[0], q[1], 20).explorationTime();
+            }
+            System.out.println(String.format("AStarSolver: %.2fms, IndexedAStarSolver: %.2fms "
+                    + "per query", boxedTime / queries * 1e3, indexedTime / queries * 1e3));
+        }
+    }
+}
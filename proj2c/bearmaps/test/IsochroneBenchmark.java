@@ -0,0 +1,41 @@
+package bearmaps.test;
+
+import bearmaps.hw4.streetmap.CompactStreetMapGraph;
+import bearmaps.hw4.streetmap.Isochrone;
+import bearmaps.proj2c.AugmentedStreetMapGraph;
+import bearmaps.proj2c.utils.Constants;
+
+import java.util.Random;
+
+/**
+ * Times isochrones from random vertices for growing budgets, one at a time
+ * and as a parallel batch. Not part of the unit tests, as timings depend on
+ * the machine; run it directly, optionally giving the OSM file and the
+ * number of queries.
+ */
+public class IsochroneBenchmark {
+
+    public static void main(String[] args) {
+        String dbPath = args.length > 0 ? args[0] : Constants.OSM_DB_PATH;
+        int queries = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        CompactStreetMapGraph csr = new AugmentedStreetMapGraph(dbPath).compact();
+        Random random = new Random(88);
+        int[][] sources = new int[queries][];
+        for (int i = 0; i < queries; i++) {
+            sources[i] = RandomVertices.routable(csr, random, 1);
+        }
+        for (double miles : new double[]{0.25, 0.5, 1, 2}) {
+            int reached = 0;
+            long start = System.nanoTime();
+            for (int[] s : sources) {
+                reached += Isochrone.compute(csr, s, miles).size();
+            }
+            double single = (System.nanoTime() - start) / 1e3 / queries;
+            start = System.nanoTime();
+            Isochrone.compute(csr, sources, miles);
+            double batch = (System.nanoTime() - start) / 1e3 / queries;
+            System.out.println(String.format("%.2f miles: %d vertices, %.1fus each, "
+                    + "%.1fus each in a parallel batch", miles, reached / queries, single, batch));
+        }
+    }
+}
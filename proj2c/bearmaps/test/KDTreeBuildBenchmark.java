@@ -0,0 +1,49 @@
+package bearmaps.test;
+
+import bearmaps.proj2ab.KDTree;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Times KDTree construction on pools of 1, 2, 4, ... threads, up to the
+ * number of cores, and prints the speedup over one thread. Not part of the
+ * unit tests, as timings depend on the machine; run it directly, optionally
+ * giving the number of points and the most threads to try.
+ */
+public class KDTreeBuildBenchmark {
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        int maxThreads = args.length > 1 ? Integer.parseInt(args[1])
+                : Runtime.getRuntime().availableProcessors();
+        Random random = new Random(73);
+        double[] xs = new double[n];
+        double[] ys = new double[n];
+        for (int i = 0; i < n; i++) {
+            xs[i] = random.nextDouble();
+            ys[i] = random.nextDouble();
+        }
+        System.out.println(String.format("%d points, %d cores, best of %d builds",
+                n, Runtime.getRuntime().availableProcessors(), ROUNDS));
+
+        double oneThread = 0;
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            new KDTree(xs, ys, pool);   // warm up
+            double best = Double.POSITIVE_INFINITY;
+            for (int round = 0; round < ROUNDS; round++) {
+                long start = System.nanoTime();
+                new KDTree(xs, ys, pool);
+                best = Math.min(best, (System.nanoTime() - start) / 1e9);
+            }
+            pool.shutdown();
+            if (threads == 1) {
+                oneThread = best;
+            }
+            System.out.println(String.format("%d threads: %.3f s (%.2fx)",
+                    threads, best, oneThread / best));
+        }
+    }
+}
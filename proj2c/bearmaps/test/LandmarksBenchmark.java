@@ -0,0 +1,50 @@
+package bearmaps.test;
+
+import bearmaps.hw4.AStarSolver;
+import bearmaps.hw4.streetmap.Landmarks;
+import bearmaps.proj2c.AugmentedStreetMapGraph;
+import bearmaps.proj2c.utils.Constants;
+
+import java.util.Random;
+
+/**
+ * Times selecting landmarks by each method, and compares the states explored
+ * and the time taken by A* with the landmark and the great-circle heuristic
+ * on the same random queries. Not part of the unit tests, as timings depend
+ * on the machine; run it directly, optionally giving the OSM file, the
+ * number of landmarks and the number of queries.
+ */
+public class LandmarksBenchmark {
+
+    public static void main(String[] args) {
+        String dbPath = args.length > 0 ? args[0] : Constants.OSM_DB_PATH;
+        int count = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        int queries = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+        AugmentedStreetMapGraph graph = new AugmentedStreetMapGraph(dbPath);
+        long[][] pairs = RandomVertices.idPairs(graph.compact(), new Random(61), queries);
+        for (Landmarks.Selection selection : Landmarks.Selection.values()) {
+            long start = System.nanoTime();
+            Landmarks landmarks = new Landmarks(graph.compact(), count, selection);
+            double buildTime = (System.nanoTime() - start) / 1e9;
+
+            long haversineStates = 0;
+            long altStates = 0;
+            double haversineTime = 0;
+            double altTime = 0;
+            for (long[] q : pairs) {
+                AStarSolver<Long> haversine = new AStarSolver<>(graph, q[0], q[1], 20);
+                AStarSolver<Long> alt = new AStarSolver<>(landmarks, q[0], q[1], 20);
+                haversineStates += haversine.numStatesExplored();
+                altStates += alt.numStatesExplored();
+                haversineTime += haversine.explorationTime();
+                altTime += alt.explorationTime();
+            }
+            System.out.println(String.format("%s, %d landmarks, selected in %.2fs", selection,
+                    count, buildTime));
+            System.out.println(String.format("  great-circle: %8.1f states, %.2fms per query",
+                    (double) haversineStates / queries, haversineTime / queries * 1e3));
+            System.out.println(String.format("  landmarks:    %8.1f states, %.2fms per query",
+                    (double) altStates / queries, altTime / queries * 1e3));
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package bearmaps.test;
+
+import bearmaps.hw4.streetmap.CompactStreetMapGraph;
+
+import java.util.Random;
+
+/**
+ * Picks random vertices that lie on some road, and random queries between
+ * them, for the tests that check routing on the Berkeley graph. Vertices are
+ * indices into a CompactStreetMapGraph unless the method says ids; a pair is
+ * drawn source first, then target, so fixed seeds give fixed queries.
+ */
+final class RandomVertices {
+
+    private RandomVertices() {
+    }
+
+    /** Returns the index of a random vertex of CSR with at least one edge. */
+    static int routable(CompactStreetMapGraph csr, Random random) {
+        int v;
+        do {
+            v = random.nextInt(csr.vertexCount());
+        } while (csr.degree(v) == 0);
+        return v;
+    }
+
+    /** Returns the indices of N random vertices of CSR with edges. */
+    static int[] routable(CompactStreetMapGraph csr, Random random, int n) {
+        int[] result = new int[n];
+        for (int i = 0; i < n; i++) {
+            result[i] = routable(csr, random);
+        }
+        return result;
+    }
+
+    /** Returns the node id of a random vertex of CSR with at least one edge. */
+    static long routableId(CompactStreetMapGraph csr, Random random) {
+        return csr.id(routable(csr, random));
+    }
+
+    /** Returns N random {source, target} pairs of vertex indices. */
+    static int[][] pairs(CompactStreetMapGraph csr, Random random, int n) {
+        int[][] result = new int[n][];
+        for (int i = 0; i < n; i++) {
+            result[i] = new int[]{routable(csr, random), routable(csr, random)};
+        }
+        return result;
+    }
+
+    /** Returns N random {source, target} pairs of node ids. */
+    static long[][] idPairs(CompactStreetMapGraph csr, Random random, int n) {
+        long[][] result = new long[n][];
+        for (int i = 0; i < n; i++) {
+            result[i] = new long[]{routableId(csr, random), routableId(csr, random)};
+        }
+        return result;
+    }
+}
@@ -0,0 +1,41 @@
+package bearmaps.test;
+
+import bearmaps.proj2c.AugmentedStreetMapGraph;
+import bearmaps.proj2c.utils.Constants;
+
+import java.util.Random;
+
+/**
+ * Times reverse geocoding random points in Berkeley to their nearest street.
+ * Not part of the unit tests, as timings depend on the machine; run it
+ * directly, optionally giving the OSM file and the number of queries.
+ */
+public class ReverseGeocodeBenchmark {
+    private static final int ROUNDS = 3;
+
+    public static void main(String[] args) {
+        String dbPath = args.length > 0 ? args[0] : Constants.OSM_DB_PATH;
+        int queries = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+        AugmentedStreetMapGraph graph = new AugmentedStreetMapGraph(dbPath);
+        long start = System.nanoTime();
+        graph.nearestStreet(-122.26, 37.87);
+        System.out.println(String.format("Built the segment index in %.2fs",
+                (System.nanoTime() - start) / 1e9));
+
+        Random random = new Random(75);
+        double[] lons = new double[queries];
+        double[] lats = new double[queries];
+        for (int q = 0; q < queries; q++) {
+            lons[q] = -122.30 + random.nextDouble() * 0.09;
+            lats[q] = 37.84 + random.nextDouble() * 0.05;
+        }
+        for (int round = 0; round < ROUNDS; round++) {
+            start = System.nanoTime();
+            for (int q = 0; q < queries; q++) {
+                graph.nearestStreet(lons[q], lats[q]);
+            }
+            System.out.println(String.format("Reverse geocoding: %.1f us per query",
+                    (System.nanoTime() - start) / 1e3 / queries));
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package bearmaps.test;
+
+import bearmaps.proj2c.AugmentedStreetMapGraph;
+import bearmaps.proj2c.Router;
+import bearmaps.proj2c.utils.Constants;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Times generating directions for long routes: by scanning for the edge
+ * between each pair of vertices, from the vertices through Route.of, and
+ * from the edges the solver returned. Not part of the unit tests, as timings
+ * depend on the machine; run it directly, optionally giving the OSM file and
+ * the number of routes.
+ */
+public class RouteDirectionsBenchmark {
+    private static final int ROUNDS = 3;
+
+    public static void main(String[] args) {
+        String dbPath = args.length > 0 ? args[0] : Constants.OSM_DB_PATH;
+        int n = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        AugmentedStreetMapGraph graph = new AugmentedStreetMapGraph(dbPath);
+        List<Router.Route> routes = TestRouteDirections.longRoutes(graph, n);
+        List<List<Long>> paths = new ArrayList<>();
+        int edges = 0;
+        for (Router.Route route : routes) {
+            paths.add(route.nodes());
+            edges += route.edges().length;
+        }
+        System.out.println(String.format("%d routes of %.0f edges on average",
+                n, (double) edges / n));
+
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (List<Long> path : paths) {
+                TestRouteDirections.scanDirections(graph, path);
+            }
+            long scan = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (List<Long> path : paths) {
+                Router.routeDirections(graph, path);
+            }
+            long fromNodes = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (Router.Route route : routes) {
+                Router.routeDirections(graph, route);
+            }
+            long fromEdges = System.nanoTime() - start;
+
+            System.out.println(String.format("Per route: edge scan %.1fus, from vertices %.1fus, "
+                    + "from edges %.1fus", scan / 1e3 / n, fromNodes / 1e3 / n, fromEdges / 1e3 / n));
+        }
+    }
+}
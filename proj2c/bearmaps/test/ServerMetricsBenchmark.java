@@ -0,0 +1,29 @@
+package bearmaps.test;
+
+import bearmaps.proj2c.ServerMetrics;
+
+/**
+ * Times what every request pays for its metrics: reading the clock and the
+ * thread's allocation counter twice, and recording both. Not part of the
+ * unit tests, as timings depend on the machine; run it directly, optionally
+ * giving the number of requests to record.
+ */
+public class ServerMetricsBenchmark {
+    private static final int ROUNDS = 3;
+
+    public static void main(String[] args) {
+        int calls = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        ServerMetrics.Requests requests = new ServerMetrics().requests("bench");
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < calls; i++) {
+                long allocatedBefore = ServerMetrics.threadAllocatedBytes();
+                long began = System.nanoTime();
+                requests.record(System.nanoTime() - began,
+                        ServerMetrics.threadAllocatedBytes() - allocatedBefore);
+            }
+            System.out.println(String.format("%.1fns to record a request",
+                    (double) (System.nanoTime() - start) / calls));
+        }
+    }
+}
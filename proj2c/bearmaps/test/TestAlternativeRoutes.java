@@ -0,0 +1,155 @@
+package bearmaps.test;
+
+import bearmaps.hw4.SolverOutcome;
+import bearmaps.hw4.streetmap.AlternativeRoutes;
+import bearmaps.hw4.streetmap.CHSolver;
+import bearmaps.hw4.streetmap.CompactStreetMapGraph;
+import bearmaps.proj2c.AugmentedStreetMapGraph;
+import bearmaps.proj2c.Router;
+import bearmaps.proj2c.server.handler.impl.AlternativeRoutesAPIHandler;
+import bearmaps.proj2c.utils.Constants;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that alternative routes are real, distinct and not much longer
+ * than the shortest path on Berkeley. AlternativeRoutesBenchmark times them.
+ */
+public class TestAlternativeRoutes {
+    private static final String OSM_DB_PATH = "../library-sp19/data/proj2c_xml/berkeley-2019.osm.xml";
+    private static final double DELTA = 1e-9;
+    private static AugmentedStreetMapGraph graph;
+    private static CompactStreetMapGraph csr;
+
+    @BeforeClass
+    public static void setUp() {
+        graph = new AugmentedStreetMapGraph(OSM_DB_PATH);
+        csr = graph.compact();
+    }
+
+    @Test
+    public void testRoutes() {
+        Random random = new Random(89);
+        int queries = 100;
+        int withAlternatives = 0;
+        for (int[] q : RandomVertices.pairs(csr, random, queries)) {
+            int s = q[0];
+            int t = q[1];
+            int[][] routes = AlternativeRoutes.compute(csr, s, t, 3);
+            CHSolver expected = new CHSolver(graph.contractionHierarchy(), csr.id(s), csr.id(t));
+            if (expected.outcome() != SolverOutcome.SOLVED) {
+                assertEquals(0, routes.length);
+                continue;
+            }
+            assertTrue(routes.length >= 1 && routes.length <= 3);
+            double shortest = expected.solutionWeight();
+            assertEquals(shortest, weight(routes[0]), DELTA);
+
+            Set<Integer> taken = new HashSet<>();
+            for (int[] route : routes) {
+                assertIsSimplePath(s, t, route);
+                double length = weight(route);
+                assertTrue(length >= shortest - DELTA);
+                assertTrue(length <= (1 + AlternativeRoutes.STRETCH) * shortest + DELTA);
+                double shared = 0;
+                for (int e : route) {
+                    shared += taken.contains(e) ? csr.weight(e) : 0;
+                }
+                assertTrue(shared <= AlternativeRoutes.SHARING * shortest + DELTA);
+                for (int e : route) {
+                    taken.add(e);
+                }
+            }
+            withAlternatives += routes.length > 1 ? 1 : 0;
+        }
+        System.out.println(withAlternatives + " of " + queries + " queries found alternatives");
+        assertTrue(withAlternatives > queries / 4);
+    }
+
+    @Test
+    public void testEdgeCases() {
+        int s = RandomVertices.routable(csr, new Random(0));
+        int t = RandomVertices.routable(csr, new Random(1));
+        int[][] same = AlternativeRoutes.compute(csr, s, s, 3);
+        assertEquals(1, same.length);
+        assertEquals(0, same[0].length);
+        assertEquals(0, AlternativeRoutes.compute(csr, -1, t, 3).length);
+        assertEquals(0, AlternativeRoutes.compute(csr, s, t, 0).length);
+        assertEquals(1, AlternativeRoutes.compute(csr, s, t, 1).length);
+    }
+
+    /* With no time to spare, only the shortest path comes back, and it is
+     * still a shortest path. */
+    @Test
+    public void testBudget() {
+        Random random = new Random(92);
+        for (int[] q : RandomVertices.pairs(csr, random, 50)) {
+            int[][] routes = AlternativeRoutes.compute(csr, q[0], q[1], 3, 0);
+            CHSolver expected = new CHSolver(graph.contractionHierarchy(), csr.id(q[0]), csr.id(q[1]));
+            if (expected.outcome() != SolverOutcome.SOLVED) {
+                assertEquals(0, routes.length);
+                continue;
+            }
+            assertEquals(1, routes.length);
+            assertIsSimplePath(q[0], q[1], routes[0]);
+            assertEquals(expected.solutionWeight(), weight(routes[0]), DELTA);
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testHandler() {
+        Constants.SEMANTIC_STREET_GRAPH = graph;
+        Random random = new Random(90);
+        int s = RandomVertices.routable(csr, random);
+        int t = RandomVertices.routable(csr, random);
+        Map<String, Double> params = new HashMap<>();
+        params.put("start_lon", csr.lon(s));
+        params.put("start_lat", csr.lat(s));
+        params.put("end_lon", csr.lon(t));
+        params.put("end_lat", csr.lat(t));
+        params.put("count", 3.0);
+        Map<String, Object> result = new AlternativeRoutesAPIHandler().processRequest(params, null);
+
+        List<Router.Route> expected = Router.alternativeRoutes(graph, csr.lon(s), csr.lat(s),
+                csr.lon(t), csr.lat(t), 3);
+        List<Map<String, Object>> routes = (List<Map<String, Object>>) result.get("routes");
+        assertEquals(expected.size(), routes.size());
+        for (int i = 0; i < routes.size(); i++) {
+            assertEquals(expected.get(i).nodes(), routes.get(i).get("nodes"));
+            assertEquals(expected.get(i).miles(), (double) routes.get(i).get("miles"), DELTA);
+        }
+        assertFalse(routes.isEmpty());
+    }
+
+    private static void assertIsSimplePath(int s, int t, int[] route) {
+        Set<Integer> visited = new HashSet<>();
+        visited.add(s);
+        int at = s;
+        for (int e : route) {
+            assertTrue(e >= csr.edgeStart(at) && e < csr.edgeEnd(at));
+            at = csr.target(e);
+            assertTrue(visited.add(at));
+        }
+        assertEquals(t, at);
+    }
+
+    private static double weight(int[] route) {
+        double weight = 0;
+        for (int e : route) {
+            weight += csr.weight(e);
+        }
+        return weight;
+    }
+}
@@ -0,0 +1,72 @@
+package bearmaps.test;
+
+import bearmaps.proj2c.AutocompleteIndex;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/** Checks ranked prefix search against brute force. */
+public class TestAutocompleteIndex {
+
+    @Test
+    public void testRanking() {
+        AutocompleteIndex index = new AutocompleteIndex(
+                new String[]{"peets coffee", "peoples park", "pizza", "pet shop", "berkeley bowl"},
+                new String[]{"Peet's Coffee", "People's Park", "Pizza", "Pet Shop", "Berkeley Bowl"},
+                new int[]{5, 1, 5, 2, 9});
+        assertEquals(Arrays.asList("Peet's Coffee", "Pet Shop", "People's Park"), index.topK("pe", 10));
+        assertEquals(Arrays.asList("Peet's Coffee", "Pizza"), index.topK("p", 2));
+        assertEquals(Arrays.asList("Berkeley Bowl", "Peet's Coffee"), index.topK("", 2));
+        assertEquals(Collections.emptyList(), index.topK("q", 10));
+        assertEquals(Collections.emptyList(), index.topK("pizzas", 10));
+        assertEquals(Collections.emptyList(), index.topK("p", 0));
+    }
+
+    @Test
+    public void testRandom() {
+        Random random = new Random(76);
+        int n = 5000;
+        List<String> keys = new ArrayList<>();
+        while (keys.size() < n) {
+            StringBuilder key = new StringBuilder();
+            int length = 1 + random.nextInt(6);
+            for (int i = 0; i < length; i++) {
+                key.append((char) ('a' + random.nextInt(4)));
+            }
+            if (!keys.contains(key.toString())) {
+                keys.add(key.toString());
+            }
+        }
+        int[] weights = new int[n];
+        for (int i = 0; i < n; i++) {
+            weights[i] = random.nextInt(20);
+        }
+        String[] keyArray = keys.toArray(new String[0]);
+        AutocompleteIndex index = new AutocompleteIndex(keyArray, keyArray, weights);
+        assertEquals(n, index.size());
+
+        for (int q = 0; q < 500; q++) {
+            String prefix = keyArray[random.nextInt(n)].substring(0, 1 + random.nextInt(2));
+            int k = 1 + random.nextInt(30);
+            List<Integer> matches = new ArrayList<>();
+            for (int i = 0; i < n; i++) {
+                if (keyArray[i].startsWith(prefix)) {
+                    matches.add(i);
+                }
+            }
+            matches.sort((a, b) -> weights[a] != weights[b]
+                    ? Integer.compare(weights[b], weights[a]) : keyArray[a].compareTo(keyArray[b]));
+            List<String> expected = new ArrayList<>();
+            for (int i = 0; i < Math.min(k, matches.size()); i++) {
+                expected.add(keyArray[matches.get(i)]);
+            }
+            assertEquals(expected, index.topK(prefix, k));
+        }
+    }
+}
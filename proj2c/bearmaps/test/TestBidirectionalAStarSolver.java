@@ -0,0 +1,106 @@
+package bearmaps.test;
+
+import bearmaps.hw4.AStarSolver;
+import bearmaps.hw4.BidirectionalAStarSolver;
+import bearmaps.hw4.ReversibleAStarGraph;
+import bearmaps.hw4.SolverOutcome;
+import bearmaps.hw4.WeightedEdge;
+import bearmaps.hw4.streetmap.CompactStreetMapGraph;
+import bearmaps.proj2c.AugmentedStreetMapGraph;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks bidirectional A* against A* on the Berkeley graph, with both the
+ * great-circle and the landmark heuristic. BidirectionalAStarBenchmark
+ * compares the states each explores and their times.
+ */
+public class TestBidirectionalAStarSolver {
+    private static final String OSM_DB_PATH = "../library-sp19/data/proj2c_xml/berkeley-2019.osm.xml";
+    private static final int NUM_QUERIES = 200;
+    private static final double DELTA = 1e-9;
+    private static AugmentedStreetMapGraph graph;
+    private static boolean initialized = false;
+
+    @Before
+    public void setUp() throws Exception {
+        if (initialized) {
+            return;
+        }
+        graph = new AugmentedStreetMapGraph(OSM_DB_PATH);
+        initialized = true;
+    }
+
+    @Test
+    public void testGreatCircle() {
+        compare("great-circle", graph);
+    }
+
+    @Test
+    public void testLandmarks() {
+        compare("landmarks", graph.landmarks());
+    }
+
+    /* Checks bidirectional A* against A* over G on fixed queries. */
+    private void compare(String heuristic, ReversibleAStarGraph<Long> g) {
+        CompactStreetMapGraph csr = graph.compact();
+        Random random = new Random(61);
+        for (long[] q : RandomVertices.idPairs(csr, random, NUM_QUERIES)) {
+            long s = q[0];
+            long t = q[1];
+            AStarSolver<Long> expected = new AStarSolver<>(g, s, t, 20);
+            BidirectionalAStarSolver<Long> actual = new BidirectionalAStarSolver<>(g, s, t, 20);
+            assertEquals(heuristic, expected.outcome(), actual.outcome());
+            assertEquals(heuristic + " weight from " + s + " to " + t,
+                    expected.solutionWeight(), actual.solutionWeight(), DELTA);
+            List<Long> path = actual.solution();
+            assertEquals(s, (long) path.get(0));
+            assertEquals(t, (long) path.get(path.size() - 1));
+            assertEquals(actual.solutionWeight(), pathWeight(path), DELTA);
+        }
+    }
+
+    @Test
+    public void testSameVertex() {
+        long s = RandomVertices.routableId(graph.compact(), new Random(0));
+        BidirectionalAStarSolver<Long> solver = new BidirectionalAStarSolver<>(graph, s, s, 20);
+        assertEquals(SolverOutcome.SOLVED, solver.outcome());
+        assertEquals(1, solver.solution().size());
+        assertEquals(0, solver.solutionWeight(), DELTA);
+    }
+
+    @Test
+    public void testReverseNeighbors() {
+        CompactStreetMapGraph csr = graph.compact();
+        long v = RandomVertices.routableId(csr, new Random(1));
+        for (WeightedEdge<Long> in : graph.reverseNeighbors(v)) {
+            assertEquals(v, (long) in.from());
+            boolean found = false;
+            for (WeightedEdge<Long> out : graph.neighbors(in.to())) {
+                found |= out.to() == v && out.weight() == in.weight();
+            }
+            assertTrue(found);
+        }
+    }
+
+    /* Sums the lightest edge weight between consecutive vertices of PATH. */
+    private static double pathWeight(List<Long> path) {
+        double weight = 0;
+        for (int i = 0; i < path.size() - 1; i++) {
+            double best = Double.POSITIVE_INFINITY;
+            for (WeightedEdge<Long> e : graph.neighbors(path.get(i))) {
+                if (e.to().equals(path.get(i + 1))) {
+                    best = Math.min(best, e.weight());
+                }
+            }
+            weight += best;
+        }
+        return weight;
+    }
+}
@@ -0,0 +1,134 @@
+package bearmaps.test;
+
+import bearmaps.proj2c.AugmentedStreetMapGraph;
+import bearmaps.proj2c.RouteStore;
+import bearmaps.proj2c.server.handler.impl.ClearRouteAPIHandler;
+import bearmaps.proj2c.server.handler.impl.RoutingAPIHandler;
+import bearmaps.proj2c.utils.Constants;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs many clients, each with its own session, through the route handlers
+ * at once, and checks that every client only ever sees its own routes.
+ * ConcurrentSessionsBenchmark measures their throughput.
+ */
+public class TestConcurrentSessions {
+    private static final String OSM_DB_PATH = "../library-sp19/data/proj2c_xml/berkeley-2019.osm.xml";
+    private static final int NUM_QUERIES = 50;
+    private static final int NUM_CLIENTS = 16;
+    private static final int ROUNDS_PER_CLIENT = 100;
+    private static List<Map<String, Double>> queries;
+    private static List<Map<String, Object>> expectedResults;
+    private static List<List<Long>> expectedRoutes;
+    private static boolean initialized = false;
+
+    @Before
+    public void setUp() throws Exception {
+        if (initialized) {
+            return;
+        }
+        Constants.SEMANTIC_STREET_GRAPH = new AugmentedStreetMapGraph(OSM_DB_PATH);
+        RoutingAPIHandler routing = new RoutingAPIHandler();
+        Random random = new Random(64);
+        queries = new ArrayList<>();
+        expectedResults = new ArrayList<>();
+        expectedRoutes = new ArrayList<>();
+        for (int i = 0; i < NUM_QUERIES; i++) {
+            Map<String, Double> params = new HashMap<>();
+            params.put("start_lon", randomLon(random));
+            params.put("start_lat", randomLat(random));
+            params.put("end_lon", randomLon(random));
+            params.put("end_lat", randomLat(random));
+            queries.add(params);
+            String session = "expected-" + i;
+            expectedResults.add(routing.processRequest(params, session, null));
+            expectedRoutes.add(Constants.ROUTE_STORE.get(session));
+            Constants.ROUTE_STORE.clear(session);
+        }
+        initialized = true;
+    }
+
+    @Test
+    public void testParallelClients() throws Exception {
+        RoutingAPIHandler routing = new RoutingAPIHandler();
+        ClearRouteAPIHandler clearRoute = new ClearRouteAPIHandler();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(NUM_CLIENTS);
+        List<Future<Integer>> clients = new ArrayList<>();
+        for (int c = 0; c < NUM_CLIENTS; c++) {
+            String session = "client-" + c;
+            Random random = new Random(c);
+            Callable<Integer> client = () -> {
+                start.await();
+                int checked = 0;
+                for (int round = 0; round < ROUNDS_PER_CLIENT; round++) {
+                    int q = random.nextInt(NUM_QUERIES);
+                    Map<String, Object> result = routing.processRequest(queries.get(q), session, null);
+                    assertEquals(expectedResults.get(q), result);
+                    assertEquals(session + " round " + round,
+                            expectedRoutes.get(q), Constants.ROUTE_STORE.get(session));
+                    if (random.nextInt(4) == 0) {
+                        clearRoute.processRequest(null, session, null);
+                        assertTrue(Constants.ROUTE_STORE.get(session).isEmpty());
+                    }
+                    checked++;
+                }
+                return checked;
+            };
+            clients.add(pool.submit(client));
+        }
+
+        start.countDown();
+        int total = 0;
+        for (Future<Integer> f : clients) {
+            total += f.get();
+        }
+        pool.shutdown();
+        assertEquals(NUM_CLIENTS * ROUNDS_PER_CLIENT, total);
+    }
+
+    @Test
+    public void testExpiry() {
+        AtomicLong now = new AtomicLong();
+        RouteStore store = new RouteStore(1000, now::get);
+        List<Long> route = Arrays.asList(1L, 2L, 3L);
+        store.put("a", route);
+        store.put("b", route);
+
+        now.set(900);
+        assertEquals(route, store.get("a"));
+        now.set(1800);
+        assertEquals(route, store.get("a"));
+        assertTrue(store.get("b").isEmpty());
+
+        now.set(5000);
+        store.put("c", route);
+        assertEquals(1, store.size());
+        assertEquals(route, store.get("c"));
+    }
+
+    private static double randomLon(Random random) {
+        return Constants.ROOT_ULLON + random.nextDouble() * (Constants.ROOT_LRLON - Constants.ROOT_ULLON);
+    }
+
+    private static double randomLat(Random random) {
+        return Constants.ROOT_LRLAT + random.nextDouble() * (Constants.ROOT_ULLAT - Constants.ROOT_LRLAT);
+    }
+}
@@ -0,0 +1,142 @@
+package bearmaps.test;
+
+import bearmaps.hw4.AStarSolver;
+import bearmaps.hw4.SolverOutcome;
+import bearmaps.hw4.streetmap.CHSolver;
+import bearmaps.hw4.streetmap.CompactStreetMapGraph;
+import bearmaps.hw4.streetmap.ContractionHierarchy;
+import bearmaps.proj2c.AugmentedStreetMapGraph;
+import bearmaps.proj2c.Router;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks contraction hierarchy queries against A* on the Berkeley graph.
+ * ContractionHierarchyBenchmark times the build and the queries.
+ */
+public class TestContractionHierarchy {
+    private static final String OSM_DB_PATH = "../library-sp19/data/proj2c_xml/berkeley-2019.osm.xml";
+    private static final int NUM_QUERIES = 300;
+    private static final double DELTA = 1e-9;
+    private static AugmentedStreetMapGraph graph;
+    private static ContractionHierarchy ch;
+    private static boolean initialized = false;
+
+    @Before
+    public void setUp() throws Exception {
+        if (initialized) {
+            return;
+        }
+        graph = new AugmentedStreetMapGraph(OSM_DB_PATH);
+        ch = graph.contractionHierarchy();
+        initialized = true;
+    }
+
+    /* Until the background build is done, routes are answered by A*. */
+    @Test
+    public void testBackgroundBuild() throws Exception {
+        AugmentedStreetMapGraph fresh = new AugmentedStreetMapGraph(OSM_DB_PATH);
+        assertEquals(Router.Engine.A_STAR,
+                Router.readyEngine(fresh, Router.Engine.CONTRACTION_HIERARCHY));
+        assertEquals(Router.Engine.ALT, Router.readyEngine(fresh, Router.Engine.ALT));
+        fresh.buildContractionHierarchyInBackground();
+        long deadline = System.nanoTime() + 120_000_000_000L;
+        while (!fresh.hasContractionHierarchy() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(Router.Engine.CONTRACTION_HIERARCHY,
+                Router.readyEngine(fresh, Router.Engine.CONTRACTION_HIERARCHY));
+    }
+
+    @Test
+    public void testMatchesAStar() {
+        CompactStreetMapGraph csr = graph.compact();
+        Random random = new Random(61);
+        for (long[] q : RandomVertices.idPairs(csr, random, NUM_QUERIES)) {
+            long s = q[0];
+            long t = q[1];
+            AStarSolver<Long> expected = new AStarSolver<>(graph, s, t, 20);
+            CHSolver actual = new CHSolver(ch, s, t);
+            assertEquals(expected.outcome(), actual.outcome());
+            if (expected.outcome() != SolverOutcome.SOLVED) {
+                continue;
+            }
+            assertEquals("Weight from " + s + " to " + t,
+                    expected.solutionWeight(), actual.solutionWeight(), DELTA);
+            assertEquals(pathWeight(csr, actual.solution()), actual.solutionWeight(), DELTA);
+        }
+    }
+
+    @Test
+    public void testTrivialQueries() {
+        CompactStreetMapGraph csr = graph.compact();
+        long s = RandomVertices.routableId(csr, new Random(0));
+        CHSolver same = new CHSolver(ch, s, s);
+        assertEquals(SolverOutcome.SOLVED, same.outcome());
+        assertEquals(1, same.solution().size());
+        assertEquals(0, same.solutionWeight(), DELTA);
+
+        CHSolver missing = new CHSolver(ch, s, Long.MIN_VALUE);
+        assertEquals(SolverOutcome.UNSOLVABLE, missing.outcome());
+        assertEquals(0, missing.solution().size());
+    }
+
+    /*
+     * Nodes 2 to 4 and 6 share one location, so the edges between them weigh
+     * nothing. Contracting one of them must still keep the others connected.
+     */
+    @Test
+    public void testColocatedNodes() throws Exception {
+        File file = File.createTempFile("bearmaps", ".osm.xml");
+        file.deleteOnExit();
+        Files.write(file.toPath(), ("<osm version=\"0.6\">\n"
+                + "  <node id=\"1\" lat=\"37.870\" lon=\"-122.260\"/>\n"
+                + "  <node id=\"2\" lat=\"37.871\" lon=\"-122.259\"/>\n"
+                + "  <node id=\"3\" lat=\"37.871\" lon=\"-122.259\"/>\n"
+                + "  <node id=\"4\" lat=\"37.871\" lon=\"-122.259\"/>\n"
+                + "  <node id=\"5\" lat=\"37.872\" lon=\"-122.258\"/>\n"
+                + "  <node id=\"6\" lat=\"37.871\" lon=\"-122.259\"/>\n"
+                + "  <node id=\"7\" lat=\"37.871\" lon=\"-122.257\"/>\n"
+                + "  <way id=\"10\"><nd ref=\"1\"/><nd ref=\"2\"/><nd ref=\"3\"/><nd ref=\"4\"/>"
+                + "<nd ref=\"5\"/><tag k=\"highway\" v=\"residential\"/></way>\n"
+                + "  <way id=\"11\"><nd ref=\"3\"/><nd ref=\"6\"/><nd ref=\"7\"/>"
+                + "<tag k=\"highway\" v=\"residential\"/></way>\n"
+                + "</osm>\n").getBytes(StandardCharsets.UTF_8));
+        AugmentedStreetMapGraph tiny = new AugmentedStreetMapGraph(file.getPath());
+        ContractionHierarchy tinyCH = tiny.contractionHierarchy();
+        for (long s = 1; s <= 7; s++) {
+            for (long t = 1; t <= 7; t++) {
+                AStarSolver<Long> expected = new AStarSolver<>(tiny, s, t, 20);
+                CHSolver actual = new CHSolver(tinyCH, s, t);
+                assertEquals("From " + s + " to " + t, expected.outcome(), actual.outcome());
+                assertEquals("Weight from " + s + " to " + t,
+                        expected.solutionWeight(), actual.solutionWeight(), DELTA);
+            }
+        }
+    }
+
+    /* Sums the weights of the edges along PATH, failing if any is missing. */
+    private static double pathWeight(CompactStreetMapGraph csr, List<Long> path) {
+        double weight = 0;
+        for (int i = 0; i < path.size() - 1; i++) {
+            int from = csr.index(path.get(i));
+            int to = csr.index(path.get(i + 1));
+            double best = Double.POSITIVE_INFINITY;
+            for (int e = csr.edgeStart(from); e < csr.edgeEnd(from); e++) {
+                if (csr.target(e) == to) {
+                    best = Math.min(best, csr.weight(e));
+                }
+            }
+            weight += best;
+        }
+        return weight;
+    }
+}
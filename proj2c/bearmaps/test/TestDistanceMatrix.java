@@ -0,0 +1,186 @@
+package bearmaps.test;
+
+import bearmaps.hw4.SolverOutcome;
+import bearmaps.hw4.streetmap.CHSolver;
+import bearmaps.hw4.streetmap.CompactStreetMapGraph;
+import bearmaps.hw4.streetmap.ContractionHierarchy;
+import bearmaps.hw4.streetmap.DistanceMatrix;
+import bearmaps.proj2c.AugmentedStreetMapGraph;
+import bearmaps.proj2c.MapServerInitializer;
+import bearmaps.proj2c.server.handler.APIRouteHandler;
+import bearmaps.proj2c.server.handler.impl.DistanceMatrixAPIHandler;
+import bearmaps.proj2c.utils.Constants;
+import com.google.gson.Gson;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static spark.Spark.awaitInitialization;
+import static spark.Spark.awaitStop;
+import static spark.Spark.port;
+import static spark.Spark.stop;
+
+/**
+ * Checks many-to-many distances against one CH query per pair on Berkeley,
+ * and posts a request at the point cap to a live server.
+ * DistanceMatrixBenchmark times both ways of filling a matrix.
+ */
+public class TestDistanceMatrix {
+    private static final String OSM_DB_PATH = "../library-sp19/data/proj2c_xml/berkeley-2019.osm.xml";
+    private static final double DELTA = 1e-9;
+    private static AugmentedStreetMapGraph graph;
+    private static ContractionHierarchy ch;
+
+    @BeforeClass
+    public static void setUp() {
+        graph = new AugmentedStreetMapGraph(OSM_DB_PATH);
+        ch = graph.contractionHierarchy();
+    }
+
+    @Test
+    public void testMatchesCHSolver() {
+        CompactStreetMapGraph csr = graph.compact();
+        Random random = new Random(81);
+        int[] sources = RandomVertices.routable(csr, random, 40);
+        int[] targets = RandomVertices.routable(csr, random, 50);
+        targets[7] = sources[3];
+        targets[8] = targets[9];
+
+        double[][] matrix = DistanceMatrix.compute(ch, sources, targets);
+        assertEquals(sources.length, matrix.length);
+        for (int i = 0; i < sources.length; i++) {
+            assertEquals(targets.length, matrix[i].length);
+            for (int j = 0; j < targets.length; j++) {
+                CHSolver expected = new CHSolver(ch, csr.id(sources[i]), csr.id(targets[j]));
+                if (expected.outcome() == SolverOutcome.SOLVED) {
+                    assertEquals(expected.solutionWeight(), matrix[i][j], DELTA);
+                } else {
+                    assertEquals(Double.POSITIVE_INFINITY, matrix[i][j], 0);
+                }
+            }
+        }
+        assertEquals(0, matrix[3][7], 0);
+    }
+
+    @Test
+    public void testUnreachableAndMissing() {
+        CompactStreetMapGraph csr = graph.compact();
+        int isolated = -1;
+        for (int v = 0; v < csr.vertexCount() && isolated < 0; v++) {
+            if (csr.degree(v) == 0) {
+                isolated = v;
+            }
+        }
+        int s = RandomVertices.routable(csr, new Random(0));
+        double[][] matrix = DistanceMatrix.compute(ch, new int[]{s, -1}, new int[]{s, -1, isolated});
+        assertEquals(0, matrix[0][0], 0);
+        assertEquals(Double.POSITIVE_INFINITY, matrix[0][1], 0);
+        if (isolated >= 0) {
+            assertEquals(Double.POSITIVE_INFINITY, matrix[0][2], 0);
+        }
+        assertArrayEquals(new double[]{Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY,
+            Double.POSITIVE_INFINITY}, matrix[1], 0);
+        assertEquals(0, DistanceMatrix.compute(ch, new int[0], new int[]{s}).length);
+        assertEquals(0, DistanceMatrix.compute(ch, new int[]{s}, new int[0])[0].length);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testHandler() {
+        Constants.SEMANTIC_STREET_GRAPH = graph;
+        CompactStreetMapGraph csr = graph.compact();
+        int[] vertices = RandomVertices.routable(csr, new Random(82), 3);
+        Map<String, double[]> params = new HashMap<>();
+        params.put("source_lons", new double[]{csr.lon(vertices[0]), csr.lon(vertices[1])});
+        params.put("source_lats", new double[]{csr.lat(vertices[0]), csr.lat(vertices[1])});
+        params.put("target_lons", new double[]{csr.lon(vertices[2])});
+        params.put("target_lats", new double[]{csr.lat(vertices[2])});
+
+        Map<String, Object> result = new DistanceMatrixAPIHandler().processRequest(params, null);
+        long[] sources = (long[]) result.get("sources");
+        long[] targets = (long[]) result.get("targets");
+        assertArrayEquals(new long[]{csr.id(vertices[0]), csr.id(vertices[1])}, sources);
+        assertArrayEquals(new long[]{csr.id(vertices[2])}, targets);
+        List<List<Double>> distances = (List<List<Double>>) result.get("distances");
+        for (int i = 0; i < sources.length; i++) {
+            CHSolver expected = new CHSolver(ch, sources[i], targets[0]);
+            if (expected.outcome() == SolverOutcome.SOLVED) {
+                assertEquals(expected.solutionWeight(), distances.get(i).get(0), DELTA);
+            } else {
+                assertNull(distances.get(i).get(0));
+            }
+        }
+    }
+
+    /* The most points allowed on each side are far too many for a URL, so
+     * they are posted as a form. */
+    @Test
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public void testPostAtCap() throws Exception {
+        Constants.SEMANTIC_STREET_GRAPH = graph;
+        CompactStreetMapGraph csr = graph.compact();
+        Random random = new Random(84);
+        int n = Constants.DISTANCE_MATRIX_MAX_POINTS;
+        String sources = points(csr, RandomVertices.routable(csr, random, n));
+        String targets = points(csr, RandomVertices.routable(csr, random, n));
+        byte[] body = ("sources=" + URLEncoder.encode(sources, "UTF-8")
+                + "&targets=" + URLEncoder.encode(targets, "UTF-8"))
+                .getBytes(StandardCharsets.UTF_8);
+        assertTrue(body.length > 8192);
+
+        port(0);
+        MapServerInitializer.addRoutes(Collections.<String, APIRouteHandler>singletonMap(
+                "distance_matrix", new DistanceMatrixAPIHandler()));
+        awaitInitialization();
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL(
+                    "http://localhost:" + port() + "/distance_matrix").openConnection();
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body);
+            }
+            assertEquals(200, connection.getResponseCode());
+            Map<String, Object> result;
+            try (InputStream in = connection.getInputStream()) {
+                result = new Gson().fromJson(new InputStreamReader(in, StandardCharsets.UTF_8),
+                        Map.class);
+            }
+            List<List<Double>> distances = (List<List<Double>>) result.get("distances");
+            assertEquals(Constants.DISTANCE_MATRIX_MAX_POINTS, distances.size());
+            assertEquals(Constants.DISTANCE_MATRIX_MAX_POINTS, distances.get(0).size());
+        } finally {
+            stop();
+            awaitStop();
+        }
+    }
+
+    /* Writes the locations of VERTICES as the handler reads them. */
+    private static String points(CompactStreetMapGraph csr, int[] vertices) {
+        StringBuilder points = new StringBuilder();
+        for (int v : vertices) {
+            if (points.length() > 0) {
+                points.append(';');
+            }
+            points.append(csr.lon(v)).append(',').append(csr.lat(v));
+        }
+        return points.toString();
+    }
+}
@@ -0,0 +1,144 @@
+package bearmaps.test;
+
+import bearmaps.hw4.streetmap.CompactStreetMapGraph;
+import bearmaps.proj2c.AugmentedStreetMapGraph;
+import bearmaps.proj2c.FuzzyIndex;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks typo-tolerant search against brute force, and on Berkeley's names.
+ * FuzzyIndexBenchmark times it.
+ */
+public class TestFuzzyIndex {
+    private static final String OSM_DB_PATH = "../library-sp19/data/proj2c_xml/berkeley-2019.osm.xml";
+    private static final long NO_BUDGET = Long.MAX_VALUE / 2;
+
+    @Test
+    public void testTypos() {
+        String[] keys = {"telegraph avenue", "telegraph", "shattuck avenue", "top dog", "tea"};
+        String[] values = {"Telegraph Avenue", "Telegraph", "Shattuck Avenue", "Top Dog", "Tea"};
+        FuzzyIndex index = new FuzzyIndex(keys, values, new int[]{1, 1, 1, 1, 1});
+
+        assertEquals(Arrays.asList("Telegraph", "Telegraph Avenue"),
+                index.search("telegrph", 1, 10, NO_BUDGET));
+        assertEquals(Collections.emptyList(), index.search("telegrph", 0, 10, NO_BUDGET));
+        assertEquals(Arrays.asList("Shattuck Avenue"), index.search("shatuck av", 1, 10, NO_BUDGET));
+        assertEquals(Arrays.asList("Top Dog", "Tea", "Telegraph", "Telegraph Avenue"),
+                index.search("to", 1, 10, NO_BUDGET));
+        assertEquals(Arrays.asList("Top Dog"), index.search("to", 1, 1, NO_BUDGET));
+    }
+
+    @Test
+    public void testRandom() {
+        Random random = new Random(77);
+        int n = 3000;
+        String[] keys = new String[n];
+        int[] weights = new int[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = randomString(random, 3 + random.nextInt(10));
+            weights[i] = random.nextInt(5);
+        }
+        FuzzyIndex index = new FuzzyIndex(keys, keys, weights);
+
+        for (int q = 0; q < 300; q++) {
+            String query = randomString(random, 1 + random.nextInt(8));
+            int maxEdits = random.nextInt(3);
+            List<Integer> matches = new ArrayList<>();
+            int[] edits = new int[n];
+            for (int i = 0; i < n; i++) {
+                edits[i] = prefixDistance(query, keys[i]);
+                if (edits[i] <= maxEdits) {
+                    matches.add(i);
+                }
+            }
+            matches.sort((a, b) -> edits[a] != edits[b] ? Integer.compare(edits[a], edits[b])
+                    : weights[a] != weights[b] ? Integer.compare(weights[b], weights[a])
+                    : keys[a].compareTo(keys[b]));
+            List<String> expected = new ArrayList<>();
+            for (int i = 0; i < Math.min(10, matches.size()); i++) {
+                expected.add(keys[matches.get(i)]);
+            }
+            assertEquals(query + " within " + maxEdits, expected,
+                    index.search(query, maxEdits, 10, NO_BUDGET));
+        }
+    }
+
+    /* Misspells prefixes of Berkeley's names once each; every suggestion
+     * must be within one edit of what was typed. */
+    @Test
+    public void testBerkeleyMisspellings() {
+        AugmentedStreetMapGraph graph = new AugmentedStreetMapGraph(OSM_DB_PATH);
+        CompactStreetMapGraph csr = graph.compact();
+        List<String> names = new ArrayList<>();
+        for (int v = 0; v < csr.vertexCount(); v++) {
+            String cleaned = csr.name(v) == null ? "" : clean(csr.name(v));
+            if (cleaned.length() >= 6) {
+                names.add(cleaned);
+            }
+        }
+
+        Random random = new Random(78);
+        for (int q = 0; q < 2000; q++) {
+            String name = names.get(random.nextInt(names.size()));
+            String meant = name.substring(0, Math.min(name.length(), 4 + random.nextInt(6)));
+            String typed = misspell(random, meant);
+            for (String result : graph.getLocationsFuzzy(typed, 1)) {
+                assertTrue(typed + " -> " + result, prefixDistance(typed, clean(result)) <= 1);
+            }
+        }
+    }
+
+    private static String clean(String s) {
+        return s.replaceAll("[^a-zA-Z ]", "").toLowerCase();
+    }
+
+    private static String randomString(Random random, int length) {
+        StringBuilder s = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            s.append((char) ('a' + random.nextInt(5)));
+        }
+        return s.toString();
+    }
+
+    /* Returns S with one random character inserted, deleted or replaced. */
+    private static String misspell(Random random, String s) {
+        int i = random.nextInt(s.length());
+        char c = (char) ('a' + random.nextInt(26));
+        switch (random.nextInt(3)) {
+            case 0:
+                return s.substring(0, i) + c + s.substring(i);
+            case 1:
+                return s.substring(0, i) + s.substring(i + 1);
+            default:
+                return s.substring(0, i) + c + s.substring(i + 1);
+        }
+    }
+
+    /* Returns the fewest edits turning some prefix of KEY into QUERY, by the
+     * full dynamic program. */
+    private static int prefixDistance(String query, String key) {
+        int[][] d = new int[key.length() + 1][query.length() + 1];
+        for (int i = 0; i <= query.length(); i++) {
+            d[0][i] = i;
+        }
+        int best = d[0][query.length()];
+        for (int j = 1; j <= key.length(); j++) {
+            d[j][0] = j;
+            for (int i = 1; i <= query.length(); i++) {
+                int cost = d[j - 1][i - 1] + (key.charAt(j - 1) == query.charAt(i - 1) ? 0 : 1);
+                d[j][i] = Math.min(cost, Math.min(d[j - 1][i], d[j][i - 1]) + 1);
+            }
+            best = Math.min(best, d[j][query.length()]);
+        }
+        return best;
+    }
+}
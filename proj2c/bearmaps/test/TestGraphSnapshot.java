@@ -0,0 +1,205 @@
+package bearmaps.test;
+
+import bearmaps.hw4.streetmap.CHSolver;
+import bearmaps.hw4.streetmap.CompactStreetMapGraph;
+import bearmaps.proj2c.AugmentedStreetMapGraph;
+import bearmaps.proj2c.GraphSnapshot;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that a snapshot restores the graph it was written from, and that
+ * loadOrParse falls back to the XML for stale, mismatched or damaged files.
+ */
+public class TestGraphSnapshot {
+    private static final String OSM_DB_PATH = "../library-sp19/data/proj2c_xml/berkeley-2019.osm.xml";
+    private static final double DELTA = 1e-12;
+
+    /** One named road through three nodes, and a node on no way. */
+    private static final String TINY_OSM = "<?xml version='1.0' encoding='UTF-8'?>\n"
+            + "<osm version=\"0.6\">\n"
+            + "  <node id=\"1\" lat=\"37.870\" lon=\"-122.260\"/>\n"
+            + "  <node id=\"2\" lat=\"37.871\" lon=\"-122.259\"/>\n"
+            + "  <node id=\"3\" lat=\"37.872\" lon=\"-122.258\"/>\n"
+            + "  <node id=\"4\" lat=\"37.873\" lon=\"-122.257\"/>\n"
+            + "  <way id=\"10\"><nd ref=\"1\"/><nd ref=\"2\"/><nd ref=\"3\"/>"
+            + "<tag k=\"highway\" v=\"residential\"/><tag k=\"name\" v=\"Oxford Street\"/></way>\n"
+            + "</osm>\n";
+
+    private static AugmentedStreetMapGraph berkeley;
+
+    @BeforeClass
+    public static void setUp() {
+        berkeley = new AugmentedStreetMapGraph(OSM_DB_PATH);
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        File snapshot = tempFile(".snapshot");
+        GraphSnapshot.write(berkeley, snapshot.getPath());
+        AugmentedStreetMapGraph restored = GraphSnapshot.read(snapshot.getPath());
+
+        CompactStreetMapGraph expected = berkeley.compact();
+        CompactStreetMapGraph actual = restored.compact();
+        assertEquals(expected.vertexCount(), actual.vertexCount());
+        assertEquals(expected.edgeCount(), actual.edgeCount());
+        for (int v = 0; v < expected.vertexCount(); v++) {
+            assertEquals(expected.id(v), actual.id(v));
+            assertEquals(expected.lat(v), actual.lat(v), DELTA);
+            assertEquals(expected.lon(v), actual.lon(v), DELTA);
+            assertEquals(expected.name(v), actual.name(v));
+            assertEquals(expected.edgeStart(v), actual.edgeStart(v));
+            assertEquals(expected.edgeEnd(v), actual.edgeEnd(v));
+        }
+        for (int e = 0; e < expected.edgeCount(); e++) {
+            assertEquals(expected.target(e), actual.target(e));
+            assertEquals(expected.weight(e), actual.weight(e), DELTA);
+            assertEquals(expected.wayName(e), actual.wayName(e));
+        }
+
+        /* The k-d tree is rebuilt from the stored order, so nearest-vertex
+         * queries, ties included, come out the same. */
+        Random random = new Random(93);
+        for (int i = 0; i < 1000; i++) {
+            double lon = -122.30 + random.nextDouble() * 0.09;
+            double lat = 37.82 + random.nextDouble() * 0.07;
+            assertEquals(berkeley.closest(lon, lat), restored.closest(lon, lat));
+            assertEquals(berkeley.kClosest(lon, lat, 5), restored.kClosest(lon, lat, 5));
+        }
+        for (String prefix : new String[]{"a", "top", "berkeley", "cafe", "x"}) {
+            assertEquals(berkeley.getLocationsByPrefix(prefix), restored.getLocationsByPrefix(prefix));
+        }
+        assertEquals(berkeley.getLocations("Top Dog"), restored.getLocations("Top Dog"));
+        for (String query : new String[]{"top dgo", "cafe strda", "berkly"}) {
+            assertEquals(berkeley.getLocationsFuzzy(query, 2), restored.getLocationsFuzzy(query, 2));
+        }
+
+        /* The hierarchy is read back rather than rebuilt, and answers alike. */
+        assertTrue(restored.hasContractionHierarchy());
+        assertEquals(berkeley.contractionHierarchy().shortcutCount(),
+                restored.contractionHierarchy().shortcutCount());
+        for (long[] q : RandomVertices.idPairs(expected, random, 100)) {
+            CHSolver before = new CHSolver(berkeley.contractionHierarchy(), q[0], q[1]);
+            CHSolver after = new CHSolver(restored.contractionHierarchy(), q[0], q[1]);
+            assertEquals(before.outcome(), after.outcome());
+            assertEquals(before.solution(), after.solution());
+            assertEquals(before.solutionWeight(), after.solutionWeight(), DELTA);
+        }
+    }
+
+    @Test
+    public void testFreshSnapshotIsLoaded() throws IOException {
+        File db = tinyOsm();
+        File snapshot = tempFile(".snapshot");
+        GraphSnapshot.write(berkeley, snapshot.getPath());
+        snapshot.setLastModified(db.lastModified() + 10000);
+        assertEquals(berkeley.compact().vertexCount(),
+                GraphSnapshot.loadOrParse(snapshot.getPath(), db.getPath()).compact().vertexCount());
+    }
+
+    @Test
+    public void testStaleSnapshotIsParsedAgain() throws IOException {
+        File db = tinyOsm();
+        File snapshot = tempFile(".snapshot");
+        GraphSnapshot.write(berkeley, snapshot.getPath());
+        snapshot.setLastModified(db.lastModified() - 10000);
+        assertIsTiny(GraphSnapshot.loadOrParse(snapshot.getPath(), db.getPath()));
+    }
+
+    @Test
+    public void testMissingSnapshotIsParsed() throws IOException {
+        File db = tinyOsm();
+        assertIsTiny(GraphSnapshot.loadOrParse(db.getPath() + ".missing", db.getPath()));
+    }
+
+    @Test
+    public void testOtherVersionFallsBack() throws IOException {
+        File db = tinyOsm();
+        File snapshot = tempFile(".snapshot");
+        GraphSnapshot.write(berkeley, snapshot.getPath());
+        try (RandomAccessFile file = new RandomAccessFile(snapshot, "rw")) {
+            file.seek(Long.BYTES);
+            int version = file.readInt();
+            file.seek(Long.BYTES);
+            file.writeInt(version + 1);
+        }
+        try {
+            GraphSnapshot.read(snapshot.getPath());
+            fail("Read a snapshot of another version");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("version"));
+        }
+        snapshot.setLastModified(db.lastModified() + 10000);
+        assertIsTiny(GraphSnapshot.loadOrParse(snapshot.getPath(), db.getPath()));
+    }
+
+    @Test
+    public void testTruncatedSnapshotFallsBack() throws IOException {
+        File db = tinyOsm();
+        File snapshot = tempFile(".snapshot");
+        GraphSnapshot.write(berkeley, snapshot.getPath());
+        for (long length : new long[]{4, 20, snapshot.length() / 2, snapshot.length() - 1}) {
+            try (RandomAccessFile file = new RandomAccessFile(snapshot, "rw")) {
+                file.setLength(length);
+            }
+            snapshot.setLastModified(db.lastModified() + 10000);
+            assertIsTiny(GraphSnapshot.loadOrParse(snapshot.getPath(), db.getPath()));
+        }
+    }
+
+    @Test
+    public void testCorruptLengthFallsBack() throws IOException {
+        File db = tinyOsm();
+        File snapshot = tempFile(".snapshot");
+        GraphSnapshot.write(berkeley, snapshot.getPath());
+        for (int length : new int[]{-7, Integer.MAX_VALUE}) {
+            try (RandomAccessFile file = new RandomAccessFile(snapshot, "rw")) {
+                file.seek(Long.BYTES + Integer.BYTES);
+                file.writeInt(length);
+            }
+            snapshot.setLastModified(db.lastModified() + 10000);
+            assertIsTiny(GraphSnapshot.loadOrParse(snapshot.getPath(), db.getPath()));
+        }
+    }
+
+    @Test
+    public void testNotASnapshotFallsBack() throws IOException {
+        File db = tinyOsm();
+        File snapshot = tempFile(".snapshot");
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(snapshot))) {
+            out.writeBytes("not a snapshot at all");
+        }
+        snapshot.setLastModified(db.lastModified() + 10000);
+        assertIsTiny(GraphSnapshot.loadOrParse(snapshot.getPath(), db.getPath()));
+    }
+
+    private static void assertIsTiny(AugmentedStreetMapGraph g) {
+        assertEquals(3, g.compact().vertexCount());
+        assertEquals(4, g.compact().edgeCount());
+    }
+
+    private static File tinyOsm() throws IOException {
+        File db = tempFile(".osm.xml");
+        Files.write(db.toPath(), TINY_OSM.getBytes(StandardCharsets.UTF_8));
+        return db;
+    }
+
+    private static File tempFile(String suffix) throws IOException {
+        File file = File.createTempFile("bearmaps", suffix);
+        file.deleteOnExit();
+        return file;
+    }
+}
@@ -0,0 +1,126 @@
+package bearmaps.test;
+
+import bearmaps.hw4.AStarSolver;
+import bearmaps.hw4.IndexedAStarSolver;
+import bearmaps.hw4.SolverOutcome;
+import bearmaps.hw4.streetmap.CompactStreetMapGraph;
+import bearmaps.proj2ab.IndexedDaryMinPQ;
+import bearmaps.proj2c.AugmentedStreetMapGraph;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the int-indexed A* solver against AStarSolver on the Berkeley graph.
+ * IndexedAStarBenchmark compares their times.
+ */
+public class TestIndexedAStarSolver {
+    private static final String OSM_DB_PATH = "../library-sp19/data/proj2c_xml/berkeley-2019.osm.xml";
+    private static final int NUM_QUERIES = 200;
+    private static final double DELTA = 1e-9;
+    private static AugmentedStreetMapGraph graph;
+    private static boolean initialized = false;
+
+    @Before
+    public void setUp() throws Exception {
+        if (initialized) {
+            return;
+        }
+        graph = new AugmentedStreetMapGraph(OSM_DB_PATH);
+        initialized = true;
+    }
+
+    @Test
+    public void testMatchesAStar() {
+        CompactStreetMapGraph csr = graph.compact();
+        Random random = new Random(61);
+        for (int[] q : RandomVertices.pairs(csr, random, NUM_QUERIES)) {
+            int s = q[0];
+            int t = q[1];
+            AStarSolver<Long> expected = new AStarSolver<>(graph, csr.id(s), csr.id(t), 20);
+            IndexedAStarSolver actual = new IndexedAStarSolver(csr, s, t, 20);
+            assertEquals(expected.outcome(), actual.outcome());
+            if (expected.outcome() != SolverOutcome.SOLVED) {
+                continue;
+            }
+            assertEquals(expected.solutionWeight(), actual.solutionWeight(), DELTA);
+            int[] path = actual.path();
+            assertEquals(s, path[0]);
+            assertEquals(t, path[path.length - 1]);
+            assertEquals(csr.id(s), (long) expected.solution().get(0));
+        }
+    }
+
+    @Test
+    public void testSteadyStateAllocation() {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        CompactStreetMapGraph csr = graph.compact();
+        Random random = new Random(62);
+        int[][] queries = RandomVertices.pairs(csr, random, NUM_QUERIES);
+        for (int[] q : queries) {
+            new IndexedAStarSolver(csr, q[0], q[1], 20);
+        }
+
+        long pathBytes = 0;
+        long before = threads.getCurrentThreadAllocatedBytes();
+        for (int[] q : queries) {
+            pathBytes += 4L * new IndexedAStarSolver(csr, q[0], q[1], 20).path().length;
+        }
+        long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+        // Beyond the paths themselves, allow only the solver and array headers.
+        assertTrue(allocated + " bytes allocated for " + pathBytes + " bytes of paths",
+                allocated <= pathBytes + 128L * NUM_QUERIES);
+    }
+
+    @Test
+    public void testSameVertexAndUnreachable() {
+        CompactStreetMapGraph csr = graph.compact();
+        int s = RandomVertices.routable(csr, new Random(0));
+        IndexedAStarSolver same = new IndexedAStarSolver(csr, s, s, 20);
+        assertEquals(SolverOutcome.SOLVED, same.outcome());
+        assertEquals(1, same.path().length);
+
+        int isolated = -1;
+        for (int v = 0; v < csr.vertexCount() && isolated < 0; v++) {
+            if (csr.degree(v) == 0) {
+                isolated = v;
+            }
+        }
+        if (isolated >= 0) {
+            IndexedAStarSolver none = new IndexedAStarSolver(csr, s, isolated, 20);
+            assertEquals(SolverOutcome.UNSOLVABLE, none.outcome());
+            assertEquals(0, none.path().length);
+        }
+    }
+
+    @Test
+    public void testIndexedDaryMinPQ() {
+        Random random = new Random(63);
+        IndexedDaryMinPQ pq = new IndexedDaryMinPQ(1000);
+        double[] priority = new double[1000];
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 1000; i++) {
+                priority[i] = random.nextDouble();
+                pq.add(i, priority[i]);
+            }
+            for (int i = 0; i < 1000; i += 3) {
+                priority[i] = random.nextDouble();
+                pq.changePriority(i, priority[i]);
+            }
+            double last = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < 500; i++) {
+                int item = pq.removeSmallest();
+                assertTrue(priority[item] >= last);
+                last = priority[item];
+            }
+            pq.clear();
+            assertEquals(0, pq.size());
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package bearmaps.test;
+
+import bearmaps.hw4.streetmap.CompactStreetMapGraph;
+import bearmaps.hw4.streetmap.Isochrone;
+import bearmaps.proj2c.AugmentedStreetMapGraph;
+import bearmaps.proj2c.server.handler.impl.IsochroneAPIHandler;
+import bearmaps.proj2c.utils.Constants;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks bounded searches against a plain Dijkstra on Berkeley.
+ * IsochroneBenchmark times them.
+ */
+public class TestIsochrone {
+    private static final String OSM_DB_PATH = "../library-sp19/data/proj2c_xml/berkeley-2019.osm.xml";
+    private static final double DELTA = 1e-9;
+    private static AugmentedStreetMapGraph graph;
+    private static CompactStreetMapGraph csr;
+
+    @BeforeClass
+    public static void setUp() {
+        graph = new AugmentedStreetMapGraph(OSM_DB_PATH);
+        csr = graph.compact();
+    }
+
+    @Test
+    public void testMatchesDijkstra() {
+        Random random = new Random(84);
+        for (int q = 0; q < 30; q++) {
+            int[] sources = RandomVertices.routable(csr, random, 1 + random.nextInt(3));
+            double budget = random.nextDouble() * 2;
+            Isochrone isochrone = Isochrone.compute(csr, sources, budget);
+            double[] expected = dijkstra(sources);
+
+            Set<Integer> reached = new HashSet<>();
+            double last = 0;
+            for (int i = 0; i < isochrone.size(); i++) {
+                int v = isochrone.vertex(i);
+                assertTrue(reached.add(v));
+                assertEquals(expected[v], isochrone.distance(i), DELTA);
+                assertTrue(isochrone.distance(i) >= last);
+                last = isochrone.distance(i);
+            }
+            for (int v = 0; v < csr.vertexCount(); v++) {
+                assertEquals("Vertex " + v, expected[v] <= budget, reached.contains(v));
+            }
+        }
+    }
+
+    @Test
+    public void testOutlineEnclosesReached() {
+        Random random = new Random(85);
+        for (int q = 0; q < 20; q++) {
+            int[] sources = RandomVertices.routable(csr, random, 1);
+            Isochrone isochrone = Isochrone.compute(csr, sources, random.nextDouble());
+            int[] outline = isochrone.outline();
+            Set<Integer> reached = new HashSet<>();
+            for (int i = 0; i < isochrone.size(); i++) {
+                reached.add(isochrone.vertex(i));
+            }
+            for (int corner : outline) {
+                assertTrue(reached.contains(corner));
+            }
+            if (outline.length < 3) {
+                continue;
+            }
+            for (int i = 0; i < outline.length; i++) {
+                int u = outline[i];
+                int v = outline[(i + 1) % outline.length];
+                for (int w : reached) {
+                    double cross = (csr.lon(v) - csr.lon(u)) * (csr.lat(w) - csr.lat(u))
+                            - (csr.lat(v) - csr.lat(u)) * (csr.lon(w) - csr.lon(u));
+                    assertTrue(cross >= -1e-15);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testEdgeCases() {
+        int s = RandomVertices.routable(csr, new Random(0));
+        Isochrone zero = Isochrone.compute(csr, new int[]{s}, 0);
+        assertEquals(s, zero.vertex(0));
+        assertArrayEquals(new int[]{s}, zero.outline());
+        assertEquals(0, Isochrone.compute(csr, new int[]{-1}, 1).size());
+        assertEquals(0, Isochrone.compute(csr, new int[]{s}, -1).size());
+        assertEquals(1, Isochrone.compute(csr, new int[]{s, s}, 0).size());
+    }
+
+    @Test
+    public void testBatch() {
+        Random random = new Random(86);
+        int[][] sources = new int[50][];
+        for (int i = 0; i < sources.length; i++) {
+            sources[i] = RandomVertices.routable(csr, random, 1);
+        }
+        Isochrone[] batch = Isochrone.compute(csr, sources, 0.5);
+        for (int i = 0; i < sources.length; i++) {
+            Isochrone expected = Isochrone.compute(csr, sources[i], 0.5);
+            assertEquals(expected.size(), batch[i].size());
+            assertArrayEquals(expected.outline(), batch[i].outline());
+        }
+    }
+
+    @Test
+    public void testHandler() {
+        Constants.SEMANTIC_STREET_GRAPH = graph;
+        int s = RandomVertices.routable(csr, new Random(87));
+        Map<String, Double> params = new HashMap<>();
+        params.put("lon", csr.lon(s));
+        params.put("lat", csr.lat(s));
+        params.put("miles", 0.5);
+        Map<String, Object> result = new IsochroneAPIHandler().processRequest(params, "a", null);
+
+        Isochrone expected = graph.isochrone(csr.lon(s), csr.lat(s), 0.5);
+        long[] reachable = (long[]) result.get("reachable");
+        assertEquals(expected.size(), reachable.length);
+        assertEquals(csr.id(s), reachable[0]);
+        int[] outline = expected.outline();
+        assertEquals(2 * outline.length, ((double[]) result.get("outline")).length);
+        assertEquals(outline.length, Constants.ISOCHRONE_STORE.get("a").size());
+        Constants.ISOCHRONE_STORE.clear("a");
+    }
+
+    /* Distances from the nearest of SOURCES to every vertex. */
+    private static double[] dijkstra(int[] sources) {
+        double[] dist = new double[csr.vertexCount()];
+        Arrays.fill(dist, Double.POSITIVE_INFINITY);
+        PriorityQueue<double[]> pq = new PriorityQueue<>((a, b) -> Double.compare(a[0], b[0]));
+        for (int s : sources) {
+            dist[s] = 0;
+            pq.add(new double[]{0, s});
+        }
+        while (!pq.isEmpty()) {
+            double[] top = pq.poll();
+            int v = (int) top[1];
+            if (top[0] > dist[v]) {
+                continue;
+            }
+            for (int e = csr.edgeStart(v); e < csr.edgeEnd(v); e++) {
+                double d = top[0] + csr.weight(e);
+                if (d < dist[csr.target(e)]) {
+                    dist[csr.target(e)] = d;
+                    pq.add(new double[]{d, csr.target(e)});
+                }
+            }
+        }
+        return dist;
+    }
+}
@@ -0,0 +1,268 @@
+package bearmaps.test;
+
+import bearmaps.proj2ab.KDTree;
+import bearmaps.proj2ab.Point;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/** Checks the flat KDTree against brute force. */
+public class TestKDTree {
+    private static final int NUM_POINTS = 20000;
+    private static final int NUM_QUERIES = 2000;
+
+    @Test
+    public void testNearestIndex() {
+        Random random = new Random(65);
+        double[] xs = new double[NUM_POINTS];
+        double[] ys = new double[NUM_POINTS];
+        for (int i = 0; i < NUM_POINTS; i++) {
+            /* Coarse coordinates, so that many points share an x or a y. */
+            xs[i] = random.nextInt(500) / 10.0;
+            ys[i] = random.nextInt(500) / 10.0;
+        }
+        KDTree tree = new KDTree(xs, ys);
+        for (int q = 0; q < NUM_QUERIES; q++) {
+            double x = random.nextDouble() * 60 - 5;
+            double y = random.nextDouble() * 60 - 5;
+            int actual = tree.nearestIndex(x, y);
+            assertEquals(distance(xs, ys, bruteNearest(xs, ys, x, y), x, y),
+                    distance(xs, ys, actual, x, y), 0);
+        }
+    }
+
+    @Test
+    public void testNearestPoint() {
+        Random random = new Random(66);
+        List<Point> points = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            points.add(new Point(random.nextGaussian(), random.nextGaussian()));
+        }
+        KDTree tree = new KDTree(points);
+        for (int q = 0; q < NUM_QUERIES; q++) {
+            double x = random.nextGaussian();
+            double y = random.nextGaussian();
+            Point expected = points.get(0);
+            for (Point p : points) {
+                if (Point.distance(p, new Point(x, y)) < Point.distance(expected, new Point(x, y))) {
+                    expected = p;
+                }
+            }
+            assertSame(expected, tree.nearest(x, y));
+        }
+    }
+
+    @Test
+    public void testFromOrder() {
+        Random random = new Random(67);
+        double[] xs = new double[NUM_POINTS];
+        double[] ys = new double[NUM_POINTS];
+        for (int i = 0; i < NUM_POINTS; i++) {
+            xs[i] = random.nextDouble();
+            ys[i] = random.nextDouble();
+        }
+        KDTree tree = new KDTree(xs, ys);
+        KDTree restored = KDTree.fromOrder(xs, ys, tree.order());
+        for (int q = 0; q < NUM_QUERIES; q++) {
+            double x = random.nextDouble();
+            double y = random.nextDouble();
+            assertEquals(tree.nearestIndex(x, y), restored.nearestIndex(x, y));
+        }
+    }
+
+    @Test
+    public void testRangeFinding() {
+        Random random = new Random(68);
+        List<Point> points = new ArrayList<>();
+        for (int i = 0; i < NUM_POINTS; i++) {
+            points.add(new Point(random.nextDouble(), random.nextDouble()));
+        }
+        KDTree tree = new KDTree(points);
+        double[] range = {0.2, 0.3, 0.5, 0.7};
+        Set<Point> expected = new HashSet<>();
+        for (Point p : points) {
+            if (p.getX() >= range[0] && p.getX() <= range[1]
+                    && p.getY() >= range[2] && p.getY() <= range[3]) {
+                expected.add(p);
+            }
+        }
+        List<Point> actual = tree.rangeFinding(range);
+        assertEquals(expected.size(), actual.size());
+        assertEquals(expected, new HashSet<>(actual));
+    }
+
+    @Test
+    public void testKNearest() {
+        Random random = new Random(70);
+        double[] xs = new double[NUM_POINTS];
+        double[] ys = new double[NUM_POINTS];
+        for (int i = 0; i < NUM_POINTS; i++) {
+            xs[i] = random.nextDouble();
+            ys[i] = random.nextDouble();
+        }
+        KDTree tree = new KDTree(xs, ys);
+        for (double xScale : new double[]{1, 0.5}) {
+            for (int q = 0; q < 200; q++) {
+                double x = random.nextDouble();
+                double y = random.nextDouble();
+                int k = 1 + random.nextInt(20);
+                int[] actual = tree.kNearest(x, y, k, xScale);
+                double[] expected = sortedDistances(xs, ys, x, y, xScale);
+                assertEquals(k, actual.length);
+                for (int i = 0; i < k; i++) {
+                    assertEquals(expected[i], scaledDistance(xs, ys, actual[i], x, y, xScale), 0);
+                }
+            }
+        }
+        assertEquals(0, tree.kNearest(0.5, 0.5, 0).length);
+        assertEquals(3, new KDTree(new double[3], new double[3]).kNearest(0, 0, 10).length);
+    }
+
+    @Test
+    public void testWithinRadius() {
+        Random random = new Random(71);
+        double[] xs = new double[NUM_POINTS];
+        double[] ys = new double[NUM_POINTS];
+        for (int i = 0; i < NUM_POINTS; i++) {
+            xs[i] = random.nextDouble();
+            ys[i] = random.nextDouble();
+        }
+        KDTree tree = new KDTree(xs, ys);
+        for (double xScale : new double[]{1, 0.5}) {
+            for (int q = 0; q < 200; q++) {
+                double x = random.nextDouble();
+                double y = random.nextDouble();
+                double r = random.nextDouble() * 0.05;
+                Set<Integer> expected = new HashSet<>();
+                for (int i = 0; i < NUM_POINTS; i++) {
+                    if (scaledDistance(xs, ys, i, x, y, xScale) <= r * r) {
+                        expected.add(i);
+                    }
+                }
+                Set<Integer> actual = new HashSet<>();
+                for (int i : tree.withinRadius(x, y, r, xScale)) {
+                    assertTrue(actual.add(i));
+                }
+                assertEquals(expected, actual);
+            }
+        }
+    }
+
+    @Test
+    public void testBatches() {
+        Random random = new Random(72);
+        double[] xs = new double[NUM_POINTS];
+        double[] ys = new double[NUM_POINTS];
+        for (int i = 0; i < NUM_POINTS; i++) {
+            xs[i] = random.nextDouble();
+            ys[i] = random.nextDouble();
+        }
+        KDTree tree = new KDTree(xs, ys);
+        double[] qx = new double[NUM_QUERIES];
+        double[] qy = new double[NUM_QUERIES];
+        for (int q = 0; q < NUM_QUERIES; q++) {
+            qx[q] = random.nextDouble();
+            qy[q] = random.nextDouble();
+        }
+        int[][] nearest = tree.kNearest(qx, qy, 5);
+        int[][] within = tree.withinRadius(qx, qy, 0.01);
+        for (int q = 0; q < NUM_QUERIES; q++) {
+            assertArrayEquals(tree.kNearest(qx[q], qy[q], 5), nearest[q]);
+            assertArrayEquals(tree.withinRadius(qx[q], qy[q], 0.01), within[q]);
+        }
+    }
+
+    /* Builds the same points on pools of increasing size, checking that each
+     * gives an identical tree. KDTreeBuildBenchmark times the builds. */
+    @Test
+    public void testParallelBuild() {
+        int n = 200_000;
+        Random random = new Random(73);
+        double[] xs = new double[n];
+        double[] ys = new double[n];
+        for (int i = 0; i < n; i++) {
+            xs[i] = random.nextDouble();
+            ys[i] = random.nextDouble();
+        }
+
+        /* Up to four threads, so the check covers forking on any machine. */
+        int[] expected = null;
+        for (int threads = 1; threads <= 4; threads *= 2) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            KDTree tree = new KDTree(xs, ys, pool);
+            pool.shutdown();
+            if (expected == null) {
+                expected = tree.order();
+            } else {
+                assertArrayEquals(expected, tree.order());
+            }
+        }
+    }
+
+    @Test
+    public void testNoAllocation() {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Random random = new Random(69);
+        double[] xs = new double[NUM_POINTS];
+        double[] ys = new double[NUM_POINTS];
+        for (int i = 0; i < NUM_POINTS; i++) {
+            xs[i] = random.nextDouble();
+            ys[i] = random.nextDouble();
+        }
+        KDTree tree = new KDTree(xs, ys);
+        int checksum = tree.nearestIndex(0.5, 0.5);
+
+        long before = threads.getCurrentThreadAllocatedBytes();
+        for (int q = 0; q < NUM_QUERIES; q++) {
+            checksum += tree.nearestIndex(q / (double) NUM_QUERIES, 1 - q / (double) NUM_QUERIES);
+        }
+        long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+        assertTrue(allocated + " bytes allocated (checksum " + checksum + ")", allocated < 1024);
+    }
+
+    private static int bruteNearest(double[] xs, double[] ys, double x, double y) {
+        int best = 0;
+        for (int i = 1; i < xs.length; i++) {
+            if (distance(xs, ys, i, x, y) < distance(xs, ys, best, x, y)) {
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    private static double[] sortedDistances(double[] xs, double[] ys, double x, double y,
+                                            double xScale) {
+        double[] distances = new double[xs.length];
+        for (int i = 0; i < xs.length; i++) {
+            distances[i] = scaledDistance(xs, ys, i, x, y, xScale);
+        }
+        Arrays.sort(distances);
+        return distances;
+    }
+
+    private static double scaledDistance(double[] xs, double[] ys, int i, double x, double y,
+                                         double xScale) {
+        double dx = (xs[i] - x) * xScale;
+        double dy = ys[i] - y;
+        return dx * dx + dy * dy;
+    }
+
+    private static double distance(double[] xs, double[] ys, int i, double x, double y) {
+        double dx = xs[i] - x;
+        double dy = ys[i] - y;
+        return dx * dx + dy * dy;
+    }
+}
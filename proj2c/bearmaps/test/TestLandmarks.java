@@ -0,0 +1,82 @@
+package bearmaps.test;
+
+import bearmaps.hw4.AStarSolver;
+import bearmaps.hw4.streetmap.CompactStreetMapGraph;
+import bearmaps.hw4.streetmap.Landmarks;
+import bearmaps.hw4.streetmap.OsmIngestPipeline;
+import bearmaps.proj2c.AugmentedStreetMapGraph;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks A* with the ALT landmark heuristic against the great-circle
+ * heuristic over a fixed set of queries on the Berkeley graph.
+ * LandmarksBenchmark prints the states and time each takes.
+ */
+public class TestLandmarks {
+    private static final String OSM_DB_PATH = "../library-sp19/data/proj2c_xml/berkeley-2019.osm.xml";
+    private static final int NUM_QUERIES = 200;
+    private static final int NUM_LANDMARKS = 16;
+    private static final double DELTA = 1e-6;
+    private static AugmentedStreetMapGraph graph;
+    private static long[][] queries;
+    private static boolean initialized = false;
+
+    @Before
+    public void setUp() throws Exception {
+        if (initialized) {
+            return;
+        }
+        graph = new AugmentedStreetMapGraph(OSM_DB_PATH);
+        CompactStreetMapGraph csr = graph.compact();
+        Random random = new Random(61);
+        queries = RandomVertices.idPairs(csr, random, NUM_QUERIES);
+        initialized = true;
+    }
+
+    @Test
+    public void testFarthest() {
+        report(Landmarks.Selection.FARTHEST);
+    }
+
+    @Test
+    public void testAvoid() {
+        report(Landmarks.Selection.AVOID);
+    }
+
+    /* A map without roads has no landmarks, and falls back to great-circle distance. */
+    @Test
+    public void testEmptyGraph() throws Exception {
+        CompactStreetMapGraph empty = new OsmIngestPipeline(1).ingest(new ByteArrayInputStream(
+                "<osm version=\"0.6\"></osm>".getBytes(StandardCharsets.UTF_8)));
+        assertEquals(0, empty.vertexCount());
+        for (Landmarks.Selection selection : Landmarks.Selection.values()) {
+            assertEquals(0, new Landmarks(empty, NUM_LANDMARKS, selection).landmarks().length);
+        }
+    }
+
+    /* Checks ALT against plain A* on every query, and that it explores no
+     * more states. */
+    private void report(Landmarks.Selection selection) {
+        Landmarks landmarks = new Landmarks(graph.compact(), NUM_LANDMARKS, selection);
+        long haversineStates = 0;
+        long altStates = 0;
+        for (long[] query : queries) {
+            AStarSolver<Long> expected = new AStarSolver<>(graph, query[0], query[1], 20);
+            AStarSolver<Long> actual = new AStarSolver<>(landmarks, query[0], query[1], 20);
+            assertEquals(expected.outcome(), actual.outcome());
+            assertEquals("Weight from " + query[0] + " to " + query[1],
+                    expected.solutionWeight(), actual.solutionWeight(), DELTA);
+            haversineStates += expected.numStatesExplored();
+            altStates += actual.numStatesExplored();
+        }
+        assertTrue(altStates <= haversineStates);
+    }
+}
@@ -0,0 +1,82 @@
+package bearmaps.test;
+
+import bearmaps.hw4.streetmap.CompactStreetMapGraph;
+import bearmaps.proj2c.AugmentedStreetMapGraph;
+import bearmaps.proj2c.NameDictionary;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/** Checks the name dictionary against the regex and hash map it replaces. */
+public class TestNameDictionary {
+    private static final String OSM_DB_PATH = "../library-sp19/data/proj2c_xml/berkeley-2019.osm.xml";
+
+    @Test
+    public void testClean() {
+        assertEquals("peets coffee  tea", NameDictionary.clean("Peet's Coffee & Tea"));
+        assertEquals("caf ol", NameDictionary.clean("Caf\u00e9 Ol\u00e9"));
+        assertEquals("", NameDictionary.clean("123-456"));
+
+        Random random = new Random(79);
+        for (int i = 0; i < 10000; i++) {
+            StringBuilder s = new StringBuilder();
+            int length = random.nextInt(20);
+            for (int j = 0; j < length; j++) {
+                s.append((char) (random.nextBoolean() ? random.nextInt(128) : random.nextInt(0x3000)));
+            }
+            assertEquals(regexClean(s.toString()), NameDictionary.clean(s.toString()));
+        }
+    }
+
+    @Test
+    public void testBerkeley() throws IOException {
+        AugmentedStreetMapGraph graph = new AugmentedStreetMapGraph(OSM_DB_PATH);
+        CompactStreetMapGraph csr = graph.compact();
+        Map<String, List<Integer>> expected = new HashMap<>();
+        for (int v = 0; v < csr.vertexCount(); v++) {
+            if (csr.name(v) != null) {
+                expected.computeIfAbsent(regexClean(csr.name(v)), k -> new ArrayList<>()).add(v);
+            }
+        }
+
+        NameDictionary names = new NameDictionary(csr);
+        checkMatches(expected, names);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        names.write(new DataOutputStream(bytes));
+        ByteBuffer in = ByteBuffer.wrap(bytes.toByteArray());
+        checkMatches(expected, NameDictionary.read(in));
+        assertEquals(0, in.remaining());
+
+        assertEquals(-1, names.find("no such place"));
+        assertEquals(0, graph.getLocations("No Such Place").size());
+    }
+
+    /* Asserts that NAMES holds exactly the cleaned names and vertices of EXPECTED. */
+    private static void checkMatches(Map<String, List<Integer>> expected, NameDictionary names) {
+        assertEquals(expected.size(), names.size());
+        for (Map.Entry<String, List<Integer>> e : expected.entrySet()) {
+            int id = names.find(e.getKey());
+            assertEquals(e.getKey(), names.name(id));
+            List<Integer> actual = new ArrayList<>();
+            for (int p = names.postingStart(id); p < names.postingEnd(id); p++) {
+                actual.add(names.vertex(p));
+            }
+            assertEquals(e.getValue(), actual);
+        }
+    }
+
+    private static String regexClean(String s) {
+        return s.replaceAll("[^a-zA-Z ]", "").toLowerCase();
+    }
+}
@@ -0,0 +1,218 @@
+package bearmaps.test;
+
+import bearmaps.hw4.streetmap.CompactStreetMapGraph;
+import bearmaps.hw4.streetmap.OsmIngestPipeline;
+import bearmaps.proj2c.AugmentedStreetMapGraph;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that the streaming pipeline builds the graph the SAX handler it
+ * replaced did, on a small hand-written extract.
+ */
+public class TestOsmIngestPipeline {
+    private static final double DELTA = 1e-6;
+
+    /*
+     * Node 2 appears twice; the first copy counts. Node 5 is on no way, and
+     * node 7 only on a footway, so both are dropped. Node 6 is on no way but
+     * named, so it stays. Way 11 refers to node 99, which does not exist.
+     */
+    private static final String OSM = "<?xml version='1.0' encoding='UTF-8'?>\n"
+            + "<osm version=\"0.6\">\n"
+            + "  <node id=\"1\" lat=\"37.870\" lon=\"-122.260\"/>\n"
+            + "  <node id=\"2\" lat=\"37.871\" lon=\"-122.259\"/>\n"
+            + "  <node id=\"3\" lat=\"37.872\" lon=\"-122.258\"/>\n"
+            + "  <node id=\"4\" lat=\"37.873\" lon=\"-122.257\">"
+            + "<tag k=\"amenity\" v=\"cafe\"/><tag k=\"name\" v=\"Caf\u00e9 Strada\"/></node>\n"
+            + "  <node id=\"5\" lat=\"37.874\" lon=\"-122.256\"/>\n"
+            + "  <node id=\"6\" lat=\"37.875\" lon=\"-122.255\">"
+            + "<tag k=\"name\" v=\"Oxford Street\"/></node>\n"
+            + "  <node id=\"7\" lat=\"37.876\" lon=\"-122.254\"/>\n"
+            + "  <node id=\"2\" lat=\"38.000\" lon=\"-122.000\"/>\n"
+            + "  <way id=\"10\"><nd ref=\"1\"/><nd ref=\"2\"/><nd ref=\"3\"/>"
+            + "<tag k=\"highway\" v=\"residential\"/><tag k=\"name\" v=\"Oxford Street\"/></way>\n"
+            + "  <way id=\"11\"><nd ref=\"3\"/><nd ref=\"4\"/><nd ref=\"99\"/>"
+            + "<tag k=\"highway\" v=\"secondary\"/></way>\n"
+            + "  <way id=\"12\"><nd ref=\"1\"/><nd ref=\"7\"/>"
+            + "<tag k=\"highway\" v=\"footway\"/><tag k=\"name\" v=\"Path\"/></way>\n"
+            + "  <way id=\"13\"><nd ref=\"4\"/><nd ref=\"1\"/>"
+            + "<tag k=\"highway\" v=\"primary\"/><tag k=\"name\" v=\"Oxford Street\"/></way>\n"
+            + "</osm>\n";
+
+    @Test
+    public void testFromFile() throws Exception {
+        File file = File.createTempFile("bearmaps", ".osm.xml");
+        file.deleteOnExit();
+        Files.write(file.toPath(), OSM.getBytes(StandardCharsets.UTF_8));
+        OsmIngestPipeline pipeline = new OsmIngestPipeline(2);
+        checkGraph(pipeline.ingest(file.getPath()));
+        checkStats(pipeline.stats());
+        assertEquals(2, pipeline.stats().nodesSkipped());
+    }
+
+    @Test
+    public void testFromStream() throws Exception {
+        OsmIngestPipeline pipeline = new OsmIngestPipeline(2);
+        checkGraph(pipeline.ingest(new ByteArrayInputStream(OSM.getBytes(StandardCharsets.UTF_8))));
+        checkStats(pipeline.stats());
+        assertEquals(0, pipeline.stats().nodesSkipped());
+    }
+
+    private static void checkGraph(CompactStreetMapGraph g) {
+        assertEquals(5, g.vertexCount());
+        for (int v = 0; v < g.vertexCount(); v++) {
+            assertEquals(new long[]{1, 2, 3, 4, 6}[v], g.id(v));
+        }
+        assertTrue(g.index(5) < 0);
+        assertTrue(g.index(7) < 0);
+        assertEquals(37.871, g.lat(g.index(2)), DELTA);
+        assertEquals(-122.259, g.lon(g.index(2)), DELTA);
+
+        /* Both directions of 1-2, 2-3, 3-4 and 4-1; 4-99 and the footway are
+         * left out. */
+        assertEquals(8, g.edgeCount());
+        List<String> edges = new ArrayList<>();
+        for (int v = 0; v < g.vertexCount(); v++) {
+            for (int e = g.edgeStart(v); e < g.edgeEnd(v); e++) {
+                int w = g.target(e);
+                edges.add(g.id(v) + "-" + g.id(w) + " " + g.wayName(e));
+                assertEquals(g.estimatedDistance(v, w), g.weight(e), DELTA);
+            }
+        }
+        Collections.sort(edges);
+        assertEquals(Arrays.asList("1-2 Oxford Street", "1-4 Oxford Street", "2-1 Oxford Street",
+                "2-3 Oxford Street", "3-2 Oxford Street", "3-4 ", "4-1 Oxford Street", "4-3 "),
+                edges);
+
+        /* Each distinct name is stored once, whether on a node or a way. */
+        assertEquals(3, g.nameCount());
+        int oxford = g.nameId(g.index(6));
+        for (int e = g.edgeStart(g.index(1)); e < g.edgeEnd(g.index(1)); e++) {
+            assertEquals(oxford, g.wayNameId(e));
+        }
+        assertEquals("Caf\u00e9 Strada", g.name(g.index(4)));
+        assertNull(g.name(g.index(1)));
+        assertEquals(CompactStreetMapGraph.NO_NAME, g.nameId(g.index(3)));
+    }
+
+    private static void checkStats(OsmIngestPipeline.IngestStats stats) {
+        assertEquals(8, stats.nodes());
+        assertEquals(4, stats.ways());
+        assertEquals(5, stats.vertices());
+        assertEquals(8, stats.edges());
+        assertTrue(stats.seconds() > 0);
+    }
+
+    /** Without roads every unnamed node is dropped, and snapping to the map says so. */
+    @Test
+    public void testNoRoads() throws Exception {
+        File file = File.createTempFile("bearmaps", ".osm.xml");
+        file.deleteOnExit();
+        Files.write(file.toPath(), ("<osm version=\"0.6\">\n"
+                + "  <node id=\"1\" lat=\"37.870\" lon=\"-122.260\"/>\n"
+                + "  <way id=\"10\"><nd ref=\"1\"/><tag k=\"highway\" v=\"footway\"/></way>\n"
+                + "</osm>\n").getBytes(StandardCharsets.UTF_8));
+        AugmentedStreetMapGraph graph = new AugmentedStreetMapGraph(file.getPath());
+        try {
+            graph.closest(-122.26, 37.87);
+            fail("closest found a vertex in a map with no roads");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().contains("no vertices on roads"));
+        }
+    }
+
+    /** Coordinates are read exactly as Double.parseDouble reads them, in any format. */
+    @Test
+    public void testCoordinates() throws Exception {
+        Random random = new Random(3);
+        String[] lats = new String[2000];
+        StringBuilder osm = new StringBuilder("<osm version=\"0.6\">\n");
+        for (int i = 0; i < lats.length; i++) {
+            double lat = -90 + 180 * random.nextDouble();
+            switch (i % 5) {
+                case 0:
+                    lats[i] = String.format(Locale.ROOT, "%.7f", lat);
+                    break;
+                case 1:
+                    lats[i] = Double.toString(lat);
+                    break;
+                case 2:
+                    lats[i] = String.format(Locale.ROOT, "%.20f", lat);
+                    break;
+                case 3:
+                    lats[i] = String.format(Locale.ROOT, "%.3e", lat);
+                    break;
+                default:
+                    lats[i] = Integer.toString((int) lat);
+            }
+            osm.append("<node id=\"").append(i + 1).append("\" lat=\"").append(lats[i])
+                    .append("\" lon=\"-122.25\"><tag k=\"name\" v=\"n\"/></node>\n");
+        }
+        osm.append("<node id=\"9001\" lat=\"-.5\" lon=\"7.\"><tag k=\"name\" v=\"n\"/></node>\n");
+        osm.append("</osm>\n");
+        CompactStreetMapGraph g = new OsmIngestPipeline(2)
+                .ingest(new ByteArrayInputStream(osm.toString().getBytes(StandardCharsets.UTF_8)));
+        for (int i = 0; i < lats.length; i++) {
+            assertEquals(lats[i], Double.parseDouble(lats[i]), g.lat(g.index(i + 1)), 0);
+        }
+        assertEquals(-0.5, g.lat(g.index(9001)), 0);
+        assertEquals(7, g.lon(g.index(9001)), 0);
+    }
+
+    /** A map that cannot be parsed stops the server instead of leaving it with no roads. */
+    @Test
+    public void testBadMapFails() throws Exception {
+        for (String node : new String[]{"<node id=\"1\" lat=\"north\" lon=\"-122.26\"/>",
+                                        "<node id=\"1\" lon=\"-122.26\"/>", "<node id=\"1\""}) {
+            File file = File.createTempFile("bearmaps", ".osm.xml");
+            file.deleteOnExit();
+            Files.write(file.toPath(), ("<osm version=\"0.6\">\n" + node + "\n</osm>\n")
+                    .getBytes(StandardCharsets.UTF_8));
+            try {
+                new AugmentedStreetMapGraph(file.getPath());
+                fail("read a broken map: " + node);
+            } catch (IllegalStateException e) {
+                assertTrue(e.getMessage().contains(file.getPath()));
+            }
+        }
+    }
+
+    /** A repeated id in a later batch loses to the first copy, however batches are scheduled. */
+    @Test
+    public void testDuplicateAcrossBatches() throws Exception {
+        int n = 20000;
+        StringBuilder osm = new StringBuilder("<osm version=\"0.6\">\n");
+        for (int i = 0; i < n; i++) {
+            osm.append(String.format(Locale.ROOT, "<node id=\"%d\" lat=\"%.6f\" lon=\"-122.25\"/>\n",
+                    i + 1, 37.8 + i * 1e-6));
+        }
+        osm.append("<node id=\"1\" lat=\"40.0\" lon=\"-120.0\"/>\n<way id=\"1\">");
+        for (int i = 0; i < n; i++) {
+            osm.append("<nd ref=\"").append(i + 1).append("\"/>");
+        }
+        osm.append("<tag k=\"highway\" v=\"residential\"/></way>\n</osm>\n");
+        byte[] bytes = osm.toString().getBytes(StandardCharsets.UTF_8);
+        for (int round = 0; round < 5; round++) {
+            CompactStreetMapGraph g = new OsmIngestPipeline(4).ingest(new ByteArrayInputStream(bytes));
+            assertEquals(n, g.vertexCount());
+            assertEquals(2 * (n - 1), g.edgeCount());
+            assertEquals(37.8, g.lat(g.index(1)), DELTA);
+        }
+    }
+}
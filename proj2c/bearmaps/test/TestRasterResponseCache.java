@@ -0,0 +1,172 @@
+package bearmaps.test;
+
+import bearmaps.proj2c.RasterFormat;
+import bearmaps.proj2c.RasterResponseCache;
+import bearmaps.proj2c.RouteStore;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/** Checks the keys, eviction and route and outline invalidation of RasterResponseCache. */
+public class TestRasterResponseCache {
+    private static final int[] GRID = {3, 1, 2, 4, 5};
+    private static final List<Long> NO_ROUTE = Collections.emptyList();
+
+    @Test
+    public void testKeys() {
+        RasterResponseCache cache = new RasterResponseCache(1000, new RouteStore(1000));
+        RasterResponseCache.Rendering r = rendering(10);
+        cache.put(key(GRID, Arrays.asList(1L, 2L)), r);
+        assertSame(r, cache.get(key(GRID.clone(), Arrays.asList(1L, 2L))));
+        assertNull(cache.get(key(GRID, Arrays.asList(2L, 1L))));
+        assertNull(cache.get(key(new int[]{3, 1, 2, 4, 6}, Arrays.asList(1L, 2L))));
+        assertNull(cache.get(new RasterResponseCache.Key(GRID, Arrays.asList(1L, 2L),
+                RasterFormat.JPEG, RasterFormat.DEFAULT_QUALITY)));
+        assertNull(cache.get(new RasterResponseCache.Key(GRID, Arrays.asList(1L, 2L),
+                RasterFormat.PNG, 1)));
+        assertEquals(1, cache.hits());
+        assertEquals(4, cache.misses());
+    }
+
+    @Test
+    public void testNormalizeQuality() {
+        assertEquals(0, RasterFormat.normalizeQuality(-0.5f), 0);
+        assertEquals(1, RasterFormat.normalizeQuality(2), 0);
+        assertEquals(0.25, RasterFormat.normalizeQuality(0.25f), 0);
+        assertEquals(RasterFormat.DEFAULT_QUALITY,
+                RasterFormat.normalizeQuality(RasterFormat.DEFAULT_QUALITY), 0);
+        assertEquals(RasterFormat.DEFAULT_QUALITY, RasterFormat.normalizeQuality(Float.NaN), 0);
+    }
+
+    @Test
+    public void testEviction() {
+        RasterResponseCache cache = new RasterResponseCache(25, new RouteStore(1000));
+        for (int i = 0; i < 3; i++) {
+            cache.put(key(new int[]{i, 0, 0, 0, 0}, NO_ROUTE), rendering(10));
+        }
+        assertEquals(2, cache.size());
+        assertEquals(20, cache.bytes());
+        assertNull(cache.get(key(new int[]{0, 0, 0, 0, 0}, NO_ROUTE)));
+
+        cache.put(key(GRID, NO_ROUTE), rendering(30));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testRouteChangeInvalidates() {
+        RouteStore routes = new RouteStore(1000);
+        RasterResponseCache cache = new RasterResponseCache(1000, routes);
+        List<Long> route = Arrays.asList(1L, 2L, 3L);
+        routes.put("a", route);
+        RasterResponseCache.Key withRoute = key(GRID, routes.get("a"));
+        RasterResponseCache.Key withoutRoute = key(GRID, NO_ROUTE);
+        cache.put(withRoute, rendering(10));
+        cache.put(withoutRoute, rendering(10));
+
+        routes.put("a", Arrays.asList(4L, 5L));
+        assertNull(cache.get(withRoute));
+        assertEquals(1, cache.size());
+
+        cache.put(key(GRID, routes.get("a")), rendering(10));
+        routes.clear("a");
+        assertEquals(1, cache.size());
+        assertEquals(10, cache.bytes());
+    }
+
+    @Test
+    public void testSharedRouteKept() {
+        RouteStore routes = new RouteStore(1000);
+        RasterResponseCache cache = new RasterResponseCache(1000, routes);
+        List<Long> route = Arrays.asList(1L, 2L, 3L);
+        routes.put("a", route);
+        routes.put("b", route);
+        RasterResponseCache.Key withRoute = key(GRID, routes.get("a"));
+        cache.put(withRoute, rendering(10));
+
+        routes.clear("a");
+        assertEquals(1, cache.size());
+        routes.put("b", Arrays.asList(4L, 5L));
+        assertNull(cache.get(withRoute));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testOutlineChangeInvalidates() {
+        RouteStore routes = new RouteStore(1000);
+        RouteStore outlines = new RouteStore(1000);
+        RasterResponseCache cache = new RasterResponseCache(1000, routes, outlines);
+        List<Long> outline = Arrays.asList(1L, 2L, 3L);
+        outlines.put("a", outline);
+        RasterResponseCache.Key withOutline = new RasterResponseCache.Key(GRID, NO_ROUTE,
+                outlines.get("a"), RasterFormat.PNG, RasterFormat.DEFAULT_QUALITY);
+        cache.put(withOutline, rendering(10));
+        cache.put(key(GRID, NO_ROUTE), rendering(10));
+        assertNull(cache.get(new RasterResponseCache.Key(GRID, outline, NO_ROUTE,
+                RasterFormat.PNG, RasterFormat.DEFAULT_QUALITY)));
+
+        outlines.clear("a");
+        assertNull(cache.get(withOutline));
+        assertEquals(1, cache.size());
+    }
+
+    /* Asking the stores who holds a route walks their sessions, which must
+     * not block lookups in the cache. */
+    @Test
+    public void testStoresAskedOutsideLock() {
+        RasterResponseCache[] cache = new RasterResponseCache[1];
+        boolean[] asked = new boolean[1];
+        RouteStore routes = new RouteStore(1000) {
+            @Override
+            public boolean holds(List<Long> route) {
+                asked[0] = true;
+                assertFalse(Thread.holdsLock(cache[0]));
+                return super.holds(route);
+            }
+        };
+        cache[0] = new RasterResponseCache(1000, routes);
+        routes.put("a", Arrays.asList(1L, 2L, 3L));
+        cache[0].put(key(GRID, routes.get("a")), rendering(10));
+        routes.clear("a");
+        assertTrue(asked[0]);
+        assertEquals(0, cache[0].size());
+    }
+
+    /* Evicted and replaced renderings leave the index, so a later route
+     * change drops exactly what is still cached. */
+    @Test
+    public void testIndexFollowsEviction() {
+        RouteStore routes = new RouteStore(1000);
+        RasterResponseCache cache = new RasterResponseCache(25, routes);
+        routes.put("a", Arrays.asList(1L, 2L, 3L));
+        routes.put("b", Arrays.asList(4L, 5L));
+        cache.put(key(new int[]{0, 0, 0, 0, 0}, routes.get("a")), rendering(10));
+        cache.put(key(new int[]{1, 0, 0, 0, 0}, routes.get("b")), rendering(10));
+        cache.put(key(new int[]{1, 0, 0, 0, 0}, routes.get("b")), rendering(12));
+        cache.put(key(new int[]{2, 0, 0, 0, 0}, routes.get("a")), rendering(10));
+        assertEquals(2, cache.size());
+        assertEquals(22, cache.bytes());
+
+        routes.clear("a");
+        assertEquals(1, cache.size());
+        assertEquals(12, cache.bytes());
+        routes.clear("b");
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.bytes());
+    }
+
+    private static RasterResponseCache.Key key(int[] grid, List<Long> route) {
+        return new RasterResponseCache.Key(grid, route, RasterFormat.PNG, RasterFormat.DEFAULT_QUALITY);
+    }
+
+    private static RasterResponseCache.Rendering rendering(int bytes) {
+        return new RasterResponseCache.Rendering(new byte[bytes], 256, 256);
+    }
+}
@@ -0,0 +1,187 @@
+package bearmaps.test;
+
+import bearmaps.hw4.streetmap.CompactStreetMapGraph;
+import bearmaps.proj2c.AugmentedStreetMapGraph;
+import bearmaps.proj2c.Router;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks directions built from a route's edges against the per-vertex edge
+ * scan they replace, on long routes across Berkeley.
+ * RouteDirectionsBenchmark times both.
+ */
+public class TestRouteDirections {
+    private static final String OSM_DB_PATH = "../library-sp19/data/proj2c_xml/berkeley-2019.osm.xml";
+    private static final int NUM_ROUTES = 200;
+    private static AugmentedStreetMapGraph graph;
+    private static List<Router.Route> routes;
+
+    @BeforeClass
+    public static void setUp() {
+        graph = new AugmentedStreetMapGraph(OSM_DB_PATH);
+        routes = longRoutes(graph, NUM_ROUTES);
+    }
+
+    /* Returns A* routes between N random pairs of routable vertices at least
+     * half the width of the map apart. */
+    static List<Router.Route> longRoutes(AugmentedStreetMapGraph graph, int n) {
+        CompactStreetMapGraph csr = graph.compact();
+        List<Integer> routable = new ArrayList<>();
+        double minLon = Double.POSITIVE_INFINITY;
+        double maxLon = Double.NEGATIVE_INFINITY;
+        for (int v = 0; v < csr.vertexCount(); v++) {
+            if (csr.degree(v) > 0) {
+                routable.add(v);
+                minLon = Math.min(minLon, csr.lon(v));
+                maxLon = Math.max(maxLon, csr.lon(v));
+            }
+        }
+
+        Random random = new Random(80);
+        List<Router.Route> routes = new ArrayList<>();
+        while (routes.size() < n) {
+            int s = routable.get(random.nextInt(routable.size()));
+            int t = routable.get(random.nextInt(routable.size()));
+            if (Math.abs(csr.lon(s) - csr.lon(t)) < (maxLon - minLon) / 2) {
+                continue;
+            }
+            Router.Route route = Router.shortestRoute(graph, csr.lon(s), csr.lat(s),
+                    csr.lon(t), csr.lat(t), Router.Engine.A_STAR);
+            if (!route.isEmpty()) {
+                routes.add(route);
+            }
+        }
+        return routes;
+    }
+
+    @Test
+    public void testMatchesEdgeScan() {
+        for (Router.Route route : routes) {
+            List<Long> nodes = route.nodes();
+            assertEquals(nodes.size(), route.edges().length + 1);
+            assertEquals(scanDirections(graph, nodes),
+                    toStrings(Router.routeDirections(graph, route)));
+            assertEquals(scanDirections(graph, nodes),
+                    toStrings(Router.routeDirections(graph, nodes)));
+        }
+    }
+
+    @Test
+    public void testEnginesAgree() {
+        CompactStreetMapGraph csr = graph.compact();
+        for (Router.Route route : routes.subList(0, 20)) {
+            List<Long> nodes = route.nodes();
+            int t = csr.index(nodes.get(nodes.size() - 1));
+            for (Router.Engine engine : Router.Engine.values()) {
+                Router.Route other = Router.shortestRoute(graph, csr.lon(route.start()),
+                        csr.lat(route.start()), csr.lon(t), csr.lat(t), engine);
+                assertEquals(route.start(), other.start());
+                assertEquals(weight(csr, route), weight(csr, other), 1e-9);
+                assertEquals(other.nodes(), Router.shortestPath(graph, csr.lon(route.start()),
+                        csr.lat(route.start()), csr.lon(t), csr.lat(t), engine));
+                assertEquals(scanDirections(graph, other.nodes()),
+                        toStrings(Router.routeDirections(graph, other)));
+            }
+        }
+    }
+
+    @Test
+    public void testTrivialRoutes() {
+        CompactStreetMapGraph csr = graph.compact();
+        int v = routes.get(0).start();
+        Router.Route route = Router.shortestRoute(graph, csr.lon(v), csr.lat(v),
+                csr.lon(v), csr.lat(v), Router.Engine.A_STAR);
+        assertEquals(1, route.nodes().size());
+        assertTrue(Router.routeDirections(graph, route).isEmpty());
+        assertTrue(Router.routeDirections(graph, new ArrayList<>()).isEmpty());
+    }
+
+    private static double weight(CompactStreetMapGraph csr, Router.Route route) {
+        double total = 0;
+        for (int e : route.edges()) {
+            total += csr.weight(e);
+        }
+        return total;
+    }
+
+    private static List<String> toStrings(List<Router.NavigationDirection> directions) {
+        List<String> result = new ArrayList<>();
+        for (Router.NavigationDirection d : directions) {
+            result.add(d.toString());
+        }
+        return result;
+    }
+
+    /* Directions as routeDirections used to build them: find the edge to
+     * the next vertex among the current one's, compare ways by name, and
+     * look up coordinates by OSM id. */
+    static List<String> scanDirections(AugmentedStreetMapGraph g, List<Long> route) {
+        List<String> navigation = new ArrayList<>();
+        CompactStreetMapGraph csr = g.compact();
+        int direction = Router.NavigationDirection.START;
+        String road = null;
+        double miles = 0;
+        long prev = 0;
+
+        for (int i = 0; i < route.size() - 1; i++) {
+            long curr = route.get(i);
+            long next = route.get(i + 1);
+            int from = csr.index(curr);
+            int to = csr.index(next);
+            for (int e = csr.edgeStart(from); e < csr.edgeEnd(from); e++) {
+                if (csr.target(e) == to) {
+                    String roadName = csr.wayName(e) == null
+                            ? Router.NavigationDirection.UNKNOWN_ROAD : csr.wayName(e);
+                    road = road == null ? roadName : road;
+                    if (!road.equals(roadName)) {
+                        navigation.add(direction(direction, road, miles));
+                        double prevBearing = Router.NavigationDirection.bearing(g.lon(prev),
+                                g.lon(curr), g.lat(prev), g.lat(curr));
+                        double currBearing = Router.NavigationDirection.bearing(g.lon(curr),
+                                g.lon(next), g.lat(curr), g.lat(next));
+                        direction = turn(prevBearing, currBearing);
+                        road = roadName;
+                        miles = csr.weight(e);
+                    } else {
+                        miles += csr.weight(e);
+                    }
+                    if (i == route.size() - 2) {
+                        navigation.add(direction(direction, road, miles));
+                    }
+                    break;
+                }
+            }
+            prev = curr;
+        }
+        return navigation;
+    }
+
+    private static String direction(int direction, String way, double miles) {
+        return String.format("%s on %s and continue for %.3f miles.",
+                Router.NavigationDirection.DIRECTIONS[direction], way, miles);
+    }
+
+    /* The turn between two bearings, as NavigationDirection classifies it. */
+    private static int turn(double prevBearing, double currBearing) {
+        double absDiff = Math.abs(currBearing - prevBearing);
+        if (absDiff <= 15.0) {
+            return Router.NavigationDirection.STRAIGHT;
+        }
+        boolean right = (currBearing > prevBearing && absDiff < 180.0)
+                || (currBearing < prevBearing && absDiff > 180.0);
+        if (absDiff <= 30.0 || absDiff > 330.0) {
+            return right ? Router.NavigationDirection.SLIGHT_RIGHT : Router.NavigationDirection.SLIGHT_LEFT;
+        } else if (absDiff <= 100.0 || absDiff > 260.0) {
+            return right ? Router.NavigationDirection.RIGHT : Router.NavigationDirection.LEFT;
+        }
+        return right ? Router.NavigationDirection.SHARP_RIGHT : Router.NavigationDirection.SHARP_LEFT;
+    }
+}
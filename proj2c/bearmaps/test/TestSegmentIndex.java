@@ -0,0 +1,94 @@
+package bearmaps.test;
+
+import bearmaps.hw4.streetmap.CompactStreetMapGraph;
+import bearmaps.proj2ab.SegmentIndex;
+import bearmaps.proj2c.AugmentedStreetMapGraph;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the segment R-tree and reverse geocoding against brute force.
+ * ReverseGeocodeBenchmark times reverse geocoding.
+ */
+public class TestSegmentIndex {
+    private static final String OSM_DB_PATH = "../library-sp19/data/proj2c_xml/berkeley-2019.osm.xml";
+    private static final int NUM_QUERIES = 2000;
+
+    @Test
+    public void testNearest() {
+        Random random = new Random(74);
+        int n = 20000;
+        double[] x0 = new double[n];
+        double[] y0 = new double[n];
+        double[] x1 = new double[n];
+        double[] y1 = new double[n];
+        for (int i = 0; i < n; i++) {
+            x0[i] = random.nextDouble();
+            y0[i] = random.nextDouble();
+            x1[i] = x0[i] + random.nextGaussian() * 0.01;
+            y1[i] = y0[i] + random.nextGaussian() * 0.01;
+        }
+        x1[0] = x0[0];      // a segment of zero length
+        y1[0] = y0[0];
+        SegmentIndex index = new SegmentIndex(x0, y0, x1, y1);
+        assertEquals(n, index.size());
+
+        for (double xScale : new double[]{1, 0.75}) {
+            for (int q = 0; q < NUM_QUERIES; q++) {
+                double x = random.nextDouble() * 1.2 - 0.1;
+                double y = random.nextDouble() * 1.2 - 0.1;
+                double expected = Double.POSITIVE_INFINITY;
+                for (int i = 0; i < n; i++) {
+                    expected = Math.min(expected, distance(x, y, x0[i], y0[i], x1[i], y1[i], xScale));
+                }
+                int actual = index.nearest(x, y, xScale);
+                assertEquals(expected, distance(x, y, x0[actual], y0[actual], x1[actual], y1[actual], xScale), 0);
+            }
+        }
+        assertEquals(-1, new SegmentIndex(new double[0], new double[0], new double[0], new double[0])
+                .nearest(0, 0));
+        assertEquals(-1, index.nearest(Double.NaN, 0.5));
+        assertEquals(-1, index.nearest(0.5, Double.NaN, 0.75));
+    }
+
+    @Test
+    public void testNearestStreet() {
+        AugmentedStreetMapGraph graph = new AugmentedStreetMapGraph(OSM_DB_PATH);
+        CompactStreetMapGraph csr = graph.compact();
+
+        Random random = new Random(75);
+        for (int q = 0; q < NUM_QUERIES; q++) {
+            double lon = -122.30 + random.nextDouble() * 0.09;
+            double lat = 37.84 + random.nextDouble() * 0.05;
+            double xScale = Math.cos(Math.toRadians(lat));
+            Map<String, Object> street = graph.nearestStreet(lon, lat);
+
+            double expected = Double.POSITIVE_INFINITY;
+            for (int v = 0; v < csr.vertexCount(); v++) {
+                for (int e = csr.edgeStart(v); e < csr.edgeEnd(v); e++) {
+                    int w = csr.target(e);
+                    expected = Math.min(expected, distance(lon, lat, csr.lon(v), csr.lat(v),
+                            csr.lon(w), csr.lat(w), xScale));
+                }
+            }
+            double actual = distance(lon, lat, (double) street.get("lon"), (double) street.get("lat"),
+                    (double) street.get("lon"), (double) street.get("lat"), xScale);
+            assertEquals(expected, actual, 1e-15);
+            assertTrue(csr.index((long) street.get("from")) >= 0);
+        }
+    }
+
+    /* Returns the squared scaled distance from (X, Y) to a segment. */
+    private static double distance(double x, double y, double x0, double y0,
+                                   double x1, double y1, double xScale) {
+        double t = SegmentIndex.projection(x, y, x0, y0, x1, y1, xScale);
+        double dx = (x0 + t * (x1 - x0) - x) * xScale;
+        double dy = y0 + t * (y1 - y0) - y;
+        return dx * dx + dy * dy;
+    }
+}
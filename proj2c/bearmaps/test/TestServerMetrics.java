@@ -0,0 +1,110 @@
+package bearmaps.test;
+
+import bearmaps.proj2c.AugmentedStreetMapGraph;
+import bearmaps.proj2c.Histogram;
+import bearmaps.proj2c.RasterResponseCache;
+import bearmaps.proj2c.RouteStore;
+import bearmaps.proj2c.Router;
+import bearmaps.proj2c.ServerMetrics;
+import bearmaps.proj2c.TileCache;
+import bearmaps.proj2c.server.handler.impl.MetricsAPIHandler;
+import bearmaps.proj2c.utils.Constants;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the histogram's quantiles and the text format of the metrics.
+ * ServerMetricsBenchmark times recording a request.
+ */
+public class TestServerMetrics {
+    private static final String OSM_DB_PATH = "../library-sp19/data/proj2c_xml/berkeley-2019.osm.xml";
+
+    /** A sample line: a name, optional labels, and a number. */
+    private static final String LABEL = "[a-z_]+=\"([^\"\\\\]|\\\\.)*\"";
+    private static final Pattern SAMPLE = Pattern.compile(
+            "[a-z_]+(\\{" + LABEL + "(," + LABEL + ")*\\})? -?[0-9.E-]+");
+
+    @Test
+    public void testQuantiles() {
+        Random random = new Random(92);
+        Histogram h = new Histogram();
+        long[] values = new long[100000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (long) Math.exp(random.nextDouble() * 30);
+            h.record(values[i]);
+        }
+        Arrays.sort(values);
+        assertEquals(values.length, h.count());
+        assertEquals(Arrays.stream(values).sum(), h.sum());
+        assertEquals(values[values.length - 1], h.max());
+        for (double q : new double[]{0.01, 0.5, 0.9, 0.99, 0.999, 1}) {
+            long expected = values[(int) Math.ceil(q * values.length) - 1];
+            long actual = h.valueAtQuantile(q);
+            assertTrue(actual >= expected);
+            assertTrue(actual <= expected + expected / 32 + 1);
+        }
+    }
+
+    @Test
+    public void testSmallAndExtremeValues() {
+        Histogram h = new Histogram();
+        assertEquals(0, h.valueAtQuantile(0.5));
+        for (long v = 0; v < 64; v++) {
+            h.record(v);
+        }
+        assertEquals(31, h.valueAtQuantile(0.5));
+        assertEquals(63, h.valueAtQuantile(1));
+        h.record(-5);
+        h.record(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, h.max());
+        assertEquals(Long.MAX_VALUE, h.valueAtQuantile(1));
+    }
+
+    @Test
+    public void testConcurrentRecording() {
+        Histogram h = new Histogram();
+        IntStream.range(0, 400000).parallel().forEach(i -> h.record(i % 1000));
+        assertEquals(400000, h.count());
+        assertEquals(400L * 999 * 1000 / 2, h.sum());
+        assertEquals(999, h.max());
+    }
+
+    @Test
+    public void testScrape() {
+        Constants.SEMANTIC_STREET_GRAPH = new AugmentedStreetMapGraph(OSM_DB_PATH);
+        Router.shortestPath(Constants.SEMANTIC_STREET_GRAPH, -122.26, 37.87, -122.25, 37.86,
+                Router.Engine.A_STAR);
+        ServerMetrics metrics = new ServerMetrics();
+        metrics.requests("RoutingAPIHandler").record(2_000_000, 4096);
+        metrics.requests("Odd \"name\"").record(1000, -1);
+        metrics.searches("A_STAR").record(250, 0.001);
+
+        TileCache tiles = new TileCache(1000);
+        RasterResponseCache rasters = new RasterResponseCache(1000, new RouteStore(1000));
+        String text = metrics.scrape(tiles, rasters);
+        for (String line : text.split("\n")) {
+            assertTrue(line, line.startsWith("# HELP ") || line.startsWith("# TYPE ")
+                    || SAMPLE.matcher(line).matches());
+        }
+        assertTrue(text.contains("bearmaps_request_duration_seconds_count{handler=\"RoutingAPIHandler\"} 1\n"));
+        assertTrue(text.contains("bearmaps_request_allocated_bytes_sum{handler=\"RoutingAPIHandler\"} 4096\n"));
+        assertTrue(text.contains("bearmaps_request_allocated_bytes_count{handler=\"Odd \\\"name\\\"\"} 0\n"));
+        assertTrue(text.contains("bearmaps_route_states_explored{engine=\"A_STAR\",quantile=\"0.5\"} 250\n"));
+        assertTrue(text.contains("bearmaps_tile_cache_hits_total 0\n"));
+        assertTrue(text.contains("bearmaps_raster_cache_misses_total 0\n"));
+        assertTrue(text.contains("bearmaps_raster_query_failures_total 0\n"));
+
+        metrics.rasterQueryFailed();
+        assertTrue(metrics.scrape(tiles, rasters).contains("bearmaps_raster_query_failures_total 1\n"));
+
+        String served = new MetricsAPIHandler().processRequest(null, null);
+        assertTrue(served.contains("bearmaps_route_states_explored_count{engine=\"A_STAR\"}"));
+    }
+}
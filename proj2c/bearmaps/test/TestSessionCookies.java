@@ -0,0 +1,214 @@
+package bearmaps.test;
+
+import bearmaps.proj2c.server.handler.impl.ClearRouteAPIHandler;
+import bearmaps.proj2c.server.handler.impl.MetricsAPIHandler;
+import bearmaps.proj2c.server.handler.impl.RasterImageAPIHandler;
+import bearmaps.proj2c.server.handler.impl.RoutePolylineAPIHandler;
+import bearmaps.proj2c.server.handler.impl.TileAPIHandler;
+import bearmaps.proj2c.utils.Constants;
+import org.junit.Test;
+import spark.HaltException;
+import spark.Request;
+import spark.Response;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that only the handlers that keep per-session state start sessions,
+ * so responses meant for shared caches never carry a session cookie.
+ */
+public class TestSessionCookies {
+
+    /** A request with the given query parameters, headers and cookies. */
+    private static class FakeRequest extends Request {
+        private final Map<String, String> params = new HashMap<>();
+        private final Map<String, String> headers = new HashMap<>();
+        private final Map<String, String> cookies = new HashMap<>();
+
+        @Override
+        public String queryParams(String name) {
+            return params.get(name);
+        }
+
+        @Override
+        public Set<String> queryParams() {
+            return params.keySet();
+        }
+
+        @Override
+        public String cookie(String name) {
+            return cookies.get(name);
+        }
+
+        @Override
+        public String headers(String name) {
+            return headers.get(name);
+        }
+    }
+
+    /** A response that remembers the headers, cookies and status set. */
+    private static class FakeResponse extends Response {
+        private final Map<String, String> headers = new HashMap<>();
+        private final Map<String, String> cookies = new HashMap<>();
+        private final Set<String> httpOnly = new HashSet<>();
+        private int status = 200;
+
+        @Override
+        public void header(String name, String value) {
+            headers.put(name, value);
+        }
+
+        @Override
+        public void cookie(String name, String value) {
+            cookies.put(name, value);
+        }
+
+        @Override
+        public void cookie(String path, String name, String value, int maxAge,
+                           boolean secured, boolean httpOnly) {
+            cookies.put(name, value);
+            if (httpOnly) {
+                this.httpOnly.add(name);
+            }
+        }
+
+        @Override
+        public void status(int statusCode) {
+            status = statusCode;
+        }
+
+        @Override
+        public void type(String contentType) {
+        }
+    }
+
+    @Test
+    public void testTileSetsNoCookie() throws Exception {
+        FakeRequest request = new FakeRequest();
+        request.params.put("tile", "d1_x0_y0.png");
+        FakeResponse response = new FakeResponse();
+        new TileAPIHandler().handle(request, response);
+        assertTrue(response.cookies.isEmpty());
+    }
+
+    @Test
+    public void testMetricsSetsNoCookie() throws Exception {
+        FakeResponse response = new FakeResponse();
+        new MetricsAPIHandler().handle(new FakeRequest(), response);
+        assertTrue(response.cookies.isEmpty());
+    }
+
+    @Test
+    public void testSessionHandlersStartSessions() throws Exception {
+        FakeResponse response = new FakeResponse();
+        new ClearRouteAPIHandler().handle(new FakeRequest(), response);
+        String issued = response.cookies.get(Constants.SESSION_COOKIE);
+        assertNotNull(issued);
+        assertTrue(response.httpOnly.contains(Constants.SESSION_COOKIE));
+
+        FakeRequest request = new FakeRequest();
+        request.cookies.put(Constants.SESSION_COOKIE, issued);
+        response = new FakeResponse();
+        new ClearRouteAPIHandler().handle(request, response);
+        assertTrue(response.cookies.isEmpty());
+    }
+
+    /* An id the server did not issue, in the cookie or a parameter, starts a new session. */
+    @Test
+    public void testChosenIdsAreReplaced() throws Exception {
+        FakeResponse first = new FakeResponse();
+        new ClearRouteAPIHandler().handle(new FakeRequest(), first);
+        String issued = first.cookies.get(Constants.SESSION_COOKIE);
+        String nonce = issued.substring(0, issued.indexOf('.'));
+        for (String forged : new String[]{"given", "", ".", nonce, nonce + ".", issued + "x",
+                                          "x" + issued, nonce + "." + nonce}) {
+            FakeRequest request = new FakeRequest();
+            request.cookies.put(Constants.SESSION_COOKIE, forged);
+            FakeResponse response = new FakeResponse();
+            new ClearRouteAPIHandler().handle(request, response);
+            String replacement = response.cookies.get(Constants.SESSION_COOKIE);
+            assertNotNull(forged, replacement);
+            assertNotEquals(issued, replacement);
+        }
+
+        FakeRequest request = new FakeRequest();
+        request.params.put(Constants.SESSION_COOKIE, issued);
+        FakeResponse response = new FakeResponse();
+        new ClearRouteAPIHandler().handle(request, response);
+        assertNotNull(response.cookies.get(Constants.SESSION_COOKIE));
+        assertNotEquals(issued, response.cookies.get(Constants.SESSION_COOKIE));
+    }
+
+    @Test
+    public void testPolylineIsPrivate() throws Exception {
+        RoutePolylineAPIHandler handler = new RoutePolylineAPIHandler();
+        FakeResponse response = new FakeResponse();
+        handler.handle(new FakeRequest(), response);
+        FakeRequest request = new FakeRequest();
+        request.cookies.put(Constants.SESSION_COOKIE, response.cookies.get(Constants.SESSION_COOKIE));
+        response = new FakeResponse();
+        handler.handle(request, response);
+        assertTrue(response.headers.get("Cache-Control").contains("private"));
+        assertEquals("Cookie", response.headers.get("Vary"));
+        String etag = response.headers.get("ETag");
+        assertEquals(34, etag.length());
+        assertEquals(200, response.status);
+
+        request.headers.put("If-None-Match", etag);
+        response = new FakeResponse();
+        assertEquals("", handler.handle(request, response));
+        assertEquals(304, response.status);
+
+        assertNull(response.cookies.get(Constants.SESSION_COOKIE));
+    }
+
+    /** A raster image request for a box off the map. */
+    private static FakeRequest rasterImageRequest() {
+        FakeRequest request = new FakeRequest();
+        request.params.put("ullat", "0");
+        request.params.put("ullon", "0");
+        request.params.put("lrlat", "-1");
+        request.params.put("lrlon", "1");
+        request.params.put("w", "256");
+        request.params.put("h", "256");
+        return request;
+    }
+
+    @Test
+    public void testRasterImageIsNotStored() throws Exception {
+        FakeRequest request = rasterImageRequest();
+        FakeResponse response = new FakeResponse();
+        new RasterImageAPIHandler().handle(request, response);
+        assertEquals(204, response.status);
+        assertEquals("no-store", response.headers.get("Cache-Control"));
+    }
+
+    @Test
+    public void testRasterImageRejectsBadQuality() throws Exception {
+        for (String quality : new String[]{"NaN", "Infinity", "-0.1", "1.5", "high"}) {
+            FakeRequest request = rasterImageRequest();
+            request.params.put("quality", quality);
+            try {
+                new RasterImageAPIHandler().handle(request, new FakeResponse());
+                fail("quality=" + quality + " was accepted");
+            } catch (HaltException e) {
+                assertEquals(403, e.statusCode());
+            }
+        }
+        FakeRequest request = rasterImageRequest();
+        request.params.put("quality", "1");
+        FakeResponse response = new FakeResponse();
+        new RasterImageAPIHandler().handle(request, response);
+        assertEquals(204, response.status);
+    }
+}
@@ -0,0 +1,88 @@
+package bearmaps.test;
+
+import bearmaps.proj2c.TileCache;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/** Checks the hit, miss and eviction behavior of TileCache on generated tiles. */
+public class TestTileCache {
+    private static final int TILE_SIZE = 256;
+    private static final long TILE_BYTES = 4L * TILE_SIZE * TILE_SIZE;
+    private String[] paths;
+
+    @Before
+    public void setUp() throws Exception {
+        File dir = Files.createTempDirectory("tiles").toFile();
+        dir.deleteOnExit();
+        paths = new String[4];
+        for (int i = 0; i < paths.length; i++) {
+            BufferedImage tile = new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_4BYTE_ABGR);
+            tile.setRGB(0, 0, 0xFF000000 | (i * 0x111111));
+            File f = new File(dir, "d0_x" + i + "_y0.png");
+            f.deleteOnExit();
+            ImageIO.write(tile, "png", f);
+            paths[i] = f.getPath();
+        }
+    }
+
+    @Test
+    public void testHitsAndMisses() {
+        TileCache cache = new TileCache(TILE_BYTES * paths.length);
+        BufferedImage first = cache.get(paths[1]);
+        assertEquals(BufferedImage.TYPE_INT_RGB, first.getType());
+        assertEquals(0x111111, first.getRGB(0, 0) & 0xFFFFFF);
+        assertSame(first, cache.get(paths[1]));
+        cache.get(paths[0]);
+        assertEquals(1, cache.hits());
+        assertEquals(2, cache.misses());
+        assertEquals(2 * TILE_BYTES, cache.bytes());
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        TileCache cache = new TileCache(2 * TILE_BYTES);
+        BufferedImage zero = cache.get(paths[0]);
+        cache.get(paths[1]);
+        cache.get(paths[0]);
+        cache.get(paths[2]);
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.evictions());
+        assertSame(zero, cache.get(paths[0]));
+        long misses = cache.misses();
+        cache.get(paths[1]);
+        assertEquals(misses + 1, cache.misses());
+        assertEquals(2 * TILE_BYTES, cache.bytes());
+    }
+
+    /* A missing or undecodable tile is remembered, so the disk is tried
+     * once, and counted; it costs next to nothing against the budget. */
+    @Test
+    public void testUnreadableTiles() throws Exception {
+        File garbage = new File(paths[0] + ".garbage.png");
+        garbage.deleteOnExit();
+        Files.write(garbage.toPath(), new byte[]{1, 2, 3});
+        TileCache cache = new TileCache(TILE_BYTES + 8);
+        for (String path : new String[]{paths[0] + ".missing", garbage.getPath()}) {
+            assertNull(cache.get(path));
+            assertNull(cache.get(path));
+        }
+        assertEquals(2, cache.misses());
+        assertEquals(2, cache.hits());
+        assertEquals(2, cache.unreadable());
+        assertEquals(2, cache.size());
+
+        assertNotNull(cache.get(paths[1]));
+        assertEquals(3, cache.size());
+        assertEquals(0, cache.evictions());
+    }
+}
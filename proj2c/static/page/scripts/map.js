@@ -24,7 +24,9 @@ $(function() {
     var getInProgress = false;
     var updatePending = false;
     var route_params = {};
+    var route_polyline = []; // lon0, lat0, lon1, lat1, ... of the current route
     var map;
+    var route_canvas;
     var dest;
     var markers = [];
     var host;
@@ -42,6 +44,9 @@ $(function() {
     const ROOT_ULLON = -122.2998046875;
     const ROOT_LRLAT = 37.82280243352756;
     const ROOT_LRLON = -122.2119140625;
+    const TILE_SIZE = 256;
+    const ROUTE_STROKE_COLOR = 'rgba(108, 181, 230, 0.78)';
+    const ROUTE_STROKE_WIDTH = 5;
 
     var w = $body.width();
     var h = $body.height();
@@ -55,8 +60,10 @@ $(function() {
     } else {
         host = 'http://localhost:4567';
     }
-    const raster_server = host + '/raster';
+    const raster_server = host + '/raster_metadata';
+    const tile_server = host + '/tile';
     const route_server = host + '/route';
+    const route_polyline_server = host + '/route_polyline';
     const clear_route = host + '/clear_route';
     const search = host + '/search';
 
@@ -81,6 +88,65 @@ $(function() {
         markers = [];
     }
 
+    /* Lays out the base map tiles of GRID, which the browser and any proxy
+     * may cache, since they never carry the route. */
+    function placeTiles(grid) {
+        $(map).children('img.tile').remove();
+        for (var i = 0; i < grid.length; i++) {
+            for (var j = 0; j < grid[i].length; j++) {
+                $('<img/>', {
+                    class: 'tile',
+                    src: tile_server + '?' + $.param({tile: grid[i][j]})
+                }).css({left: j * TILE_SIZE, top: i * TILE_SIZE}).insertBefore(route_canvas);
+            }
+        }
+        $(map).css({width: img_w, height: img_h});
+    }
+
+    /* Draws the route over the tiles, in the color the server rasters it in. */
+    function drawRoute() {
+        if (!img_w) {
+            return; // no tiles yet; drawn once they are placed
+        }
+        route_canvas.width = img_w;
+        route_canvas.height = img_h;
+        const ctx = route_canvas.getContext('2d');
+        ctx.clearRect(0, 0, img_w, img_h);
+        if (route_polyline.length < 4) {
+            return;
+        }
+        const x_scale = img_w / (lrlon_bound - ullon_bound);
+        const y_scale = img_h / (lrlat_bound - ullat_bound);
+        ctx.strokeStyle = ROUTE_STROKE_COLOR;
+        ctx.lineWidth = ROUTE_STROKE_WIDTH;
+        ctx.lineCap = 'round';
+        ctx.lineJoin = 'round';
+        ctx.beginPath();
+        for (var i = 0; i < route_polyline.length; i += 2) {
+            const x = (route_polyline[i] - ullon_bound) * x_scale;
+            const y = (route_polyline[i + 1] - ullat_bound) * y_scale;
+            if (i === 0) {
+                ctx.moveTo(x, y);
+            } else {
+                ctx.lineTo(x, y);
+            }
+        }
+        ctx.stroke();
+    }
+
+    /* Fetches this session's route, revalidating any copy the browser holds. */
+    function updatePolyline() {
+        $.get({
+            async: true,
+            url: route_polyline_server,
+            dataType: 'json',
+            success: function(data) {
+                route_polyline = data.polyline;
+                drawRoute();
+            },
+        });
+    }
+
     function updateImg() {
         if (getInProgress) {
             updatePending = true;
@@ -102,15 +168,14 @@ $(function() {
                 console.log(data);
                 if (data.query_success) {
                     $loadingStatus.hide();
-                    map.src = 'data:image/png;base64,' + data.b64_encoded_image_data;
-                    console.log('Updating map with image length: ' +
-                                data.b64_encoded_image_data.length);
                     ullon_bound = data.raster_ul_lon;
                     ullat_bound = data.raster_ul_lat;
                     lrlon_bound = data.raster_lr_lon;
                     lrlat_bound = data.raster_lr_lat;
                     img_w = data.raster_width;
                     img_h = data.raster_height;
+                    placeTiles(data.render_grid);
+                    drawRoute();
                     getInProgress = false;
 
                     var warnings = [];
@@ -181,7 +246,7 @@ $(function() {
             data: route_params,
             success: function(data) {
                 data = JSON.parse(data);
-                updateImg();
+                updatePolyline();
                 if (data.directions_success) {
                     $directionsText.html(data.directions);
                 } else {
@@ -303,18 +368,30 @@ $(function() {
     /* ══════════════════════════════════ ೋღ SETUP ღೋ ════════════════════════════════ */
 
     map = document.getElementById('map');
+    route_canvas = document.getElementById('route');
     dest = document.getElementById('dest');
     dest.style.visibility = 'hidden';
     loadCookies();
     handleHashParameters();
     setTheme();
     updateImg();
+    updatePolyline();
     /* Hide scroll bar */
     $('body').css('overflow', 'hidden');
 
     /* Make search bar do autocomplete things */
     $('#tags').autocomplete({
-          source: search,
+          /* Names starting with the term, or if there are none, with
+           * something close to it, in case of a typo. */
+          source: function (request, respond) {
+              $.getJSON(search, { term: request.term }, function (names) {
+                  if (names.length > 0) {
+                      respond(names);
+                  } else {
+                      $.getJSON(search, { term: request.term, fuzzy: '' }, respond);
+                  }
+              });
+          },
           minLength: 2,
           select: function (event, ui) {
               $.get({
@@ -389,7 +466,8 @@ $(function() {
             success: function() {
                 dest.style.visibility = 'hidden';
                 $directionsText.html('No routing directions to display.');
-                updateImg();
+                route_polyline = [];
+                drawRoute();
             },
         });
     });
@@ -432,7 +510,6 @@ $(function() {
             $routeStatus.hide();
             updateRoute();
             dest.style.visibility = 'visible';
-            updateImg();
         } else {
             route_params.start_lon = click_lon;
             route_params.start_lat = click_lat;
@@ -450,7 +527,7 @@ $(function() {
     });
 
     /* Prevent image dragging */
-    $('img').on('dragstart', function(event) { event.preventDefault(); });
+    $(document).on('dragstart', 'img', function(event) { event.preventDefault(); });
 
     // Allow for window resizing
     window.onresize = function() {